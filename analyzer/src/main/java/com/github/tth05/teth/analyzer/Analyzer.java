@@ -10,54 +10,57 @@ import com.github.tth05.teth.analyzer.visitor.NameAnalysis;
 import com.github.tth05.teth.analyzer.visitor.ReturnStatementVerifier;
 import com.github.tth05.teth.analyzer.visitor.TypeAnalysis;
 import com.github.tth05.teth.lang.parser.SourceFileUnit;
-import com.github.tth05.teth.lang.parser.StatementList;
 import com.github.tth05.teth.lang.parser.ast.Expression;
 import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
 import com.github.tth05.teth.lang.parser.ast.IDeclarationReference;
 import com.github.tth05.teth.lang.parser.ast.Statement;
+import com.github.tth05.teth.lang.source.ISource;
 import com.github.tth05.teth.lang.span.Span;
 
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class Analyzer {
 
-    private final Map<IDeclarationReference, Statement> resolvedReferences = new IdentityHashMap<>();
-    private final Map<Expression, SemanticType> resolvedExpressionTypes = new IdentityHashMap<>();
-    private final Map<FunctionDeclaration, Integer> functionLocalsCount = new IdentityHashMap<>();
+    /**
+     * The references in the headers of the prelude declarations. They never change, so they are only resolved once.
+     */
+    private static final NodeTable<IDeclarationReference, Statement> PRELUDE_REFERENCES = resolvePreludeReferences();
+
+    private final NodeTable<IDeclarationReference, Statement> resolvedReferences = new NodeTable<>(PRELUDE_REFERENCES);
+    private final NodeTable<Expression, SemanticType> resolvedExpressionTypes = new NodeTable<>();
+    private final NodeTable<FunctionDeclaration, Integer> functionLocalsCount = new NodeTable<>();
 
     private final ModuleCache moduleCache = new ModuleCache();
     private final TypeCache typeCache = new TypeCache();
 
-    private List<AnalyzerResult> results;
-    private Deque<AnalysisState> additionalUnits;
+    /**
+     * The results of all analyzed modules by unique path, in the order in which the modules were analyzed first
+     */
+    private final Map<String, ModuleAnalysis> modules = new LinkedHashMap<>();
+    private final Deque<AnalysisState> additionalUnits = new ArrayDeque<>();
     private SourceFileUnit entryPoint;
     private boolean analyzeEntryPointOnly;
+    private boolean analyzed;
 
     public Analyzer(SourceFileUnit entryPoint) {
-        this.entryPoint = internalizeUnit(entryPoint);
+        this.entryPoint = entryPoint;
         this.moduleCache.addModule(this.entryPoint);
     }
 
     public void setModuleLoader(IModuleLoader loader) {
         this.moduleCache.setModuleLoader(new DelegateModuleLoader(loader) {
-            @Override
-            public SourceFileUnit loadModule(String uniquePath) {
-                var unit = loader.loadModule(uniquePath);
-                if (unit == null)
-                    return null;
-
-                unit = internalizeUnit(unit);
-                return unit;
-            }
-
             @Override
             public void initializeModule(SourceFileUnit unit) {
                 var state = preAnalyzeUnit(unit);
                 if (Analyzer.this.analyzeEntryPointOnly) {
-                    Analyzer.this.results.add(new AnalyzerResult(unit.getUniquePath(), state.getProblems()));
+                    Analyzer.this.modules.put(unit.getUniquePath(), new ModuleAnalysis(unit, new AnalyzerResult(unit.getUniquePath(), state.getProblems())));
                     return;
                 }
 
+                // Reserve the position of the module in the results
+                Analyzer.this.modules.put(unit.getUniquePath(), null);
                 Analyzer.this.additionalUnits.addLast(new AnalysisState(unit, state));
             }
         });
@@ -68,27 +71,138 @@ public class Analyzer {
     }
 
     public List<AnalyzerResult> analyze() {
-        if (this.entryPoint == null)
-            throw new IllegalStateException("Cannot run analysis twice");
+        if (this.analyzed)
+            throw new IllegalStateException("Cannot run analysis twice, use reanalyze for changed modules");
+
+        this.analyzed = true;
+        this.moduleCache.preloadImports(this.entryPoint);
+        analyzeUnits(List.of(this.entryPoint));
+        return getResults();
+    }
+
+    /**
+     * Replaces a module which has changed since the last analysis and analyzes it again, together with all modules
+     * which use it directly or through other modules. The results of all other modules are kept. The changed module
+     * can also be one which did not exist during the last analysis.
+     *
+     * @return The results of all modules, including the ones which were not analyzed again
+     */
+    public List<AnalyzerResult> reanalyze(SourceFileUnit unit) {
+        if (!this.analyzed)
+            throw new IllegalStateException("Cannot reanalyze before the first analysis");
+
+        var uniquePath = unit.getUniquePath();
+        var affectedPaths = this.moduleCache.getTransitiveDependents(uniquePath);
+        if (!this.modules.containsKey(uniquePath) && affectedPaths.size() == 1) {
+            // Not used by any module yet, only make it available to later analyses
+            this.moduleCache.replaceModule(unit);
+            this.moduleCache.unloadModule(uniquePath);
+            return getResults();
+        }
+
+        var units = new ArrayList<SourceFileUnit>(affectedPaths.size());
+        for (var path : affectedPaths) {
+            var module = this.modules.get(path);
+            if (path.equals(uniquePath))
+                units.add(unit);
+            else if (module != null)
+                units.add(module.unit());
+        }
+
+        forgetModules(affectedPaths);
+        this.moduleCache.replaceModule(unit);
+        if (uniquePath.equals(this.entryPoint.getUniquePath()))
+            this.entryPoint = unit;
+
+        this.moduleCache.preloadImports(unit);
+        analyzeUnits(units);
+        forgetUnusedModules();
+        return getResults();
+    }
+
+    private void analyzeUnits(List<SourceFileUnit> units) {
+        // The headers of all units have to be resolved before any of them is analyzed
+        var states = new ArrayList<AnalysisState>(units.size());
+        for (var unit : units) {
+            this.modules.putIfAbsent(unit.getUniquePath(), null);
+            states.add(new AnalysisState(unit, preAnalyzeUnit(unit)));
+        }
+
+        for (var state : states) {
+            var unit = state.unit();
+            var result = this.analyzeEntryPointOnly && unit != this.entryPoint ?
+                    new AnalyzerResult(unit.getUniquePath(), state.state().getProblems()) :
+                    analyzeUnit(unit, state.state());
+            this.modules.put(unit.getUniquePath(), new ModuleAnalysis(unit, result));
+        }
+
+        while (!this.additionalUnits.isEmpty()) {
+            var element = this.additionalUnits.pop();
+            this.modules.put(element.unit().getUniquePath(), new ModuleAnalysis(element.unit(), analyzeUnit(element.unit(), element.state())));
+        }
+    }
+
+    /**
+     * Removes the modules which the entry point no longer uses directly or through other modules, e.g. because a use
+     * statement was removed, so that they are no longer part of the results
+     */
+    private void forgetUnusedModules() {
+        var usedPaths = this.moduleCache.getTransitiveDependencies(this.entryPoint.getUniquePath());
+        var unusedPaths = new HashSet<>(this.modules.keySet());
+        unusedPaths.removeAll(usedPaths);
+        if (unusedPaths.isEmpty())
+            return;
+
+        forgetModules(unusedPaths);
+        for (var path : unusedPaths) {
+            this.modules.remove(path);
+            this.moduleCache.unloadModule(path);
+        }
+    }
+
+    /**
+     * Removes everything that is known about the given modules, except for their position in the results
+     */
+    private void forgetModules(Set<String> uniquePaths) {
+        // Nodes without an id are identified by the source they were parsed from
+        var sources = Collections.newSetFromMap(new IdentityHashMap<ISource, Boolean>());
+        var unitIds = new HashSet<Integer>();
+        for (var path : uniquePaths) {
+            this.moduleCache.clearDependencies(path);
 
-        if (!this.analyzeEntryPointOnly)
-            this.additionalUnits = new ArrayDeque<>();
+            var module = this.modules.get(path);
+            if (module == null)
+                continue;
 
-        this.results = new ArrayList<>();
-        this.results.add(0, analyzeUnit(this.entryPoint, preAnalyzeUnit(this.entryPoint)));
+            for (var statement : module.unit().getStatements()) {
+                if (statement.getUnitId() >= 0)
+                    unitIds.add(statement.getUnitId());
 
-        if (!this.analyzeEntryPointOnly) {
-            while (!this.additionalUnits.isEmpty()) {
-                var element = this.additionalUnits.pop();
-                this.results.add(analyzeUnit(element.unit(), element.state()));
+                var span = statement.getSpan();
+                if (span != null)
+                    sources.add(span.source());
             }
         }
 
-        var results = this.results;
-        this.entryPoint = null;
-        this.results = null;
-        this.additionalUnits = null;
-        return results;
+        for (var unitId : unitIds) {
+            this.resolvedReferences.removeUnit(unitId);
+            this.resolvedExpressionTypes.removeUnit(unitId);
+            this.functionLocalsCount.removeUnit(unitId);
+        }
+
+        if (sources.isEmpty())
+            return;
+
+        Predicate<Statement> isForgotten = s -> s != null && s.getSpan() != null && sources.contains(s.getSpan().source());
+        // Synthetic nodes have no span, but they always refer to a declaration of their module
+        this.resolvedReferences.removeUnnumberedIf((k, v) -> isForgotten.test((Statement) k) || isForgotten.test(v));
+        this.resolvedExpressionTypes.removeUnnumberedIf((k, v) -> isForgotten.test(k));
+        this.functionLocalsCount.removeUnnumberedIf((k, v) -> isForgotten.test(k));
+        this.typeCache.removeTypes(isForgotten);
+    }
+
+    private List<AnalyzerResult> getResults() {
+        return this.modules.values().stream().map(ModuleAnalysis::result).collect(Collectors.toCollection(ArrayList::new));
     }
 
     private NameAnalysis preAnalyzeUnit(SourceFileUnit unit) {
@@ -122,7 +236,11 @@ public class Analyzer {
     }
 
     public int functionLocalsCount(FunctionDeclaration function) {
-        return Objects.requireNonNull(this.functionLocalsCount.getOrDefault(function, null), "Function locals count not set");
+        return Objects.requireNonNull(this.functionLocalsCount.get(function), "Function locals count not set");
+    }
+
+    public void addModuleDependency(String uniquePath, String dependencyUniquePath) {
+        this.moduleCache.addDependency(uniquePath, dependencyUniquePath);
     }
 
     public boolean hasModule(String name) {
@@ -133,20 +251,28 @@ public class Analyzer {
         return this.moduleCache.toUniquePath(relativeToUniquePath, path);
     }
 
-    public Statement findExportedDeclaration(String uniquePath, Span name) {
-        return this.moduleCache.findExportedDeclaration(uniquePath, name);
+    /**
+     * @param symbol The symbol of the name, see {@link com.github.tth05.teth.lang.parser.SymbolTable}
+     */
+    public Statement findExportedDeclaration(String uniquePath, int symbol) {
+        return this.moduleCache.findExportedDeclaration(uniquePath, symbol);
     }
 
     public TypeCache getTypeCache() {
         return this.typeCache;
     }
 
-    private SourceFileUnit internalizeUnit(SourceFileUnit unit) {
-        // Don't modify the original unit
-        var newStatements = new StatementList(unit.getStatements());
-        Prelude.injectStatements(newStatements);
-        return new SourceFileUnit(unit.getUniquePath(), newStatements);
+    private static NodeTable<IDeclarationReference, Statement> resolvePreludeReferences() {
+        var references = new NodeTable<IDeclarationReference, Statement>();
+        var nameAnalysis = new NameAnalysis(null, references, new NodeTable<>());
+        nameAnalysis.preDeclVisit(new SourceFileUnit("__prelude__", Prelude.getAllDeclarations()));
+        if (!nameAnalysis.getProblems().isEmpty())
+            throw new IllegalStateException("Failed to analyze prelude\n" + nameAnalysis.getProblems().prettyPrint(false));
+
+        return references;
     }
 
     private record AnalysisState(SourceFileUnit unit, NameAnalysis state) {}
+
+    private record ModuleAnalysis(SourceFileUnit unit, AnalyzerResult result) {}
 }
@@ -0,0 +1,113 @@
+package com.github.tth05.teth.analyzer;
+
+import com.github.tth05.teth.lang.parser.ast.Statement;
+import com.github.tth05.teth.lang.util.IntObjectMap;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+
+/**
+ * Maps AST nodes to values. The values of nodes which were numbered by the parser are stored in one array per unit,
+ * indexed by the id of the node. Nodes without an id, like the ones created during analysis, are stored in an identity
+ * map instead.
+ *
+ * @param <K> The type of the keys, which have to be {@link Statement}s
+ */
+public class NodeTable<K, V> {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    /**
+     * Consulted for nodes which have no value in this table
+     */
+    private final NodeTable<K, V> parent;
+    private final IntObjectMap<Object[]> units = new IntObjectMap<>();
+    private final Map<K, V> unnumberedNodes = new IdentityHashMap<>();
+
+    public NodeTable() {
+        this(null);
+    }
+
+    public NodeTable(NodeTable<K, V> parent) {
+        this.parent = parent;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        var node = (Statement) key;
+        var nodeId = node.getNodeId();
+        V value;
+        if (nodeId < 0) {
+            value = this.unnumberedNodes.get(key);
+        } else {
+            var values = this.units.get(node.getUnitId());
+            value = values != null && nodeId < values.length ? (V) values[nodeId] : null;
+        }
+
+        if (value == null && this.parent != null)
+            return this.parent.get(key);
+        return value;
+    }
+
+    /**
+     * @return The previous value of the key in this table, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        var node = (Statement) key;
+        var nodeId = node.getNodeId();
+        if (nodeId < 0)
+            return value == null ? this.unnumberedNodes.remove(key) : this.unnumberedNodes.put(key, value);
+
+        var values = this.units.get(node.getUnitId());
+        if (values == null || nodeId >= values.length) {
+            if (value == null)
+                return null;
+
+            values = grow(values == null ? EMPTY : values, nodeId);
+            this.units.put(node.getUnitId(), values);
+        }
+
+        var previous = (V) values[nodeId];
+        values[nodeId] = value;
+        return previous;
+    }
+
+    /**
+     * Same as {@link Map#merge(Object, Object, BiFunction)}, but ignores the parent table
+     */
+    @SuppressWarnings("unchecked")
+    public void merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        var node = (Statement) key;
+        if (node.getNodeId() < 0) {
+            this.unnumberedNodes.merge(key, value, remappingFunction);
+            return;
+        }
+
+        var values = this.units.get(node.getUnitId());
+        var previous = values != null && node.getNodeId() < values.length ? (V) values[node.getNodeId()] : null;
+        put(key, previous == null ? value : remappingFunction.apply(previous, value));
+    }
+
+    /**
+     * Removes the values of all nodes which were numbered as part of the given unit
+     */
+    public void removeUnit(int unitId) {
+        this.units.remove(unitId);
+    }
+
+    /**
+     * Removes all entries of nodes without an id which match the given predicate
+     */
+    public void removeUnnumberedIf(BiPredicate<? super K, ? super V> predicate) {
+        this.unnumberedNodes.entrySet().removeIf(e -> predicate.test(e.getKey(), e.getValue()));
+    }
+
+    private static Object[] grow(Object[] values, int nodeId) {
+        var newValues = new Object[Math.max(nodeId + 1, Math.max(16, values.length * 2))];
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        return newValues;
+    }
+}
@@ -4,26 +4,37 @@ import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
 import com.github.tth05.teth.lang.parser.ast.IHasName;
 import com.github.tth05.teth.lang.parser.ast.Statement;
 import com.github.tth05.teth.lang.parser.ast.StructDeclaration;
-import com.github.tth05.teth.lang.span.Span;
+import com.github.tth05.teth.lang.parser.SymbolTable;
+import com.github.tth05.teth.lang.util.IntObjectMap;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.function.IntFunction;
 
 public class ScopeStack {
 
     private final Deque<Scope> stack = new ArrayDeque<>();
+    /**
+     * Declarations which are visible everywhere, below the top level declarations, by symbol
+     */
+    private final IntFunction<Statement> rootDeclarations;
 
-    public Statement resolveIdentifier(Span ident) {
-        if (ident == null)
+    public ScopeStack(IntFunction<Statement> rootDeclarations) {
+        this.rootDeclarations = rootDeclarations;
+    }
+
+    /**
+     * @param symbol The symbol of the name, see {@link SymbolTable}
+     */
+    public Statement resolveIdentifier(int symbol) {
+        if (symbol == SymbolTable.NO_SYMBOL)
             return null;
 
         var pastSubScope = false;
         for (var it = this.stack.descendingIterator(); it.hasNext(); ) {
             var scope = it.next();
             if (!pastSubScope) {
-                var decl = scope.declarations.get(ident);
+                var decl = scope.declarations.get(symbol);
                 if (decl != null)
                     return decl;
 
@@ -32,14 +43,15 @@ public class ScopeStack {
             }
 
             var owner = scope.owner;
-            if (pastSubScope && owner instanceof IHasName named && ident.equals(named.getNameExpr().getSpan()) && // Check name matches
+            if (pastSubScope && owner instanceof IHasName named && named.getNameExpr().getSymbol() == symbol && // Check name matches
                 (!(owner instanceof FunctionDeclaration func) || !func.isInstanceFunction())) // Filter instance functions
                 return owner;
         }
 
         // Check top level declarations
         //noinspection ConstantConditions
-        return this.stack.peekFirst().declarations.get(ident);
+        var decl = this.stack.peekFirst().declarations.get(symbol);
+        return decl != null ? decl : this.rootDeclarations.apply(symbol);
     }
 
     public <T extends Statement> T getClosestOfType(Class<T> clazz) {
@@ -71,15 +83,17 @@ public class ScopeStack {
         return count;
     }
 
-    public void addDeclaration(Span value, Statement declaration) {
+    public void addDeclaration(int symbol, Statement declaration) {
         var declarations = this.stack.getLast().declarations;
-        var existing = declarations.get(value);
+        var existing = declarations.get(symbol);
+        if (existing == null && this.stack.size() == 1)
+            existing = this.rootDeclarations.apply(symbol);
         // Ignore re-declarations of intrinsics
         if ((existing instanceof FunctionDeclaration func && func.isIntrinsic()) ||
             (existing instanceof StructDeclaration struct && struct.isIntrinsic()))
             return;
 
-        declarations.put(value, declaration);
+        declarations.put(symbol, declaration);
     }
 
     public void beginScope(Statement owner) {
@@ -99,7 +113,7 @@ public class ScopeStack {
 
     private static final class Scope {
 
-        private final Map<Span, Statement> declarations = new HashMap<>();
+        private final IntObjectMap<Statement> declarations = new IntObjectMap<>();
         private final Statement owner;
         private final boolean subScope;
 
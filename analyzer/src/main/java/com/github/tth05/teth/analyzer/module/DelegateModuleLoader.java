@@ -25,4 +25,9 @@ public class DelegateModuleLoader implements IModuleLoader {
     public void initializeModule(SourceFileUnit unit) {
         this.delegate.initializeModule(unit);
     }
+
+    @Override
+    public boolean supportsParallelLoading() {
+        return this.delegate.supportsParallelLoading();
+    }
 }
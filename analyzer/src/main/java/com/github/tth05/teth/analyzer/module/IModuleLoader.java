@@ -11,4 +11,17 @@ public interface IModuleLoader {
 
     default void initializeModule(SourceFileUnit unit) {
     }
+
+    /**
+     * Opts into loading modules in the background, ahead of the analysis. If this returns {@code true},
+     * {@link #toUniquePath(String, Span)} and {@link #loadModule(String)} are called concurrently from other threads,
+     * and possibly for modules which the analysis never uses. A module which failed to load in the background is loaded
+     * again once it is used, and only the failure of that call is reported. {@link #initializeModule(SourceFileUnit)}
+     * is always called on the thread of the analysis.
+     *
+     * @return {@code true} if this loader is thread-safe and allows speculative loads, {@code false} by default
+     */
+    default boolean supportsParallelLoading() {
+        return false;
+    }
 }
@@ -4,18 +4,47 @@ import com.github.tth05.teth.lang.parser.SourceFileUnit;
 import com.github.tth05.teth.lang.parser.ast.IHasName;
 import com.github.tth05.teth.lang.parser.ast.ITopLevelDeclaration;
 import com.github.tth05.teth.lang.parser.ast.Statement;
+import com.github.tth05.teth.lang.parser.ast.UseStatement;
 import com.github.tth05.teth.lang.span.Span;
+import com.github.tth05.teth.lang.util.IntObjectMap;
 
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
+/**
+ * Keeps the modules which were loaded during analysis. Modules are loaded ahead of time: as soon as a module is
+ * available, all modules it uses are loaded and parsed in parallel, while the analysis of the modules which are
+ * already available continues. Therefore, {@link IModuleLoader#toUniquePath(String, Span)} and
+ * {@link IModuleLoader#loadModule(String)} may be called concurrently, {@link IModuleLoader#initializeModule} is only
+ * called by the analysis.
+ */
 public class ModuleCache {
 
-    private static final Matcher MODULE_PATH_MATCHER = Pattern.compile("^((\\.{2}|/|[^/.]+?)/)*?[^/.]+$").matcher("");
+    private static final Pattern MODULE_PATH_PATTERN = Pattern.compile("^((\\.{2}|/|[^/.]+?)/)*?[^/.]+$");
 
     private final Map<String, SourceFileUnitIndex> unitIndexMap = new HashMap<>();
+    /**
+     * The modules which each module uses, by unique path
+     */
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+    /**
+     * The modules which use each module, by unique path. The inverse of {@link #dependencies}.
+     */
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+    /**
+     * Modules which are being loaded in the background or have been loaded, by unique path
+     */
+    private final Map<String, CompletableFuture<SourceFileUnit>> pendingModules = new ConcurrentHashMap<>();
     private IModuleLoader moduleLoader;
 
     public void setModuleLoader(IModuleLoader loader) {
@@ -24,6 +53,73 @@ public class ModuleCache {
 
     public void addModule(SourceFileUnit unit) {
         this.unitIndexMap.put(unit.getUniquePath(), new SourceFileUnitIndex(unit));
+        this.pendingModules.putIfAbsent(unit.getUniquePath(), CompletableFuture.completedFuture(unit));
+    }
+
+    /**
+     * Replaces a module which has already been added or loaded, e.g. because its source has changed. The dependencies
+     * of the old module are kept until {@link #clearDependencies(String)} is called.
+     */
+    public void replaceModule(SourceFileUnit unit) {
+        this.unitIndexMap.put(unit.getUniquePath(), new SourceFileUnitIndex(unit));
+        this.pendingModules.put(unit.getUniquePath(), CompletableFuture.completedFuture(unit));
+    }
+
+    /**
+     * Removes a module which is no longer used, together with its dependencies. The unit of the module is kept, so
+     * that it is added and initialized again without loading it, once it is used again.
+     */
+    public void unloadModule(String uniquePath) {
+        this.unitIndexMap.remove(uniquePath);
+        clearDependencies(uniquePath);
+    }
+
+    /**
+     * Records that the module {@code uniquePath} uses the module {@code dependencyUniquePath}. The dependency does not
+     * have to exist.
+     */
+    public void addDependency(String uniquePath, String dependencyUniquePath) {
+        this.dependencies.computeIfAbsent(uniquePath, k -> new HashSet<>()).add(dependencyUniquePath);
+        this.dependents.computeIfAbsent(dependencyUniquePath, k -> new HashSet<>()).add(uniquePath);
+    }
+
+    /**
+     * Removes all dependencies of the given module, but keeps the modules which depend on it.
+     */
+    public void clearDependencies(String uniquePath) {
+        var dependencies = this.dependencies.remove(uniquePath);
+        if (dependencies == null)
+            return;
+
+        for (var dependency : dependencies)
+            this.dependents.get(dependency).remove(uniquePath);
+    }
+
+    /**
+     * @return The given module, followed by all modules which depend on it directly or through other modules
+     */
+    public Set<String> getTransitiveDependents(String uniquePath) {
+        return collectTransitively(uniquePath, this.dependents);
+    }
+
+    /**
+     * @return The given module, followed by all modules which it uses directly or through other modules
+     */
+    public Set<String> getTransitiveDependencies(String uniquePath) {
+        return collectTransitively(uniquePath, this.dependencies);
+    }
+
+    private static Set<String> collectTransitively(String uniquePath, Map<String, Set<String>> edges) {
+        var result = new LinkedHashSet<String>();
+        var queue = new ArrayDeque<String>();
+        queue.add(uniquePath);
+        while (!queue.isEmpty()) {
+            var module = queue.poll();
+            if (result.add(module))
+                queue.addAll(edges.getOrDefault(module, Set.of()));
+        }
+
+        return result;
     }
 
     public boolean hasModule(String uniquePath) {
@@ -31,25 +127,82 @@ public class ModuleCache {
         return this.unitIndexMap.get(uniquePath) != null;
     }
 
-    public Statement findExportedDeclaration(String uniquePath, Span name) {
+    public Statement findExportedDeclaration(String uniquePath, int symbol) {
         loadModule(uniquePath);
 
         var index = this.unitIndexMap.get(uniquePath);
         if (index == null)
             return null;
 
-        return index.findExportedDeclaration(name);
+        return index.findExportedDeclaration(symbol);
     }
 
     public String toUniquePath(String relativeToUniquePath, Span moduleName) {
         return this.moduleLoader == null ? moduleName.getText() : this.moduleLoader.toUniquePath(relativeToUniquePath, moduleName);
     }
 
+    /**
+     * Starts loading all modules which the given unit uses in the background, followed by the modules which these
+     * modules use. Does nothing if the module loader does not opt into this, see
+     * {@link IModuleLoader#supportsParallelLoading()}.
+     */
+    public void preloadImports(SourceFileUnit unit) {
+        var moduleLoader = this.moduleLoader;
+        if (moduleLoader == null || !moduleLoader.supportsParallelLoading())
+            return;
+
+        for (var statement : unit.getStatements()) {
+            if (!(statement instanceof UseStatement useStatement) || useStatement.getPathExpr() == null)
+                continue;
+
+            var path = useStatement.getPathExpr().asSingleStringSpan();
+            if (!isValidModulePath(path))
+                continue;
+
+            var uniquePath = moduleLoader.toUniquePath(unit.getUniquePath(), path);
+            if (uniquePath != null && !uniquePath.isBlank() && !uniquePath.equals(unit.getUniquePath()))
+                preload(moduleLoader, uniquePath);
+        }
+    }
+
+    /**
+     * @return The future of the given module, every module is only loaded once
+     */
+    private CompletableFuture<SourceFileUnit> preload(IModuleLoader moduleLoader, String uniquePath) {
+        return this.pendingModules.computeIfAbsent(uniquePath, p -> CompletableFuture.supplyAsync(() -> {
+            var module = moduleLoader.loadModule(p);
+            if (module != null) {
+                try {
+                    preloadImports(module);
+                } catch (RuntimeException ignored) {
+                    // Speculative, the imports are resolved again when the module is analyzed
+                }
+            }
+            return module;
+        }, ForkJoinPool.commonPool()));
+    }
+
     private void loadModule(String path) {
         if (path == null || path.isBlank() || hasResolvedModule(path) || this.moduleLoader == null)
             return;
 
-        var module = this.moduleLoader.loadModule(path);
+        SourceFileUnit module = null;
+        var loaded = false;
+        var future = this.pendingModules.get(path);
+        if (future != null) {
+            try {
+                module = future.join();
+                loaded = true;
+            } catch (CompletionException | CancellationException ignored) {
+                // A failed background load is not reported, the module is loaded again below
+            }
+        }
+
+        if (!loaded) {
+            module = this.moduleLoader.loadModule(path);
+            this.pendingModules.put(path, CompletableFuture.completedFuture(module));
+        }
+
         if (module == null) {
             this.unitIndexMap.put(path, null);
             return;
@@ -70,24 +223,25 @@ public class ModuleCache {
         if (path == null || path.length() < 1)
             return false;
 
-        MODULE_PATH_MATCHER.reset(path);
-        return MODULE_PATH_MATCHER.matches();
+        return MODULE_PATH_PATTERN.matcher(path).matches();
     }
 
     private static class SourceFileUnitIndex {
 
-        private final Map<Span, Statement> exportedStatementsMap;
+        /**
+         * The exported declarations by the symbol of their name
+         */
+        private final IntObjectMap<Statement> exportedStatementsMap = new IntObjectMap<>();
 
         public SourceFileUnitIndex(SourceFileUnit unit) {
-            this.exportedStatementsMap = new HashMap<>(unit.getStatements().size());
             unit.getStatements().stream()
                     .filter(s -> s instanceof ITopLevelDeclaration && s instanceof IHasName)
                     .filter(s -> ((IHasName) s).getNameExpr().getSpan() != null)
-                    .forEach(s -> this.exportedStatementsMap.put(((IHasName) s).getNameExpr().getSpan(), s));
+                    .forEach(s -> this.exportedStatementsMap.put(((IHasName) s).getNameExpr().getSymbol(), s));
         }
 
-        public Statement findExportedDeclaration(Span name) {
-            return this.exportedStatementsMap.get(name);
+        public Statement findExportedDeclaration(int symbol) {
+            return this.exportedStatementsMap.get(symbol);
         }
     }
 }
@@ -2,16 +2,17 @@ package com.github.tth05.teth.analyzer.prelude;
 
 import com.github.tth05.teth.lang.parser.Parser;
 import com.github.tth05.teth.lang.parser.StatementList;
+import com.github.tth05.teth.lang.parser.SymbolTable;
 import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
 import com.github.tth05.teth.lang.parser.ast.IHasName;
 import com.github.tth05.teth.lang.parser.ast.Statement;
 import com.github.tth05.teth.lang.parser.ast.StructDeclaration;
 import com.github.tth05.teth.lang.source.InMemorySource;
 import com.github.tth05.teth.lang.span.Span;
+import com.github.tth05.teth.lang.util.IntObjectMap;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 public class Prelude {
@@ -40,8 +41,12 @@ public class Prelude {
             fn intrinsic stringify(arg: any) string
             fn intrinsic nanoTime() long
             """;
-    private static final Map<Span, StructDeclaration> PRELUDE_STRUCTS = new HashMap<>();
-    private static final Map<Span, FunctionDeclaration> PRELUDE_FUNCTIONS = new HashMap<>();
+    private static final List<StructDeclaration> PRELUDE_STRUCTS = new ArrayList<>();
+    private static final List<FunctionDeclaration> PRELUDE_FUNCTIONS = new ArrayList<>();
+    /**
+     * All prelude declarations by the symbol of their name, the root scope of every module
+     */
+    private static final IntObjectMap<Statement> PRELUDE_DECLARATIONS = new IntObjectMap<>();
     static {
         var result = Parser.parse(new InMemorySource("prelude", PRELUDE_TEXT), true);
         if (result.hasProblems())
@@ -49,29 +54,28 @@ public class Prelude {
 
         for (var statement : result.getUnit().getStatements()) {
             if (statement instanceof StructDeclaration structDeclaration)
-                PRELUDE_STRUCTS.put(((IHasName) statement).getNameExpr().getSpan(), structDeclaration);
+                PRELUDE_STRUCTS.add(structDeclaration);
             else if (statement instanceof FunctionDeclaration functionDeclaration)
-                PRELUDE_FUNCTIONS.put(((IHasName) statement).getNameExpr().getSpan(), functionDeclaration);
+                PRELUDE_FUNCTIONS.add(functionDeclaration);
             else
                 throw new RuntimeException();
+
+            PRELUDE_DECLARATIONS.put(((IHasName) statement).getNameExpr().getSymbol(), statement);
         }
     }
 
     public static FunctionDeclaration getGlobalFunction(Span name) {
-        if (name == null)
-            return null;
-
-        return PRELUDE_FUNCTIONS.get(name);
+        return PRELUDE_DECLARATIONS.get(SymbolTable.lookup(name)) instanceof FunctionDeclaration function ? function : null;
     }
 
     public static FunctionDeclaration[] getGlobalFunctions() {
-        return PRELUDE_FUNCTIONS.values().toArray(new FunctionDeclaration[0]);
+        return PRELUDE_FUNCTIONS.toArray(new FunctionDeclaration[0]);
     }
 
     public static StatementList getAllDeclarations() {
         var list = StatementList.of();
-        list.addAll(PRELUDE_STRUCTS.values());
-        list.addAll(PRELUDE_FUNCTIONS.values());
+        list.addAll(PRELUDE_STRUCTS);
+        list.addAll(PRELUDE_FUNCTIONS);
         return list;
     }
 
@@ -79,23 +83,24 @@ public class Prelude {
         if (name == null)
             throw new IllegalArgumentException();
 
-        var struct = PRELUDE_STRUCTS.get(name);
-        if (struct == null)
+        if (!(PRELUDE_DECLARATIONS.get(SymbolTable.lookup(name)) instanceof StructDeclaration struct))
             throw new IllegalArgumentException();
 
         return struct;
     }
 
     public static StructDeclaration[] getGlobalStructs() {
-        return PRELUDE_STRUCTS.values().toArray(new StructDeclaration[0]);
+        return PRELUDE_STRUCTS.toArray(new StructDeclaration[0]);
     }
 
-    public static void injectStatements(List<Statement> statements) {
-        for (var function : PRELUDE_FUNCTIONS.values())
-            statements.add(0, function);
-        for (var struct : PRELUDE_STRUCTS.values())
-            statements.add(0, struct);
+    /**
+     * @param symbol The symbol of the name, see {@link SymbolTable}
+     * @return The prelude declaration with the given name, or {@code null} if there is none
+     */
+    public static Statement getDeclaration(int symbol) {
+        return PRELUDE_DECLARATIONS.get(symbol);
     }
+
     /**
      * Quick accessors
      */
@@ -6,6 +6,7 @@ import com.github.tth05.teth.lang.parser.ast.Statement;
 import com.github.tth05.teth.lang.parser.ast.StructDeclaration;
 
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class TypeCache {
@@ -36,6 +37,21 @@ public class TypeCache {
         return this.rawTypeCache.computeIfAbsent(this.internalizeType(statement), SemanticType::new);
     }
 
+    /**
+     * Forgets the types of all declarations which match the given filter, e.g. because the module which contains them
+     * has changed. Their type ids are never reused.
+     */
+    public void removeTypes(Predicate<Statement> filter) {
+        this.statementToTypeIdMap.entrySet().removeIf(e -> {
+            if (!filter.test(e.getKey()))
+                return false;
+
+            this.typeIdToStatementMap.remove(e.getValue());
+            this.rawTypeCache.remove(e.getValue());
+            return true;
+        });
+    }
+
     public Statement getDeclaration(SemanticType type) {
         return this.typeIdToStatementMap.get(type.getTypeId());
     }
@@ -1,6 +1,7 @@
 package com.github.tth05.teth.analyzer.visitor;
 
 import com.github.tth05.teth.analyzer.Analyzer;
+import com.github.tth05.teth.analyzer.NodeTable;
 import com.github.tth05.teth.analyzer.ScopeStack;
 import com.github.tth05.teth.analyzer.module.ModuleCache;
 import com.github.tth05.teth.analyzer.prelude.Prelude;
@@ -17,18 +18,18 @@ public class NameAnalysis extends AnalysisASTVisitor {
 
     public static final FunctionDeclaration GLOBAL_FUNCTION = new FunctionDeclaration(null, null, new IdentifierExpression(null), List.of(), List.of(), null, null, false);
 
-    private static final HashSet<Span> DUPLICATION_SET = new HashSet<>();
     private static final Span SELF_PARAMETER_NAME = new Span(new InMemorySource("a", "self"), 0, "self".length());
 
-    private final ScopeStack scopeStack = new ScopeStack();
+    private final ScopeStack scopeStack = new ScopeStack(Prelude::getDeclaration);
+    private final Set<Span> duplicationSet = new HashSet<>();
 
     private final Analyzer analyzer;
-    private final Map<IDeclarationReference, Statement> resolvedReferences;
-    private final Map<FunctionDeclaration, Integer> functionLocalsCount;
+    private final NodeTable<IDeclarationReference, Statement> resolvedReferences;
+    private final NodeTable<FunctionDeclaration, Integer> functionLocalsCount;
 
     private SourceFileUnit unit;
 
-    public NameAnalysis(Analyzer analyzer, Map<IDeclarationReference, Statement> resolvedReferences, Map<FunctionDeclaration, Integer> functionLocalsCount) {
+    public NameAnalysis(Analyzer analyzer, NodeTable<IDeclarationReference, Statement> resolvedReferences, NodeTable<FunctionDeclaration, Integer> functionLocalsCount) {
         this.analyzer = analyzer;
         this.resolvedReferences = resolvedReferences;
         this.functionLocalsCount = functionLocalsCount;
@@ -56,14 +57,15 @@ public class NameAnalysis extends AnalysisASTVisitor {
 
         // Pre-process 2: Analyze headers of top level functions and structs and check for duplicates
         {
-            DUPLICATION_SET.clear();
+            this.duplicationSet.clear();
 
             for (var decl : topLevelDeclarations) {
                 if (decl instanceof UseStatement)
                     continue;
 
                 var name = ((IHasName) decl).getNameExpr();
-                if (!DUPLICATION_SET.add(name.getSpan()))
+                var preludeDecl = Prelude.getDeclaration(name.getSymbol());
+                if (!this.duplicationSet.add(name.getSpan()) || (preludeDecl != null && preludeDecl != decl))
                     report(name.getSpan(), "Duplicate top level declaration");
             }
         }
@@ -112,13 +114,15 @@ public class NameAnalysis extends AnalysisASTVisitor {
             return;
         }
 
+        this.analyzer.addModuleDependency(this.unit.getUniquePath(), uniquePath);
+
         if (!this.analyzer.hasModule(uniquePath)) {
             report(pathExpr.getSpan(), "Module '" + path + "' does not exist");
             return;
         }
 
         for (var importNameExpr : useStatement.getImports()) {
-            var decl = this.analyzer.findExportedDeclaration(uniquePath, importNameExpr.getSpan());
+            var decl = this.analyzer.findExportedDeclaration(uniquePath, importNameExpr.getSymbol());
             if (decl == null) {
                 report(importNameExpr.getSpan(), "Type or function '" + importNameExpr.getSpan() + "' not found in module '" + path + "'");
                 continue;
@@ -279,7 +283,7 @@ public class NameAnalysis extends AnalysisASTVisitor {
             return;
 
         var type = typeExpression.getNameExpr().getSpan();
-        var decl = this.scopeStack.resolveIdentifier(type);
+        var decl = this.scopeStack.resolveIdentifier(typeExpression.getNameExpr().getSymbol());
 
         if (decl == null) {
             report(span, "Unknown type " + type.getText());
@@ -305,9 +309,7 @@ public class NameAnalysis extends AnalysisASTVisitor {
 
     @Override
     public void visit(IdentifierExpression identifierExpression) {
-        var decl = this.scopeStack.resolveIdentifier(identifierExpression.getSpan());
-        if (decl == null)
-            decl = Prelude.getGlobalFunction(identifierExpression.getSpan());
+        var decl = this.scopeStack.resolveIdentifier(identifierExpression.getSymbol());
         if (decl == null) {
             report(identifierExpression.getSpan(), "Unresolved identifier");
             return;
@@ -366,11 +368,11 @@ public class NameAnalysis extends AnalysisASTVisitor {
     }
 
     private void validateNoDuplicates(Iterator<? extends IHasName> it, String message) {
-        DUPLICATION_SET.clear();
+        this.duplicationSet.clear();
 
         while (it.hasNext()) {
             var el = it.next();
-            if (!DUPLICATION_SET.add(el.getNameExpr().getSpan()))
+            if (!this.duplicationSet.add(el.getNameExpr().getSpan()))
                 report(el.getNameExpr().getSpan(), message);
         }
     }
@@ -379,11 +381,11 @@ public class NameAnalysis extends AnalysisASTVisitor {
         if (!(declaration instanceof IHasName named))
             throw new IllegalArgumentException(declaration + "");
 
-        var name = named.getNameExpr().getSpan();
-        if (name == null)
+        var name = named.getNameExpr();
+        if (name.getSpan() == null)
             return;
 
-        this.scopeStack.addDeclaration(name, declaration);
+        this.scopeStack.addDeclaration(name.getSymbol(), declaration);
     }
 
     private void beginFunctionDeclaration(FunctionDeclaration declaration) {
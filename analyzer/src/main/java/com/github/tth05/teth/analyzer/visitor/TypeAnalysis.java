@@ -1,5 +1,6 @@
 package com.github.tth05.teth.analyzer.visitor;
 
+import com.github.tth05.teth.analyzer.NodeTable;
 import com.github.tth05.teth.analyzer.prelude.Prelude;
 import com.github.tth05.teth.analyzer.type.SemanticType;
 import com.github.tth05.teth.analyzer.type.TypeCache;
@@ -15,11 +16,11 @@ public class TypeAnalysis extends AnalysisASTVisitor {
 
     private final Deque<FunctionDeclaration> currentFunctionStack = new ArrayDeque<>(5);
 
-    private final Map<IDeclarationReference, Statement> resolvedReferences;
-    private final Map<Expression, SemanticType> resolvedExpressionTypes;
+    private final NodeTable<IDeclarationReference, Statement> resolvedReferences;
+    private final NodeTable<Expression, SemanticType> resolvedExpressionTypes;
     private final TypeCache typeCache;
 
-    public TypeAnalysis(TypeCache typeCache, Map<IDeclarationReference, Statement> resolvedReferences, Map<Expression, SemanticType> resolvedExpressionTypes) {
+    public TypeAnalysis(TypeCache typeCache, NodeTable<IDeclarationReference, Statement> resolvedReferences, NodeTable<Expression, SemanticType> resolvedExpressionTypes) {
         this.typeCache = typeCache;
         this.resolvedReferences = resolvedReferences;
         this.resolvedExpressionTypes = resolvedExpressionTypes;
@@ -201,7 +202,7 @@ public class TypeAnalysis extends AnalysisASTVisitor {
             return;
         }
 
-        var member = structDeclaration.getMember(expression.getMemberNameExpr().getSpan());
+        var member = structDeclaration.getMember(expression.getMemberNameExpr().getSymbol());
 
         if (member == null) {
             report(expression.getMemberNameExpr().getSpan(), "Member '" + Optional.ofNullable(expression.getMemberNameExpr().getSpan()).map(Span::getText).orElse("???") + "' not found in type " + this.typeCache.toString(type));
@@ -10,6 +10,7 @@ import com.github.tth05.teth.lang.source.InMemorySource;
 import com.github.tth05.teth.lang.span.Span;
 import com.github.tth05.teth.lang.stream.CharStream;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
@@ -22,6 +23,8 @@ public abstract class AbstractAnalyzerTest {
 
     protected Analyzer analyzer;
 
+    protected List<String> loadedModules;
+
     protected ProblemList analyze(String main) {
         var problems = analyze(main, new Source[0]);
         return problems.get(0).getProblems();
@@ -31,6 +34,7 @@ public abstract class AbstractAnalyzerTest {
         createASTs(main, others);
         assertStreamsEmpty();
 
+        this.loadedModules = new ArrayList<>();
         this.analyzer = new Analyzer(this.asts.stream().filter(u -> u.unit.getUniquePath().equals("main")).findFirst().get().unit);
         this.analyzer.setModuleLoader(new IModuleLoader() {
             @Override
@@ -40,12 +44,24 @@ public abstract class AbstractAnalyzerTest {
 
             @Override
             public SourceFileUnit loadModule(String uniquePath) {
+                synchronized (AbstractAnalyzerTest.this) {
+                    AbstractAnalyzerTest.this.loadedModules.add(uniquePath);
+                }
                 return AbstractAnalyzerTest.this.asts.stream().filter(u -> u.unit.getUniquePath().equals(uniquePath)).findFirst().map(v -> v.unit).orElse(null);
             }
         });
         return this.analyzer.analyze();
     }
 
+    protected List<AnalyzerResult> reanalyze(Source changedSource) {
+        var ast = createAST(changedSource);
+        this.asts = Stream.concat(
+                this.asts.stream().filter(a -> !a.unit().getUniquePath().equals(changedSource.name())),
+                Stream.of(ast)
+        ).toList();
+        return this.analyzer.reanalyze(ast.unit());
+    }
+
     private void createASTs(String main, Source... others) {
         this.asts = Stream.concat(Stream.of(new Source("main", main)), Arrays.stream(others)).map(this::createAST).toList();
     }
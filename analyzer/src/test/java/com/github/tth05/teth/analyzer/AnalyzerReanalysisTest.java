@@ -0,0 +1,113 @@
+package com.github.tth05.teth.analyzer;
+
+import com.github.tth05.teth.lang.parser.Parser;
+import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
+import com.github.tth05.teth.lang.parser.ast.UseStatement;
+import com.github.tth05.teth.lang.source.InMemorySource;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnalyzerReanalysisTest extends AbstractAnalyzerTest {
+
+    @Test
+    public void testChangedModuleAffectsDependents() {
+        var results = analyze(
+                "use \"b\" { g }\nlet x: long = g()",
+                new Source("b", "use \"c\" { f }\nfn g() long { return f() }"),
+                new Source("c", "fn f() long { return 1 }")
+        );
+        assertTrue(results.stream().noneMatch(AnalyzerResult::hasProblems));
+
+        results = reanalyze(new Source("c", "fn f() string { return \"a\" }"));
+        assertEquals(List.of("main", "c", "b"), results.stream().map(AnalyzerResult::getModuleName).toList());
+        assertFalse(results.get(0).hasProblems());
+        assertFalse(results.get(1).hasProblems());
+        assertTrue(results.get(2).hasProblems());
+
+        results = reanalyze(new Source("b", "use \"c\" { f }\nfn g() string { return f() }"));
+        assertTrue(results.get(0).hasProblems());
+        assertFalse(results.get(2).hasProblems());
+
+        results = reanalyze(new Source("main", "use \"b\" { g }\nlet x: string = g()"));
+        assertTrue(results.stream().noneMatch(AnalyzerResult::hasProblems));
+        assertEquals(List.of("b", "c"), this.loadedModules);
+    }
+
+    @Test
+    public void testUnaffectedModulesAreKept() {
+        var results = analyze(
+                "use \"b\" { g }\nuse \"c\" { f }\nlet x: long = g() + f()",
+                new Source("b", "fn g() long { return 1 }"),
+                new Source("c", "fn f() long { return 2 }")
+        );
+        assertTrue(results.stream().noneMatch(AnalyzerResult::hasProblems));
+        var resultOfB = results.get(1);
+
+        results = reanalyze(new Source("c", "fn f() long { return 3 }"));
+        assertSame(resultOfB, results.get(1));
+        assertTrue(results.stream().noneMatch(AnalyzerResult::hasProblems));
+
+        // References of main resolve to the new declaration
+        var useStatement = (UseStatement) this.asts.get(0).unit().getStatements().get(1);
+        var declaration = (FunctionDeclaration) this.analyzer.resolvedReference(useStatement.getImports().get(0));
+        assertSame(this.asts.get(2).unit().getStatements().get(0), declaration);
+    }
+
+    @Test
+    public void testMissingModuleIsAdded() {
+        var results = analyze("use \"b\" { g }\ng()", new Source[0]);
+        assertTrue(results.get(0).hasProblems());
+
+        results = reanalyze(new Source("b", "use \"c\" { f }\nfn g() {}"));
+        assertEquals(List.of("main", "b"), results.stream().map(AnalyzerResult::getModuleName).toList());
+        assertFalse(results.get(0).hasProblems());
+        assertTrue(results.get(1).hasProblems());
+
+        results = reanalyze(new Source("c", "fn f() {}"));
+        assertEquals(List.of("main", "b", "c"), results.stream().map(AnalyzerResult::getModuleName).toList());
+        assertTrue(results.stream().noneMatch(AnalyzerResult::hasProblems));
+    }
+
+    @Test
+    public void testModuleIsRemovedWhenNoLongerUsed() {
+        var results = analyze(
+                "use \"b\" { g }\nuse \"c\" { f }\nlet x: long = g() + f()",
+                new Source("b", "use \"d\" { h }\nfn g() long { return h() }"),
+                new Source("c", "fn f() long { return 2 }"),
+                new Source("d", "fn h() long { return 1 }")
+        );
+        assertEquals(List.of("b", "c", "d", "main"), results.stream().map(AnalyzerResult::getModuleName).sorted().toList());
+
+        results = reanalyze(new Source("main", "use \"c\" { f }\nlet x: long = f()"));
+        assertEquals(List.of("main", "c"), results.stream().map(AnalyzerResult::getModuleName).toList());
+        assertTrue(results.stream().noneMatch(AnalyzerResult::hasProblems));
+
+        // Using the module again analyzes it again, without loading it again
+        results = reanalyze(new Source("main", "use \"b\" { g }\nlet x: long = g()"));
+        assertEquals(List.of("b", "d", "main"), results.stream().map(AnalyzerResult::getModuleName).sorted().toList());
+        assertTrue(results.stream().noneMatch(AnalyzerResult::hasProblems));
+        assertEquals(List.of("b", "c", "d"), this.loadedModules.stream().sorted().toList());
+    }
+
+    @Test
+    public void testUnusedModuleIsNotAnalyzed() {
+        analyze("let x = 1", new Source[0]);
+
+        var results = reanalyze(new Source("b", "fn g() {}"));
+        assertEquals(List.of("main"), results.stream().map(AnalyzerResult::getModuleName).toList());
+
+        results = reanalyze(new Source("main", "use \"b\" { g }\ng()"));
+        assertEquals(List.of("main", "b"), results.stream().map(AnalyzerResult::getModuleName).toList());
+        assertTrue(results.stream().noneMatch(AnalyzerResult::hasProblems));
+    }
+
+    @Test
+    public void testReanalyzeBeforeAnalyze() {
+        var unit = Parser.parse(new InMemorySource("main", "")).getUnit();
+        var analyzer = new Analyzer(unit);
+        assertThrows(IllegalStateException.class, () -> analyzer.reanalyze(unit));
+    }
+}
@@ -22,6 +22,15 @@ public class AnalyzerValidatorTest extends AbstractAnalyzerTest {
         assertEquals("Unresolved identifier", problems.get(0).message());
     }
 
+    @Test
+    public void testRedeclarePreludeDeclaration() {
+        var problems = analyze("fn print(a: any) {}\nstruct long {}\nprint(1)");
+
+        assertEquals(2, problems.size());
+        assertEquals("Duplicate top level declaration", problems.get(0).message());
+        assertEquals("Duplicate top level declaration", problems.get(1).message());
+    }
+
     @Test
     public void testAssignToVariableInGlobalScope() {
         var problems = analyze("let a:long = 0 {a=5{{a=5}}}a=5");
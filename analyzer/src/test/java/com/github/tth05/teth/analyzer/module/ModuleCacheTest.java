@@ -1,9 +1,15 @@
 package com.github.tth05.teth.analyzer.module;
 
+import com.github.tth05.teth.lang.parser.Parser;
+import com.github.tth05.teth.lang.parser.SourceFileUnit;
+import com.github.tth05.teth.lang.source.InMemorySource;
 import com.github.tth05.teth.lang.span.Span;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -37,4 +43,117 @@ public class ModuleCacheTest {
             assertTrue(ModuleCache.isValidModulePath(Span.fromString(path)));
         }
     }
+
+    @Test
+    public void testEveryModuleIsLoadedOnce() {
+        var sources = Map.of(
+                "main", "use \"a\" { f }\nuse \"b\" { f }\nfn f() {}",
+                "a", "use \"c\" { f }\nfn f() {}",
+                "b", "use \"c\" { f }\nuse \"a\" { f }\nfn f() {}",
+                "c", "use \"main\" { f }\nuse \"missing\" { f }\nfn f() {}"
+        );
+        var loadCounts = new ConcurrentHashMap<String, Integer>();
+        var cache = new ModuleCache();
+        cache.addModule(parse("main", sources.get("main")));
+        cache.setModuleLoader(new IModuleLoader() {
+            @Override
+            public String toUniquePath(String relativeToUniquePath, Span path) {
+                return path.getText();
+            }
+
+            @Override
+            public SourceFileUnit loadModule(String uniquePath) {
+                loadCounts.merge(uniquePath, 1, Integer::sum);
+                var source = sources.get(uniquePath);
+                return source != null ? parse(uniquePath, source) : null;
+            }
+
+            @Override
+            public boolean supportsParallelLoading() {
+                return true;
+            }
+        });
+
+        cache.preloadImports(parse("main", sources.get("main")));
+        assertTrue(cache.hasModule("b"));
+        assertTrue(cache.hasModule("c"));
+        assertTrue(cache.hasModule("a"));
+        assertFalse(cache.hasModule("missing"));
+        assertEquals(Map.of("a", 1, "b", 1, "c", 1, "missing", 1), loadCounts);
+    }
+
+    @Test
+    public void testFailedBackgroundLoadIsRetried() {
+        var loadCounts = new ConcurrentHashMap<String, Integer>();
+        var cache = new ModuleCache();
+        cache.setModuleLoader(new IModuleLoader() {
+            @Override
+            public String toUniquePath(String relativeToUniquePath, Span path) {
+                return path.getText();
+            }
+
+            @Override
+            public SourceFileUnit loadModule(String uniquePath) {
+                if (loadCounts.merge(uniquePath, 1, Integer::sum) == 1)
+                    throw new IllegalStateException("Not available yet");
+                return parse(uniquePath, "fn f() {}");
+            }
+
+            @Override
+            public boolean supportsParallelLoading() {
+                return true;
+            }
+        });
+
+        cache.preloadImports(parse("main", "use \"a\" { f }"));
+        assertTrue(cache.hasModule("a"));
+        assertEquals(Map.of("a", 2), loadCounts);
+    }
+
+    @Test
+    public void testLoaderWithoutParallelLoadingIsNotPreloaded() {
+        var loadedModules = new ArrayList<String>();
+        var cache = new ModuleCache();
+        cache.setModuleLoader(new IModuleLoader() {
+            @Override
+            public String toUniquePath(String relativeToUniquePath, Span path) {
+                return path.getText();
+            }
+
+            @Override
+            public SourceFileUnit loadModule(String uniquePath) {
+                loadedModules.add(uniquePath);
+                return parse(uniquePath, "fn f() {}");
+            }
+        });
+
+        cache.preloadImports(parse("main", "use \"a\" { f }\nuse \"b\" { f }"));
+        assertEquals(List.of(), loadedModules);
+        assertTrue(cache.hasModule("b"));
+        assertEquals(List.of("b"), loadedModules);
+    }
+
+    @Test
+    public void testTransitiveDependents() {
+        var cache = new ModuleCache();
+        cache.addDependency("main", "a");
+        cache.addDependency("main", "b");
+        cache.addDependency("a", "c");
+        cache.addDependency("b", "c");
+        cache.addDependency("c", "a");
+
+        assertEquals(List.of("c", "a", "b", "main"), List.copyOf(cache.getTransitiveDependents("c")));
+        assertEquals(List.of("main"), List.copyOf(cache.getTransitiveDependents("main")));
+
+        cache.clearDependencies("b");
+        cache.clearDependencies("c");
+        assertEquals(List.of("c", "a", "main"), List.copyOf(cache.getTransitiveDependents("c")));
+        assertEquals(List.of("a", "main"), List.copyOf(cache.getTransitiveDependents("a")));
+    }
+
+    private static SourceFileUnit parse(String uniquePath, String source) {
+        var result = Parser.parse(new InMemorySource(uniquePath, source));
+        assertFalse(result.hasProblems());
+        return result.getUnit();
+    }
 }
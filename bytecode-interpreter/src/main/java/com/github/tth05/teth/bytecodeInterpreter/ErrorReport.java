@@ -0,0 +1,61 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats runtime errors with the Teth call stack which lead to them, resolved to source locations using the
+ * {@link com.github.tth05.teth.bytecode.program.LineNumberTable} of the program.
+ */
+public final class ErrorReport {
+
+    private ErrorReport() {
+    }
+
+    /**
+     * @param instructionIndices The index of the failing instruction, followed by the index of the {@code INVOKE}
+     *                           instruction of every caller, innermost first
+     */
+    public static String format(TethProgram program, Throwable error, int[] instructionIndices) {
+        var message = error.getMessage() != null ? error.getMessage() : error.getClass().getName();
+        var builder = new StringBuilder("Runtime error: ").append(message).append(System.lineSeparator());
+        for (var instructionIndex : instructionIndices) {
+            var function = program.getContainingFunction(instructionIndex);
+            var functionName = function != null ? function.name() : "<unknown>";
+            var lineNumberTable = program.getLineNumberTable();
+
+            // Inlined functions show up as if they had been called
+            var frame = lineNumberTable.getInlineFrame(instructionIndex);
+            appendFrame(builder, frame != null ? frame.functionName() : functionName, lineNumberTable.getSpan(instructionIndex), instructionIndex);
+            for (; frame != null; frame = frame.caller())
+                appendFrame(builder, frame.caller() != null ? frame.caller().functionName() : functionName, frame.callSite(), instructionIndex);
+        }
+
+        return builder.toString();
+    }
+
+    private static void appendFrame(StringBuilder builder, String functionName, Span span, int instructionIndex) {
+        builder.append("    at ").append(functionName).append(" (");
+        if (span != null && span.source() != null) {
+            builder.append(span.source().getModuleName())
+                    .append(':').append(span.getStartLine() + 1)
+                    .append(':').append(span.getStartColumn() + 1);
+        } else {
+            builder.append("instruction ").append(instructionIndex);
+        }
+        builder.append(')').append(System.lineSeparator());
+    }
+
+    public static void write(OutputStream out, TethProgram program, Throwable error, int[] instructionIndices) {
+        try {
+            out.write(format(program, error, instructionIndices).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
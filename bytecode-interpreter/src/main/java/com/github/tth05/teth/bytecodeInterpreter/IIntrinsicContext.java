@@ -0,0 +1,32 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import com.github.tth05.teth.bytecode.program.StructData;
+
+import java.io.OutputStream;
+
+/**
+ * The view of an interpreter which is available to intrinsic functions. Arguments are popped in reverse order, a
+ * return value is pushed after all arguments have been popped.
+ */
+public interface IIntrinsicContext {
+
+    Object pop();
+
+    long popLong();
+
+    double popDouble();
+
+    boolean popBoolean();
+
+    void push(Object value);
+
+    void pushLong(long value);
+
+    void pushDouble(double value);
+
+    void pushBoolean(boolean value);
+
+    StructData getStructData(int structId);
+
+    OutputStream getOutStream();
+}
@@ -1,37 +1,113 @@
 package com.github.tth05.teth.bytecodeInterpreter;
 
 import com.github.tth05.teth.bytecode.op.IInstrunction;
+import com.github.tth05.teth.bytecode.op.OpCodes;
 import com.github.tth05.teth.bytecode.program.StructData;
 import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.bytecodeInterpreter.jit.JitFunction;
 
 import java.io.DataOutputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Consumer;
 
-public class Interpreter {
-
-    private final TethProgram program;
+/**
+ * Stack and locals are stored as tagged slots. Every slot consists of an entry in a reference array and an entry in a
+ * parallel primitive array. If the reference entry is one of the {@code *_TAG} objects, the actual value is stored in
+ * the primitive array (doubles as raw long bits, booleans as 0 or 1). This allows the typed instructions to run
+ * without boxing any values. A {@code null} reference entry marks a stack boundary or an uninitialized local.
+ * <br>
+ * Functions which are invoked often or contain hot loops are compiled to JVM bytecode once their hotness counter
+ * reaches the JIT threshold, see {@link com.github.tth05.teth.bytecodeInterpreter.jit.JitCompiler}. Running functions
+ * are not replaced, the compiled version is used for all following invocations.
+ * <br>
+ * All stacks start small and grow on demand, see {@link StackSizes}. Growing is handled outside of the fast paths.
+ */
+public class Interpreter implements IIntrinsicContext {
+
+    public static final int DEFAULT_JIT_THRESHOLD = 1000;
+
+    private static final Object LONG_TAG = new Object();
+    private static final Object DOUBLE_TAG = new Object();
+    private static final Object BOOLEAN_TAG = new Object();
+
+    private final LinkedProgram program;
     private final Map<Byte, Consumer<IInstrunction>> customInsnHandlers = new HashMap<>();
 
-    private final Object[] locals = new Object[2048];
+    /**
+     * Number of invocations and backward jumps of each function
+     */
+    private final int[] hotnessCounters;
+    private final JitFunction[] compiledFunctions;
+    private int jitThreshold = DEFAULT_JIT_THRESHOLD;
+    private Profiler profiler;
+
+    private final StackSizes stackSizes;
+
+    /**
+     * The local count of each frame is stored in {@link #primitiveLocals} at {@link #localsPointer}
+     */
+    private Object[] locals;
+    private long[] primitiveLocals;
     private int localsPointer = 0;
 
-    private final Object[] stack = new Object[1024];
+    private Object[] stack;
+    private long[] primitiveStack;
     private int stackPointer = 0;
 
-    private final int[] returnAddresses = new int[1024];
+    private int[] returnAddresses;
     private int returnAddressesPointer = 0;
 
     private int programCounter = 0;
-    private boolean killed;
+    private volatile boolean killed;
 
     private OutputStream systemOutStream;
     private OutputStream systemErrStream;
 
     public Interpreter(TethProgram program) {
+        this(LinkedProgram.link(program));
+    }
+
+    /**
+     * Creates an interpreter for an already linked program. Prefer this constructor when running the same program
+     * multiple times.
+     */
+    public Interpreter(LinkedProgram program) {
+        this(program, StackSizes.DEFAULT);
+    }
+
+    public Interpreter(LinkedProgram program, StackSizes stackSizes) {
         this.program = program;
+        this.stackSizes = stackSizes;
+        this.locals = new Object[stackSizes.initialSize()];
+        this.primitiveLocals = new long[stackSizes.initialSize()];
+        this.stack = new Object[stackSizes.initialSize()];
+        this.primitiveStack = new long[stackSizes.initialSize()];
+        this.returnAddresses = new int[stackSizes.initialSize()];
+        this.hotnessCounters = new int[program.getJitCompiler().getFunctionCount()];
+        this.compiledFunctions = new JitFunction[this.hotnessCounters.length];
+    }
+
+    /**
+     * @param jitThreshold The hotness a function has to reach before it is compiled, 0 disables compilation
+     */
+    public void setJitThreshold(int jitThreshold) {
+        if (jitThreshold < 0)
+            throw new IllegalArgumentException("JIT threshold cannot be negative");
+
+        this.jitThreshold = jitThreshold;
+    }
+
+    /**
+     * @param profiler The profiler which records all following executions, or {@code null} to disable profiling
+     */
+    public void setProfiler(Profiler profiler) {
+        if (profiler != null && profiler.getProgram() != this.program)
+            throw new IllegalArgumentException("Profiler belongs to a different program");
+
+        this.profiler = profiler;
     }
 
     public void setSystemOutStream(OutputStream systemOutStream) {
@@ -45,21 +121,113 @@ public class Interpreter {
     public void execute() {
         initStreams();
 
+        if (this.profiler != null) {
+            executeProfiled();
+            return;
+        }
+
         // These locals exist for micro-optimization
-        var instructions = this.program.getInstructions();
-        var cachedOpCodes = new byte[instructions.length];
-        for (int i = 0; i < instructions.length; i++)
-            cachedOpCodes[i] = instructions[i].getOpCode();
-
-        var pc = 0;
-        while ((pc = this.programCounter) != -1 && !this.killed) {
-            InstructionsImpl.run(this, cachedOpCodes[pc], instructions[pc]);
-            this.programCounter++;
+        var code = this.program.getCode();
+        var pc = this.programCounter;
+        try {
+            while (pc != -1 && !this.killed)
+                pc = InstructionsImpl.run(this, code, pc);
+        } catch (Throwable e) {
+            // Compiled functions are stopped by throwing an exception
+            if (!this.killed) {
+                this.killed = true;
+                reportError(pc, e);
+                throw e;
+            }
+        }
+
+        this.programCounter = pc;
+        this.killed = true;
+    }
+
+    /**
+     * Same as the loop in {@link #execute()}, but reports every instruction and every function entry and exit to the
+     * profiler. Kept separate to not slow down the normal loop.
+     */
+    private void executeProfiled() {
+        var profiler = this.profiler;
+        var code = this.program.getCode();
+        var pc = this.programCounter;
+        try {
+            while (pc != -1 && !this.killed) {
+                var opCode = code[pc];
+                profiler.countInstruction(opCode);
+                if (opCode == OpCodes.INVOKE) {
+                    profiler.enterFunction(code[pc + 4], code[pc + 5]);
+                    var nextPc = InstructionsImpl.run(this, code, pc);
+                    // Compiled functions have already returned
+                    if (nextPc != code[pc + 4])
+                        profiler.exitFunction();
+                    pc = nextPc;
+                } else if (opCode == OpCodes.TAIL_INVOKE) {
+                    var nextPc = InstructionsImpl.run(this, code, pc);
+                    // Compiled functions return to the RETURN after the call, which exits the current function
+                    if (nextPc == code[pc + 4]) {
+                        profiler.exitFunction();
+                        profiler.enterFunction(code[pc + 4], code[pc + 5]);
+                    } else {
+                        profiler.enterFunction(code[pc + 4], code[pc + 5]);
+                        profiler.exitFunction();
+                    }
+                    pc = nextPc;
+                } else {
+                    pc = InstructionsImpl.run(this, code, pc);
+                    if (opCode == OpCodes.RETURN)
+                        profiler.exitFunction();
+                }
+            }
+        } catch (Throwable e) {
+            if (!this.killed) {
+                this.killed = true;
+                reportError(pc, e);
+                throw e;
+            }
+        } finally {
+            profiler.finish();
         }
 
+        this.programCounter = pc;
         this.killed = true;
     }
 
+    /**
+     * Prepares this interpreter for another execution of the same program. The stacks keep their current size, and
+     * compiled functions and hotness counters are kept as well.
+     */
+    public void reset() {
+        Arrays.fill(this.stack, 0, this.stackPointer + 1, null);
+        Arrays.fill(this.locals, 0, this.localsPointer + 1, null);
+        Arrays.fill(this.returnAddresses, 0, this.returnAddressesPointer + 1, 0);
+        this.stackPointer = 0;
+        this.localsPointer = 0;
+        this.returnAddressesPointer = 0;
+        this.programCounter = 0;
+        this.killed = false;
+    }
+
+    /**
+     * Writes the error and the Teth call stack to the error stream. The call sites are the {@code INVOKE} instructions
+     * in front of every saved return address.
+     */
+    private void reportError(int pc, Throwable error) {
+        var callSites = new int[this.returnAddressesPointer + 1];
+        var count = 0;
+        callSites[count++] = this.program.getInstructionIndex(pc);
+        for (int i = this.returnAddressesPointer; i >= 1; i--) {
+            var callSite = this.returnAddresses[i] - 6;
+            // The global function is invoked by the first instruction, which is not part of any function
+            if (callSite > 0)
+                callSites[count++] = this.program.getInstructionIndex(callSite);
+        }
+
+        ErrorReport.write(this.systemErrStream, this.program.getProgram(), error, Arrays.copyOf(callSites, count));
+    }
+
     public void kill() {
         if (this.killed)
             return;
@@ -75,6 +243,9 @@ public class Interpreter {
         return !this.killed;
     }
 
+    /**
+     * Pops the top value of the stack. Primitive values are boxed, prefer the typed variants where possible.
+     */
     public Object pop() {
         if (this.stackPointer == 0)
             throw new IllegalStateException("Stack is empty");
@@ -83,18 +254,103 @@ public class Interpreter {
         if (result == null)
             throw new IllegalStateException("Cannot pop past stack boundary");
 
+        result = toObject(result, this.primitiveStack[this.stackPointer]);
         this.stack[this.stackPointer--] = null;
         return result;
     }
 
+    public long popLong() {
+        if (this.stack[this.stackPointer] != LONG_TAG)
+            throw new IllegalStateException("Top of stack is not a long");
+
+        return this.primitiveStack[this.stackPointer--];
+    }
+
+    public double popDouble() {
+        if (this.stack[this.stackPointer] != DOUBLE_TAG)
+            throw new IllegalStateException("Top of stack is not a double");
+
+        return Double.longBitsToDouble(this.primitiveStack[this.stackPointer--]);
+    }
+
+    public boolean popBoolean() {
+        if (this.stack[this.stackPointer] != BOOLEAN_TAG)
+            throw new IllegalStateException("Top of stack is not a boolean");
+
+        return this.primitiveStack[this.stackPointer--] != 0;
+    }
+
+    /**
+     * Removes the top value of the stack without boxing it.
+     */
+    public void drop() {
+        if (this.stack[this.stackPointer] == null)
+            throw new IllegalStateException("Cannot pop past stack boundary");
+
+        this.stack[this.stackPointer--] = null;
+    }
+
+    /**
+     * Pushes a value onto the stack. Boxed longs, doubles and booleans are stored as primitives.
+     */
     public void push(Object value) {
         if (value == null)
             throw new IllegalArgumentException("Cannot push null");
 
         if (this.stackPointer == this.stack.length - 1)
-            throw new IllegalStateException("Stack is full");
+            growStack();
+
+        var sp = ++this.stackPointer;
+        if (value instanceof Long l) {
+            this.stack[sp] = LONG_TAG;
+            this.primitiveStack[sp] = l;
+        } else if (value instanceof Double d) {
+            this.stack[sp] = DOUBLE_TAG;
+            this.primitiveStack[sp] = Double.doubleToRawLongBits(d);
+        } else if (value instanceof Boolean b) {
+            this.stack[sp] = BOOLEAN_TAG;
+            this.primitiveStack[sp] = b ? 1 : 0;
+        } else {
+            this.stack[sp] = value;
+        }
+    }
+
+    public void pushLong(long value) {
+        pushPrimitive(LONG_TAG, value);
+    }
 
-        this.stack[++this.stackPointer] = value;
+    public void pushDouble(double value) {
+        pushPrimitive(DOUBLE_TAG, Double.doubleToRawLongBits(value));
+    }
+
+    public void pushBoolean(boolean value) {
+        pushPrimitive(BOOLEAN_TAG, value ? 1 : 0);
+    }
+
+    private void pushPrimitive(Object tag, long value) {
+        if (this.stackPointer == this.stack.length - 1)
+            growStack();
+
+        var sp = ++this.stackPointer;
+        this.stack[sp] = tag;
+        this.primitiveStack[sp] = value;
+    }
+
+    /**
+     * Duplicates the top value of the stack without boxing it.
+     */
+    public void dup() {
+        var sp = this.stackPointer;
+        if (sp == 0)
+            throw new IllegalStateException("Stack is empty");
+        if (this.stack[sp] == null)
+            throw new IllegalStateException("Cannot peek on stack boundary");
+        if (sp == this.stack.length - 1)
+            growStack();
+
+        this.stack[sp + 1] = this.stack[sp];
+        this.primitiveStack[sp + 1] = this.primitiveStack[sp];
+        this.stackPointer++;
     }
 
     public Object peek() {
@@ -105,30 +361,123 @@ public class Interpreter {
         if (result == null)
             throw new IllegalStateException("Cannot peek on stack boundary");
 
-        return result;
+        return toObject(result, this.primitiveStack[this.stackPointer]);
     }
 
     public Object loadLocal(int localIndex) {
-        var localCount = (int) this.locals[this.localsPointer];
-        if (localIndex >= localCount || localIndex < 0)
-            throw new IllegalArgumentException("Local index is out of bounds");
+        var index = getLocalSlot(localIndex);
+        var value = this.locals[index];
+        if (value == null)
+            return null;
 
-        return this.locals[this.localsPointer - localCount + localIndex];
+        return toObject(value, this.primitiveLocals[index]);
     }
 
     public void storeLocal(int localIndex, Object value) {
-        var localCount = (int) this.locals[this.localsPointer];
+        var index = getLocalSlot(localIndex);
+        if (value instanceof Long l) {
+            this.locals[index] = LONG_TAG;
+            this.primitiveLocals[index] = l;
+        } else if (value instanceof Double d) {
+            this.locals[index] = DOUBLE_TAG;
+            this.primitiveLocals[index] = Double.doubleToRawLongBits(d);
+        } else if (value instanceof Boolean b) {
+            this.locals[index] = BOOLEAN_TAG;
+            this.primitiveLocals[index] = b ? 1 : 0;
+        } else {
+            this.locals[index] = value;
+        }
+    }
+
+    /**
+     * Pushes the value of the given local onto the stack without boxing it.
+     */
+    public void pushLocal(int localIndex) {
+        var index = getLocalSlot(localIndex);
+        var value = this.locals[index];
+        if (value == null)
+            throw new IllegalStateException("Local is not initialized");
+        if (this.stackPointer == this.stack.length - 1)
+            growStack();
+
+        var sp = ++this.stackPointer;
+        this.stack[sp] = value;
+        this.primitiveStack[sp] = this.primitiveLocals[index];
+    }
+
+    /**
+     * Pops the top value of the stack into the given local without boxing it.
+     */
+    public void popLocal(int localIndex) {
+        var index = getLocalSlot(localIndex);
+        var sp = this.stackPointer;
+        var value = this.stack[sp];
+        if (value == null)
+            throw new IllegalStateException("Cannot pop past stack boundary");
+
+        this.locals[index] = value;
+        this.primitiveLocals[index] = this.primitiveStack[sp];
+        this.stack[this.stackPointer--] = null;
+    }
+
+    /**
+     * Adds the given value to a long local.
+     */
+    void incrementLongLocal(int localIndex, long value) {
+        var index = getLocalSlot(localIndex);
+        if (this.locals[index] != LONG_TAG)
+            throw new IllegalStateException("Local is not a long");
+
+        this.primitiveLocals[index] += value;
+    }
+
+    private int getLocalSlot(int localIndex) {
+        var localCount = (int) this.primitiveLocals[this.localsPointer];
         if (localIndex >= localCount || localIndex < 0)
             throw new IllegalArgumentException("Local index is out of bounds");
 
-        this.locals[this.localsPointer - localCount + localIndex] = value;
+        return this.localsPointer - localCount + localIndex;
     }
 
-    public void exit() {
-        this.programCounter = -2;
+    /**
+     * Clears the stack of the current function, moves the return value (if any) into the place of the stack boundary
+     * and pops the current frame.
+     *
+     * @return The return address
+     */
+    public int returnFromFunction(boolean returnsValue) {
+        var stack = this.stack;
+        var sp = this.stackPointer;
+        Object returnValue = null;
+        var primitiveReturnValue = 0L;
+        if (returnsValue) {
+            returnValue = stack[sp];
+            if (returnValue == null)
+                throw new IllegalStateException("Cannot pop past stack boundary");
+
+            primitiveReturnValue = this.primitiveStack[sp];
+        }
+
+        while (stack[sp] != null)
+            stack[sp--] = null;
+        this.stackPointer = sp;
+
+        if (returnsValue) {
+            stack[sp] = returnValue;
+            this.primitiveStack[sp] = primitiveReturnValue;
+        } else {
+            popStackBoundary();
+        }
+
+        return jumpToReturnAddress();
     }
 
-    public void jumpToReturnAddress() {
+    /**
+     * Pops the current locals frame and the top return address.
+     *
+     * @return The return address
+     */
+    public int jumpToReturnAddress() {
         if (this.returnAddressesPointer == 0)
             throw new IllegalStateException("No return address available");
 
@@ -136,20 +485,16 @@ public class Interpreter {
         if (returnAddress == 0)
             throw new IllegalStateException("Top return address is invalid");
 
-        setProgramCounter(returnAddress - 1);
         this.returnAddresses[this.returnAddressesPointer--] = 0;
-
-        var locals = this.locals;
-        var localCount = (int) locals[this.localsPointer] + 1;
-        for (int i = 0; i < localCount; i++)
-            locals[this.localsPointer--] = null;
+        popLocalsFrame();
+        return returnAddress;
     }
 
-    public void saveReturnAddress() {
+    public void saveReturnAddress(int returnAddress) {
         if (this.returnAddressesPointer == this.returnAddresses.length - 1)
-            throw new IllegalStateException("Return address stack is full");
+            this.returnAddresses = Arrays.copyOf(this.returnAddresses, this.stackSizes.grow(this.returnAddresses.length, this.returnAddresses.length + 1, "Return address stack"));
 
-        this.returnAddresses[++this.returnAddressesPointer] = this.programCounter + 1;
+        this.returnAddresses[++this.returnAddressesPointer] = returnAddress;
     }
 
     public boolean stackAtBoundary() {
@@ -157,6 +502,9 @@ public class Interpreter {
     }
 
     public void createStackBoundary() {
+        if (this.stackPointer == this.stack.length - 1)
+            growStack();
+
         this.stack[++this.stackPointer] = null;
     }
 
@@ -167,7 +515,8 @@ public class Interpreter {
         if (!stackAtBoundary())
             throw new IllegalStateException("Stack is not at boundary");
 
-        this.stack[this.stackPointer] = returnValue;
+        this.stackPointer--;
+        push(returnValue);
     }
 
     public void popStackBoundary() {
@@ -177,19 +526,16 @@ public class Interpreter {
         this.stackPointer--;
     }
 
-    public void setProgramCounter(int pc) {
-        if (pc < 0 || pc > this.program.getInstructions().length)
-            throw new IllegalArgumentException("Program counter is out of bounds");
-
-        this.programCounter = pc;
-    }
-
     public int getProgramCounter() {
         return this.programCounter;
     }
 
     public StructData getStructData(int structId) {
-        return this.program.getStructData()[structId];
+        return this.program.getStructData(structId);
+    }
+
+    public LinkedProgram getProgram() {
+        return this.program;
     }
 
     public OutputStream getOutStream() {
@@ -203,15 +549,97 @@ public class Interpreter {
     void prepareFunctionEnter(boolean instanceFunction, int paramCount, int localCount) {
         localCount += paramCount;
 
+        if (this.localsPointer + localCount + 1 >= this.locals.length)
+            growLocals(this.localsPointer + localCount + 2);
+
+        var stack = this.stack;
         for (int i = paramCount; i >= 1; i--) {
-            if (instanceFunction && i == 1 && peek() == ObjectValue.NULL)
+            var sp = this.stackPointer;
+            var value = stack[sp];
+            if (value == null)
+                throw new IllegalStateException("Cannot pop past stack boundary");
+            if (instanceFunction && i == 1 && value == ObjectValue.NULL)
                 throw new RuntimeException("Cannot call instance function on null value");
 
-            this.locals[this.localsPointer + i] = pop();
+            this.locals[this.localsPointer + i] = value;
+            this.primitiveLocals[this.localsPointer + i] = this.primitiveStack[sp];
+            stack[this.stackPointer--] = null;
         }
 
         this.localsPointer += localCount;
-        this.locals[++this.localsPointer] = localCount;
+        this.locals[++this.localsPointer] = null;
+        this.primitiveLocals[this.localsPointer] = localCount;
+    }
+
+    /**
+     * Replaces the frame of the current function with the frame of the invoked function. The return address and the
+     * stack boundary of the current function are reused, the invoked function therefore returns directly to the caller
+     * of the current function.
+     */
+    void prepareTailCall(boolean instanceFunction, int paramCount, int localCount) {
+        popLocalsFrame();
+        prepareFunctionEnter(instanceFunction, paramCount, localCount);
+
+        var stack = this.stack;
+        while (stack[this.stackPointer] != null)
+            stack[this.stackPointer--] = null;
+    }
+
+    private void popLocalsFrame() {
+        var locals = this.locals;
+        var localCount = (int) this.primitiveLocals[this.localsPointer] + 1;
+        for (int i = 0; i < localCount; i++)
+            locals[this.localsPointer--] = null;
+    }
+
+    /**
+     * Increments the hotness of the given function and compiles it once the threshold is reached.
+     *
+     * @return The compiled version of the function, or {@code null} if it has not been compiled
+     */
+    JitFunction countInvocation(int functionIndex) {
+        var compiled = this.compiledFunctions[functionIndex];
+        if (compiled == null && ++this.hotnessCounters[functionIndex] == this.jitThreshold)
+            compiled = this.compiledFunctions[functionIndex] = this.program.getJitCompiler().compile(functionIndex);
+
+        return compiled;
+    }
+
+    /**
+     * Runs a compiled function. Compiled functions recurse on the JVM stack, which can overflow long before the stacks
+     * of the interpreter are full. In that case, the compiled function is dropped and the invocation is interpreted
+     * instead. Compiled functions have no side effects and only pop primitive values, which leaves the arguments in
+     * place when the stack pointer is reset.
+     *
+     * @return {@code false} if the invocation has to be interpreted
+     */
+    boolean invokeCompiled(int functionIndex, JitFunction function) {
+        var stackPointer = this.stackPointer;
+        try {
+            function.invoke(this);
+            return true;
+        } catch (StackOverflowError e) {
+            this.stackPointer = stackPointer;
+            this.compiledFunctions[functionIndex] = null;
+            return false;
+        }
+    }
+
+    void countBackwardJump(int functionIndex) {
+        if (++this.hotnessCounters[functionIndex] == this.jitThreshold && this.compiledFunctions[functionIndex] == null)
+            this.compiledFunctions[functionIndex] = this.program.getJitCompiler().compile(functionIndex);
+    }
+
+    private void growStack() {
+        var newSize = this.stackSizes.grow(this.stack.length, this.stack.length + 1, "Stack");
+        this.stack = Arrays.copyOf(this.stack, newSize);
+        this.primitiveStack = Arrays.copyOf(this.primitiveStack, newSize);
+    }
+
+    private void growLocals(int requiredSize) {
+        var newSize = this.stackSizes.grow(this.locals.length, requiredSize, "Locals stack");
+        this.locals = Arrays.copyOf(this.locals, newSize);
+        this.primitiveLocals = Arrays.copyOf(this.primitiveLocals, newSize);
     }
 
     void handleUnknownOpCode(byte opCode, IInstrunction instruction) {
@@ -228,4 +656,15 @@ public class Interpreter {
         if (this.systemErrStream == null)
             this.systemErrStream = new DataOutputStream(System.err);
     }
+
+    private static Object toObject(Object value, long primitiveValue) {
+        if (value == LONG_TAG)
+            return primitiveValue;
+        if (value == DOUBLE_TAG)
+            return Double.longBitsToDouble(primitiveValue);
+        if (value == BOOLEAN_TAG)
+            return primitiveValue != 0;
+
+        return value;
+    }
 }
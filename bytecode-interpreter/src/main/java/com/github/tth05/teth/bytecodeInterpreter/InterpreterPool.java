@@ -0,0 +1,145 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import java.io.OutputStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes one {@link LinkedProgram} any number of times concurrently. All executions share the linked program and its
+ * compiled functions. Interpreters are reset and reused after every execution, which avoids allocating new stacks and
+ * keeps the hotness counters of the program warm.
+ * <br>
+ * All methods of this class are thread-safe.
+ */
+public class InterpreterPool implements AutoCloseable {
+
+    private final LinkedProgram program;
+    private final StackSizes stackSizes;
+    private final int maxIdleInterpreters;
+    private final ExecutorService executor;
+
+    private final ConcurrentLinkedQueue<Interpreter> idleInterpreters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Creates a pool which runs executions on one platform thread per available processor.
+     */
+    public InterpreterPool(LinkedProgram program) {
+        this(program, StackSizes.DEFAULT, Runtime.getRuntime().availableProcessors(), false);
+    }
+
+    /**
+     * @param parallelism       The number of platform threads, or the maximum number of idle interpreters when
+     *                          virtual threads are used
+     * @param useVirtualThreads Whether every execution should run on its own virtual thread
+     * @throws UnsupportedOperationException If virtual threads are requested, but not supported by the current JVM
+     */
+    public InterpreterPool(LinkedProgram program, StackSizes stackSizes, int parallelism, boolean useVirtualThreads) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+
+        this.program = program;
+        this.stackSizes = stackSizes;
+        this.maxIdleInterpreters = parallelism;
+        this.executor = useVirtualThreads ? newVirtualThreadExecutor() : Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                var thread = new Thread(r, "teth-interpreter-" + this.threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Runs the program on one of the threads of this pool.
+     *
+     * @return A future which completes once the program has exited, or completes exceptionally with the error which
+     * stopped the program
+     */
+    public CompletableFuture<Void> submit(OutputStream systemOutStream, OutputStream systemErrStream) {
+        return CompletableFuture.runAsync(() -> execute(systemOutStream, systemErrStream), this.executor);
+    }
+
+    /**
+     * Runs the program on the calling thread.
+     */
+    public void execute(OutputStream systemOutStream, OutputStream systemErrStream) {
+        var interpreter = acquire();
+        interpreter.setSystemOutStream(systemOutStream);
+        interpreter.setSystemErrStream(systemErrStream);
+        try {
+            interpreter.execute();
+        } finally {
+            release(interpreter);
+        }
+    }
+
+    public int getIdleInterpreterCount() {
+        return this.idleCount.get();
+    }
+
+    public LinkedProgram getProgram() {
+        return this.program;
+    }
+
+    /**
+     * Stops accepting new executions and waits for all submitted executions to finish.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Interpreter acquire() {
+        var interpreter = this.idleInterpreters.poll();
+        if (interpreter == null)
+            return new Interpreter(this.program, this.stackSizes);
+
+        this.idleCount.decrementAndGet();
+        return interpreter;
+    }
+
+    private void release(Interpreter interpreter) {
+        // Don't keep references to the streams of the finished execution
+        interpreter.setSystemOutStream(null);
+        interpreter.setSystemErrStream(null);
+        if (this.idleCount.incrementAndGet() > this.maxIdleInterpreters) {
+            this.idleCount.decrementAndGet();
+            return;
+        }
+
+        interpreter.reset();
+        this.idleInterpreters.offer(interpreter);
+    }
+
+    /**
+     * @return {@code true} if the current JVM supports virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            newVirtualThreadExecutor().shutdown();
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        // Looked up reflectively, because virtual threads are not available in all supported Java versions
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM", e);
+        }
+    }
+}
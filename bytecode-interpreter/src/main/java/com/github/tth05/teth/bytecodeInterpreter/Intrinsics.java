@@ -0,0 +1,174 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import com.github.tth05.teth.analyzer.prelude.Prelude;
+import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The implementations of all intrinsic functions. Intrinsics are referenced by their id, which is resolved when a
+ * program is linked. Every handler pops its own arguments off the operand stack (last argument first), so invoking an
+ * intrinsic neither allocates nor touches any shared state.
+ */
+public final class Intrinsics {
+
+    private static final byte[] NEW_LINE_BYTES = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private static final Map<FunctionDeclaration, Integer> IDS = new IdentityHashMap<>();
+    private static final List<IntrinsicHandler> HANDLERS = new ArrayList<>();
+    static {
+        register(Prelude.getGlobalFunction(Span.fromString("print")), interpreter -> {
+            var arg = interpreter.pop();
+            try {
+                interpreter.getOutStream().write(toString(interpreter, arg).getBytes(StandardCharsets.UTF_8));
+                interpreter.getOutStream().write(NEW_LINE_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        register(Prelude.getGlobalFunction(Span.fromString("stringify")), interpreter -> {
+            interpreter.push(toString(interpreter, interpreter.pop()));
+        });
+        register(Prelude.getGlobalFunction(Span.fromString("nanoTime")), interpreter -> {
+            interpreter.pushLong(System.nanoTime());
+        });
+        register(prelude("string", "concat"), interpreter -> {
+            var right = (String) interpreter.pop();
+            var left = (String) popReceiver(interpreter);
+
+            interpreter.push(left + right);
+        });
+        register(prelude("long", "toString"), interpreter -> {
+            interpreter.push(Long.toString(interpreter.popLong()));
+        });
+        register(prelude("long", "toDouble"), interpreter -> {
+            interpreter.pushDouble((double) interpreter.popLong());
+        });
+        register(prelude("double", "toLong"), interpreter -> {
+            interpreter.pushLong((long) interpreter.popDouble());
+        });
+        register(prelude("list", "size"), interpreter -> {
+            var list = (List<?>) popReceiver(interpreter);
+
+            interpreter.pushLong(list.size());
+        });
+        register(prelude("list", "add"), interpreter -> {
+            var el = interpreter.pop();
+            @SuppressWarnings("unchecked")
+            var list = (List<Object>) popReceiver(interpreter);
+
+            list.add(el);
+        });
+        register(prelude("list", "get"), interpreter -> {
+            var idx = interpreter.popLong();
+            var list = (List<?>) popReceiver(interpreter);
+
+            interpreter.push(list.get((int) idx));
+        });
+        register(prelude("list", "set"), interpreter -> {
+            var el = interpreter.pop();
+            var idx = interpreter.popLong();
+            @SuppressWarnings("unchecked")
+            var list = (List<Object>) popReceiver(interpreter);
+
+            list.set((int) idx, el);
+        });
+    }
+
+    private Intrinsics() {
+    }
+
+    /**
+     * @return The id of the given intrinsic function
+     * @throws IllegalArgumentException If the function has no implementation
+     */
+    public static int getId(FunctionDeclaration function) {
+        var id = IDS.get(function);
+        if (id == null)
+            throw new IllegalArgumentException("Intrinsic function '%s' is not implemented".formatted(function.getNameExpr().getSpan().getText()));
+
+        return id;
+    }
+
+    public static void invoke(IIntrinsicContext interpreter, int id) {
+        HANDLERS.get(id).invoke(interpreter);
+    }
+
+    /**
+     * Joins the given strings using a single buffer of the final size, see {@code STRING_BUILD}
+     */
+    public static String join(String[] parts) {
+        var length = 0;
+        for (var part : parts)
+            length += part.length();
+
+        var builder = new StringBuilder(length);
+        for (var part : parts)
+            builder.append(part);
+        return builder.toString();
+    }
+
+    static String toString(IIntrinsicContext interpreter, Object o) {
+        if (o instanceof List<?> l) {
+            var sb = new StringBuilder();
+            sb.append("[");
+            for (var i = 0; i < l.size(); i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(toString(interpreter, l.get(i)));
+            }
+            sb.append("]");
+            return sb.toString();
+        } else if (o instanceof ObjectValue v) {
+            var structData = interpreter.getStructData(v.getStructId());
+            var str = new StringBuilder(structData.name());
+            str.append('(');
+            for (int i = 0; i < structData.fieldNames().length; i++) {
+                if (i > 0)
+                    str.append(", ");
+
+                var fieldName = structData.fieldNames()[i];
+                str
+                        .append(fieldName)
+                        .append(": ")
+                        .append(toString(interpreter, v.getField(i)));
+            }
+            str.append(')');
+            return str.toString();
+        } else if (o == ObjectValue.NULL) {
+            return "null";
+        } else {
+            return o.toString();
+        }
+    }
+
+    private static Object popReceiver(IIntrinsicContext interpreter) {
+        var receiver = interpreter.pop();
+        if (receiver == ObjectValue.NULL)
+            throw new RuntimeException("Cannot call instance function on null value");
+
+        return receiver;
+    }
+
+    private static void register(FunctionDeclaration function, IntrinsicHandler handler) {
+        IDS.put(function, HANDLERS.size());
+        HANDLERS.add(handler);
+    }
+
+    private static FunctionDeclaration prelude(String struct, String function) {
+        return (FunctionDeclaration) Prelude.getStructForTypeName(Span.fromString(struct)).getMember(Span.fromString(function));
+    }
+
+    @FunctionalInterface
+    private interface IntrinsicHandler {
+
+        void invoke(IIntrinsicContext interpreter);
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.bytecode.program.StructData;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.bytecodeInterpreter.jit.JitCompiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link TethProgram} converted into a flat code array which can be executed without looking at the instruction
+ * objects. Every instruction is stored as its op code, followed by its operands:
+ * <ul>
+ *     <li>{@code B_CONST, RETURN}: 0 or 1</li>
+ *     <li>{@code L_CONST, D_CONST}: high and low 32 bits of the (raw) value</li>
+ *     <li>{@code S_CONST}: constant pool index</li>
+ *     <li>{@code INVOKE_INTRINSIC}: intrinsic id</li>
+ *     <li>{@code LOAD_LOCAL, STORE_LOCAL, LOAD_MEMBER, STORE_MEMBER}: local/field index</li>
+ *     <li>{@code CREATE_OBJECT}: struct id, field count</li>
+ *     <li>{@code STRING_BUILD}: part count</li>
+ *     <li>{@code CREATE_LIST_N}: element count</li>
+ *     <li>{@code JUMP}: absolute code address, index of the containing function</li>
+ *     <li>{@code JUMP_IF_FALSE, L_CMP_*_JUMP}: absolute code address</li>
+ *     <li>{@code L_INC_LOCAL}: local index, high and low 32 bits of the value</li>
+ *     <li>{@code LOAD_LOCAL_LOAD_MEMBER}: local index, field index</li>
+ *     <li>{@code INVOKE, TAIL_INVOKE}: 0 or 1 for instance functions, param count, locals count, absolute code address, index of
+ *     the invoked function</li>
+ *     <li>Unknown op codes: constant pool index of the original instruction</li>
+ * </ul>
+ * Function indices refer to {@link TethProgram#getFunctionData()} and are -1 if the program contains no data for the
+ * function.
+ * <br>
+ * A linked program is immutable and can therefore be shared by any number of interpreters.
+ */
+public class LinkedProgram {
+
+    private final TethProgram program;
+    private final int[] code;
+    private final Object[] constants;
+    /**
+     * Maps instruction indices of the original program to code addresses
+     */
+    private final int[] instructionAddresses;
+    private final JitCompiler jitCompiler;
+
+    private LinkedProgram(TethProgram program, int[] code, Object[] constants, int[] instructionAddresses, JitCompiler jitCompiler) {
+        this.program = program;
+        this.code = code;
+        this.constants = constants;
+        this.instructionAddresses = instructionAddresses;
+        this.jitCompiler = jitCompiler;
+    }
+
+    public int[] getCode() {
+        return this.code;
+    }
+
+    public Object getConstant(int index) {
+        return this.constants[index];
+    }
+
+    public StructData getStructData(int structId) {
+        return this.program.getStructData()[structId];
+    }
+
+    public TethProgram getProgram() {
+        return this.program;
+    }
+
+    public JitCompiler getJitCompiler() {
+        return this.jitCompiler;
+    }
+
+    /**
+     * @return The index of the original instruction which is located at the given code address
+     */
+    public int getInstructionIndex(int address) {
+        var index = Arrays.binarySearch(this.instructionAddresses, address);
+        return index < 0 ? -index - 2 : index;
+    }
+
+    public IInstrunction getInstruction(int address) {
+        return this.program.getInstructions()[getInstructionIndex(address)];
+    }
+
+    public static LinkedProgram link(TethProgram program) {
+        var instructions = program.getInstructions();
+        var jitCompiler = new JitCompiler(program);
+
+        // Compute the code address of every instruction
+        var instructionAddresses = new int[instructions.length + 1];
+        for (int i = 0; i < instructions.length; i++)
+            instructionAddresses[i + 1] = instructionAddresses[i] + getEncodedLength(instructions[i]);
+
+        var code = new int[instructionAddresses[instructions.length]];
+        var constants = new ArrayList<>();
+        for (int i = 0; i < instructions.length; i++) {
+            var insn = instructions[i];
+            var address = instructionAddresses[i];
+            var opCode = insn.getOpCode();
+
+            code[address] = opCode;
+            switch (opCode) {
+                case OpCodes.B_CONST -> code[address + 1] = ((B_CONST_Insn) insn).getValue() ? 1 : 0;
+                case OpCodes.L_CONST -> writeLong(code, address + 1, ((L_CONST_Insn) insn).getValue());
+                case OpCodes.D_CONST ->
+                        writeLong(code, address + 1, Double.doubleToRawLongBits(((D_CONST_Insn) insn).getValue()));
+                case OpCodes.S_CONST -> code[address + 1] = addConstant(constants, ((S_CONST_Insn) insn).getValue());
+                case OpCodes.LOAD_LOCAL, OpCodes.STORE_LOCAL ->
+                        code[address + 1] = ((AbstractLocalInsn) insn).getLocalIndex();
+                case OpCodes.LOAD_MEMBER, OpCodes.STORE_MEMBER ->
+                        code[address + 1] = ((AbstractMemberInsn) insn).getFieldIndex();
+                case OpCodes.CREATE_OBJECT -> {
+                    var createInsn = (CREATE_OBJECT_Insn) insn;
+                    code[address + 1] = createInsn.getStructId();
+                    code[address + 2] = createInsn.getFieldCount();
+                }
+                case OpCodes.STRING_BUILD -> code[address + 1] = ((STRING_BUILD_Insn) insn).getPartCount();
+                case OpCodes.CREATE_LIST_N -> code[address + 1] = ((CREATE_LIST_N_Insn) insn).getElementCount();
+                case OpCodes.JUMP -> {
+                    var target = i + ((IJumpInstruction) insn).getRelativeJumpOffset() + 1;
+                    code[address + 1] = instructionAddresses[target];
+                    code[address + 2] = jitCompiler.getContainingFunctionIndex(i);
+                }
+                case OpCodes.JUMP_IF_FALSE, OpCodes.L_CMP_LT_JUMP, OpCodes.L_CMP_LE_JUMP, OpCodes.L_CMP_GT_JUMP,
+                        OpCodes.L_CMP_GE_JUMP, OpCodes.L_CMP_EQ_JUMP -> {
+                    var target = i + ((IJumpInstruction) insn).getRelativeJumpOffset() + 1;
+                    code[address + 1] = instructionAddresses[target];
+                }
+                case OpCodes.INVOKE, OpCodes.TAIL_INVOKE -> {
+                    var invokeInsn = (INVOKE_Insn) insn;
+                    code[address + 1] = invokeInsn.isInstanceFunction() ? 1 : 0;
+                    code[address + 2] = invokeInsn.getParamCount();
+                    code[address + 3] = invokeInsn.getLocalsCount();
+                    // The absolute jump address points to the instruction before the function start
+                    code[address + 4] = instructionAddresses[invokeInsn.getAbsoluteJumpAddress() + 1];
+                    code[address + 5] = jitCompiler.getFunctionIndex(invokeInsn.getAbsoluteJumpAddress() + 1);
+                }
+                case OpCodes.INVOKE_INTRINSIC ->
+                        code[address + 1] = Intrinsics.getId(((INVOKE_INTRINSIC_Insn) insn).getFunctionDeclaration());
+                case OpCodes.RETURN -> code[address + 1] = ((RETURN_Insn) insn).shouldReturnValue() ? 1 : 0;
+                case OpCodes.L_INC_LOCAL -> {
+                    var incInsn = (L_INC_LOCAL_Insn) insn;
+                    code[address + 1] = incInsn.getLocalIndex();
+                    writeLong(code, address + 2, incInsn.getValue());
+                }
+                case OpCodes.LOAD_LOCAL_LOAD_MEMBER -> {
+                    var loadInsn = (LOAD_LOCAL_LOAD_MEMBER_Insn) insn;
+                    code[address + 1] = loadInsn.getLocalIndex();
+                    code[address + 2] = loadInsn.getFieldIndex();
+                }
+                default -> {
+                    if (!isKnownOpCode(opCode))
+                        code[address + 1] = addConstant(constants, insn);
+                }
+            }
+        }
+
+        return new LinkedProgram(program, code, constants.toArray(), Arrays.copyOf(instructionAddresses, instructions.length), jitCompiler);
+    }
+
+    public static long readLong(int[] code, int index) {
+        return ((long) code[index] << 32) | (code[index + 1] & 0xFFFFFFFFL);
+    }
+
+    private static void writeLong(int[] code, int index, long value) {
+        code[index] = (int) (value >>> 32);
+        code[index + 1] = (int) value;
+    }
+
+    private static int addConstant(List<Object> constants, Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private static int getEncodedLength(IInstrunction insn) {
+        var opCode = insn.getOpCode();
+        return switch (opCode) {
+            case OpCodes.B_CONST, OpCodes.S_CONST, OpCodes.LOAD_LOCAL, OpCodes.STORE_LOCAL, OpCodes.LOAD_MEMBER,
+                    OpCodes.STORE_MEMBER, OpCodes.JUMP_IF_FALSE, OpCodes.INVOKE_INTRINSIC, OpCodes.RETURN,
+                    OpCodes.L_CMP_LT_JUMP, OpCodes.L_CMP_LE_JUMP, OpCodes.L_CMP_GT_JUMP, OpCodes.L_CMP_GE_JUMP,
+                    OpCodes.L_CMP_EQ_JUMP, OpCodes.STRING_BUILD, OpCodes.CREATE_LIST_N -> 2;
+            case OpCodes.L_CONST, OpCodes.D_CONST, OpCodes.CREATE_OBJECT, OpCodes.JUMP,
+                    OpCodes.LOAD_LOCAL_LOAD_MEMBER -> 3;
+            case OpCodes.L_INC_LOCAL -> 4;
+            case OpCodes.INVOKE, OpCodes.TAIL_INVOKE -> 6;
+            default -> isKnownOpCode(opCode) ? 1 : 2;
+        };
+    }
+
+    private static boolean isKnownOpCode(byte opCode) {
+        return opCode >= OpCodes.L_TO_D && opCode <= OpCodes.CREATE_LIST_N;
+    }
+}
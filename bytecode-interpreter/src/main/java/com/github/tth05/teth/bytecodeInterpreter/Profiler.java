@@ -0,0 +1,235 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import com.github.tth05.teth.bytecode.op.OpCodes;
+
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Records per-function and per-op code statistics of an {@link Interpreter}, see
+ * {@link Interpreter#setProfiler(Profiler)}. Functions are identified by the code address which {@code INVOKE} jumps
+ * to.
+ * <br>
+ * Inclusive time is only counted for the outermost invocation of recursive functions. Compiled functions show up as
+ * leaves, the time of everything they call is attributed to them.
+ */
+public class Profiler {
+
+    private static final String[] OP_CODE_NAMES = new String[256];
+
+    static {
+        try {
+            for (Field field : OpCodes.class.getFields())
+                OP_CODE_NAMES[field.getByte(null) & 0xFF] = field.getName();
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private final LinkedProgram program;
+
+    private final long[] instructionCounts = new long[256];
+    private final HashMap<Integer, FunctionProfile> functions = new HashMap<>();
+    private final CallNode root = new CallNode(null, -1);
+
+    private FunctionProfile[] frames = new FunctionProfile[16];
+    private long[] frameStartTimes = new long[16];
+    private int depth;
+    private CallNode currentNode = this.root;
+    private long lastTimestamp;
+
+    public Profiler(LinkedProgram program) {
+        this.program = program;
+    }
+
+    void countInstruction(int opCode) {
+        this.instructionCounts[opCode & 0xFF]++;
+    }
+
+    void enterFunction(int address, int functionIndex) {
+        var now = System.nanoTime();
+        chargeCurrentFrame(now);
+
+        var function = this.functions.get(address);
+        if (function == null) {
+            var name = functionIndex != -1 ? this.program.getJitCompiler().getFunctionData(functionIndex).name() : "<unknown@" + address + ">";
+            this.functions.put(address, function = new FunctionProfile(name, address));
+        }
+
+        function.calls++;
+        function.activeInvocations++;
+
+        if (this.depth == this.frames.length) {
+            this.frames = Arrays.copyOf(this.frames, this.depth * 2);
+            this.frameStartTimes = Arrays.copyOf(this.frameStartTimes, this.depth * 2);
+        }
+        this.frames[this.depth] = function;
+        this.frameStartTimes[this.depth++] = now;
+
+        this.currentNode = this.currentNode.getChild(address);
+    }
+
+    void exitFunction() {
+        if (this.depth == 0)
+            return;
+
+        var now = System.nanoTime();
+        chargeCurrentFrame(now);
+
+        var function = this.frames[--this.depth];
+        this.frames[this.depth] = null;
+        if (--function.activeInvocations == 0)
+            function.inclusiveNanos += now - this.frameStartTimes[this.depth];
+
+        this.currentNode = this.currentNode.parent;
+    }
+
+    /**
+     * Exits all functions which are still running, e.g. after an error or for the global function which never returns.
+     */
+    void finish() {
+        while (this.depth > 0)
+            exitFunction();
+    }
+
+    private void chargeCurrentFrame(long now) {
+        if (this.depth > 0) {
+            var elapsed = now - this.lastTimestamp;
+            this.frames[this.depth - 1].exclusiveNanos += elapsed;
+            this.currentNode.selfNanos += elapsed;
+        }
+
+        this.lastTimestamp = now;
+    }
+
+    /**
+     * @return The profiles of all invoked functions, sorted by exclusive time in descending order
+     */
+    public List<FunctionProfile> getFunctionProfiles() {
+        var result = new ArrayList<>(this.functions.values());
+        result.sort(Comparator.comparingLong(FunctionProfile::getExclusiveNanos).reversed());
+        return result;
+    }
+
+    public LinkedProgram getProgram() {
+        return this.program;
+    }
+
+    public long getInstructionCount(byte opCode) {
+        return this.instructionCounts[opCode & 0xFF];
+    }
+
+    /**
+     * Prints a table of all functions and a histogram of all executed op codes.
+     */
+    public void printReport(PrintStream out) {
+        out.printf("%12s %14s %14s  %s%n", "Calls", "Inclusive ms", "Exclusive ms", "Function");
+        for (var function : getFunctionProfiles()) {
+            out.printf("%12d %14.3f %14.3f  %s%n", function.calls,
+                    function.inclusiveNanos / 1000000.0, function.exclusiveNanos / 1000000.0, function.name);
+        }
+
+        var opCodes = new ArrayList<Integer>();
+        var total = 0L;
+        for (int i = 0; i < this.instructionCounts.length; i++) {
+            if (this.instructionCounts[i] == 0)
+                continue;
+
+            opCodes.add(i);
+            total += this.instructionCounts[i];
+        }
+        opCodes.sort(Comparator.comparingLong((Integer i) -> this.instructionCounts[i]).reversed());
+
+        out.println();
+        out.printf("%12s %8s  %s%n", "Executions", "%", "Op code");
+        for (var opCode : opCodes) {
+            var name = OP_CODE_NAMES[opCode] != null ? OP_CODE_NAMES[opCode] : "<" + opCode + ">";
+            out.printf("%12d %8.2f  %s%n", this.instructionCounts[opCode], this.instructionCounts[opCode] * 100.0 / total, name);
+        }
+    }
+
+    /**
+     * Prints the exclusive time in nanoseconds of every call stack in the collapsed format, which is understood by
+     * most flame graph tools. Every line consists of the semicolon separated function names, followed by the time.
+     */
+    public void printCollapsedStacks(PrintStream out) {
+        // Iterative, because the tree is as deep as the deepest recursion
+        var nodes = new ArrayDeque<CallNode>();
+        var prefixes = new ArrayDeque<String>();
+        nodes.push(this.root);
+        prefixes.push("");
+        while (!nodes.isEmpty()) {
+            var node = nodes.pop();
+            var prefix = prefixes.pop();
+            for (var child : node.children.values()) {
+                var stack = prefix + this.functions.get(child.address).name;
+                if (child.selfNanos > 0)
+                    out.println(stack + " " + child.selfNanos);
+
+                nodes.push(child);
+                prefixes.push(stack + ";");
+            }
+        }
+    }
+
+    public static class FunctionProfile {
+
+        private final String name;
+        private final int address;
+        private long calls;
+        private long inclusiveNanos;
+        private long exclusiveNanos;
+        private int activeInvocations;
+
+        private FunctionProfile(String name, int address) {
+            this.name = name;
+            this.address = address;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return The code address of the first instruction of this function
+         */
+        public int getAddress() {
+            return this.address;
+        }
+
+        public long getCalls() {
+            return this.calls;
+        }
+
+        public long getInclusiveNanos() {
+            return this.inclusiveNanos;
+        }
+
+        public long getExclusiveNanos() {
+            return this.exclusiveNanos;
+        }
+    }
+
+    private static class CallNode {
+
+        private final CallNode parent;
+        private final int address;
+        private final HashMap<Integer, CallNode> children = new HashMap<>(4);
+        private long selfNanos;
+
+        private CallNode(CallNode parent, int address) {
+            this.parent = parent;
+            this.address = address;
+        }
+
+        private CallNode getChild(int address) {
+            return this.children.computeIfAbsent(address, a -> new CallNode(this, a));
+        }
+    }
+}
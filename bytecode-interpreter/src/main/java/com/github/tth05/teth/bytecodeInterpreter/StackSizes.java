@@ -0,0 +1,29 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+/**
+ * The initial and maximum size of the frame stacks of an interpreter, in slots. Every stack (operand stack, locals and
+ * return addresses) starts with the initial size and doubles in size whenever it is full, until the maximum size is
+ * reached.
+ */
+public record StackSizes(int initialSize, int maxSize) {
+
+    public static final StackSizes DEFAULT = new StackSizes(64, 1 << 20);
+
+    public StackSizes {
+        if (initialSize < 2)
+            throw new IllegalArgumentException("Initial stack size must be at least 2");
+        if (maxSize < initialSize)
+            throw new IllegalArgumentException("Max stack size cannot be less than the initial stack size");
+    }
+
+    /**
+     * @return The new size of a stack which has to hold at least {@code requiredSize} slots
+     * @throws IllegalStateException If the maximum size would be exceeded
+     */
+    public int grow(int currentSize, int requiredSize, String stackName) {
+        if (requiredSize > this.maxSize)
+            throw new IllegalStateException(stackName + " is full");
+
+        return (int) Math.min(this.maxSize, Math.max(requiredSize, currentSize * 2L));
+    }
+}
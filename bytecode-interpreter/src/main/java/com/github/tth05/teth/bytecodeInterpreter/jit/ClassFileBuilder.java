@@ -0,0 +1,192 @@
+package com.github.tth05.teth.bytecodeInterpreter.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal class file writer which supports just enough to emit the classes generated by {@link JitCompiler}. Classes
+ * are written with version 49, which does not require stack map frames.
+ */
+class ClassFileBuilder {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(this.constantPoolBytes);
+    private final Map<String, Integer> constantIndices = new HashMap<>();
+    private int constantCount = 1;
+
+    private final List<byte[]> methods = new ArrayList<>();
+
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+
+    ClassFileBuilder(String name, String superName, String... interfaces) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, out -> {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        var nameIndex = utf8(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHOD_REF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_INTERFACE_METHOD_REF, owner, name, descriptor);
+    }
+
+    int longConstant(long value) {
+        return constant("J" + value, 2, out -> {
+            out.writeByte(CONSTANT_LONG);
+            out.writeLong(value);
+        });
+    }
+
+    int doubleConstant(double value) {
+        var bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, 2, out -> {
+            out.writeByte(CONSTANT_DOUBLE);
+            out.writeLong(bits);
+        });
+    }
+
+    void addMethod(int access, String name, String descriptor, CodeBuilder code) {
+        var nameIndex = utf8(name);
+        var descriptorIndex = utf8(descriptor);
+        var codeAttributeIndex = utf8("Code");
+        var bytecode = code.toByteArray();
+        if (bytecode.length > 0xFFFF)
+            throw new IllegalStateException("Method too large");
+
+        this.methods.add(write(out -> {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+
+            out.writeShort(codeAttributeIndex);
+            out.writeInt(2 + 2 + 4 + bytecode.length + 2 + 2);
+            out.writeShort(code.getMaxStack());
+            out.writeShort(code.getMaxLocals());
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            out.writeShort(0); // Exception table
+            out.writeShort(0); // Attributes
+        }));
+    }
+
+    byte[] toByteArray(int access) {
+        var thisIndex = classRef(this.name);
+        var superIndex = classRef(this.superName);
+        var interfaceIndices = new int[this.interfaces.length];
+        for (int i = 0; i < this.interfaces.length; i++)
+            interfaceIndices[i] = classRef(this.interfaces[i]);
+
+        return write(out -> {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(this.constantCount);
+            out.write(this.constantPoolBytes.toByteArray());
+
+            out.writeShort(access);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndices.length);
+            for (var index : interfaceIndices)
+                out.writeShort(index);
+
+            out.writeShort(0); // Fields
+            out.writeShort(this.methods.size());
+            for (var method : this.methods)
+                out.write(method);
+            out.writeShort(0); // Attributes
+        });
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        var classIndex = classRef(owner);
+        var nameIndex = utf8(name);
+        var descriptorIndex = utf8(descriptor);
+        var nameAndTypeIndex = constant("N" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+
+        return constant(tag + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    private int constant(String key, int size, IOConsumer<DataOutputStream> writer) {
+        var index = this.constantIndices.get(key);
+        if (index != null)
+            return index;
+
+        try {
+            writer.accept(this.constantPool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        index = this.constantCount;
+        this.constantCount += size;
+        if (this.constantCount > 0xFFFF)
+            throw new IllegalStateException("Constant pool too large");
+
+        this.constantIndices.put(key, index);
+        return index;
+    }
+
+    private static byte[] write(IOConsumer<DataOutputStream> writer) {
+        var bytes = new ByteArrayOutputStream();
+        try {
+            writer.accept(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface IOConsumer<T> {
+
+        void accept(T t) throws IOException;
+    }
+}
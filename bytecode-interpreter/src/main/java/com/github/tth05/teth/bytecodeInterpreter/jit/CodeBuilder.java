@@ -0,0 +1,144 @@
+package com.github.tth05.teth.bytecodeInterpreter.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the code of a single method. Branch targets are referenced through labels which are resolved once the
+ * code is complete.
+ */
+class CodeBuilder {
+
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int LCONST_0 = 0x09;
+    static final int LCONST_1 = 0x0A;
+    static final int DCONST_0 = 0x0E;
+    static final int DCONST_1 = 0x0F;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int LLOAD = 0x16;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int LSTORE = 0x37;
+    static final int DSTORE = 0x39;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5C;
+    static final int LADD = 0x61;
+    static final int DADD = 0x63;
+    static final int LSUB = 0x65;
+    static final int DSUB = 0x67;
+    static final int LMUL = 0x69;
+    static final int DMUL = 0x6B;
+    static final int LDIV = 0x6D;
+    static final int DDIV = 0x6F;
+    static final int LNEG = 0x75;
+    static final int DNEG = 0x77;
+    static final int IAND = 0x7E;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int L2D = 0x8A;
+    static final int D2L = 0x8F;
+    static final int LCMP = 0x94;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IFLT = 0x9B;
+    static final int IFGE = 0x9C;
+    static final int IFGT = 0x9D;
+    static final int IFLE = 0x9E;
+    static final int GOTO = 0xA7;
+    static final int IRETURN = 0xAC;
+    static final int LRETURN = 0xAD;
+    static final int DRETURN = 0xAF;
+    static final int RETURN = 0xB1;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+    static final int CHECKCAST = 0xC0;
+
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final List<int[]> branches = new ArrayList<>();
+    private int[] labels = new int[16];
+    private int labelCount;
+
+    private final int maxStack;
+    private final int maxLocals;
+
+    CodeBuilder(int maxStack, int maxLocals) {
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+    }
+
+    void op(int opCode) {
+        this.code.write(opCode);
+    }
+
+    void op(int opCode, int u2) {
+        this.code.write(opCode);
+        writeShort(u2);
+    }
+
+    void local(int opCode, int index) {
+        if (index > 0xFF)
+            throw new IllegalStateException("Too many locals");
+
+        this.code.write(opCode);
+        this.code.write(index);
+    }
+
+    int newLabel() {
+        if (this.labelCount == this.labels.length)
+            this.labels = Arrays.copyOf(this.labels, this.labels.length * 2);
+
+        this.labels[this.labelCount] = -1;
+        return this.labelCount++;
+    }
+
+    void bind(int label) {
+        this.labels[label] = this.code.size();
+    }
+
+    void jump(int opCode, int label) {
+        this.branches.add(new int[]{this.code.size(), label});
+        this.code.write(opCode);
+        writeShort(0);
+    }
+
+    int getMaxStack() {
+        return this.maxStack;
+    }
+
+    int getMaxLocals() {
+        return this.maxLocals;
+    }
+
+    byte[] toByteArray() {
+        var bytes = this.code.toByteArray();
+        for (var branch : this.branches) {
+            var target = this.labels[branch[1]];
+            if (target == -1)
+                throw new IllegalStateException("Unbound label");
+
+            var offset = target - branch[0];
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                throw new IllegalStateException("Branch offset too large");
+
+            bytes[branch[0] + 1] = (byte) (offset >> 8);
+            bytes[branch[0] + 2] = (byte) offset;
+        }
+
+        return bytes;
+    }
+
+    private void writeShort(int value) {
+        this.code.write(value >> 8);
+        this.code.write(value);
+    }
+}
@@ -0,0 +1,320 @@
+package com.github.tth05.teth.bytecodeInterpreter.jit;
+
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.bytecode.program.FunctionData;
+import com.github.tth05.teth.bytecode.program.ValueType;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Infers the types of all stack values of a function and checks whether the function can be compiled. Only functions
+ * which exclusively operate on longs, doubles and booleans and only call other such functions are supported.
+ */
+class FunctionAnalysis {
+
+    private static final ValueType[] EMPTY_STACK = new ValueType[0];
+
+    private final JitCompiler compiler;
+    private final int functionIndex;
+    private final FunctionData data;
+    private final IInstrunction[] instructions;
+
+    /**
+     * The types on the stack before each instruction, {@code null} for unreachable instructions
+     */
+    private final ValueType[][] stackStates;
+    private final int[] localSlots;
+    private final Set<Integer> callees = new LinkedHashSet<>();
+    private int localSlotCount;
+    private int interpreterSlot;
+    private int maxStackSlots;
+
+    private FunctionAnalysis(JitCompiler compiler, int functionIndex) {
+        this.compiler = compiler;
+        this.functionIndex = functionIndex;
+        this.data = compiler.getFunctionData(functionIndex);
+        this.instructions = compiler.getProgram().getInstructions();
+        this.stackStates = new ValueType[this.data.instructionCount()][];
+        this.localSlots = new int[this.data.localTypes().length];
+    }
+
+    /**
+     * @return The analysis of the given function, or {@code null} if the function cannot be compiled
+     */
+    static FunctionAnalysis analyze(JitCompiler compiler, int functionIndex) {
+        var analysis = new FunctionAnalysis(compiler, functionIndex);
+        return analysis.run() ? analysis : null;
+    }
+
+    private boolean run() {
+        if (this.data.returnType() != ValueType.VOID && !this.data.returnType().isPrimitive())
+            return false;
+
+        // The interpreter is passed as an additional parameter after all other parameters
+        var localTypes = this.data.localTypes();
+        for (int i = 0; i < localTypes.length; i++) {
+            if (!localTypes[i].isPrimitive())
+                return false;
+            if (i == this.data.paramCount())
+                this.interpreterSlot = this.localSlotCount++;
+
+            this.localSlots[i] = this.localSlotCount;
+            this.localSlotCount += getSlotSize(localTypes[i]);
+        }
+        if (localTypes.length == this.data.paramCount())
+            this.interpreterSlot = this.localSlotCount++;
+
+        var worklist = new ArrayDeque<Integer>();
+        this.stackStates[0] = EMPTY_STACK;
+        worklist.add(0);
+        while (!worklist.isEmpty()) {
+            int index = worklist.poll();
+            var stack = new TypeStack(this.stackStates[index]);
+            var insn = this.instructions[this.data.offset() + index];
+            if (!simulate(insn, stack))
+                return false;
+
+            this.maxStackSlots = Math.max(this.maxStackSlots, stack.maxSlots);
+
+            if (insn.getOpCode() == OpCodes.RETURN)
+                continue;
+
+            // Unconditional jumps have a single successor, all other jumps are conditional
+            var jumpInsn = insn instanceof IJumpInstruction j ? j : null;
+            if (jumpInsn != null && !mergeInto(index + jumpInsn.getRelativeJumpOffset() + 1, stack, worklist))
+                return false;
+            if (insn.getOpCode() != OpCodes.JUMP && !mergeInto(index + 1, stack, worklist))
+                return false;
+        }
+
+        return true;
+    }
+
+    private boolean simulate(IInstrunction insn, TypeStack stack) {
+        var localTypes = this.data.localTypes();
+        switch (insn.getOpCode()) {
+            case OpCodes.L_CONST -> stack.push(ValueType.LONG);
+            case OpCodes.D_CONST -> stack.push(ValueType.DOUBLE);
+            case OpCodes.B_CONST -> stack.push(ValueType.BOOLEAN);
+            case OpCodes.LOAD_LOCAL -> stack.push(localTypes[((LOAD_LOCAL_Insn) insn).getLocalIndex()]);
+            case OpCodes.STORE_LOCAL -> {
+                return stack.pop(localTypes[((STORE_LOCAL_Insn) insn).getLocalIndex()]);
+            }
+            case OpCodes.L_ADD, OpCodes.L_SUB, OpCodes.L_MUL, OpCodes.L_DIV, OpCodes.L_POW -> {
+                return binary(stack, ValueType.LONG, ValueType.LONG);
+            }
+            case OpCodes.D_ADD, OpCodes.D_SUB, OpCodes.D_MUL, OpCodes.D_DIV, OpCodes.D_POW -> {
+                return binary(stack, ValueType.DOUBLE, ValueType.DOUBLE);
+            }
+            case OpCodes.L_EQUAL, OpCodes.L_LESS, OpCodes.L_LESS_EQUAL, OpCodes.L_GREATER,
+                    OpCodes.L_GREATER_EQUAL -> {
+                return binary(stack, ValueType.LONG, ValueType.BOOLEAN);
+            }
+            case OpCodes.D_EQUAL, OpCodes.D_LESS, OpCodes.D_LESS_EQUAL, OpCodes.D_GREATER,
+                    OpCodes.D_GREATER_EQUAL -> {
+                return binary(stack, ValueType.DOUBLE, ValueType.BOOLEAN);
+            }
+            case OpCodes.B_AND, OpCodes.B_OR -> {
+                return binary(stack, ValueType.BOOLEAN, ValueType.BOOLEAN);
+            }
+            case OpCodes.L_NEGATE -> {
+                return unary(stack, ValueType.LONG, ValueType.LONG);
+            }
+            case OpCodes.D_NEGATE -> {
+                return unary(stack, ValueType.DOUBLE, ValueType.DOUBLE);
+            }
+            case OpCodes.B_INVERT -> {
+                return unary(stack, ValueType.BOOLEAN, ValueType.BOOLEAN);
+            }
+            case OpCodes.L_TO_D -> {
+                return unary(stack, ValueType.LONG, ValueType.DOUBLE);
+            }
+            case OpCodes.D_TO_L -> {
+                return unary(stack, ValueType.DOUBLE, ValueType.LONG);
+            }
+            case OpCodes.DUP -> {
+                if (stack.isEmpty())
+                    return false;
+                stack.push(stack.peek());
+            }
+            case OpCodes.POP -> {
+                if (stack.isEmpty())
+                    return false;
+                stack.pop(stack.peek());
+            }
+            case OpCodes.JUMP -> {}
+            case OpCodes.JUMP_IF_FALSE -> {
+                return stack.pop(ValueType.BOOLEAN);
+            }
+            case OpCodes.L_CMP_LT_JUMP, OpCodes.L_CMP_LE_JUMP, OpCodes.L_CMP_GT_JUMP, OpCodes.L_CMP_GE_JUMP,
+                    OpCodes.L_CMP_EQ_JUMP -> {
+                return stack.pop(ValueType.LONG) && stack.pop(ValueType.LONG);
+            }
+            case OpCodes.L_INC_LOCAL -> {
+                // Uses the stack for the local and the constant
+                stack.reserve(4);
+                return localTypes[((L_INC_LOCAL_Insn) insn).getLocalIndex()] == ValueType.LONG;
+            }
+            case OpCodes.RETURN -> {
+                var returnType = this.data.returnType();
+                if (!((RETURN_Insn) insn).shouldReturnValue())
+                    return returnType == ValueType.VOID;
+
+                return returnType != ValueType.VOID && stack.pop(returnType);
+            }
+            case OpCodes.INVOKE, OpCodes.TAIL_INVOKE -> {
+                var invokeInsn = (INVOKE_Insn) insn;
+                var calleeIndex = this.compiler.getFunctionIndex(invokeInsn.getAbsoluteJumpAddress() + 1);
+                if (calleeIndex == -1)
+                    return false;
+
+                var callee = this.compiler.getFunctionData(calleeIndex);
+                for (int i = callee.paramCount() - 1; i >= 0; i--) {
+                    if (!stack.pop(callee.localTypes()[i]))
+                        return false;
+                }
+
+                if (callee.returnType() != ValueType.VOID) {
+                    if (!callee.returnType().isPrimitive())
+                        return false;
+                    stack.push(callee.returnType());
+                }
+
+                if (calleeIndex != this.functionIndex)
+                    this.callees.add(calleeIndex);
+            }
+            default -> {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Propagates the stack state to a successor. Successors outside of this function and successors which are reached
+     * with different stack states are not supported.
+     */
+    private boolean mergeInto(int index, TypeStack stack, ArrayDeque<Integer> worklist) {
+        if (index < 0 || index >= this.stackStates.length)
+            return false;
+
+        var state = stack.toArray();
+        var existingState = this.stackStates[index];
+        if (existingState == null) {
+            this.stackStates[index] = state;
+            worklist.add(index);
+            return true;
+        }
+
+        return Arrays.equals(existingState, state);
+    }
+
+    private static boolean binary(TypeStack stack, ValueType operandType, ValueType resultType) {
+        if (!stack.pop(operandType) || !stack.pop(operandType))
+            return false;
+
+        stack.push(resultType);
+        return true;
+    }
+
+    private static boolean unary(TypeStack stack, ValueType operandType, ValueType resultType) {
+        if (!stack.pop(operandType))
+            return false;
+
+        stack.push(resultType);
+        return true;
+    }
+
+    static int getSlotSize(ValueType type) {
+        return type == ValueType.LONG || type == ValueType.DOUBLE ? 2 : 1;
+    }
+
+    int getFunctionIndex() {
+        return this.functionIndex;
+    }
+
+    FunctionData getData() {
+        return this.data;
+    }
+
+    IInstrunction getInstruction(int index) {
+        return this.instructions[this.data.offset() + index];
+    }
+
+    ValueType[] getStackState(int index) {
+        return this.stackStates[index];
+    }
+
+    int getLocalSlot(int localIndex) {
+        return this.localSlots[localIndex];
+    }
+
+    int getInterpreterSlot() {
+        return this.interpreterSlot;
+    }
+
+    int getLocalSlotCount() {
+        return this.localSlotCount;
+    }
+
+    int getMaxStackSlots() {
+        return this.maxStackSlots;
+    }
+
+    Set<Integer> getCallees() {
+        return this.callees;
+    }
+
+    private static class TypeStack {
+
+        private ValueType[] values;
+        private int size;
+        private int slots;
+        private int maxSlots;
+
+        TypeStack(ValueType[] initial) {
+            this.values = Arrays.copyOf(initial, initial.length + 4);
+            this.size = initial.length;
+            for (var value : initial)
+                this.slots += getSlotSize(value);
+            this.maxSlots = this.slots;
+        }
+
+        void push(ValueType type) {
+            if (this.size == this.values.length)
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+
+            this.values[this.size++] = type;
+            this.slots += getSlotSize(type);
+            this.maxSlots = Math.max(this.maxSlots, this.slots);
+        }
+
+        void reserve(int slots) {
+            this.maxSlots = Math.max(this.maxSlots, this.slots + slots);
+        }
+
+        boolean pop(ValueType expectedType) {
+            if (this.size == 0 || this.values[this.size - 1] != expectedType)
+                return false;
+
+            this.slots -= getSlotSize(this.values[--this.size]);
+            return true;
+        }
+
+        ValueType peek() {
+            return this.values[this.size - 1];
+        }
+
+        boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        ValueType[] toArray() {
+            return this.size == 0 ? EMPTY_STACK : Arrays.copyOf(this.values, this.size);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.github.tth05.teth.bytecodeInterpreter.jit;
+
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.bytecode.program.FunctionData;
+import com.github.tth05.teth.bytecode.program.ValueType;
+
+import java.util.Collection;
+
+import static com.github.tth05.teth.bytecodeInterpreter.jit.ClassFileBuilder.*;
+import static com.github.tth05.teth.bytecodeInterpreter.jit.CodeBuilder.*;
+
+/**
+ * Generates a class which contains one static method per analyzed function and implements {@link JitFunction} by
+ * invoking the method of the root function with the parameters taken from the interpreter stack. Every generated
+ * method receives the interpreter as its last parameter, which is used to stop loops once the interpreter has been
+ * killed.
+ */
+class FunctionTranslator {
+
+    static final String CLASS_NAME = "com/github/tth05/teth/bytecodeInterpreter/jit/CompiledFunction";
+    private static final String INTERPRETER_NAME = "com/github/tth05/teth/bytecodeInterpreter/Interpreter";
+    private static final String JIT_FUNCTION_NAME = "com/github/tth05/teth/bytecodeInterpreter/jit/JitFunction";
+    private static final String JIT_COMPILER_NAME = "com/github/tth05/teth/bytecodeInterpreter/jit/JitCompiler";
+
+    private final ClassFileBuilder classFile = new ClassFileBuilder(CLASS_NAME, "java/lang/Object", JIT_FUNCTION_NAME);
+    private final JitCompiler compiler;
+
+    FunctionTranslator(JitCompiler compiler) {
+        this.compiler = compiler;
+    }
+
+    byte[] translate(FunctionAnalysis root, Collection<FunctionAnalysis> functions) {
+        generateConstructor();
+        generateBridge(root);
+        for (var function : functions)
+            generateFunction(function);
+
+        return this.classFile.toByteArray(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+    }
+
+    private void generateConstructor() {
+        var code = new CodeBuilder(1, 1);
+        code.local(ALOAD, 0);
+        code.op(INVOKESPECIAL, this.classFile.methodRef("java/lang/Object", "<init>", "()V"));
+        code.op(RETURN);
+        this.classFile.addMethod(ACC_PUBLIC, "<init>", "()V", code);
+    }
+
+    /**
+     * Generates the {@link JitFunction#invoke} implementation, which moves the parameters from the interpreter stack
+     * into JVM locals, invokes the root function and pushes the result back onto the interpreter stack.
+     */
+    private void generateBridge(FunctionAnalysis root) {
+        var data = root.getData();
+        // 0 = this, 1 = interpreter, then the parameters, then the return value
+        var firstSlot = 2;
+        var paramSlots = 0;
+        for (int i = 0; i < data.paramCount(); i++)
+            paramSlots += FunctionAnalysis.getSlotSize(data.localTypes()[i]);
+        var returnSlot = firstSlot + paramSlots;
+        var code = new CodeBuilder(paramSlots + 3, returnSlot + 2);
+
+        for (int i = data.paramCount() - 1; i >= 0; i--) {
+            var type = data.localTypes()[i];
+            code.local(ALOAD, 1);
+            code.op(INVOKEVIRTUAL, this.classFile.methodRef(INTERPRETER_NAME, "pop" + getInterpreterSuffix(type), "()" + getDescriptor(type)));
+            code.local(getStoreOpCode(type), firstSlot + root.getLocalSlot(i));
+        }
+
+        for (int i = 0; i < data.paramCount(); i++)
+            code.local(getLoadOpCode(data.localTypes()[i]), firstSlot + root.getLocalSlot(i));
+        code.local(ALOAD, 1);
+        code.op(INVOKESTATIC, getMethodRef(root.getFunctionIndex()));
+
+        var returnType = data.returnType();
+        if (returnType != ValueType.VOID) {
+            code.local(getStoreOpCode(returnType), returnSlot);
+            code.local(ALOAD, 1);
+            code.local(getLoadOpCode(returnType), returnSlot);
+            code.op(INVOKEVIRTUAL, this.classFile.methodRef(INTERPRETER_NAME, "push" + getInterpreterSuffix(returnType), "(" + getDescriptor(returnType) + ")V"));
+        }
+
+        code.op(RETURN);
+        this.classFile.addMethod(ACC_PUBLIC, "invoke", "(L" + INTERPRETER_NAME + ";)V", code);
+    }
+
+    private void generateFunction(FunctionAnalysis function) {
+        var data = function.getData();
+        // Two additional slots are used as scratch space
+        var scratchSlot = function.getLocalSlotCount();
+        var code = new CodeBuilder(function.getMaxStackSlots() + 3, scratchSlot + 2);
+
+        // Initialize all locals which are not parameters, the verifier cannot prove that they are always assigned
+        // before being read
+        for (int i = data.paramCount(); i < data.localTypes().length; i++) {
+            var type = data.localTypes()[i];
+            code.op(switch (type) {
+                case LONG -> LCONST_0;
+                case DOUBLE -> DCONST_0;
+                default -> ICONST_0;
+            });
+            code.local(getStoreOpCode(type), function.getLocalSlot(i));
+        }
+
+        var labels = new int[data.instructionCount()];
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = code.newLabel();
+
+        for (int i = 0; i < labels.length; i++) {
+            var stackState = function.getStackState(i);
+            if (stackState == null)
+                continue;
+
+            code.bind(labels[i]);
+            var insn = function.getInstruction(i);
+            switch (insn.getOpCode()) {
+                case OpCodes.L_CONST -> {
+                    var value = ((L_CONST_Insn) insn).getValue();
+                    if (value == 0 || value == 1)
+                        code.op(value == 0 ? LCONST_0 : LCONST_1);
+                    else
+                        code.op(LDC2_W, this.classFile.longConstant(value));
+                }
+                case OpCodes.D_CONST -> {
+                    var value = ((D_CONST_Insn) insn).getValue();
+                    if (Double.doubleToRawLongBits(value) == 0 || value == 1)
+                        code.op(value == 0 ? DCONST_0 : DCONST_1);
+                    else
+                        code.op(LDC2_W, this.classFile.doubleConstant(value));
+                }
+                case OpCodes.B_CONST -> code.op(((B_CONST_Insn) insn).getValue() ? ICONST_1 : ICONST_0);
+                case OpCodes.LOAD_LOCAL -> {
+                    var index = ((LOAD_LOCAL_Insn) insn).getLocalIndex();
+                    code.local(getLoadOpCode(data.localTypes()[index]), function.getLocalSlot(index));
+                }
+                case OpCodes.STORE_LOCAL -> {
+                    var index = ((STORE_LOCAL_Insn) insn).getLocalIndex();
+                    code.local(getStoreOpCode(data.localTypes()[index]), function.getLocalSlot(index));
+                }
+                case OpCodes.L_ADD -> code.op(LADD);
+                case OpCodes.D_ADD -> code.op(DADD);
+                case OpCodes.L_SUB -> code.op(LSUB);
+                case OpCodes.D_SUB -> code.op(DSUB);
+                case OpCodes.L_MUL -> code.op(LMUL);
+                case OpCodes.D_MUL -> code.op(DMUL);
+                case OpCodes.L_DIV -> code.op(LDIV);
+                case OpCodes.D_DIV -> code.op(DDIV);
+                case OpCodes.L_POW -> {
+                    code.op(L2D);
+                    code.local(DSTORE, scratchSlot);
+                    code.op(L2D);
+                    code.local(DLOAD, scratchSlot);
+                    code.op(INVOKESTATIC, this.classFile.methodRef("java/lang/Math", "pow", "(DD)D"));
+                    code.op(D2L);
+                }
+                case OpCodes.D_POW ->
+                        code.op(INVOKESTATIC, this.classFile.methodRef("java/lang/Math", "pow", "(DD)D"));
+                case OpCodes.L_NEGATE -> code.op(LNEG);
+                case OpCodes.D_NEGATE -> code.op(DNEG);
+                case OpCodes.L_EQUAL -> generateComparison(code, LCMP, IFNE);
+                case OpCodes.L_LESS -> generateComparison(code, LCMP, IFGE);
+                case OpCodes.L_LESS_EQUAL -> generateComparison(code, LCMP, IFGT);
+                case OpCodes.L_GREATER -> generateComparison(code, LCMP, IFLE);
+                case OpCodes.L_GREATER_EQUAL -> generateComparison(code, LCMP, IFLT);
+                case OpCodes.D_EQUAL -> {
+                    // Same semantics as Double#equals
+                    code.op(INVOKESTATIC, this.classFile.methodRef("java/lang/Double", "compare", "(DD)I"));
+                    generateComparison(code, -1, IFNE);
+                }
+                // NaN has to produce false, therefore dcmpg is used for less and dcmpl for greater
+                case OpCodes.D_LESS -> generateComparison(code, DCMPG, IFGE);
+                case OpCodes.D_LESS_EQUAL -> generateComparison(code, DCMPG, IFGT);
+                case OpCodes.D_GREATER -> generateComparison(code, DCMPL, IFLE);
+                case OpCodes.D_GREATER_EQUAL -> generateComparison(code, DCMPL, IFLT);
+                case OpCodes.B_AND -> code.op(IAND);
+                case OpCodes.B_OR -> code.op(IOR);
+                case OpCodes.B_INVERT -> {
+                    code.op(ICONST_1);
+                    code.op(IXOR);
+                }
+                case OpCodes.L_TO_D -> code.op(L2D);
+                case OpCodes.D_TO_L -> code.op(D2L);
+                case OpCodes.DUP -> code.op(FunctionAnalysis.getSlotSize(stackState[stackState.length - 1]) == 2 ? DUP2 : DUP);
+                case OpCodes.POP -> code.op(FunctionAnalysis.getSlotSize(stackState[stackState.length - 1]) == 2 ? POP2 : POP);
+                case OpCodes.JUMP, OpCodes.JUMP_IF_FALSE, OpCodes.L_CMP_LT_JUMP, OpCodes.L_CMP_LE_JUMP,
+                        OpCodes.L_CMP_GT_JUMP, OpCodes.L_CMP_GE_JUMP, OpCodes.L_CMP_EQ_JUMP -> {
+                    var offset = ((IJumpInstruction) insn).getRelativeJumpOffset();
+                    if (offset < 0) {
+                        code.local(ALOAD, function.getInterpreterSlot());
+                        code.op(INVOKESTATIC, this.classFile.methodRef(JIT_COMPILER_NAME, "checkRunning", "(L" + INTERPRETER_NAME + ";)V"));
+                    }
+
+                    var opCode = insn.getOpCode();
+                    if (opCode != OpCodes.JUMP && opCode != OpCodes.JUMP_IF_FALSE)
+                        code.op(LCMP);
+
+                    // All conditional jumps are taken if the condition is false
+                    code.jump(switch (opCode) {
+                        case OpCodes.JUMP -> GOTO;
+                        case OpCodes.JUMP_IF_FALSE -> IFEQ;
+                        case OpCodes.L_CMP_LT_JUMP -> IFGE;
+                        case OpCodes.L_CMP_LE_JUMP -> IFGT;
+                        case OpCodes.L_CMP_GT_JUMP -> IFLE;
+                        case OpCodes.L_CMP_GE_JUMP -> IFLT;
+                        default -> IFNE;
+                    }, labels[i + offset + 1]);
+                }
+                case OpCodes.L_INC_LOCAL -> {
+                    var incInsn = (L_INC_LOCAL_Insn) insn;
+                    var slot = function.getLocalSlot(incInsn.getLocalIndex());
+                    code.local(LLOAD, slot);
+                    code.op(LDC2_W, this.classFile.longConstant(incInsn.getValue()));
+                    code.op(LADD);
+                    code.local(LSTORE, slot);
+                }
+                case OpCodes.RETURN -> code.op(switch (data.returnType()) {
+                    case LONG -> LRETURN;
+                    case DOUBLE -> DRETURN;
+                    case BOOLEAN -> IRETURN;
+                    default -> RETURN;
+                });
+                case OpCodes.INVOKE, OpCodes.TAIL_INVOKE -> {
+                    var target = ((INVOKE_Insn) insn).getAbsoluteJumpAddress() + 1;
+                    var targetIndex = this.compiler.getFunctionIndex(target);
+                    // A tail call of this function with nothing else on the stack simply restarts it with new parameters
+                    if (insn.getOpCode() == OpCodes.TAIL_INVOKE && targetIndex == function.getFunctionIndex() &&
+                        stackState.length == data.paramCount()) {
+                        for (int j = data.paramCount() - 1; j >= 0; j--)
+                            code.local(getStoreOpCode(data.localTypes()[j]), function.getLocalSlot(j));
+                        code.local(ALOAD, function.getInterpreterSlot());
+                        code.op(INVOKESTATIC, this.classFile.methodRef(JIT_COMPILER_NAME, "checkRunning", "(L" + INTERPRETER_NAME + ";)V"));
+                        code.jump(GOTO, labels[0]);
+                        continue;
+                    }
+
+                    code.local(ALOAD, function.getInterpreterSlot());
+                    code.op(INVOKESTATIC, getMethodRef(targetIndex));
+                }
+                default -> throw new IllegalStateException("Unsupported instruction " + insn.getDebugString());
+            }
+        }
+
+        this.classFile.addMethod(ACC_PRIVATE | ACC_STATIC, getMethodName(function.getFunctionIndex()), getMethodDescriptor(data), code);
+    }
+
+    /**
+     * Converts the result of the comparison instruction into a boolean
+     *
+     * @param compareOpCode The comparison instruction, or -1 if an integer has already been pushed
+     * @param jumpIfFalse   The instruction which jumps if the integer does not represent a true comparison
+     */
+    private static void generateComparison(CodeBuilder code, int compareOpCode, int jumpIfFalse) {
+        if (compareOpCode != -1)
+            code.op(compareOpCode);
+
+        var falseLabel = code.newLabel();
+        var endLabel = code.newLabel();
+        code.jump(jumpIfFalse, falseLabel);
+        code.op(ICONST_1);
+        code.jump(GOTO, endLabel);
+        code.bind(falseLabel);
+        code.op(ICONST_0);
+        code.bind(endLabel);
+    }
+
+    private int getMethodRef(int functionIndex) {
+        return this.classFile.methodRef(CLASS_NAME, getMethodName(functionIndex), getMethodDescriptor(this.compiler.getFunctionData(functionIndex)));
+    }
+
+    private String getMethodName(int functionIndex) {
+        // Keep the Teth name to get readable stack traces
+        return this.compiler.getFunctionData(functionIndex).name().replaceAll("[.;\\[/<>]", "_") + "$" + functionIndex;
+    }
+
+    private static String getMethodDescriptor(FunctionData data) {
+        var descriptor = new StringBuilder("(");
+        for (int i = 0; i < data.paramCount(); i++)
+            descriptor.append(getDescriptor(data.localTypes()[i]));
+        return descriptor.append('L').append(INTERPRETER_NAME).append(";)").append(getDescriptor(data.returnType())).toString();
+    }
+
+    private static String getDescriptor(ValueType type) {
+        return switch (type) {
+            case LONG -> "J";
+            case DOUBLE -> "D";
+            case BOOLEAN -> "Z";
+            case VOID -> "V";
+            case REFERENCE -> throw new IllegalArgumentException();
+        };
+    }
+
+    private static String getInterpreterSuffix(ValueType type) {
+        return switch (type) {
+            case LONG -> "Long";
+            case DOUBLE -> "Double";
+            case BOOLEAN -> "Boolean";
+            default -> throw new IllegalArgumentException();
+        };
+    }
+
+    private static int getLoadOpCode(ValueType type) {
+        return switch (type) {
+            case LONG -> LLOAD;
+            case DOUBLE -> DLOAD;
+            default -> ILOAD;
+        };
+    }
+
+    private static int getStoreOpCode(ValueType type) {
+        return switch (type) {
+            case LONG -> LSTORE;
+            case DOUBLE -> DSTORE;
+            default -> ISTORE;
+        };
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.tth05.teth.bytecodeInterpreter.jit;
+
+import com.github.tth05.teth.bytecode.program.FunctionData;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.bytecodeInterpreter.Interpreter;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+
+/**
+ * Compiles hot functions of a program to JVM bytecode. Every compiled function is defined as a hidden class which
+ * also contains all functions it calls, allowing the JVM to inline them. Compiled functions are cached and shared
+ * between all interpreters which run the same program.
+ * <br>
+ * Only functions which work exclusively on longs, doubles and booleans can be compiled, see {@link FunctionAnalysis}.
+ */
+public class JitCompiler {
+
+    private static final JitFunction NOT_COMPILABLE = interpreter -> {
+        throw new IllegalStateException();
+    };
+
+    private final TethProgram program;
+    private final FunctionData[] functions;
+    private final JitFunction[] compiledFunctions;
+
+    public JitCompiler(TethProgram program) {
+        this.program = program;
+        this.functions = program.getFunctionData();
+        this.compiledFunctions = new JitFunction[this.functions.length];
+    }
+
+    /**
+     * Compiles the given function if that has not happened yet.
+     *
+     * @return The compiled function, or {@code null} if the function cannot be compiled
+     */
+    public synchronized JitFunction compile(int functionIndex) {
+        var compiled = this.compiledFunctions[functionIndex];
+        if (compiled == null) {
+            compiled = tryCompile(functionIndex);
+            this.compiledFunctions[functionIndex] = compiled != null ? compiled : NOT_COMPILABLE;
+        }
+
+        return compiled != NOT_COMPILABLE ? compiled : null;
+    }
+
+    public synchronized boolean isCompiled(int functionIndex) {
+        var compiled = this.compiledFunctions[functionIndex];
+        return compiled != null && compiled != NOT_COMPILABLE;
+    }
+
+    /**
+     * @return The index of the function which starts at the given instruction, or -1 if there is none
+     */
+    public int getFunctionIndex(int offset) {
+        var index = findFunction(offset);
+        return index >= 0 && this.functions[index].offset() == offset ? index : -1;
+    }
+
+    /**
+     * @return The index of the function which contains the given instruction, or -1 if there is none
+     */
+    public int getContainingFunctionIndex(int instructionIndex) {
+        var index = findFunction(instructionIndex);
+        if (index < 0)
+            return -1;
+
+        var function = this.functions[index];
+        return instructionIndex < function.offset() + function.instructionCount() ? index : -1;
+    }
+
+    public FunctionData getFunctionData(int functionIndex) {
+        return this.functions[functionIndex];
+    }
+
+    public int getFunctionCount() {
+        return this.functions.length;
+    }
+
+    /**
+     * Called by compiled functions on every backward jump
+     */
+    static void checkRunning(Interpreter interpreter) {
+        if (!interpreter.isRunning())
+            throw new IllegalStateException("Interpreter has been killed");
+    }
+
+    TethProgram getProgram() {
+        return this.program;
+    }
+
+    private JitFunction tryCompile(int functionIndex) {
+        // Collect the function and all of its callees
+        var analyses = new LinkedHashMap<Integer, FunctionAnalysis>();
+        var queue = new ArrayDeque<Integer>();
+        queue.add(functionIndex);
+        while (!queue.isEmpty()) {
+            var index = queue.poll();
+            if (analyses.containsKey(index))
+                continue;
+
+            var analysis = FunctionAnalysis.analyze(this, index);
+            if (analysis == null)
+                return null;
+
+            analyses.put(index, analysis);
+            queue.addAll(analysis.getCallees());
+        }
+
+        byte[] bytes;
+        try {
+            bytes = new FunctionTranslator(this).translate(analyses.get(functionIndex), analyses.values());
+        } catch (IllegalStateException e) {
+            // Limits of the class file format exceeded
+            return null;
+        }
+
+        try {
+            var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (JitFunction) lookup.lookupClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to define compiled function", e);
+        }
+    }
+
+    /**
+     * @return The index of the last function with an offset less or equal to the given instruction index
+     */
+    private int findFunction(int instructionIndex) {
+        int low = 0;
+        int high = this.functions.length - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            if (this.functions[mid].offset() <= instructionIndex)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+
+        return high;
+    }
+}
@@ -0,0 +1,12 @@
+package com.github.tth05.teth.bytecodeInterpreter.jit;
+
+import com.github.tth05.teth.bytecodeInterpreter.Interpreter;
+
+/**
+ * A Teth function which has been compiled to JVM bytecode. Invoking it pops the parameters from the stack of the given
+ * interpreter and pushes the return value, exactly like the interpreted function would.
+ */
+public interface JitFunction {
+
+    void invoke(Interpreter interpreter);
+}
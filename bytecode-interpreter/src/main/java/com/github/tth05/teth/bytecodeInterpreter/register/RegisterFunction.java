@@ -0,0 +1,12 @@
+package com.github.tth05.teth.bytecodeInterpreter.register;
+
+/**
+ * @param address          The code address of the first instruction
+ * @param instructionCount The number of register instructions of this function
+ * @param frameSize        The number of registers used by this function
+ * @param constantBase     The first constant register
+ * @param constants        The values of all constant registers
+ */
+public record RegisterFunction(String name, int address, int instructionCount, int frameSize, int constantBase,
+                               Object[] constants) {
+}
@@ -0,0 +1,659 @@
+package com.github.tth05.teth.bytecodeInterpreter.register;
+
+import com.github.tth05.teth.bytecode.program.StructData;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.bytecodeInterpreter.ErrorReport;
+import com.github.tth05.teth.bytecodeInterpreter.IIntrinsicContext;
+import com.github.tth05.teth.bytecodeInterpreter.Intrinsics;
+import com.github.tth05.teth.bytecodeInterpreter.ObjectValue;
+import com.github.tth05.teth.bytecodeInterpreter.StackSizes;
+
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static com.github.tth05.teth.bytecodeInterpreter.register.RegisterOpCodes.*;
+
+/**
+ * Executes a {@link RegisterProgram}. Registers are tagged slots, like the stack and locals of the
+ * {@link com.github.tth05.teth.bytecodeInterpreter.Interpreter}. Instructions are typed by the compiler, therefore the
+ * tags are only read when a value leaves the register file, e.g. when it is stored in an object or passed to an
+ * intrinsic.
+ * <br>
+ * The register file and the call stack grow on demand, see {@link StackSizes}.
+ */
+public class RegisterInterpreter implements IIntrinsicContext {
+
+    private static final Object LONG_TAG = new Object();
+    private static final Object DOUBLE_TAG = new Object();
+    private static final Object BOOLEAN_TAG = new Object();
+
+    private final RegisterProgram program;
+
+    private final int[] functionAddresses;
+    private final int[] frameSizes;
+    private final int[] constantBases;
+    private final Object[][] constantReferences;
+    private final long[][] constantPrimitives;
+
+    private final StackSizes stackSizes;
+    private Object[] references;
+    private long[] primitives;
+    /**
+     * Return address and frame base of every caller
+     */
+    private int[] callStack;
+
+    /**
+     * The state of the dispatch loop, only valid while the loop is not running
+     */
+    private int programCounter;
+    private int framePointer;
+    private int callStackPointer;
+
+    /**
+     * The frame base and the operand range of the currently invoked intrinsic
+     */
+    private int intrinsicFrameBase;
+    private int intrinsicArgumentsStart;
+    private int intrinsicArgumentsEnd;
+    private int intrinsicResult;
+
+    private volatile boolean killed;
+
+    private OutputStream systemOutStream;
+    private OutputStream systemErrStream;
+
+    public RegisterInterpreter(TethProgram program) {
+        this(RegisterProgram.translate(program));
+    }
+
+    public RegisterInterpreter(RegisterProgram program) {
+        this(program, StackSizes.DEFAULT);
+    }
+
+    public RegisterInterpreter(RegisterProgram program, StackSizes stackSizes) {
+        this.program = program;
+        this.stackSizes = stackSizes;
+        this.references = new Object[stackSizes.initialSize()];
+        this.primitives = new long[stackSizes.initialSize()];
+        this.callStack = new int[stackSizes.initialSize()];
+
+        var functionCount = program.getFunctionCount();
+        this.functionAddresses = new int[functionCount];
+        this.frameSizes = new int[functionCount];
+        this.constantBases = new int[functionCount];
+        this.constantReferences = new Object[functionCount][];
+        this.constantPrimitives = new long[functionCount][];
+        for (int i = 0; i < functionCount; i++) {
+            var function = program.getFunction(i);
+            this.functionAddresses[i] = function.address();
+            this.frameSizes[i] = function.frameSize();
+            this.constantBases[i] = function.constantBase();
+
+            // Constants are stored in the same representation as registers to allow copying them on function entry
+            var constants = function.constants();
+            this.constantReferences[i] = new Object[constants.length];
+            this.constantPrimitives[i] = new long[constants.length];
+            for (int j = 0; j < constants.length; j++)
+                store(this.constantReferences[i], this.constantPrimitives[i], j, constants[j]);
+        }
+    }
+
+    public void setSystemOutStream(OutputStream systemOutStream) {
+        this.systemOutStream = systemOutStream;
+    }
+
+    public void setSystemErrStream(OutputStream systemErrStream) {
+        this.systemErrStream = systemErrStream;
+    }
+
+    public void execute() {
+        initStreams();
+
+        this.programCounter = this.functionAddresses[0];
+        this.framePointer = 0;
+        this.callStackPointer = 0;
+        ensureCapacity(0, this.frameSizes[0]);
+        enterFunction(0, 0);
+
+        try {
+            //noinspection StatementWithEmptyBody
+            while (run()) ;
+        } finally {
+            this.killed = true;
+        }
+    }
+
+    /**
+     * Runs the dispatch loop until the program exits or until the register file or the call stack have to be grown.
+     * The arrays are never replaced while the loop is running, which allows the JIT to keep them in registers.
+     *
+     * @return {@code true} if the loop has to be resumed with the grown arrays
+     */
+    private boolean run() {
+        // These locals exist for micro-optimization
+        var code = this.program.getCode();
+        var refs = this.references;
+        var prims = this.primitives;
+        var callStack = this.callStack;
+        var callStackPointer = this.callStackPointer;
+        var bp = this.framePointer;
+        var pc = this.programCounter;
+
+        try {
+            while (true) {
+                switch (code[pc]) {
+                    case MOVE -> {
+                        var dst = bp + code[pc + 1];
+                        var src = bp + code[pc + 2];
+                        refs[dst] = refs[src];
+                        prims[dst] = prims[src];
+                        pc += 3;
+                    }
+                    case L_ADD -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = LONG_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] + prims[bp + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case D_ADD -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = DOUBLE_TAG;
+                        prims[dst] = toBits(toDouble(prims[bp + code[pc + 2]]) + toDouble(prims[bp + code[pc + 3]]));
+                        pc += 4;
+                    }
+                    case L_SUB -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = LONG_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] - prims[bp + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case D_SUB -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = DOUBLE_TAG;
+                        prims[dst] = toBits(toDouble(prims[bp + code[pc + 2]]) - toDouble(prims[bp + code[pc + 3]]));
+                        pc += 4;
+                    }
+                    case L_MUL -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = LONG_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] * prims[bp + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case D_MUL -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = DOUBLE_TAG;
+                        prims[dst] = toBits(toDouble(prims[bp + code[pc + 2]]) * toDouble(prims[bp + code[pc + 3]]));
+                        pc += 4;
+                    }
+                    case L_DIV -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = LONG_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] / prims[bp + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case D_DIV -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = DOUBLE_TAG;
+                        prims[dst] = toBits(toDouble(prims[bp + code[pc + 2]]) / toDouble(prims[bp + code[pc + 3]]));
+                        pc += 4;
+                    }
+                    case L_POW -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = LONG_TAG;
+                        prims[dst] = (long) Math.pow(prims[bp + code[pc + 2]], prims[bp + code[pc + 3]]);
+                        pc += 4;
+                    }
+                    case D_POW -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = DOUBLE_TAG;
+                        prims[dst] = toBits(Math.pow(toDouble(prims[bp + code[pc + 2]]), toDouble(prims[bp + code[pc + 3]])));
+                        pc += 4;
+                    }
+                    case L_EQUAL -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] == prims[bp + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case D_EQUAL -> {
+                        // Same semantics as Double#equals
+                        var dst = bp + code[pc + 1];
+                        var left = Double.doubleToLongBits(toDouble(prims[bp + code[pc + 2]]));
+                        var right = Double.doubleToLongBits(toDouble(prims[bp + code[pc + 3]]));
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = left == right ? 1 : 0;
+                        pc += 4;
+                    }
+                    case L_LESS -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] < prims[bp + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case D_LESS -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = toDouble(prims[bp + code[pc + 2]]) < toDouble(prims[bp + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case L_LESS_EQUAL -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] <= prims[bp + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case D_LESS_EQUAL -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = toDouble(prims[bp + code[pc + 2]]) <= toDouble(prims[bp + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case L_GREATER -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] > prims[bp + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case D_GREATER -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = toDouble(prims[bp + code[pc + 2]]) > toDouble(prims[bp + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case L_GREATER_EQUAL -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] >= prims[bp + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case D_GREATER_EQUAL -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = toDouble(prims[bp + code[pc + 2]]) >= toDouble(prims[bp + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case B_OR -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] | prims[bp + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case B_AND -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] & prims[bp + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case L_NEGATE -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = LONG_TAG;
+                        prims[dst] = -prims[bp + code[pc + 2]];
+                        pc += 3;
+                    }
+                    case D_NEGATE -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = DOUBLE_TAG;
+                        prims[dst] = toBits(-toDouble(prims[bp + code[pc + 2]]));
+                        pc += 3;
+                    }
+                    case B_INVERT -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = BOOLEAN_TAG;
+                        prims[dst] = prims[bp + code[pc + 2]] ^ 1;
+                        pc += 3;
+                    }
+                    case L_TO_D -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = DOUBLE_TAG;
+                        prims[dst] = toBits((double) prims[bp + code[pc + 2]]);
+                        pc += 3;
+                    }
+                    case D_TO_L -> {
+                        var dst = bp + code[pc + 1];
+                        refs[dst] = LONG_TAG;
+                        prims[dst] = (long) toDouble(prims[bp + code[pc + 2]]);
+                        pc += 3;
+                    }
+                    case JUMP -> {
+                        var target = code[pc + 1];
+                        if (target < pc && this.killed)
+                            return false;
+                        pc = target;
+                    }
+                    case JUMP_IF_FALSE -> pc = prims[bp + code[pc + 1]] != 0 ? pc + 3 : code[pc + 2];
+                    case L_CMP_LT_JUMP ->
+                            pc = prims[bp + code[pc + 1]] < prims[bp + code[pc + 2]] ? pc + 4 : code[pc + 3];
+                    case L_CMP_LE_JUMP ->
+                            pc = prims[bp + code[pc + 1]] <= prims[bp + code[pc + 2]] ? pc + 4 : code[pc + 3];
+                    case L_CMP_GT_JUMP ->
+                            pc = prims[bp + code[pc + 1]] > prims[bp + code[pc + 2]] ? pc + 4 : code[pc + 3];
+                    case L_CMP_GE_JUMP ->
+                            pc = prims[bp + code[pc + 1]] >= prims[bp + code[pc + 2]] ? pc + 4 : code[pc + 3];
+                    case L_CMP_EQ_JUMP ->
+                            pc = prims[bp + code[pc + 1]] == prims[bp + code[pc + 2]] ? pc + 4 : code[pc + 3];
+                    case INVOKE -> {
+                        var functionIndex = code[pc + 1];
+                        var newBp = bp + code[pc + 2];
+                        if (code[pc + 3] != 0 && refs[newBp] == ObjectValue.NULL)
+                            throw new RuntimeException("Cannot call instance function on null value");
+                        if (callStackPointer + 2 > callStack.length || newBp + this.frameSizes[functionIndex] > refs.length) {
+                            // Resume at this instruction once everything fits
+                            ensureCapacity(callStackPointer + 2, newBp + this.frameSizes[functionIndex]);
+                            this.programCounter = pc;
+                            this.framePointer = bp;
+                            this.callStackPointer = callStackPointer;
+                            return true;
+                        }
+
+                        callStack[callStackPointer++] = pc + 4;
+                        callStack[callStackPointer++] = bp;
+                        enterFunction(functionIndex, newBp);
+                        bp = newBp;
+                        pc = this.functionAddresses[functionIndex];
+                    }
+                    case TAIL_INVOKE -> {
+                        // Tail recursion never grows the call stack, so it has to be stoppable like a loop
+                        if (this.killed)
+                            return false;
+
+                        var functionIndex = code[pc + 1];
+                        var firstArgument = bp + code[pc + 2];
+                        if (code[pc + 3] != 0 && refs[firstArgument] == ObjectValue.NULL)
+                            throw new RuntimeException("Cannot call instance function on null value");
+                        if (bp + this.frameSizes[functionIndex] > refs.length) {
+                            ensureCapacity(callStackPointer, bp + this.frameSizes[functionIndex]);
+                            this.programCounter = pc;
+                            this.framePointer = bp;
+                            this.callStackPointer = callStackPointer;
+                            return true;
+                        }
+
+                        // The arguments become the parameters of the invoked function in the current frame
+                        System.arraycopy(refs, firstArgument, refs, bp, code[pc + 4]);
+                        System.arraycopy(prims, firstArgument, prims, bp, code[pc + 4]);
+                        enterFunction(functionIndex, bp);
+                        pc = this.functionAddresses[functionIndex];
+                    }
+                    case INVOKE_INTRINSIC -> pc = invokeIntrinsic(code, pc, bp);
+                    case RETURN -> {
+                        if (callStackPointer == 0)
+                            throw new IllegalStateException("No return address available");
+
+                        var value = bp + code[pc + 1];
+                        refs[bp] = refs[value];
+                        prims[bp] = prims[value];
+                        bp = callStack[--callStackPointer];
+                        pc = callStack[--callStackPointer];
+                    }
+                    case RETURN_VOID -> {
+                        if (callStackPointer == 0)
+                            throw new IllegalStateException("No return address available");
+
+                        bp = callStack[--callStackPointer];
+                        pc = callStack[--callStackPointer];
+                    }
+                    case CREATE_OBJECT -> pc = createObject(code, pc, bp);
+                    case STRING_BUILD -> pc = buildString(code, pc, bp);
+                    case CREATE_LIST_N -> pc = createList(code, pc, bp);
+                    case CREATE_LIST -> {
+                        refs[bp + code[pc + 1]] = new ArrayList<>();
+                        pc += 2;
+                    }
+                    case LOAD_MEMBER -> {
+                        var object = (ObjectValue) refs[bp + code[pc + 2]];
+                        store(refs, prims, bp + code[pc + 1], object.getField(code[pc + 3]));
+                        pc += 4;
+                    }
+                    case STORE_MEMBER -> {
+                        var object = (ObjectValue) refs[bp + code[pc + 1]];
+                        var value = bp + code[pc + 3];
+                        object.setField(code[pc + 2], toObject(refs[value], prims[value]));
+                        pc += 4;
+                    }
+                    case EXIT -> {
+                        return false;
+                    }
+                    case CHECK_INSTANCE -> {
+                        if (refs[bp + code[pc + 1]] == ObjectValue.NULL)
+                            throw new RuntimeException("Cannot call instance function on null value");
+                        pc += 2;
+                    }
+                    default -> throw new IllegalStateException("Unknown op code: " + code[pc]);
+                }
+            }
+        } catch (Throwable e) {
+            if (!this.killed) {
+                this.killed = true;
+                reportError(pc, callStack, callStackPointer, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the error and the Teth call stack to the error stream. The call sites are the {@code INVOKE} instructions
+     * in front of every saved return address.
+     */
+    private void reportError(int pc, int[] callStack, int callStackPointer, Throwable error) {
+        var callSites = new int[callStackPointer / 2 + 1];
+        callSites[0] = this.program.getInstructionIndex(pc);
+        for (int i = 1; i < callSites.length; i++)
+            callSites[i] = this.program.getInstructionIndex(callStack[callStackPointer - 2 * i] - 4);
+
+        ErrorReport.write(this.systemErrStream, this.program.getProgram(), error, callSites);
+    }
+
+    public void kill() {
+        this.killed = true;
+    }
+
+    public boolean isRunning() {
+        return !this.killed;
+    }
+
+    public RegisterProgram getProgram() {
+        return this.program;
+    }
+
+    @Override
+    public StructData getStructData(int structId) {
+        return this.program.getStructData(structId);
+    }
+
+    @Override
+    public OutputStream getOutStream() {
+        return this.systemOutStream;
+    }
+
+    public OutputStream getErrStream() {
+        return this.systemErrStream;
+    }
+
+    @Override
+    public Object pop() {
+        var register = popIntrinsicArgument();
+        return toObject(this.references[register], this.primitives[register]);
+    }
+
+    @Override
+    public long popLong() {
+        var register = popIntrinsicArgument();
+        if (this.references[register] != LONG_TAG)
+            throw new IllegalStateException("Argument is not a long");
+
+        return this.primitives[register];
+    }
+
+    @Override
+    public double popDouble() {
+        var register = popIntrinsicArgument();
+        if (this.references[register] != DOUBLE_TAG)
+            throw new IllegalStateException("Argument is not a double");
+
+        return toDouble(this.primitives[register]);
+    }
+
+    @Override
+    public boolean popBoolean() {
+        var register = popIntrinsicArgument();
+        if (this.references[register] != BOOLEAN_TAG)
+            throw new IllegalStateException("Argument is not a boolean");
+
+        return this.primitives[register] != 0;
+    }
+
+    @Override
+    public void push(Object value) {
+        if (value == null)
+            throw new IllegalArgumentException("Cannot push null");
+
+        store(this.references, this.primitives, takeIntrinsicResult(), value);
+    }
+
+    @Override
+    public void pushLong(long value) {
+        var register = takeIntrinsicResult();
+        this.references[register] = LONG_TAG;
+        this.primitives[register] = value;
+    }
+
+    @Override
+    public void pushDouble(double value) {
+        var register = takeIntrinsicResult();
+        this.references[register] = DOUBLE_TAG;
+        this.primitives[register] = toBits(value);
+    }
+
+    @Override
+    public void pushBoolean(boolean value) {
+        var register = takeIntrinsicResult();
+        this.references[register] = BOOLEAN_TAG;
+        this.primitives[register] = value ? 1 : 0;
+    }
+
+    private int popIntrinsicArgument() {
+        if (this.intrinsicArgumentsEnd == this.intrinsicArgumentsStart)
+            throw new IllegalStateException("No arguments left");
+
+        return this.intrinsicFrameBase + this.program.getCode()[--this.intrinsicArgumentsEnd];
+    }
+
+    private int takeIntrinsicResult() {
+        if (this.intrinsicResult == -1)
+            throw new IllegalStateException("Intrinsic does not return a value");
+
+        var register = this.intrinsicFrameBase + this.intrinsicResult;
+        this.intrinsicResult = -1;
+        return register;
+    }
+
+    private int invokeIntrinsic(int[] code, int pc, int bp) {
+        var argumentCount = code[pc + 3];
+        this.intrinsicFrameBase = bp;
+        this.intrinsicResult = code[pc + 2];
+        this.intrinsicArgumentsStart = pc + 4;
+        this.intrinsicArgumentsEnd = pc + 4 + argumentCount;
+
+        Intrinsics.invoke(this, code[pc + 1]);
+        return pc + 4 + argumentCount;
+    }
+
+    private int createObject(int[] code, int pc, int bp) {
+        var fields = new Object[code[pc + 3]];
+        for (int i = 0; i < fields.length; i++) {
+            var register = bp + code[pc + 4 + i];
+            fields[i] = toObject(this.references[register], this.primitives[register]);
+        }
+
+        this.references[bp + code[pc + 1]] = new ObjectValue(code[pc + 2], fields);
+        return pc + 4 + fields.length;
+    }
+
+    private int createList(int[] code, int pc, int bp) {
+        var elementCount = code[pc + 2];
+        var list = new ArrayList<>(elementCount);
+        for (int i = 0; i < elementCount; i++) {
+            var register = bp + code[pc + 3 + i];
+            list.add(toObject(this.references[register], this.primitives[register]));
+        }
+
+        this.references[bp + code[pc + 1]] = list;
+        return pc + 3 + elementCount;
+    }
+
+    private int buildString(int[] code, int pc, int bp) {
+        var parts = new String[code[pc + 2]];
+        for (int i = 0; i < parts.length; i++)
+            parts[i] = (String) this.references[bp + code[pc + 3 + i]];
+
+        this.references[bp + code[pc + 1]] = Intrinsics.join(parts);
+        return pc + 3 + parts.length;
+    }
+
+    /**
+     * Fills the constant registers of the given function
+     */
+    private void enterFunction(int functionIndex, int bp) {
+        var constantReferences = this.constantReferences[functionIndex];
+        var constantPrimitives = this.constantPrimitives[functionIndex];
+        var constantBase = bp + this.constantBases[functionIndex];
+        for (int i = 0; i < constantReferences.length; i++) {
+            this.references[constantBase + i] = constantReferences[i];
+            this.primitives[constantBase + i] = constantPrimitives[i];
+        }
+    }
+
+    private void ensureCapacity(int callStackSize, int registerCount) {
+        if (callStackSize > this.callStack.length)
+            this.callStack = Arrays.copyOf(this.callStack, this.stackSizes.grow(this.callStack.length, callStackSize, "Call stack"));
+        if (registerCount > this.references.length) {
+            var newSize = this.stackSizes.grow(this.references.length, registerCount, "Register file");
+            this.references = Arrays.copyOf(this.references, newSize);
+            this.primitives = Arrays.copyOf(this.primitives, newSize);
+        }
+    }
+
+    private void initStreams() {
+        if (this.systemOutStream == null)
+            this.systemOutStream = new DataOutputStream(System.out);
+        if (this.systemErrStream == null)
+            this.systemErrStream = new DataOutputStream(System.err);
+    }
+
+    private static void store(Object[] references, long[] primitives, int register, Object value) {
+        if (value instanceof Long l) {
+            references[register] = LONG_TAG;
+            primitives[register] = l;
+        } else if (value instanceof Double d) {
+            references[register] = DOUBLE_TAG;
+            primitives[register] = toBits(d);
+        } else if (value instanceof Boolean b) {
+            references[register] = BOOLEAN_TAG;
+            primitives[register] = b ? 1 : 0;
+        } else {
+            references[register] = value;
+        }
+    }
+
+    private static Object toObject(Object value, long primitiveValue) {
+        if (value == LONG_TAG)
+            return primitiveValue;
+        if (value == DOUBLE_TAG)
+            return toDouble(primitiveValue);
+        if (value == BOOLEAN_TAG)
+            return primitiveValue != 0;
+
+        return value;
+    }
+
+    private static double toDouble(long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long toBits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+}
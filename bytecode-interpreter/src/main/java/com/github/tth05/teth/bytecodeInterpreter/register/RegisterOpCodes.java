@@ -0,0 +1,149 @@
+package com.github.tth05.teth.bytecodeInterpreter.register;
+
+/**
+ * <p>
+ * Op codes of the register VM. Every instruction is stored as its op code followed by its operands. All register
+ * operands are indices into the frame of the current function, which is laid out as follows:
+ * <pre><code>
+ * param1,..., paramN, local1,..., localN, constant1,..., constantN, temporary1,..., temporaryN
+ * </code></pre>
+ * Constant registers are filled when the function is entered and never written afterwards. Temporaries hold the
+ * values which the stack VM would keep on its operand stack, temporary {@code N} corresponds to stack depth {@code N}.
+ * <br>
+ * The arguments of a call are placed in consecutive temporaries. The frame of the called function starts at the first
+ * argument, so parameters are passed without copying. A returned value is written to the first register of the called
+ * function's frame, where the caller expects it.
+ */
+public interface RegisterOpCodes {
+
+    /**
+     * Copies a register.
+     * <br>
+     * Operands: {@code dst, src}
+     */
+    int MOVE = 0;
+    /**
+     * Binary arithmetic on longs/doubles.
+     * <br>
+     * Operands: {@code dst, left, right}
+     */
+    int L_ADD = MOVE + 1;
+    int D_ADD = L_ADD + 1;
+    int L_SUB = D_ADD + 1;
+    int D_SUB = L_SUB + 1;
+    int L_MUL = D_SUB + 1;
+    int D_MUL = L_MUL + 1;
+    int L_DIV = D_MUL + 1;
+    int D_DIV = L_DIV + 1;
+    int L_POW = D_DIV + 1;
+    int D_POW = L_POW + 1;
+    /**
+     * Comparisons and logical operations, the result is a boolean.
+     * <br>
+     * Operands: {@code dst, left, right}
+     */
+    int L_EQUAL = D_POW + 1;
+    int D_EQUAL = L_EQUAL + 1;
+    int L_LESS = D_EQUAL + 1;
+    int D_LESS = L_LESS + 1;
+    int L_LESS_EQUAL = D_LESS + 1;
+    int D_LESS_EQUAL = L_LESS_EQUAL + 1;
+    int L_GREATER = D_LESS_EQUAL + 1;
+    int D_GREATER = L_GREATER + 1;
+    int L_GREATER_EQUAL = D_GREATER + 1;
+    int D_GREATER_EQUAL = L_GREATER_EQUAL + 1;
+    int B_OR = D_GREATER_EQUAL + 1;
+    int B_AND = B_OR + 1;
+    /**
+     * Unary operations.
+     * <br>
+     * Operands: {@code dst, value}
+     */
+    int L_NEGATE = B_AND + 1;
+    int D_NEGATE = L_NEGATE + 1;
+    int B_INVERT = D_NEGATE + 1;
+    int L_TO_D = B_INVERT + 1;
+    int D_TO_L = L_TO_D + 1;
+    /**
+     * Unconditional jump. Jumps backwards check whether the interpreter has been killed.
+     * <br>
+     * Operands: {@code address}
+     */
+    int JUMP = D_TO_L + 1;
+    /**
+     * Jumps if the given boolean register is false.
+     * <br>
+     * Operands: {@code condition, address}
+     */
+    int JUMP_IF_FALSE = JUMP + 1;
+    /**
+     * Compares two longs and jumps if the comparison is false.
+     * <br>
+     * Operands: {@code left, right, address}
+     */
+    int L_CMP_LT_JUMP = JUMP_IF_FALSE + 1;
+    int L_CMP_LE_JUMP = L_CMP_LT_JUMP + 1;
+    int L_CMP_GT_JUMP = L_CMP_LE_JUMP + 1;
+    int L_CMP_GE_JUMP = L_CMP_GT_JUMP + 1;
+    int L_CMP_EQ_JUMP = L_CMP_GE_JUMP + 1;
+    /**
+     * Invokes a function. The arguments are stored in consecutive registers, starting at {@code firstArgument}. The
+     * return value, if any, is stored in {@code firstArgument}.
+     * <br>
+     * Operands: {@code function index, firstArgument, 0 or 1 for instance functions}
+     */
+    int INVOKE = L_CMP_EQ_JUMP + 1;
+    /**
+     * Invokes an intrinsic function. {@code dst} is -1 if the intrinsic does not return a value.
+     * <br>
+     * Operands: {@code intrinsic id, dst, argument count, argument1,..., argumentN}
+     */
+    int INVOKE_INTRINSIC = INVOKE + 1;
+    /**
+     * Returns the given register to the caller.
+     * <br>
+     * Operands: {@code value}
+     */
+    int RETURN = INVOKE_INTRINSIC + 1;
+    int RETURN_VOID = RETURN + 1;
+    /**
+     * Operands: {@code dst, struct id, field count, field1,..., fieldN}
+     */
+    int CREATE_OBJECT = RETURN_VOID + 1;
+    /**
+     * Operands: {@code dst}
+     */
+    int CREATE_LIST = CREATE_OBJECT + 1;
+    /**
+     * Operands: {@code dst, object, field index}
+     */
+    int LOAD_MEMBER = CREATE_LIST + 1;
+    /**
+     * Operands: {@code object, field index, value}
+     */
+    int STORE_MEMBER = LOAD_MEMBER + 1;
+    int EXIT = STORE_MEMBER + 1;
+    /**
+     * Throws if the given register is null, see {@link com.github.tth05.teth.bytecode.op.OpCodes#CHECK_INSTANCE}.
+     * <br>
+     * Operands: {@code object}
+     */
+    int CHECK_INSTANCE = EXIT + 1;
+    /**
+     * Same as {@link #INVOKE}, but the invoked function replaces the frame of the current function and returns directly
+     * to its caller, see {@link com.github.tth05.teth.bytecode.op.OpCodes#TAIL_INVOKE}.
+     * <br>
+     * Operands: {@code function index, firstArgument, 0 or 1 for instance functions, argument count}
+     */
+    int TAIL_INVOKE = CHECK_INSTANCE + 1;
+    /**
+     * Joins the given string registers, see {@link com.github.tth05.teth.bytecode.op.OpCodes#STRING_BUILD}.
+     * <br>
+     * Operands: {@code dst, part count, part1,..., partN}
+     */
+    int STRING_BUILD = TAIL_INVOKE + 1;
+    /**
+     * Operands: {@code dst, element count, element1,..., elementN}
+     */
+    int CREATE_LIST_N = STRING_BUILD + 1;
+}
@@ -0,0 +1,106 @@
+package com.github.tth05.teth.bytecodeInterpreter.register;
+
+import com.github.tth05.teth.bytecode.op.IInstrunction;
+import com.github.tth05.teth.bytecode.program.StructData;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A {@link TethProgram} translated to the register instruction set, see {@link RegisterOpCodes}. The first function
+ * is the global function, which is the entry point of the program.
+ * <br>
+ * A register program is immutable and can therefore be shared by any number of interpreters.
+ */
+public class RegisterProgram {
+
+    private final TethProgram program;
+    private final int[] code;
+    private final RegisterFunction[] functions;
+    /**
+     * The index of the original instruction for every code address
+     */
+    private final int[] instructionIndices;
+
+    private RegisterProgram(TethProgram program, int[] code, RegisterFunction[] functions, int[] instructionIndices) {
+        this.program = program;
+        this.code = code;
+        this.functions = functions;
+        this.instructionIndices = instructionIndices;
+    }
+
+    public int[] getCode() {
+        return this.code;
+    }
+
+    public RegisterFunction getFunction(int functionIndex) {
+        return this.functions[functionIndex];
+    }
+
+    public int getFunctionCount() {
+        return this.functions.length;
+    }
+
+    public StructData getStructData(int structId) {
+        return this.program.getStructData()[structId];
+    }
+
+    public TethProgram getProgram() {
+        return this.program;
+    }
+
+    /**
+     * @return The original instruction which the instruction at the given code address was translated from
+     */
+    public IInstrunction getInstruction(int address) {
+        return this.program.getInstructions()[getInstructionIndex(address)];
+    }
+
+    public int getInstructionIndex(int address) {
+        return this.instructionIndices[address];
+    }
+
+    /**
+     * Translates all functions of the given program.
+     *
+     * @throws IllegalArgumentException If the program contains instructions which have no register equivalent
+     */
+    public static RegisterProgram translate(TethProgram program) {
+        var functionData = program.getFunctionData();
+        var functions = new RegisterFunction[functionData.length];
+        var functionIndices = new HashMap<Integer, Integer>();
+        for (int i = 0; i < functionData.length; i++)
+            functionIndices.put(functionData[i].offset(), i);
+
+        var code = new ArrayList<int[]>();
+        var instructionIndices = new ArrayList<int[]>();
+
+        var address = 0;
+        for (int i = 0; i < functionData.length; i++) {
+            var translator = new RegisterTranslator(program, functionIndices, i);
+            var functionCode = translator.translate(address);
+            functions[i] = new RegisterFunction(
+                    functionData[i].name(), address, translator.getInstructionCount(), translator.getFrameSize(),
+                    translator.getConstantBase(), translator.getConstants()
+            );
+
+            code.add(functionCode);
+            instructionIndices.add(translator.getInstructionIndices());
+            address += functionCode.length;
+        }
+
+        return new RegisterProgram(program, concat(code, address), functions, concat(instructionIndices, address));
+    }
+
+    private static int[] concat(ArrayList<int[]> arrays, int length) {
+        var result = new int[length];
+        var index = 0;
+        for (var array : arrays) {
+            System.arraycopy(array, 0, result, index, array.length);
+            index += array.length;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,509 @@
+package com.github.tth05.teth.bytecodeInterpreter.register;
+
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.bytecode.program.FunctionData;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.bytecodeInterpreter.Intrinsics;
+import com.github.tth05.teth.bytecodeInterpreter.ObjectValue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates a single function from stack code to register code. The operand stack is simulated during the
+ * translation, every entry of the simulated stack is the register which holds the value of that entry. Loading a local
+ * or a constant only pushes the register of that local or constant, values are copied into their temporary only when
+ * required, e.g. before jumps or when they are passed to a function. The result of an operation which is directly
+ * stored into a local is written to that local instead of a temporary. Together, this turns a statement like
+ * {@code a = b + c} into a single instruction.
+ */
+class RegisterTranslator {
+
+    private final TethProgram program;
+    private final Map<Integer, Integer> functionIndices;
+    private final FunctionData data;
+
+    /**
+     * The stack depth before each instruction, -1 for unreachable instructions
+     */
+    private final int[] depths;
+    private final boolean[] jumpTargets;
+    private final Map<Object, Integer> constants = new LinkedHashMap<>();
+    private int maxDepth;
+
+    private int constantBase;
+    private int temporaryBase;
+
+    private int[] code = new int[64];
+    private int[] instructionIndices = new int[64];
+    private int codeSize;
+    private int instructionCount;
+    private int currentInstruction;
+    private final List<int[]> jumpPatches = new ArrayList<>();
+
+    /**
+     * The registers of the simulated stack
+     */
+    private int[] stack;
+    private int stackSize;
+    /**
+     * The code index of the destination operand of the last emitted instruction, if that instruction produced the top
+     * stack entry. -1 otherwise.
+     */
+    private int lastResultOperand = -1;
+
+    RegisterTranslator(TethProgram program, Map<Integer, Integer> functionIndices, int functionIndex) {
+        this.program = program;
+        this.functionIndices = functionIndices;
+        this.data = program.getFunctionData()[functionIndex];
+        this.depths = new int[this.data.instructionCount()];
+        this.jumpTargets = new boolean[this.data.instructionCount()];
+    }
+
+    /**
+     * @param address The code address at which the translated function will be located
+     * @return The translated code
+     */
+    int[] translate(int address) {
+        analyze();
+
+        this.constantBase = this.data.localTypes().length;
+        this.temporaryBase = this.constantBase + this.constants.size();
+        this.stack = new int[this.maxDepth];
+
+        var instructionAddresses = new int[this.depths.length];
+        var fallsThrough = false;
+        for (int i = 0; i < this.depths.length; i++) {
+            if (this.depths[i] == -1) {
+                instructionAddresses[i] = address + this.codeSize;
+                fallsThrough = false;
+                continue;
+            }
+
+            if (this.jumpTargets[i] || !fallsThrough) {
+                if (fallsThrough)
+                    flush();
+                resetStack(this.depths[i]);
+            }
+
+            // After the moves of the fall-through path, jumps already stored their values in the temporaries
+            instructionAddresses[i] = address + this.codeSize;
+            this.currentInstruction = i;
+            fallsThrough = translate(getInstruction(i));
+        }
+
+        for (var patch : this.jumpPatches)
+            this.code[patch[0]] = instructionAddresses[patch[1]];
+
+        return Arrays.copyOf(this.code, this.codeSize);
+    }
+
+    /**
+     * Computes the stack depth before each instruction and collects all constants
+     */
+    private void analyze() {
+        Arrays.fill(this.depths, -1);
+        this.depths[0] = 0;
+
+        var worklist = new ArrayDeque<Integer>();
+        worklist.add(0);
+        while (!worklist.isEmpty()) {
+            int index = worklist.poll();
+            var insn = getInstruction(index);
+
+            var depth = this.depths[index] - getPopCount(insn);
+            if (depth < 0)
+                throw new IllegalArgumentException("Stack underflow in function " + this.data.name());
+            depth += getPushCount(insn);
+            this.maxDepth = Math.max(this.maxDepth, depth);
+
+            var constant = getConstant(insn);
+            if (constant != null)
+                this.constants.putIfAbsent(constant, this.constants.size());
+
+            var opCode = insn.getOpCode();
+            if (insn instanceof IJumpInstruction jumpInsn) {
+                var target = index + jumpInsn.getRelativeJumpOffset() + 1;
+                merge(target, depth, worklist);
+                this.jumpTargets[target] = true;
+            }
+            if (opCode != OpCodes.JUMP && opCode != OpCodes.RETURN && opCode != OpCodes.EXIT)
+                merge(index + 1, depth, worklist);
+        }
+    }
+
+    private void merge(int index, int depth, ArrayDeque<Integer> worklist) {
+        if (index < 0 || index >= this.depths.length)
+            throw new IllegalArgumentException("Jump out of function " + this.data.name());
+
+        if (this.depths[index] == -1) {
+            this.depths[index] = depth;
+            worklist.add(index);
+        } else if (this.depths[index] != depth) {
+            throw new IllegalArgumentException("Inconsistent stack depth in function " + this.data.name());
+        }
+    }
+
+    /**
+     * @return {@code true} if execution can continue with the next instruction
+     */
+    private boolean translate(IInstrunction insn) {
+        var opCode = insn.getOpCode();
+        switch (opCode) {
+            case OpCodes.L_CONST, OpCodes.D_CONST, OpCodes.B_CONST, OpCodes.S_CONST, OpCodes.NULL_CONST ->
+                    push(getConstantRegister(getConstant(insn)));
+            case OpCodes.LOAD_LOCAL -> push(((LOAD_LOCAL_Insn) insn).getLocalIndex());
+            case OpCodes.STORE_LOCAL -> storeLocal(((STORE_LOCAL_Insn) insn).getLocalIndex());
+            case OpCodes.L_INC_LOCAL -> {
+                var incInsn = (L_INC_LOCAL_Insn) insn;
+                var local = incInsn.getLocalIndex();
+                materializeReferences(local);
+                emit(RegisterOpCodes.L_ADD, local, local, getConstantRegister(incInsn.getValue()));
+            }
+            case OpCodes.L_ADD -> binary(RegisterOpCodes.L_ADD);
+            case OpCodes.D_ADD -> binary(RegisterOpCodes.D_ADD);
+            case OpCodes.L_SUB -> binary(RegisterOpCodes.L_SUB);
+            case OpCodes.D_SUB -> binary(RegisterOpCodes.D_SUB);
+            case OpCodes.L_MUL -> binary(RegisterOpCodes.L_MUL);
+            case OpCodes.D_MUL -> binary(RegisterOpCodes.D_MUL);
+            case OpCodes.L_DIV -> binary(RegisterOpCodes.L_DIV);
+            case OpCodes.D_DIV -> binary(RegisterOpCodes.D_DIV);
+            case OpCodes.L_POW -> binary(RegisterOpCodes.L_POW);
+            case OpCodes.D_POW -> binary(RegisterOpCodes.D_POW);
+            case OpCodes.L_EQUAL -> binary(RegisterOpCodes.L_EQUAL);
+            case OpCodes.D_EQUAL -> binary(RegisterOpCodes.D_EQUAL);
+            case OpCodes.L_LESS -> binary(RegisterOpCodes.L_LESS);
+            case OpCodes.D_LESS -> binary(RegisterOpCodes.D_LESS);
+            case OpCodes.L_LESS_EQUAL -> binary(RegisterOpCodes.L_LESS_EQUAL);
+            case OpCodes.D_LESS_EQUAL -> binary(RegisterOpCodes.D_LESS_EQUAL);
+            case OpCodes.L_GREATER -> binary(RegisterOpCodes.L_GREATER);
+            case OpCodes.D_GREATER -> binary(RegisterOpCodes.D_GREATER);
+            case OpCodes.L_GREATER_EQUAL -> binary(RegisterOpCodes.L_GREATER_EQUAL);
+            case OpCodes.D_GREATER_EQUAL -> binary(RegisterOpCodes.D_GREATER_EQUAL);
+            case OpCodes.B_OR -> binary(RegisterOpCodes.B_OR);
+            case OpCodes.B_AND -> binary(RegisterOpCodes.B_AND);
+            case OpCodes.L_NEGATE -> unary(RegisterOpCodes.L_NEGATE);
+            case OpCodes.D_NEGATE -> unary(RegisterOpCodes.D_NEGATE);
+            case OpCodes.B_INVERT -> unary(RegisterOpCodes.B_INVERT);
+            case OpCodes.L_TO_D -> unary(RegisterOpCodes.L_TO_D);
+            case OpCodes.D_TO_L -> unary(RegisterOpCodes.D_TO_L);
+            case OpCodes.DUP -> push(this.stack[this.stackSize - 1]);
+            case OpCodes.POP -> this.stackSize--;
+            case OpCodes.JUMP -> {
+                flush();
+                emitJump(RegisterOpCodes.JUMP, insn);
+                return false;
+            }
+            case OpCodes.JUMP_IF_FALSE -> {
+                var condition = pop();
+                flush();
+                emitJump(RegisterOpCodes.JUMP_IF_FALSE, insn, condition);
+            }
+            case OpCodes.L_CMP_LT_JUMP -> compareJump(RegisterOpCodes.L_CMP_LT_JUMP, insn);
+            case OpCodes.L_CMP_LE_JUMP -> compareJump(RegisterOpCodes.L_CMP_LE_JUMP, insn);
+            case OpCodes.L_CMP_GT_JUMP -> compareJump(RegisterOpCodes.L_CMP_GT_JUMP, insn);
+            case OpCodes.L_CMP_GE_JUMP -> compareJump(RegisterOpCodes.L_CMP_GE_JUMP, insn);
+            case OpCodes.L_CMP_EQ_JUMP -> compareJump(RegisterOpCodes.L_CMP_EQ_JUMP, insn);
+            case OpCodes.INVOKE, OpCodes.TAIL_INVOKE -> {
+                var invokeInsn = (INVOKE_Insn) insn;
+                var functionIndex = this.functionIndices.get(invokeInsn.getAbsoluteJumpAddress() + 1);
+                if (functionIndex == null)
+                    throw new IllegalArgumentException("Invoked function has no function data");
+
+                // Arguments have to be in consecutive registers, which become the parameters of the invoked function
+                var firstArgument = this.stackSize - invokeInsn.getParamCount();
+                for (int i = firstArgument; i < this.stackSize; i++)
+                    materialize(i);
+                this.stackSize = firstArgument;
+
+                if (insn.getOpCode() == OpCodes.TAIL_INVOKE)
+                    emit(RegisterOpCodes.TAIL_INVOKE, functionIndex, this.temporaryBase + firstArgument, invokeInsn.isInstanceFunction() ? 1 : 0, invokeInsn.getParamCount());
+                else
+                    emit(RegisterOpCodes.INVOKE, functionIndex, this.temporaryBase + firstArgument, invokeInsn.isInstanceFunction() ? 1 : 0);
+                if (invokeInsn.returnsValue())
+                    pushTemporary();
+            }
+            case OpCodes.INVOKE_INTRINSIC -> {
+                var function = ((INVOKE_INTRINSIC_Insn) insn).getFunctionDeclaration();
+                var arguments = popArguments(getPopCount(insn));
+                var result = getPushCount(insn) != 0 ? pushTemporary() : -1;
+
+                emit(RegisterOpCodes.INVOKE_INTRINSIC, concat(new int[]{Intrinsics.getId(function), result, arguments.length}, arguments));
+                if (result != -1)
+                    this.lastResultOperand = this.codeSize - arguments.length - 2;
+            }
+            case OpCodes.CREATE_OBJECT -> {
+                var createInsn = (CREATE_OBJECT_Insn) insn;
+                var fields = popArguments(createInsn.getFieldCount());
+                var result = pushTemporary();
+
+                emit(RegisterOpCodes.CREATE_OBJECT, concat(new int[]{result, createInsn.getStructId(), fields.length}, fields));
+                this.lastResultOperand = this.codeSize - fields.length - 3;
+            }
+            case OpCodes.STRING_BUILD -> {
+                var parts = popArguments(((STRING_BUILD_Insn) insn).getPartCount());
+                var result = pushTemporary();
+
+                emit(RegisterOpCodes.STRING_BUILD, concat(new int[]{result, parts.length}, parts));
+                this.lastResultOperand = this.codeSize - parts.length - 2;
+            }
+            case OpCodes.CREATE_LIST -> emitResult(RegisterOpCodes.CREATE_LIST);
+            case OpCodes.CREATE_LIST_N -> {
+                var elements = popArguments(((CREATE_LIST_N_Insn) insn).getElementCount());
+                var result = pushTemporary();
+
+                emit(RegisterOpCodes.CREATE_LIST_N, concat(new int[]{result, elements.length}, elements));
+                this.lastResultOperand = this.codeSize - elements.length - 2;
+            }
+            case OpCodes.LOAD_MEMBER -> {
+                var object = pop();
+                emitResult(RegisterOpCodes.LOAD_MEMBER, object, ((LOAD_MEMBER_Insn) insn).getFieldIndex());
+            }
+            case OpCodes.LOAD_LOCAL_LOAD_MEMBER -> {
+                var loadInsn = (LOAD_LOCAL_LOAD_MEMBER_Insn) insn;
+                emitResult(RegisterOpCodes.LOAD_MEMBER, loadInsn.getLocalIndex(), loadInsn.getFieldIndex());
+            }
+            case OpCodes.CHECK_INSTANCE -> emit(RegisterOpCodes.CHECK_INSTANCE, this.stack[this.stackSize - 1]);
+            case OpCodes.STORE_MEMBER -> {
+                var object = pop();
+                var value = pop();
+                emit(RegisterOpCodes.STORE_MEMBER, object, ((STORE_MEMBER_Insn) insn).getFieldIndex(), value);
+            }
+            case OpCodes.RETURN -> {
+                if (((RETURN_Insn) insn).shouldReturnValue())
+                    emit(RegisterOpCodes.RETURN, pop());
+                else
+                    emit(RegisterOpCodes.RETURN_VOID);
+                return false;
+            }
+            case OpCodes.EXIT -> {
+                emit(RegisterOpCodes.EXIT);
+                return false;
+            }
+            default -> throw new IllegalArgumentException("Unsupported instruction: " + insn.getDebugString());
+        }
+
+        return true;
+    }
+
+    private void storeLocal(int local) {
+        var lastResultOperand = this.lastResultOperand;
+        var value = pop();
+        if (lastResultOperand != -1 && value == this.temporaryBase + this.stackSize && !isReferenced(local)) {
+            // Let the instruction which computed the value write it to the local directly
+            this.code[lastResultOperand] = local;
+            this.lastResultOperand = -1;
+            return;
+        }
+
+        materializeReferences(local);
+        if (value != local)
+            emit(RegisterOpCodes.MOVE, local, value);
+    }
+
+    private void binary(int opCode) {
+        var right = pop();
+        var left = pop();
+        emitResult(opCode, left, right);
+    }
+
+    private void unary(int opCode) {
+        emitResult(opCode, pop());
+    }
+
+    private void compareJump(int opCode, IInstrunction insn) {
+        var right = pop();
+        var left = pop();
+        flush();
+        emitJump(opCode, insn, left, right);
+    }
+
+    private int[] popArguments(int count) {
+        this.stackSize -= count;
+        return Arrays.copyOfRange(this.stack, this.stackSize, this.stackSize + count);
+    }
+
+    private void push(int register) {
+        this.stack[this.stackSize++] = register;
+    }
+
+    private int pushTemporary() {
+        var register = this.temporaryBase + this.stackSize;
+        push(register);
+        return register;
+    }
+
+    private int pop() {
+        return this.stack[--this.stackSize];
+    }
+
+    private void resetStack(int depth) {
+        for (int i = 0; i < depth; i++)
+            this.stack[i] = this.temporaryBase + i;
+        this.stackSize = depth;
+        this.lastResultOperand = -1;
+    }
+
+    /**
+     * Copies the value of the given stack entry into its temporary, if it is not already stored there
+     */
+    private void materialize(int index) {
+        var temporary = this.temporaryBase + index;
+        if (this.stack[index] == temporary)
+            return;
+
+        emit(RegisterOpCodes.MOVE, temporary, this.stack[index]);
+        this.stack[index] = temporary;
+    }
+
+    /**
+     * Materializes all stack entries, which is required before control flow merges
+     */
+    private void flush() {
+        for (int i = 0; i < this.stackSize; i++)
+            materialize(i);
+    }
+
+    /**
+     * Materializes all stack entries which refer to the given register, which is required before it is written
+     */
+    private void materializeReferences(int register) {
+        for (int i = 0; i < this.stackSize; i++) {
+            if (this.stack[i] == register)
+                materialize(i);
+        }
+    }
+
+    private boolean isReferenced(int register) {
+        for (int i = 0; i < this.stackSize; i++) {
+            if (this.stack[i] == register)
+                return true;
+        }
+
+        return false;
+    }
+
+    private void emitResult(int opCode, int... operands) {
+        var result = pushTemporary();
+        emit(opCode, concat(new int[]{result}, operands));
+        this.lastResultOperand = this.codeSize - operands.length - 1;
+    }
+
+    private void emitJump(int opCode, IInstrunction insn, int... operands) {
+        emit(opCode, concat(operands, new int[]{-1}));
+
+        var target = this.currentInstruction + ((IJumpInstruction) insn).getRelativeJumpOffset() + 1;
+        this.jumpPatches.add(new int[]{this.codeSize - 1, target});
+    }
+
+    private void emit(int opCode, int... operands) {
+        ensureCapacity(operands.length + 1);
+
+        var instructionIndex = this.data.offset() + this.currentInstruction;
+        this.instructionIndices[this.codeSize] = instructionIndex;
+        this.code[this.codeSize++] = opCode;
+        for (var operand : operands) {
+            this.instructionIndices[this.codeSize] = instructionIndex;
+            this.code[this.codeSize++] = operand;
+        }
+
+        this.instructionCount++;
+        this.lastResultOperand = -1;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (this.codeSize + additional <= this.code.length)
+            return;
+
+        var newLength = Math.max(this.code.length * 2, this.codeSize + additional);
+        this.code = Arrays.copyOf(this.code, newLength);
+        this.instructionIndices = Arrays.copyOf(this.instructionIndices, newLength);
+    }
+
+    private int getConstantRegister(Object constant) {
+        return this.constantBase + this.constants.get(constant);
+    }
+
+    private IInstrunction getInstruction(int index) {
+        return this.program.getInstructions()[this.data.offset() + index];
+    }
+
+    int getInstructionCount() {
+        return this.instructionCount;
+    }
+
+    int getFrameSize() {
+        return this.temporaryBase + this.maxDepth;
+    }
+
+    int getConstantBase() {
+        return this.constantBase;
+    }
+
+    Object[] getConstants() {
+        return this.constants.keySet().toArray();
+    }
+
+    int[] getInstructionIndices() {
+        return Arrays.copyOf(this.instructionIndices, this.codeSize);
+    }
+
+    private static Object getConstant(IInstrunction insn) {
+        return switch (insn.getOpCode()) {
+            case OpCodes.L_CONST -> ((L_CONST_Insn) insn).getValue();
+            case OpCodes.D_CONST -> ((D_CONST_Insn) insn).getValue();
+            case OpCodes.B_CONST -> ((B_CONST_Insn) insn).getValue();
+            case OpCodes.S_CONST -> ((S_CONST_Insn) insn).getValue();
+            case OpCodes.NULL_CONST -> ObjectValue.NULL;
+            case OpCodes.L_INC_LOCAL -> ((L_INC_LOCAL_Insn) insn).getValue();
+            default -> null;
+        };
+    }
+
+    private static int getPopCount(IInstrunction insn) {
+        return switch (insn.getOpCode()) {
+            case OpCodes.STORE_LOCAL, OpCodes.POP, OpCodes.JUMP_IF_FALSE, OpCodes.L_NEGATE, OpCodes.D_NEGATE,
+                    OpCodes.B_INVERT, OpCodes.L_TO_D, OpCodes.D_TO_L, OpCodes.DUP, OpCodes.LOAD_MEMBER -> 1;
+            case OpCodes.L_ADD, OpCodes.D_ADD, OpCodes.L_SUB, OpCodes.D_SUB, OpCodes.L_MUL, OpCodes.D_MUL,
+                    OpCodes.L_DIV, OpCodes.D_DIV, OpCodes.L_POW, OpCodes.D_POW, OpCodes.L_EQUAL, OpCodes.D_EQUAL,
+                    OpCodes.L_LESS, OpCodes.D_LESS, OpCodes.L_LESS_EQUAL, OpCodes.D_LESS_EQUAL, OpCodes.L_GREATER,
+                    OpCodes.D_GREATER, OpCodes.L_GREATER_EQUAL, OpCodes.D_GREATER_EQUAL, OpCodes.B_OR,
+                    OpCodes.B_AND, OpCodes.L_CMP_LT_JUMP, OpCodes.L_CMP_LE_JUMP, OpCodes.L_CMP_GT_JUMP,
+                    OpCodes.L_CMP_GE_JUMP, OpCodes.L_CMP_EQ_JUMP, OpCodes.STORE_MEMBER -> 2;
+            case OpCodes.CREATE_OBJECT -> ((CREATE_OBJECT_Insn) insn).getFieldCount();
+            case OpCodes.STRING_BUILD -> ((STRING_BUILD_Insn) insn).getPartCount();
+            case OpCodes.CREATE_LIST_N -> ((CREATE_LIST_N_Insn) insn).getElementCount();
+            case OpCodes.INVOKE, OpCodes.TAIL_INVOKE -> ((INVOKE_Insn) insn).getParamCount();
+            case OpCodes.INVOKE_INTRINSIC -> {
+                var function = ((INVOKE_INTRINSIC_Insn) insn).getFunctionDeclaration();
+                yield function.getParameters().size() + (function.isInstanceFunction() ? 1 : 0);
+            }
+            case OpCodes.RETURN -> ((RETURN_Insn) insn).shouldReturnValue() ? 1 : 0;
+            default -> 0;
+        };
+    }
+
+    private static int getPushCount(IInstrunction insn) {
+        return switch (insn.getOpCode()) {
+            case OpCodes.STORE_LOCAL, OpCodes.POP, OpCodes.JUMP, OpCodes.JUMP_IF_FALSE, OpCodes.L_CMP_LT_JUMP,
+                    OpCodes.L_CMP_LE_JUMP, OpCodes.L_CMP_GT_JUMP, OpCodes.L_CMP_GE_JUMP, OpCodes.L_CMP_EQ_JUMP,
+                    OpCodes.L_INC_LOCAL, OpCodes.STORE_MEMBER, OpCodes.RETURN, OpCodes.EXIT,
+                    OpCodes.CHECK_INSTANCE -> 0;
+            case OpCodes.DUP -> 2;
+            case OpCodes.INVOKE, OpCodes.TAIL_INVOKE -> ((INVOKE_Insn) insn).returnsValue() ? 1 : 0;
+            case OpCodes.INVOKE_INTRINSIC ->
+                    ((INVOKE_INTRINSIC_Insn) insn).getFunctionDeclaration().getReturnTypeExpr() != null ? 1 : 0;
+            default -> 1;
+        };
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        var result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
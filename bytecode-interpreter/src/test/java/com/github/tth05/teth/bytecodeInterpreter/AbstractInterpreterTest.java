@@ -43,9 +43,18 @@ public abstract class AbstractInterpreterTest {
     }
 
     protected TethProgram compile(String code) {
+        return compile(code, true);
+    }
+
+    /**
+     * @param inline {@code false} to keep all calls, e.g. for tests which observe the calls of small functions
+     */
+    protected TethProgram compile(String code, boolean inline) {
         createAST(code);
         var c = new Compiler();
         c.setEntryPoint(this.unit);
+        if (!inline)
+            c.setMaxInlineSize(0);
         var result = c.compile();
         if (result.hasProblems()) {
             result.logProblems(System.err, true);
@@ -0,0 +1,81 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InterpreterPoolTest extends AbstractInterpreterTest {
+
+    @Test
+    public void testConcurrentExecutionsHaveSeparateOutput() {
+        var program = LinkedProgram.link(compile("""
+                fn fib(n: long) long {
+                    if (n <= 1) return n
+                    return fib(n - 1) + fib(n - 2)
+                }
+                let l = [0]
+                loop (let i = 0, i < 1000, i = i + 1) l.add(fib(i / 50))
+                print(l.get(999))
+                print(l.size())
+                """));
+
+        try (var pool = new InterpreterPool(program, StackSizes.DEFAULT, 4, false)) {
+            var outputs = new ArrayList<ByteArrayOutputStream>();
+            var futures = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < 32; i++) {
+                var out = new ByteArrayOutputStream();
+                outputs.add(out);
+                futures.add(pool.submit(out, OutputStream.nullOutputStream()));
+            }
+
+            futures.forEach(CompletableFuture::join);
+            for (var out : outputs)
+                assertEquals("4181" + System.lineSeparator() + "1001" + System.lineSeparator(), out.toString());
+            assertTrue(pool.getIdleInterpreterCount() <= 4);
+        }
+    }
+
+    @Test
+    public void testInterpreterIsReusedAfterError() {
+        var program = LinkedProgram.link(compile("""
+                struct S {
+                    a: long
+                    fn get() long { return self.a }
+                }
+                let s = new S(1)
+                print(s.get())
+                s = null
+                print(s.get())
+                """));
+
+        try (var pool = new InterpreterPool(program, StackSizes.DEFAULT, 1, false)) {
+            for (int i = 0; i < 3; i++) {
+                var out = new ByteArrayOutputStream();
+                var exception = assertThrows(CompletionException.class, () -> pool.submit(out, OutputStream.nullOutputStream()).join());
+                assertEquals("Cannot call instance function on null value", exception.getCause().getMessage());
+                assertEquals("1" + System.lineSeparator(), out.toString());
+                assertEquals(1, pool.getIdleInterpreterCount());
+            }
+        }
+    }
+
+    @Test
+    public void testVirtualThreads() {
+        if (!InterpreterPool.isVirtualThreadSupported()) {
+            assertThrows(UnsupportedOperationException.class, () -> new InterpreterPool(LinkedProgram.link(compile("")), StackSizes.DEFAULT, 1, true));
+            return;
+        }
+
+        try (var pool = new InterpreterPool(LinkedProgram.link(compile("print(5)")), StackSizes.DEFAULT, 2, true)) {
+            var out = new ByteArrayOutputStream();
+            pool.submit(out, OutputStream.nullOutputStream()).join();
+            assertEquals("5" + System.lineSeparator(), out.toString());
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package com.github.tth05.teth.bytecodeInterpreter;
 
+import com.github.tth05.teth.bytecode.op.OpCodes;
+import com.github.tth05.teth.bytecode.program.TethProgram;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -18,6 +24,37 @@ public class InterpreterTest extends AbstractInterpreterTest {
         assertLinesMatch(List.of("Hello 5+5=10, S(a: 25)"), getSystemOutputLines());
     }
 
+    @Test
+    public void testStringInterpolationWithManyParts() {
+        execute("""
+                let a = "a"
+                let empty = ""
+                print("{a}{empty}{a}-{stringify(1)}{a}")
+                print("{a}")
+                print("{empty}x{empty}")
+                """);
+
+        assertLinesMatch(List.of("aa-1a", "a", "x"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testListLiterals() {
+        execute("""
+                let l = [[1, 2], [3]]
+                l.get(1).add(4)
+                l.add([5])
+                loop (let i = 0, i < 2, i = i + 1) {
+                    // Every evaluation creates a new list
+                    let copy = [i, i * 2]
+                    copy.set(0, 7)
+                    print(copy)
+                }
+                print(l)
+                """);
+
+        assertLinesMatch(List.of("[7, 0]", "[7, 2]", "[[1, 2], [3, 4], [5]]"), getSystemOutputLines());
+    }
+
     @Test
     public void testStructFieldsAreInCorrectOrder() {
         execute("""
@@ -116,4 +153,199 @@ public class InterpreterTest extends AbstractInterpreterTest {
 
         assertLinesMatch(List.of("2", "3", "4"), getSystemOutputLines());
     }
+
+    @Test
+    public void testPrimitiveArithmeticDoesNotAllocate() {
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadBean.isThreadAllocatedMemorySupported())
+            return;
+
+        var interpreter = new Interpreter(compile("""
+                let a = 0
+                let b = 0.0
+                loop (let i = 0, i < 100000, i = i + 1) {
+                    a = a + i * 3 - i / 2
+                    b = b + 1.5 * 2.0
+                    if (a < 0 || b < 0.0) break
+                }
+                """));
+
+        var threadId = Thread.currentThread().getId();
+        var before = threadBean.getThreadAllocatedBytes(threadId);
+        interpreter.execute();
+        var allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Roughly 2 million instructions are executed. Boxing any of the intermediate results would allocate
+        // megabytes.
+        assertTrue(allocated < 64 * 1024, "Allocated " + allocated + " bytes");
+    }
+
+    @Test
+    public void testIntrinsicsInConcurrentInterpreters() throws InterruptedException {
+        var program = LinkedProgram.link(compile("""
+                let l = [0]
+                loop (let i = 0, i < 20000, i = i + 1) {
+                    l.add(i)
+                    l.set(i, l.get(i) + l.size())
+                }
+                print(l.get(5000).toString().concat("!"))
+                """));
+
+        var outputs = new ArrayList<ByteArrayOutputStream>();
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            var out = new ByteArrayOutputStream();
+            var interpreter = new Interpreter(program);
+            interpreter.setSystemOutStream(out);
+            outputs.add(out);
+            threads.add(new Thread(interpreter::execute));
+        }
+
+        threads.forEach(Thread::start);
+        for (var thread : threads)
+            thread.join();
+
+        for (var out : outputs)
+            assertEquals("10001!" + System.lineSeparator(), out.toString());
+    }
+
+    @Test
+    public void testDeepRecursionGrowsStacks() {
+        var interpreter = new Interpreter(LinkedProgram.link(compile("""
+                fn depth(n: long) long {
+                    if (n == 0) return 0
+                    return depth(n - 1) + 1
+                }
+                print(depth(200000))
+                """)), new StackSizes(2, 1 << 22));
+        // Compiled code runs out of JVM stack and has to fall back to the interpreter
+        interpreter.setJitThreshold(1);
+        interpreter.execute();
+
+        assertLinesMatch(List.of("200000"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testMaxStackSizeIsEnforced() {
+        var interpreter = new Interpreter(LinkedProgram.link(compile("""
+                fn depth(n: long) long {
+                    if (n == 0) return 0
+                    return depth(n - 1) + 1
+                }
+                print(depth(1000))
+                """)), new StackSizes(2, 256));
+        interpreter.setJitThreshold(0);
+        interpreter.setSystemErrStream(OutputStream.nullOutputStream());
+
+        var exception = assertThrows(IllegalStateException.class, interpreter::execute);
+        assertTrue(exception.getMessage().endsWith(" is full"));
+    }
+
+    @Test
+    public void testTailCallsReuseFrames() {
+        var program = compile("""
+                fn sum(n: long, acc: long) long {
+                    if (n == 0) return acc
+                    return sum(n - 1, acc + n)
+                }
+                fn isEven(n: long) bool {
+                    if (n == 0) return true
+                    return isOdd(n - 1)
+                }
+                fn isOdd(n: long) bool {
+                    if (n == 0) return false
+                    return isEven(n - 1)
+                }
+                print(sum(100000, 0))
+                print(isEven(100001))
+                """);
+        assertEquals(3, countInstructions(program, OpCodes.TAIL_INVOKE));
+
+        // Far too small for 100000 frames
+        var interpreter = new Interpreter(LinkedProgram.link(program), new StackSizes(2, 256));
+        interpreter.setJitThreshold(0);
+        interpreter.execute();
+
+        assertLinesMatch(List.of("5000050000", "false"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testRuntimeErrorReportsSourceLocations() {
+        var interpreter = new Interpreter(compile("""
+                struct S {
+                    a: long
+                }
+                fn inner(s: S) long {
+                    let x = 1
+                    return s.a + x
+                }
+                fn outer(s: S) long {
+                    return inner(s) * 2
+                }
+                print(outer(new S(3)))
+                print(outer(null))
+                """));
+        var err = new ByteArrayOutputStream();
+        interpreter.setSystemErrStream(err);
+
+        assertThrows(RuntimeException.class, interpreter::execute);
+        var lines = err.toString().lines().toList();
+        assertTrue(lines.get(0).startsWith("Runtime error: "));
+        assertEquals(List.of("    at inner (main:6:12)", "    at outer (main:9:12)", "    at <global> (main:12:7)"), lines.subList(1, lines.size()));
+        assertLinesMatch(List.of("8"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testSmallFunctionsAreInlined() {
+        var code = """
+                struct S {
+                    a: long
+                    fn get() long { return self.a }
+                }
+                fn twice(n: long) long {
+                    return n * 2
+                }
+                let s = new S(3)
+                print(twice(s.get()) + twice(1))
+                """;
+        // The global code itself is always called
+        assertEquals(1, countInstructions(compile(code), OpCodes.INVOKE));
+        assertEquals(4, countInstructions(compile(code, false), OpCodes.INVOKE));
+
+        new Interpreter(compile(code)).execute();
+        assertLinesMatch(List.of("8"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testInlinedFunctionErrorReportsCallSite() {
+        var interpreter = new Interpreter(compile("""
+                struct S {
+                    a: long
+                    fn get() long { return self.a }
+                }
+                fn value(s: S) long {
+                    return s.get()
+                }
+                print(value(new S(1)))
+                print(value(null))
+                """));
+        var err = new ByteArrayOutputStream();
+        interpreter.setSystemErrStream(err);
+
+        var exception = assertThrows(RuntimeException.class, interpreter::execute);
+        assertEquals("Cannot call instance function on null value", exception.getMessage());
+        var lines = err.toString().lines().toList();
+        assertEquals(List.of("    at value (main:6:12)", "    at <global> (main:9:7)"), lines.subList(1, lines.size()));
+        assertLinesMatch(List.of("1"), getSystemOutputLines());
+    }
+
+    private static int countInstructions(TethProgram program, byte opCode) {
+        var count = 0;
+        for (var insn : program.getInstructions()) {
+            if (insn.getOpCode() == opCode)
+                count++;
+        }
+
+        return count;
+    }
 }
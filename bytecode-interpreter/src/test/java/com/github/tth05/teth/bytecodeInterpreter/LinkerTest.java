@@ -0,0 +1,126 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import com.github.tth05.teth.analyzer.module.IModuleLoader;
+import com.github.tth05.teth.bytecode.compiler.Compiler;
+import com.github.tth05.teth.bytecode.compiler.Linker;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.lang.parser.Parser;
+import com.github.tth05.teth.lang.parser.SourceFileUnit;
+import com.github.tth05.teth.lang.source.InMemorySource;
+import com.github.tth05.teth.lang.span.Span;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkerTest extends AbstractInterpreterTest {
+
+    private static final String MAIN = """
+            use "math" {square}
+            use "shapes" {Rect}
+            let r = new Rect(3, 4)
+            print(square(r.w) + r.area())
+            """;
+    private static final String MATH = """
+            fn square(n: long) long {
+                return n * n
+            }
+            """;
+    private static final String SHAPES = """
+            use "util" {twice}
+            struct Rect {
+                w: long
+                h: long
+                fn area() long { return twice(self.w * self.h) / 2 }
+            }
+            """;
+    private static final String UTIL = """
+            fn twice(n: long) long { return n * 2 }
+            """;
+
+    @Test
+    public void testReuseUnchangedModules() {
+        var sources = new HashMap<>(Map.of("main", MAIN, "math", MATH, "shapes", SHAPES, "util", UTIL));
+        var linker = new Linker();
+        new Interpreter(compile(linker, sources)).execute();
+        var mainObject = linker.getModuleObject("main");
+        var mathObject = linker.getModuleObject("math");
+        var shapesObject = linker.getModuleObject("shapes");
+        var utilObject = linker.getModuleObject("util");
+
+        new Interpreter(compile(linker, sources)).execute();
+        assertSame(mainObject, linker.getModuleObject("main"));
+        assertSame(mathObject, linker.getModuleObject("math"));
+        assertSame(shapesObject, linker.getModuleObject("shapes"));
+        assertSame(utilObject, linker.getModuleObject("util"));
+
+        sources.put("math", MATH.replace("n * n", "n * n * n"));
+        new Interpreter(compile(linker, sources)).execute();
+        // The code of main depends on the functions of math
+        assertNotSame(mainObject, linker.getModuleObject("main"));
+        assertNotSame(mathObject, linker.getModuleObject("math"));
+        assertSame(shapesObject, linker.getModuleObject("shapes"));
+        assertSame(utilObject, linker.getModuleObject("util"));
+
+        assertLinesMatch(List.of("21", "21", "39"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testRecompileIndirectDependents() {
+        var sources = new HashMap<>(Map.of("main", MAIN, "math", MATH, "shapes", SHAPES, "util", UTIL));
+        var linker = new Linker();
+        new Interpreter(compile(linker, sources)).execute();
+        var mathObject = linker.getModuleObject("math");
+        var shapesObject = linker.getModuleObject("shapes");
+
+        sources.put("util", UTIL.replace("n * 2", "n * 4"));
+        new Interpreter(compile(linker, sources)).execute();
+        assertSame(mathObject, linker.getModuleObject("math"));
+        assertNotSame(shapesObject, linker.getModuleObject("shapes"));
+
+        assertLinesMatch(List.of("21", "33"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testExportedSymbols() {
+        var linker = new Linker();
+        compile(linker, Map.of("main", MAIN, "math", MATH, "shapes", SHAPES, "util", UTIL));
+
+        assertEquals(List.of("math:square@3"), linker.getModuleObject("math").getExportedSymbols());
+        assertEquals(List.of("shapes:area@64"), linker.getModuleObject("shapes").getExportedSymbols());
+    }
+
+    private static TethProgram compile(Linker linker, Map<String, String> sources) {
+        var compiler = new Compiler();
+        compiler.setEntryPoint(parse("main", sources));
+        compiler.setModuleLoader(new IModuleLoader() {
+            @Override
+            public String toUniquePath(String relativeToUniquePath, Span path) {
+                return path.getText();
+            }
+
+            @Override
+            public SourceFileUnit loadModule(String uniquePath) {
+                return parse(uniquePath, sources);
+            }
+        });
+        compiler.setLinker(linker);
+
+        var result = compiler.compile();
+        if (result.hasProblems()) {
+            result.logProblems(System.err, true);
+            fail("Compiler failed");
+        }
+
+        return result.getProgram();
+    }
+
+    private static SourceFileUnit parse(String uniquePath, Map<String, String> sources) {
+        var result = Parser.parse(new InMemorySource(uniquePath, sources.get(uniquePath)));
+        assertFalse(result.hasProblems());
+        return result.getUnit();
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import com.github.tth05.teth.bytecode.op.OpCodes;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProfilerTest extends AbstractInterpreterTest {
+
+    @Test
+    public void testFunctionsAndInstructionsAreCounted() {
+        var program = LinkedProgram.link(compile("""
+                struct S {
+                    a: long
+                    fn get() long { return self.a }
+                }
+                fn fib(n: long) long {
+                    if (n <= 1) return n
+                    return fib(n - 1) + fib(n - 2)
+                }
+                print(fib(10))
+                print(new S(4).get())
+                """, false));
+        var profiler = new Profiler(program);
+        var interpreter = new Interpreter(program);
+        interpreter.setJitThreshold(0);
+        interpreter.setProfiler(profiler);
+        interpreter.execute();
+
+        assertLinesMatch(List.of("55", "4"), getSystemOutputLines());
+
+        var functions = profiler.getFunctionProfiles();
+        assertEquals(3, functions.size());
+        assertEquals(177, findFunction(functions, "fib").getCalls());
+        assertEquals(1, findFunction(functions, "S.get").getCalls());
+        assertEquals(1, findFunction(functions, "<global>").getCalls());
+        for (var function : functions)
+            assertTrue(function.getInclusiveNanos() >= function.getExclusiveNanos());
+        // Recursive calls are not counted twice
+        assertTrue(findFunction(functions, "<global>").getInclusiveNanos() >= findFunction(functions, "fib").getInclusiveNanos());
+
+        assertEquals(177 + 1 + 1, profiler.getInstructionCount(OpCodes.INVOKE));
+        assertEquals(177 + 1, profiler.getInstructionCount(OpCodes.RETURN));
+        assertEquals(1, profiler.getInstructionCount(OpCodes.EXIT));
+    }
+
+    @Test
+    public void testCollapsedStacks() {
+        var program = LinkedProgram.link(compile("""
+                fn a(n: long) long {
+                    // No tail calls, which would replace the frames
+                    if (n == 0) return b() + 1
+                    return a(n - 1) + 1
+                }
+                fn b() long {
+                    let x = 0
+                    loop (let i = 0, i < 1000, i = i + 1) x = x + i
+                    return x
+                }
+                print(a(2))
+                """));
+        var profiler = new Profiler(program);
+        var interpreter = new Interpreter(program);
+        interpreter.setJitThreshold(0);
+        interpreter.setProfiler(profiler);
+        interpreter.execute();
+
+        var out = new ByteArrayOutputStream();
+        profiler.printCollapsedStacks(new PrintStream(out, true, StandardCharsets.UTF_8));
+        var stacks = out.toString(StandardCharsets.UTF_8).lines().map(l -> l.substring(0, l.lastIndexOf(' '))).toList();
+
+        assertTrue(stacks.contains("<global>;a;a;a;b"));
+        for (var stack : stacks)
+            assertTrue(stack.startsWith("<global>"));
+    }
+
+    @Test
+    public void testProfilerOfOtherProgramIsRejected() {
+        var interpreter = new Interpreter(compile("print(1)"));
+
+        assertThrows(IllegalArgumentException.class, () -> interpreter.setProfiler(new Profiler(LinkedProgram.link(compile("print(2)")))));
+    }
+
+    private static Profiler.FunctionProfile findFunction(List<Profiler.FunctionProfile> functions, String name) {
+        return functions.stream().filter(f -> f.getName().equals(name)).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.tth05.teth.bytecodeInterpreter;
+
+import com.github.tth05.teth.bytecode.program.ProgramSerializer;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgramSerializerTest extends AbstractInterpreterTest {
+
+    @Test
+    public void testRoundTrip() {
+        var program = compile("""
+                struct S {
+                    a: long
+                    b: string
+                    fn get() long { return self.a }
+                }
+                fn fib(n: long) long {
+                    if (n < 2) { return n }
+                    return fib(n - 1) + fib(n - 2)
+                }
+                // Non-ASCII constants are only compared, the output stream of the tests is not decoded as UTF-8
+                let unicode = "\u00fc\u20ac"
+                let l = [1.5, 2.25]
+                l.add(3.0)
+                let s = new S(fib(10), "x{stringify(l.size())}")
+                print("{s.b.concat("!")} {stringify(s.get())} {stringify(l)} {stringify(!true || 2 >= 1)}")
+                """);
+        var copy = roundTrip(program);
+
+        assertEquals(program.getInstructions().length, copy.getInstructions().length);
+        for (int i = 0; i < program.getInstructions().length; i++)
+            assertEquals(program.getInstructions()[i].getDebugString(), copy.getInstructions()[i].getDebugString());
+        assertEquals(program.getStructData().length, copy.getStructData().length);
+        for (int i = 0; i < program.getStructData().length; i++) {
+            assertEquals(program.getStructData()[i].name(), copy.getStructData()[i].name());
+            assertArrayEquals(program.getStructData()[i].fieldNames(), copy.getStructData()[i].fieldNames());
+        }
+        assertEquals(program.getFunctionData().length, copy.getFunctionData().length);
+        for (int i = 0; i < program.getFunctionData().length; i++) {
+            var function = program.getFunctionData()[i];
+            var functionCopy = copy.getFunctionData()[i];
+            assertEquals(function.name(), functionCopy.name());
+            assertEquals(function.offset(), functionCopy.offset());
+            assertArrayEquals(function.localTypes(), functionCopy.localTypes());
+            assertEquals(function.returnType(), functionCopy.returnType());
+        }
+        assertEquals(program.getLineNumberTable().getEntryCount(), copy.getLineNumberTable().getEntryCount());
+
+        new Interpreter(copy).execute();
+        assertLinesMatch(List.of("x3! 55 [1.5, 2.25, 3.0] true"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testRuntimeErrorReportsSourceLocationsAfterRoundTrip() {
+        var interpreter = new Interpreter(roundTrip(compile("""
+                struct S {
+                    a: long
+                    fn get() long { return self.a }
+                }
+                fn value(s: S) long {
+                    return s.get()
+                }
+                print(value(new S(1)))
+                print(value(null))
+                """)));
+        var err = new ByteArrayOutputStream();
+        interpreter.setSystemErrStream(err);
+
+        assertThrows(RuntimeException.class, interpreter::execute);
+        var lines = err.toString().lines().toList();
+        assertEquals(List.of("    at value (main:6:12)", "    at <global> (main:9:7)"), lines.subList(1, lines.size()));
+    }
+
+    @Test
+    public void testReadMappedFile() throws IOException {
+        var path = Files.createTempFile("main", ProgramSerializer.FILE_EXTENSION);
+        // The file stays mapped until the buffer is collected, which prevents deleting it on some platforms
+        path.toFile().deleteOnExit();
+        try (var out = Files.newOutputStream(path)) {
+            ProgramSerializer.write(compile("print(\"Hello {stringify(5 * 5)}\")"), out);
+        }
+
+        new Interpreter(ProgramSerializer.read(path)).execute();
+        assertLinesMatch(List.of("Hello 25"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testRejectInvalidInput() {
+        var bytes = serialize(compile("print(1)"));
+
+        var exception = assertThrows(IllegalArgumentException.class, () -> ProgramSerializer.read(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8})));
+        assertEquals("Not a compiled teth program", exception.getMessage());
+
+        var newerVersion = bytes.clone();
+        newerVersion[7]++;
+        exception = assertThrows(IllegalArgumentException.class, () -> ProgramSerializer.read(ByteBuffer.wrap(newerVersion)));
+        assertTrue(exception.getMessage().startsWith("Unsupported format version"));
+
+        assertThrows(IllegalArgumentException.class, () -> ProgramSerializer.read(ByteBuffer.wrap(bytes, 0, bytes.length - 4)));
+    }
+
+    private static TethProgram roundTrip(TethProgram program) {
+        return ProgramSerializer.read(ByteBuffer.wrap(serialize(program)));
+    }
+
+    private static byte[] serialize(TethProgram program) {
+        var out = new ByteArrayOutputStream();
+        try {
+            ProgramSerializer.write(program, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.tth05.teth.bytecodeInterpreter.jit;
+
+import com.github.tth05.teth.bytecodeInterpreter.AbstractInterpreterTest;
+import com.github.tth05.teth.bytecodeInterpreter.Interpreter;
+import com.github.tth05.teth.bytecodeInterpreter.LinkedProgram;
+import com.github.tth05.teth.bytecodeInterpreter.StackSizes;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JitCompilerTest extends AbstractInterpreterTest {
+
+    private static final String NUMERIC_PROGRAM = """
+            fn fib(n: long) long {
+                if (n <= 1) return n
+                return fib(n - 1) + fib(n - 2)
+            }
+            fn sum(n: long, step: double) double {
+                let acc = 0.0
+                loop (let i = 0, i < n, i = i + 1) {
+                    if (i / 2 * 2 == i && !(i.toDouble() > 5.5)) {
+                        acc = acc + i.toDouble() * step
+                    } else {
+                        acc = acc - step ^ 2.0
+                    }
+                }
+                return acc
+            }
+            fn isEven(n: long) bool {
+                return n / 2 * 2 == n || n == 0
+            }
+            loop (let i = 0, i < 5, i = i + 1) {
+                print([fib(i + 10), sum(i * 3, 0.5).toLong(), 2 ^ i, -i])
+                print(isEven(i))
+            }
+            """;
+
+    @Test
+    public void testCompiledFunctionsProduceSameOutput() {
+        var program = LinkedProgram.link(compile(NUMERIC_PROGRAM, false));
+
+        var interpreter = new Interpreter(program);
+        interpreter.setJitThreshold(0);
+        interpreter.execute();
+        var interpretedOutput = getSystemOutput();
+        assertFalse(program.getJitCompiler().isCompiled(findFunction(program, "fib")));
+
+        interpreter = new Interpreter(program);
+        interpreter.setJitThreshold(1);
+        interpreter.execute();
+        assertEquals(interpretedOutput + interpretedOutput, getSystemOutput());
+
+        var jitCompiler = program.getJitCompiler();
+        assertTrue(jitCompiler.isCompiled(findFunction(program, "fib")));
+        assertTrue(jitCompiler.isCompiled(findFunction(program, "sum")));
+        assertTrue(jitCompiler.isCompiled(findFunction(program, "isEven")));
+    }
+
+    @Test
+    public void testFunctionsUsingReferencesAreNotCompiled() {
+        var program = LinkedProgram.link(compile("""
+                fn greet(n: long) string {
+                    return "Hello {stringify(n)}"
+                }
+                fn callsGreet(n: long) long {
+                    greet(n)
+                    return n
+                }
+                print(greet(1))
+                print(callsGreet(2))
+                print(greet(3))
+                """, false));
+
+        var interpreter = new Interpreter(program);
+        interpreter.setJitThreshold(1);
+        interpreter.execute();
+
+        assertLinesMatch(List.of("Hello 1", "2", "Hello 3"), getSystemOutputLines());
+        assertFalse(program.getJitCompiler().isCompiled(findFunction(program, "greet")));
+        assertFalse(program.getJitCompiler().isCompiled(findFunction(program, "callsGreet")));
+    }
+
+    @Test
+    public void testCompiledTailRecursionIsLoop() {
+        var program = LinkedProgram.link(compile("""
+                fn sum(n: long, acc: long) long {
+                    if (n == 0) return acc
+                    return sum(n - 1, acc + n)
+                }
+                print(sum(1, 0))
+                print(sum(1000000, 0))
+                """));
+
+        // Neither the JVM stack nor the interpreter stacks could hold 1000000 frames
+        var interpreter = new Interpreter(program, new StackSizes(2, 256));
+        interpreter.setJitThreshold(1);
+        interpreter.execute();
+
+        assertLinesMatch(List.of("1", "500000500000"), getSystemOutputLines());
+        assertTrue(program.getJitCompiler().isCompiled(findFunction(program, "sum")));
+    }
+
+    @Test
+    public void testKillStopsCompiledFunction() throws InterruptedException {
+        var interpreter = new Interpreter(compile("""
+                fn spin(n: long) long {
+                    loop {
+                        n = n + 1
+                    }
+                    return n
+                }
+                spin(0)
+                """, false));
+        interpreter.setJitThreshold(1);
+
+        var thread = new Thread(interpreter::execute);
+        thread.start();
+        Thread.sleep(100);
+        interpreter.kill();
+        thread.join(5000);
+
+        assertFalse(thread.isAlive());
+        assertTrue(interpreter.getProgram().getJitCompiler().isCompiled(findFunction(interpreter.getProgram(), "spin")));
+    }
+
+    private static int findFunction(LinkedProgram program, String name) {
+        var jitCompiler = program.getJitCompiler();
+        for (int i = 0; i < jitCompiler.getFunctionCount(); i++) {
+            if (jitCompiler.getFunctionData(i).name().equals(name))
+                return i;
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+}
@@ -0,0 +1,217 @@
+package com.github.tth05.teth.bytecodeInterpreter.register;
+
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.bytecode.program.FunctionData;
+import com.github.tth05.teth.bytecode.program.StructData;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.bytecode.program.ValueType;
+import com.github.tth05.teth.bytecodeInterpreter.AbstractInterpreterTest;
+import com.github.tth05.teth.bytecodeInterpreter.Interpreter;
+import com.github.tth05.teth.bytecodeInterpreter.StackSizes;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegisterInterpreterTest extends AbstractInterpreterTest {
+
+    @Test
+    public void testSameOutputAsStackInterpreter() {
+        var program = compile("""
+                struct Vec {
+                    x: double
+                    y: double
+                    fn len2() double {
+                        return self.x * self.x + self.y * self.y
+                    }
+                }
+                struct Node {
+                    value: long
+                    next: Node
+                }
+                fn fib(n: long) long {
+                    if (n <= 1) return n
+                    return fib(n - 1) + fib(n - 2)
+                }
+                fn sum(n: long) long {
+                    let acc = 0
+                    loop (let i = 0, i < n, i = i + 1) {
+                        if (i == 7) break
+                        if (i / 2 * 2 == i) continue
+                        acc = acc + i * 3 - i / 2
+                    }
+                    return acc
+                }
+                let vs = [new Vec(1.5, 2.0)]
+                loop (let i = 0, i < 5, i = i + 1) vs.add(new Vec(i.toDouble(), -0.5))
+                let total = 0.0
+                loop (let i = 0, i < vs.size(), i = i + 1) {
+                    let v = vs.get(i)
+                    total = total + v.len2()
+                    v.x = v.x * 2.0
+                }
+                let head = new Node(1, null)
+                head = new Node(2, head)
+                print([fib(15), sum(20), 2 ^ 10, -fib(3)])
+                print(total)
+                print(vs.get(3))
+                print(head.next.value == 1 && !(total < 0.0))
+                print([[fib(3), 2], [head.value]])
+                print("{stringify(head.value)} done")
+                print("{stringify(head.value)}, {stringify(total)}: {stringify(vs.size())} vectors")
+                """);
+
+        new Interpreter(program).execute();
+        var stackOutput = getSystemOutput();
+        new RegisterInterpreter(program).execute();
+
+        assertEquals(stackOutput + stackOutput, getSystemOutput());
+    }
+
+    @Test
+    public void testStatementsUseSingleInstruction() {
+        var program = RegisterProgram.translate(compile("""
+                fn add(b: long, c: long) long {
+                    let a = b + c
+                    a = a * b
+                    return a
+                }
+                print(add(1, 2))
+                """));
+
+        // One instruction per statement, the stack code needs 11
+        assertEquals(3, findFunction(program, "add").instructionCount());
+        new RegisterInterpreter(program).execute();
+        assertLinesMatch(List.of("3"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testValueReachesJumpTargetFromJumpAndFallThrough() {
+        var print = Arrays.stream(compile("print(0)").getInstructions())
+                .filter(insn -> insn.getOpCode() == OpCodes.INVOKE_INTRINSIC)
+                .findFirst().orElseThrow();
+
+        for (var condition : new boolean[]{false, true}) {
+            // The jump carries 1 on the stack, the fall-through path replaces it with 2
+            var program = new TethProgram(new IInstrunction[]{
+                    new INVOKE_Insn(false, 0, 0, false, 0),
+                    new L_CONST_Insn(1),
+                    new B_CONST_Insn(condition),
+                    new JUMP_IF_FALSE_Insn(2),
+                    new POP_Insn(),
+                    new L_CONST_Insn(2),
+                    print,
+                    new EXIT_Insn()
+            }, new StructData[0], new FunctionData[]{
+                    new FunctionData("<global>", 1, 7, 0, new ValueType[0], ValueType.VOID)
+            });
+
+            new Interpreter(program).execute();
+            new RegisterInterpreter(program).execute();
+        }
+
+        assertLinesMatch(List.of("1", "1", "2", "2"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testInlinedFunctionsWithEarlyReturn() {
+        var code = """
+                fn f(n: long) long {
+                    let c = 10
+                    if (n > 5) {
+                        return n * c
+                    }
+                    return c
+                }
+                fn g(b: bool) long {
+                    if (b) {
+                        return 1
+                    }
+                    return 2
+                }
+                print([f(7), f(3), g(true), g(false)])
+                """;
+        var program = compile(code);
+        // Only the global code is called, the returns of the inlined functions become jumps to a merge point
+        assertEquals(1, Arrays.stream(program.getInstructions()).filter(insn -> insn.getOpCode() == OpCodes.INVOKE).count());
+
+        new RegisterInterpreter(program).execute();
+        new RegisterInterpreter(compile(code, false)).execute();
+        assertLinesMatch(List.of("[70, 10, 1, 2]", "[70, 10, 1, 2]"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testInstanceFunctionOnNullThrows() {
+        var interpreter = new RegisterInterpreter(compile("""
+                struct S {
+                    a: long
+                    fn get() long { return self.a }
+                }
+                let s = new S(1)
+                s = null
+                print(s.get())
+                """));
+        interpreter.setSystemErrStream(System.out);
+
+        var exception = assertThrows(RuntimeException.class, interpreter::execute);
+        assertEquals("Cannot call instance function on null value", exception.getMessage());
+        assertFalse(interpreter.isRunning());
+    }
+
+    @Test
+    public void testDeepRecursionGrowsRegisters() {
+        var interpreter = new RegisterInterpreter(RegisterProgram.translate(compile("""
+                fn depth(n: long) long {
+                    if (n == 0) return 0
+                    return depth(n - 1) + 1
+                }
+                print(depth(200000))
+                """)), new StackSizes(2, 1 << 22));
+        interpreter.execute();
+
+        assertLinesMatch(List.of("200000"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testTailCallsReuseFrames() {
+        var interpreter = new RegisterInterpreter(RegisterProgram.translate(compile("""
+                fn sum(n: long, acc: long) long {
+                    if (n == 0) return acc
+                    return sum(n - 1, acc + n)
+                }
+                print(sum(100000, 0))
+                """)), new StackSizes(2, 256));
+        interpreter.execute();
+
+        assertLinesMatch(List.of("5000050000"), getSystemOutputLines());
+    }
+
+    @Test
+    public void testRuntimeErrorReportsSourceLocations() {
+        var interpreter = new RegisterInterpreter(compile("""
+                fn div(a: long, b: long) long {
+                    return a / b
+                }
+                fn call(b: long) long { return div(1, b) }
+                print(call(0))
+                """));
+        var err = new ByteArrayOutputStream();
+        interpreter.setSystemErrStream(err);
+
+        assertThrows(ArithmeticException.class, interpreter::execute);
+        var lines = err.toString().lines().toList();
+        assertEquals(List.of("Runtime error: / by zero", "    at div (main:2:12)", "    at call (main:4:32)", "    at <global> (main:5:7)"), lines);
+    }
+
+    private static RegisterFunction findFunction(RegisterProgram program, String name) {
+        for (int i = 0; i < program.getFunctionCount(); i++) {
+            if (program.getFunction(i).name().equals(name))
+                return program.getFunction(i);
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+}
@@ -7,31 +7,50 @@ import com.github.tth05.teth.analyzer.module.IModuleLoader;
 import com.github.tth05.teth.analyzer.prelude.Prelude;
 import com.github.tth05.teth.analyzer.visitor.NameAnalysis;
 import com.github.tth05.teth.bytecode.compiler.internal.PlaceholderInvokeInsn;
+import com.github.tth05.teth.bytecode.compiler.optimization.ConstantFoldingOptimizer;
+import com.github.tth05.teth.bytecode.compiler.optimization.ControlFlowOptimizer;
+import com.github.tth05.teth.bytecode.compiler.optimization.FunctionInliner;
 import com.github.tth05.teth.bytecode.compiler.optimization.IOptimizer;
+import com.github.tth05.teth.bytecode.compiler.optimization.LoopOptimizer;
+import com.github.tth05.teth.bytecode.compiler.optimization.OptimizationContext;
+import com.github.tth05.teth.bytecode.compiler.optimization.PassManager;
 import com.github.tth05.teth.bytecode.compiler.optimization.StackCleaningOptimizer;
+import com.github.tth05.teth.bytecode.compiler.optimization.SuperinstructionOptimizer;
 import com.github.tth05.teth.bytecode.op.*;
-import com.github.tth05.teth.bytecode.program.StructData;
-import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.bytecode.program.ValueType;
 import com.github.tth05.teth.lang.parser.ASTVisitor;
 import com.github.tth05.teth.lang.parser.SourceFileUnit;
 import com.github.tth05.teth.lang.parser.ast.*;
 import com.github.tth05.teth.lang.span.Span;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Compiler {
 
-    private final Map<StructDeclaration, Integer> structIds = new IdentityHashMap<>();
-    private final Map<FunctionDeclaration, List<IInstrunction>> functionInsnMap = new IdentityHashMap<>();
+    private static volatile ModuleObject preludeObject;
 
     private final List<SourceFileUnit> units = new ArrayList<>();
-    private final List<IOptimizer> optimizers = new ArrayList<>();
+    /**
+     * All modules returned by the module loader by their unique path, the analyzer may load them in parallel
+     */
+    private final Map<String, SourceFileUnit> loadedUnits = new ConcurrentHashMap<>();
+    private final PassManager passManager = new PassManager();
     {
         addOptimizer(new StackCleaningOptimizer());
+        addOptimizer(new ConstantFoldingOptimizer());
+        addOptimizer(new ControlFlowOptimizer());
+        addOptimizer(new LoopOptimizer());
+        addOptimizer(new SuperinstructionOptimizer());
     }
 
     private Analyzer analyzer;
+    private Linker linker = new Linker();
+    private boolean globalLocalsAccessedExternally;
+    private int maxInlineSize = 12;
 
     private boolean compiled;
 
@@ -53,14 +72,46 @@ public class Compiler {
             @Override
             public SourceFileUnit loadModule(String uniquePath) {
                 var unit = loader.loadModule(uniquePath);
-                Compiler.this.units.add(unit);
+                if (unit != null)
+                    Compiler.this.loadedUnits.put(uniquePath, unit);
                 return unit;
             }
         });
     }
 
+    /**
+     * @param linker A linker which was used by a previous compilation, to reuse the code of all modules which did not
+     *               change since then
+     */
+    public void setLinker(Linker linker) {
+        if (this.compiled)
+            throw new IllegalStateException("Cannot set linker after compilation");
+
+        this.linker = Objects.requireNonNull(linker);
+    }
+
     public void addOptimizer(IOptimizer optimizer) {
-        this.optimizers.add(optimizer);
+        this.passManager.addOptimizer(optimizer);
+    }
+
+    /**
+     * Marks the locals of the global function as read and written by the host, e.g. by a REPL which restores them
+     * before and reads them after every execution. This disables optimizations which assume that a function sees all
+     * accesses to its locals.
+     */
+    public void setGlobalLocalsAccessedExternally(boolean globalLocalsAccessedExternally) {
+        this.globalLocalsAccessedExternally = globalLocalsAccessedExternally;
+    }
+
+    /**
+     * @param maxInlineSize The maximum instruction count of functions which are inlined into their callers, see
+     *                      {@link FunctionInliner}. 0 disables inlining.
+     */
+    public void setMaxInlineSize(int maxInlineSize) {
+        if (maxInlineSize < 0)
+            throw new IllegalArgumentException("Max inline size must not be negative");
+
+        this.maxInlineSize = maxInlineSize;
     }
 
     public CompilationResult compile() {
@@ -75,114 +126,180 @@ public class Compiler {
         if (analyzerResults.stream().anyMatch(AnalyzerResult::hasProblems))
             return new CompilationResult(this.analyzer, analyzerResults);
 
-        var generator = new BytecodeGeneratorVisitor(this.analyzer, true);
-        generator.visit(new SourceFileUnit("__prelude__", Prelude.getAllDeclarations()));
+        // Modules which were loaded but never used are not analyzed. The order of the analysis does not depend on the
+        // order in which the modules were loaded.
+        for (int i = 1; i < analyzerResults.size(); i++) {
+            var unit = this.loadedUnits.get(analyzerResults.get(i).getModuleName());
+            if (unit != null)
+                this.units.add(unit);
+        }
 
+        var hashes = computeModuleHashes();
+        var objects = new ArrayList<ModuleObject>(this.units.size() + 1);
+        objects.add(getPreludeObject());
         for (int i = 0; i < this.units.size(); i++) {
-            generator = new BytecodeGeneratorVisitor(this.analyzer, i != 0);
-            generator.visit(this.units.get(i));
+            var unit = this.units.get(i);
+            objects.add(compileModule(unit, hashes.get(unit.getUniquePath()), i != 0));
         }
 
-        return new CompilationResult(this.analyzer, toProgram(this.analyzer));
+        return new CompilationResult(this.analyzer, this.linker.link(objects, this.maxInlineSize));
     }
 
-    private TethProgram toProgram(Analyzer analyzer) {
-        var i = 1;
-        var functionOffsets = new IdentityHashMap<FunctionDeclaration, Integer>();
+    /**
+     * The prelude only declares intrinsics and cannot change, so its object is generated once and shared by all
+     * compilations. Generating it twice concurrently is harmless.
+     */
+    private ModuleObject getPreludeObject() {
+        var object = preludeObject;
+        if (object != null)
+            return object;
+
+        // The prelude cannot change, so its hash is empty
+        object = new ModuleObject("__prelude__", new byte[0]);
+        new BytecodeGeneratorVisitor(this.analyzer, object, true).visit(new SourceFileUnit("__prelude__", Prelude.getAllDeclarations()));
+        preludeObject = object;
+        return object;
+    }
 
-        record FunctionInsnPair(FunctionDeclaration function, List<IInstrunction> insnList) {}
+    /**
+     * @return The object of the given unit from the linker if its hash did not change, otherwise a newly generated and
+     * optimized object
+     */
+    private ModuleObject compileModule(SourceFileUnit unit, byte[] hash, boolean ignoreTopLevelCode) {
+        var object = this.linker.findModuleObject(unit.getUniquePath(), hash);
+        if (object != null)
+            return object;
 
-        // Ensure global function comes first
-        var sortedFunctions = this.functionInsnMap.entrySet().stream()
-                .map(entry -> new FunctionInsnPair(entry.getKey(), entry.getValue()))
-                .sorted(Comparator.comparing(e -> e.function() != NameAnalysis.GLOBAL_FUNCTION))
-                .collect(Collectors.toCollection(ArrayList::new));
-        // Optimize methods
-        var totalInsnCount = 0;
-        for (var entry : sortedFunctions) {
-            var insnList = entry.insnList();
+        object = new ModuleObject(unit.getUniquePath(), hash);
+        new BytecodeGeneratorVisitor(this.analyzer, object, ignoreTopLevelCode).visit(unit);
 
-            for (var optimizer : this.optimizers)
-                optimizer.method(insnList);
+        // Optimize methods
+        for (var function : object.getFunctions()) {
+            var context = new OptimizationContext(
+                    function.paramCount(),
+                    function.declaration().isInstanceFunction(),
+                    function.declaration() == NameAnalysis.GLOBAL_FUNCTION && this.globalLocalsAccessedExternally,
+                    function.localTypes(),
+                    object.getInstructionSpans()
+            );
 
-            totalInsnCount += insnList.size();
+            this.passManager.run(function.instructions(), context);
         }
 
-        var insns = new IInstrunction[totalInsnCount + 1];
+        return object;
+    }
+
+    /**
+     * The generated code of a module depends on the fields and functions of the modules it uses, so the hash of a unit
+     * covers its own source and the sources of all modules it depends on, directly or through other modules.
+     *
+     * @return The hash of every unit by its unique path
+     */
+    private Map<String, byte[]> computeModuleHashes() {
+        var sourceHashes = new HashMap<String, byte[]>();
+        var dependencies = new HashMap<String, List<String>>();
+        for (var unit : this.units) {
+            var digest = newDigest();
+            digest.update(new String(getContents(unit)).getBytes(StandardCharsets.UTF_8));
+            sourceHashes.put(unit.getUniquePath(), digest.digest());
+            dependencies.put(unit.getUniquePath(), getDependencies(unit));
+        }
 
-        // Compute function offsets
-        for (var entry : sortedFunctions) {
-            var function = entry.function();
-            functionOffsets.put(function, i);
+        var hashes = new HashMap<String, byte[]>();
+        for (int i = 0; i < this.units.size(); i++) {
+            var uniquePath = this.units.get(i).getUniquePath();
+            // Sorted, so that the hash does not depend on the order of use statements
+            var modules = new TreeSet<String>();
+            var queue = new ArrayDeque<String>();
+            queue.add(uniquePath);
+            while (!queue.isEmpty()) {
+                var module = queue.poll();
+                if (modules.add(module))
+                    queue.addAll(dependencies.get(module));
+            }
 
-            // Copy insns to array
-            var insnList = entry.insnList();
-            for (var insn : insnList)
-                insns[i++] = insn;
+            var digest = newDigest();
+            // The entry point also contains the global code
+            digest.update((byte) ((i == 0 ? 1 : 0) | (this.globalLocalsAccessedExternally ? 2 : 0)));
+            for (var module : modules) {
+                digest.update(module.getBytes(StandardCharsets.UTF_8));
+                digest.update(sourceHashes.get(module));
+            }
+            hashes.put(uniquePath, digest.digest());
         }
 
-        // Resolve jump addresses
-        for (int j = 1; j < insns.length; j++) {
-            var insn = insns[j];
-            if (!(insn instanceof PlaceholderInvokeInsn placeholder))
+        return hashes;
+    }
+
+    /**
+     * @return The unique paths of all compiled modules which the given unit imports declarations from
+     */
+    private List<String> getDependencies(SourceFileUnit unit) {
+        var dependencies = new ArrayList<String>();
+        for (var statement : unit.getStatements()) {
+            if (!(statement instanceof UseStatement useStatement))
                 continue;
 
-            var function = placeholder.target();
-            var offset = functionOffsets.get(function);
-            if (offset == null)
-                throw new IllegalStateException("Function '%s' is referenced but not compiled".formatted(function.getNameExpr().getSpan().getText()));
-
-            insns[j] = new INVOKE_Insn(
-                    placeholder.isInstanceFunction(),
-                    placeholder.getParamCount(),
-                    analyzer.functionLocalsCount(function),
-                    placeholder.returnsValue(),
-                    offset - 1
-            );
+            for (var importNameExpr : useStatement.getImports()) {
+                if (this.analyzer.resolvedReference(importNameExpr) instanceof ITopLevelDeclaration declaration &&
+                    declaration.getContainingUnit() != null) {
+                    var uniquePath = declaration.getContainingUnit().getUniquePath();
+                    if (this.units.stream().anyMatch(u -> u.getUniquePath().equals(uniquePath)))
+                        dependencies.add(uniquePath);
+                }
+            }
         }
 
-        // "Invoke" global function
-        insns[0] = new INVOKE_Insn(false, 0, analyzer.functionLocalsCount(NameAnalysis.GLOBAL_FUNCTION), false, 0);
+        return dependencies;
+    }
 
-        return new TethProgram(insns, generateStructData());
+    private static char[] getContents(SourceFileUnit unit) {
+        for (var statement : unit.getStatements()) {
+            if (statement.getSpan() != null && statement.getSpan().source() != null)
+                return statement.getSpan().source().getContents();
+        }
+
+        return new char[0];
     }
 
-    private StructData[] generateStructData() {
-        var data = new StructData[this.structIds.size()];
-        this.structIds.forEach((struct, id) -> {
-            data[id] = new StructData(
-                    struct.getNameExpr().getSpan().getText(),
-                    struct.getFields().stream().map(f -> f.getNameExpr().getSpan().getText()).toArray(String[]::new)
-            );
-        });
-        return data;
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     @SuppressWarnings("UnqualifiedFieldAccess")
     private class BytecodeGeneratorVisitor extends ASTVisitor {
 
         private static final FunctionDeclaration.ParameterDeclaration SELF_PLACEHOLDER = new FunctionDeclaration.ParameterDeclaration(null, null, new IdentifierExpression(Span.fromString("self")));
-        private static final FunctionDeclaration STRING_CONCAT_FUNCTION = (FunctionDeclaration) Prelude.getStructForTypeName(Span.fromString("string")).getMember(Span.fromString("concat"));
-        private static final FunctionDeclaration LIST_ADD_FUNCTION = (FunctionDeclaration) Prelude.getStructForTypeName(Span.fromString("list")).getMember(Span.fromString("add"));
         private static final FunctionDeclaration LONG_TO_DOUBLE_FUNCTION = (FunctionDeclaration) Prelude.getStructForTypeName(Span.fromString("long")).getMember(Span.fromString("toDouble"));
         private static final FunctionDeclaration DOUBLE_TO_LONG_FUNCTION = (FunctionDeclaration) Prelude.getStructForTypeName(Span.fromString("double")).getMember(Span.fromString("toLong"));
 
 
         private final Analyzer analyzer;
+        private final ModuleObject object;
         private final boolean ignoreTopLevelCode;
 
         private List<IInstrunction> currentFunctionInsn = new ArrayList<>();
         private Map<IVariableDeclaration, Integer> currentFunctionLocals = new IdentityHashMap<>();
+        private List<ValueType> currentFunctionLocalTypes = new ArrayList<>();
+        private String currentStructName;
 
-        public BytecodeGeneratorVisitor(Analyzer analyzer, boolean ignoreTopLevelCode) {
+        public BytecodeGeneratorVisitor(Analyzer analyzer, ModuleObject object, boolean ignoreTopLevelCode) {
             this.analyzer = analyzer;
+            this.object = object;
             this.ignoreTopLevelCode = ignoreTopLevelCode;
         }
 
         @Override
         public void visit(SourceFileUnit unit) {
             if (!this.ignoreTopLevelCode) {
-                functionInsnMap.put(NameAnalysis.GLOBAL_FUNCTION, this.currentFunctionInsn);
+                this.object.addFunction(new ModuleObject.Function(
+                        NameAnalysis.GLOBAL_FUNCTION, "<global>", 0,
+                        this.currentFunctionInsn, this.currentFunctionLocalTypes, ValueType.VOID
+                ));
                 super.visit(unit);
                 this.currentFunctionInsn.add(new EXIT_Insn());
             } else {
@@ -200,7 +317,11 @@ public class Compiler {
         @Override
         public void visit(StructDeclaration declaration) {
             getStructId(declaration);
+
+            var parentStructName = this.currentStructName;
+            this.currentStructName = declaration.getNameExpr().getSpan().getText();
             super.visit(declaration);
+            this.currentStructName = parentStructName;
         }
 
         @Override
@@ -210,17 +331,31 @@ public class Compiler {
 
             var parentFunction = this.currentFunctionInsn;
             var parentLocals = this.currentFunctionLocals;
+            var parentLocalTypes = this.currentFunctionLocalTypes;
+            var parentStructName = this.currentStructName;
             this.currentFunctionInsn = new ArrayList<>();
             this.currentFunctionLocals = new HashMap<>();
+            this.currentFunctionLocalTypes = new ArrayList<>();
+            this.currentStructName = null;
 
             // Add hidden 'self' parameter
-            if (declaration.isInstanceFunction())
+            if (declaration.isInstanceFunction()) {
                 this.currentFunctionLocals.put(SELF_PLACEHOLDER, 0);
+                this.currentFunctionLocalTypes.add(ValueType.REFERENCE);
+            }
             // Add parameters to locals
-            for (var parameter : declaration.getParameters())
+            for (var parameter : declaration.getParameters()) {
                 this.currentFunctionLocals.put(parameter, this.currentFunctionLocals.size());
+                this.currentFunctionLocalTypes.add(getValueType(this.analyzer.resolvedReference(parameter.getTypeExpr())));
+            }
 
-            functionInsnMap.put(declaration, this.currentFunctionInsn);
+            var name = declaration.getNameExpr().getSpan().getText();
+            this.object.addFunction(new ModuleObject.Function(
+                    declaration, parentStructName != null ? parentStructName + "." + name : name,
+                    this.currentFunctionLocalTypes.size(), this.currentFunctionInsn, this.currentFunctionLocalTypes,
+                    declaration.getReturnTypeExpr() == null ? ValueType.VOID :
+                            getValueType(this.analyzer.resolvedReference(declaration.getReturnTypeExpr()))
+            ));
 
             super.visit(declaration);
 
@@ -229,6 +364,8 @@ public class Compiler {
                 this.currentFunctionInsn.add(new RETURN_Insn(false));
             this.currentFunctionInsn = parentFunction;
             this.currentFunctionLocals = parentLocals;
+            this.currentFunctionLocalTypes = parentLocalTypes;
+            this.currentStructName = parentStructName;
         }
 
         @Override
@@ -238,13 +375,13 @@ public class Compiler {
             var reference = (FunctionDeclaration) this.analyzer.resolvedReference(((IDeclarationReference) invocation.getTarget()));
             if (reference.isIntrinsic()) {
                 if (reference == LONG_TO_DOUBLE_FUNCTION)
-                    this.currentFunctionInsn.add(new L_TO_D_Insn());
+                    add(new L_TO_D_Insn(), invocation);
                 else if (reference == DOUBLE_TO_LONG_FUNCTION)
-                    this.currentFunctionInsn.add(new D_TO_L_Insn());
+                    add(new D_TO_L_Insn(), invocation);
                 else
-                    this.currentFunctionInsn.add(new INVOKE_INTRINSIC_Insn(reference));
+                    add(new INVOKE_INTRINSIC_Insn(reference), invocation);
             } else {
-                this.currentFunctionInsn.add(new PlaceholderInvokeInsn(reference));
+                add(new PlaceholderInvokeInsn(reference), invocation);
             }
         }
 
@@ -255,7 +392,7 @@ public class Compiler {
             }
 
             var structDeclaration = (StructDeclaration) this.analyzer.resolvedReference(expression.getTargetNameExpr());
-            this.currentFunctionInsn.add(new CREATE_OBJECT_Insn(getStructId(structDeclaration), structDeclaration.getFields().size()));
+            add(new CREATE_OBJECT_Insn(getStructId(structDeclaration), structDeclaration.getFields().size()), expression);
         }
 
         @Override
@@ -266,7 +403,22 @@ public class Compiler {
 
             var idx = this.currentFunctionLocals.size();
             this.currentFunctionLocals.put(declaration, idx);
-            this.currentFunctionInsn.add(new STORE_LOCAL_Insn(idx));
+            this.currentFunctionLocalTypes.add(getValueType(declaration.getTypeExpr() != null ?
+                    this.analyzer.resolvedReference(declaration.getTypeExpr()) :
+                    this.analyzer.getTypeCache().getDeclaration(this.analyzer.resolvedExpressionType(declaration.getInitializerExpr()))
+            ));
+            add(new STORE_LOCAL_Insn(idx), declaration);
+        }
+
+        private ValueType getValueType(Statement typeDeclaration) {
+            if (typeDeclaration == Prelude.getLongStruct())
+                return ValueType.LONG;
+            else if (typeDeclaration == Prelude.getDoubleStruct())
+                return ValueType.DOUBLE;
+            else if (typeDeclaration == Prelude.getBoolStruct())
+                return ValueType.BOOLEAN;
+            else
+                return ValueType.REFERENCE;
         }
 
         @Override
@@ -278,7 +430,7 @@ public class Compiler {
             var member = this.analyzer.resolvedReference(expression);
 
             if (member instanceof StructDeclaration.FieldDeclaration field) {
-                this.currentFunctionInsn.add(new LOAD_MEMBER_Insn((short) field.getIndex()));
+                add(new LOAD_MEMBER_Insn((short) field.getIndex()), expression);
             } else if (member instanceof FunctionDeclaration) {
                 // NO OP, handled by FunctionInvocationExpression
             } else {
@@ -290,7 +442,7 @@ public class Compiler {
         public void visit(ReturnStatement returnStatement) {
             super.visit(returnStatement);
 
-            this.currentFunctionInsn.add(new RETURN_Insn(returnStatement.getValueExpr() != null));
+            add(new RETURN_Insn(returnStatement.getValueExpr() != null), returnStatement);
         }
 
         @Override
@@ -331,7 +483,7 @@ public class Compiler {
             if (condition != null)
                 condition.accept(this);
             else
-                this.currentFunctionInsn.add(new B_CONST_Insn(true)); // Infinite loop
+                add(new B_CONST_Insn(true), statement); // Infinite loop
 
             // Loop condition placeholder
             var conditionIndex = this.currentFunctionInsn.size();
@@ -344,7 +496,7 @@ public class Compiler {
                 advanceStatement.accept(this);
 
             // Unconditional jump to start
-            this.currentFunctionInsn.add(new JUMP_Insn(startIndex - this.currentFunctionInsn.size()));
+            add(new JUMP_Insn(startIndex - this.currentFunctionInsn.size()), statement);
             // Jump after body if condition is false
             this.currentFunctionInsn.set(conditionIndex, new JUMP_IF_FALSE_Insn(this.currentFunctionInsn.size() - conditionIndex - 1));
 
@@ -359,12 +511,12 @@ public class Compiler {
 
         @Override
         public void visit(BreakStatement statement) {
-            this.currentFunctionInsn.add(new PlaceholderBreakInsn());
+            add(new PlaceholderBreakInsn(), statement);
         }
 
         @Override
         public void visit(ContinueStatement statement) {
-            this.currentFunctionInsn.add(new PlaceholderContinueInsn());
+            add(new PlaceholderContinueInsn(), statement);
         }
 
         @Override
@@ -381,32 +533,32 @@ public class Compiler {
             {
                 expression.getLeft().accept(this);
                 if (anyDouble && !leftDouble)
-                    this.currentFunctionInsn.add(new L_TO_D_Insn());
+                    add(new L_TO_D_Insn(), expression);
                 expression.getRight().accept(this);
                 if (anyDouble && !rightDouble)
-                    this.currentFunctionInsn.add(new L_TO_D_Insn());
+                    add(new L_TO_D_Insn(), expression);
             }
 
             switch (expression.getOperator()) {
-                case OP_ADD -> this.currentFunctionInsn.add(anyDouble ? new D_ADD_Insn() : new L_ADD_Insn());
-                case OP_SUBTRACT -> this.currentFunctionInsn.add(anyDouble ? new D_SUB_Insn() : new L_SUB_Insn());
-                case OP_MULTIPLY -> this.currentFunctionInsn.add(anyDouble ? new D_MUL_Insn() : new L_MUL_Insn());
-                case OP_DIVIDE -> this.currentFunctionInsn.add(anyDouble ? new D_DIV_Insn() : new L_DIV_Insn());
-                case OP_POW -> this.currentFunctionInsn.add(anyDouble ? new D_POW_Insn() : new L_POW_Insn());
-                case OP_LESS -> this.currentFunctionInsn.add(anyDouble ? new D_LESS_Insn() : new L_LESS_Insn());
+                case OP_ADD -> add(anyDouble ? new D_ADD_Insn() : new L_ADD_Insn(), expression);
+                case OP_SUBTRACT -> add(anyDouble ? new D_SUB_Insn() : new L_SUB_Insn(), expression);
+                case OP_MULTIPLY -> add(anyDouble ? new D_MUL_Insn() : new L_MUL_Insn(), expression);
+                case OP_DIVIDE -> add(anyDouble ? new D_DIV_Insn() : new L_DIV_Insn(), expression);
+                case OP_POW -> add(anyDouble ? new D_POW_Insn() : new L_POW_Insn(), expression);
+                case OP_LESS -> add(anyDouble ? new D_LESS_Insn() : new L_LESS_Insn(), expression);
                 case OP_LESS_EQUAL ->
-                        this.currentFunctionInsn.add(anyDouble ? new D_LESS_EQUAL_Insn() : new L_LESS_EQUAL_Insn());
+                        add(anyDouble ? new D_LESS_EQUAL_Insn() : new L_LESS_EQUAL_Insn(), expression);
                 case OP_GREATER ->
-                        this.currentFunctionInsn.add(anyDouble ? new D_GREATER_Insn() : new L_GREATER_Insn());
+                        add(anyDouble ? new D_GREATER_Insn() : new L_GREATER_Insn(), expression);
                 case OP_GREATER_EQUAL ->
-                        this.currentFunctionInsn.add(anyDouble ? new D_GREATER_EQUAL_Insn() : new L_GREATER_EQUAL_Insn());
-                case OP_EQUAL -> this.currentFunctionInsn.add(anyDouble ? new D_EQUAL_Insn() : new L_EQUAL_Insn());
+                        add(anyDouble ? new D_GREATER_EQUAL_Insn() : new L_GREATER_EQUAL_Insn(), expression);
+                case OP_EQUAL -> add(anyDouble ? new D_EQUAL_Insn() : new L_EQUAL_Insn(), expression);
                 case OP_NOT_EQUAL -> {
-                    this.currentFunctionInsn.add(anyDouble ? new D_EQUAL_Insn() : new L_EQUAL_Insn());
-                    this.currentFunctionInsn.add(new B_INVERT_Insn());
+                    add(anyDouble ? new D_EQUAL_Insn() : new L_EQUAL_Insn(), expression);
+                    add(new B_INVERT_Insn(), expression);
                 }
-                case OP_AND -> this.currentFunctionInsn.add(new B_AND_Insn());
-                case OP_OR -> this.currentFunctionInsn.add(new B_OR_Insn());
+                case OP_AND -> add(new B_AND_Insn(), expression);
+                case OP_OR -> add(new B_OR_Insn(), expression);
                 default -> throw new UnsupportedOperationException("Unsupported operator: " + expression.getOperator());
             }
         }
@@ -418,8 +570,8 @@ public class Compiler {
             var doubleType = this.analyzer.getTypeCache().getType(Prelude.getDoubleStruct());
             var isDouble = this.analyzer.resolvedExpressionType(expression).equals(doubleType);
             switch (expression.getOperator()) {
-                case OP_NOT -> this.currentFunctionInsn.add(new B_INVERT_Insn());
-                case OP_NEGATE -> this.currentFunctionInsn.add(isDouble ? new D_NEGATE_Insn() : new L_NEGATE_Insn());
+                case OP_NOT -> add(new B_INVERT_Insn(), expression);
+                case OP_NEGATE -> add(isDouble ? new D_NEGATE_Insn() : new L_NEGATE_Insn(), expression);
                 default -> throw new UnsupportedOperationException("Unsupported operator: " + expression.getOperator());
             }
         }
@@ -428,16 +580,16 @@ public class Compiler {
             {
                 expression.getRight().accept(this);
             }
-            this.currentFunctionInsn.add(new DUP_Insn());
+            add(new DUP_Insn(), expression);
 
             if (expression.getLeft() instanceof IdentifierExpression identifierExpression) {
                 var idx = getLocalIndex(identifierExpression);
-                this.currentFunctionInsn.add(new STORE_LOCAL_Insn(idx));
+                add(new STORE_LOCAL_Insn(idx), expression);
             } else if (expression.getLeft() instanceof MemberAccessExpression memberAccessExpression) {
                 memberAccessExpression.getTarget().accept(this);
 
                 var field = (StructDeclaration.FieldDeclaration) this.analyzer.resolvedReference(memberAccessExpression);
-                this.currentFunctionInsn.add(new STORE_MEMBER_Insn((short) field.getIndex()));
+                add(new STORE_MEMBER_Insn((short) field.getIndex()), expression);
             } else {
                 throw new UnsupportedOperationException("Cannot assign to " + expression.getLeft());
             }
@@ -445,32 +597,33 @@ public class Compiler {
 
         @Override
         public void visit(LongLiteralExpression longLiteralExpression) {
-            this.currentFunctionInsn.add(new L_CONST_Insn(longLiteralExpression.getValue()));
+            add(new L_CONST_Insn(longLiteralExpression.getValue()), longLiteralExpression);
         }
 
         @Override
         public void visit(DoubleLiteralExpression doubleLiteralExpression) {
-            this.currentFunctionInsn.add(new D_CONST_Insn(doubleLiteralExpression.getValue()));
+            add(new D_CONST_Insn(doubleLiteralExpression.getValue()), doubleLiteralExpression);
         }
 
         @Override
         public void visit(BooleanLiteralExpression booleanLiteralExpression) {
-            this.currentFunctionInsn.add(new B_CONST_Insn(booleanLiteralExpression.getValue()));
+            add(new B_CONST_Insn(booleanLiteralExpression.getValue()), booleanLiteralExpression);
         }
 
         @Override
         public void visit(NullLiteralExpression doubleLiteralExpression) {
-            this.currentFunctionInsn.add(new NULL_CONST_Insn());
+            add(new NULL_CONST_Insn(), doubleLiteralExpression);
         }
 
         @Override
         public void visit(StringLiteralExpression stringLiteralExpression) {
             if (stringLiteralExpression.isSingleString()) {
-                this.currentFunctionInsn.add(new S_CONST_Insn(stringLiteralExpression.asSingleString()));
+                add(new S_CONST_Insn(stringLiteralExpression.asSingleString()), stringLiteralExpression);
                 return;
             }
 
             var parts = stringLiteralExpression.getParts();
+            var partCount = 0;
             for (int i = 0; i < parts.size(); i++) {
                 var part = parts.get(i);
                 switch (part.getType()) {
@@ -480,14 +633,21 @@ public class Compiler {
                             partString = partString.substring(1);
                         if (i == parts.size() - 1)
                             partString = partString.substring(0, partString.length() - 1);
-                        this.currentFunctionInsn.add(new S_CONST_Insn(partString));
+                        // Empty parts, e.g. before an expression at the start, add nothing to the result
+                        if (partString.isEmpty())
+                            continue;
+                        add(new S_CONST_Insn(partString), stringLiteralExpression);
                     }
                     case EXPRESSION -> part.asExpression().accept(this);
                 }
+                partCount++;
             }
 
-            for (int i = 0; i < stringLiteralExpression.getParts().size() - 1; i++)
-                this.currentFunctionInsn.add(new INVOKE_INTRINSIC_Insn(STRING_CONCAT_FUNCTION));
+            // All parts are joined at once instead of creating an intermediate string for every concatenation
+            if (partCount == 0)
+                add(new S_CONST_Insn(""), stringLiteralExpression);
+            else
+                add(new STRING_BUILD_Insn(partCount), stringLiteralExpression);
         }
 
         @Override
@@ -500,19 +660,25 @@ public class Compiler {
             if (varIndex == null)
                 throw new IllegalStateException("Variable not found " + identifierExpression + ": [" + identifierExpression.getSpan().getStartLine() + ":" + identifierExpression.getSpan().getStartColumn() + "]");
 
-            this.currentFunctionInsn.add(new LOAD_LOCAL_Insn(varIndex));
+            add(new LOAD_LOCAL_Insn(varIndex), identifierExpression);
         }
 
         @Override
         public void visit(ListLiteralExpression listLiteralExpression) {
-            this.currentFunctionInsn.add(new CREATE_LIST_Insn());
-            for (int i = 0; i < listLiteralExpression.getInitializers().size(); i++)
-                this.currentFunctionInsn.add(new DUP_Insn());
+            var initializers = listLiteralExpression.getInitializers();
+            if (initializers.isEmpty()) {
+                add(new CREATE_LIST_Insn(), listLiteralExpression);
+                return;
+            }
+
+            // The list is created with all elements at once, instead of growing it with one list.add call per element
+            initializers.forEach(e -> e.accept(this));
+            add(new CREATE_LIST_N_Insn(initializers.size()), listLiteralExpression);
+        }
 
-            listLiteralExpression.getInitializers().forEach(e -> {
-                e.accept(this);
-                this.currentFunctionInsn.add(new INVOKE_INTRINSIC_Insn(LIST_ADD_FUNCTION));
-            });
+        private void add(IInstrunction insn, Statement origin) {
+            this.currentFunctionInsn.add(insn);
+            this.object.getInstructionSpans().put(insn, origin.getSpan());
         }
 
         private Integer getLocalIndex(IdentifierExpression identifierExpression) {
@@ -524,7 +690,7 @@ public class Compiler {
         }
 
         private int getStructId(StructDeclaration declaration) {
-            return structIds.computeIfAbsent(declaration, k -> structIds.size());
+            return this.object.getStructId(declaration);
         }
 
         private record PlaceholderBreakInsn() implements IInstrunction {
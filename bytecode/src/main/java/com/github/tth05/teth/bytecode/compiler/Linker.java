@@ -0,0 +1,238 @@
+package com.github.tth05.teth.bytecode.compiler;
+
+import com.github.tth05.teth.analyzer.visitor.NameAnalysis;
+import com.github.tth05.teth.bytecode.compiler.internal.PlaceholderInvokeInsn;
+import com.github.tth05.teth.bytecode.compiler.optimization.FunctionInliner;
+import com.github.tth05.teth.bytecode.op.CREATE_OBJECT_Insn;
+import com.github.tth05.teth.bytecode.op.IInstrunction;
+import com.github.tth05.teth.bytecode.op.INVOKE_Insn;
+import com.github.tth05.teth.bytecode.op.RETURN_Insn;
+import com.github.tth05.teth.bytecode.op.TAIL_INVOKE_Insn;
+import com.github.tth05.teth.bytecode.program.FunctionData;
+import com.github.tth05.teth.bytecode.program.LineNumberTable;
+import com.github.tth05.teth.bytecode.program.StructData;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.bytecode.program.ValueType;
+import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
+import com.github.tth05.teth.lang.parser.ast.StructDeclaration;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles the {@link ModuleObject}s of all modules into a {@link TethProgram} and keeps them, so that a
+ * {@link Compiler} which uses the same linker only has to generate code for modules whose source, or the source of a
+ * module they depend on, has changed. All compilers which share a linker have to use the same optimizers.
+ * <br>
+ * Functions and structs are identified by a symbol made of their module and the position of their name. This allows
+ * objects to refer to the declarations of a module which has been parsed again after the object was compiled.
+ */
+public class Linker {
+
+    private static final String GLOBAL_FUNCTION_SYMBOL = "<global>";
+
+    private final Map<String, ModuleObject> moduleObjects = new HashMap<>();
+
+    /**
+     * @return The object of the given module which was linked last, or {@code null} if there is none
+     */
+    public ModuleObject getModuleObject(String uniquePath) {
+        return this.moduleObjects.get(uniquePath);
+    }
+
+    /**
+     * @return The object of the given module if it was compiled from sources with the given hash, otherwise
+     * {@code null}
+     */
+    ModuleObject findModuleObject(String uniquePath, byte[] hash) {
+        var object = this.moduleObjects.get(uniquePath);
+        return object != null && Arrays.equals(object.getHash(), hash) ? object : null;
+    }
+
+    /**
+     * Links the given objects into a program and replaces all previously linked objects. One of the objects has to
+     * contain the global function.
+     *
+     * @param maxInlineSize The maximum instruction count of functions which are inlined into their callers, see
+     *                      {@link FunctionInliner}. 0 disables inlining.
+     */
+    public TethProgram link(List<ModuleObject> objects, int maxInlineSize) {
+        this.moduleObjects.clear();
+        for (var object : objects)
+            this.moduleObjects.put(object.getUniquePath(), object);
+
+        var spans = new IdentityHashMap<IInstrunction, Span>();
+        var functions = new ArrayList<ModuleObject.Function>();
+        var functionsBySymbol = new HashMap<String, ModuleObject.Function>();
+        var structIds = new HashMap<String, Integer>();
+        var structData = new ArrayList<StructData>();
+        var structRelocations = new IdentityHashMap<ModuleObject, int[]>();
+        for (var object : objects) {
+            spans.putAll(object.getInstructionSpans());
+            for (var function : object.getFunctions()) {
+                if (functionsBySymbol.put(getSymbol(function.declaration()), function) != null)
+                    throw new IllegalStateException("Duplicate symbol '%s'".formatted(getSymbol(function.declaration())));
+
+                functions.add(function);
+            }
+
+            var structs = object.getStructs();
+            var relocation = new int[structs.size()];
+            for (int i = 0; i < structs.size(); i++) {
+                var struct = structs.get(i);
+                relocation[i] = structIds.computeIfAbsent(struct.symbol(), k -> {
+                    structData.add(struct.data());
+                    return structData.size() - 1;
+                });
+            }
+            structRelocations.put(object, relocation);
+        }
+
+        var globalFunction = functionsBySymbol.get(GLOBAL_FUNCTION_SYMBOL);
+        if (globalFunction == null)
+            throw new IllegalStateException("No global function");
+
+        // Ensure global function comes first
+        functions.removeIf(f -> f == globalFunction);
+        functions.add(0, globalFunction);
+
+        // Relocate copies of all functions, the objects are reused by later links
+        var linkedFunctions = new IdentityHashMap<FunctionDeclaration, ModuleObject.Function>();
+        var inliner = new FunctionInliner(maxInlineSize, spans);
+        for (var object : objects) {
+            var relocation = structRelocations.get(object);
+            for (var function : object.getFunctions()) {
+                var instructions = new ArrayList<IInstrunction>(function.instructions().size());
+                for (var insn : function.instructions()) {
+                    var relocatedInsn = relocate(insn, functionsBySymbol, relocation);
+                    if (relocatedInsn != insn) {
+                        var span = spans.get(insn);
+                        if (span != null)
+                            spans.put(relocatedInsn, span);
+                    }
+
+                    instructions.add(relocatedInsn);
+                }
+
+                var linkedFunction = new ModuleObject.Function(
+                        function.declaration(), function.name(), function.paramCount(),
+                        instructions, new ArrayList<>(function.localTypes()), function.returnType()
+                );
+                linkedFunctions.put(function.declaration(), linkedFunction);
+                inliner.addFunction(function.declaration(), function.name(), function.paramCount(), instructions, linkedFunction.localTypes());
+            }
+        }
+
+        // Inline small functions
+        if (maxInlineSize > 0)
+            inliner.inline();
+
+        var totalInsnCount = 0;
+        for (var function : functions)
+            totalInsnCount += linkedFunctions.get(function.declaration()).instructions().size();
+
+        var i = 1;
+        var functionOffsets = new IdentityHashMap<FunctionDeclaration, Integer>();
+        var insns = new IInstrunction[totalInsnCount + 1];
+        var functionData = new FunctionData[functions.size()];
+        var lineNumberTable = new LineNumberTable.Builder();
+        // Global INVOKE
+        lineNumberTable.add(null);
+
+        // Compute function offsets
+        for (int j = 0; j < functions.size(); j++) {
+            var function = linkedFunctions.get(functions.get(j).declaration());
+            functionOffsets.put(function.declaration(), i);
+
+            functionData[j] = new FunctionData(
+                    function.name(), i, function.instructions().size(), function.paramCount(),
+                    function.localTypes().toArray(ValueType[]::new), function.returnType()
+            );
+
+            // Copy insns to array
+            var insnList = function.instructions();
+            var inlineFrames = inliner.getInlineFrames(function.declaration());
+            Span span = null;
+            for (int k = 0; k < insnList.size(); k++) {
+                var insn = insnList.get(k);
+                insns[i++] = insn;
+                var insnSpan = spans.get(insn);
+                if (insnSpan != null)
+                    span = insnSpan;
+                lineNumberTable.add(span, inlineFrames.get(k));
+            }
+        }
+
+        var functionStarts = new boolean[insns.length + 1];
+        for (var offset : functionOffsets.values())
+            functionStarts[offset] = true;
+
+        // Resolve jump addresses
+        for (int j = 1; j < insns.length; j++) {
+            var insn = insns[j];
+            if (!(insn instanceof PlaceholderInvokeInsn placeholder))
+                continue;
+
+            var function = placeholder.target();
+            var offset = functionOffsets.get(function);
+            var localsCount = getLocalsCount(linkedFunctions.get(function));
+            // The result of a call which is directly returned does not need a frame of the current function
+            var tailCall = j + 1 < insns.length && !functionStarts[j + 1] &&
+                           insns[j + 1] instanceof RETURN_Insn returnInsn && returnInsn.shouldReturnValue() == placeholder.returnsValue();
+            if (tailCall)
+                insns[j] = new TAIL_INVOKE_Insn(placeholder.isInstanceFunction(), placeholder.getParamCount(), localsCount, placeholder.returnsValue(), offset - 1);
+            else
+                insns[j] = new INVOKE_Insn(placeholder.isInstanceFunction(), placeholder.getParamCount(), localsCount, placeholder.returnsValue(), offset - 1);
+        }
+
+        // "Invoke" global function
+        insns[0] = new INVOKE_Insn(false, 0, getLocalsCount(linkedFunctions.get(globalFunction.declaration())), false, 0);
+
+        return new TethProgram(insns, structData.toArray(StructData[]::new), functionData, lineNumberTable.build());
+    }
+
+    /**
+     * @return {@code insn} with the target of a call replaced by the declaration from the linked objects and a struct
+     * id mapped to the id of the program
+     */
+    private static IInstrunction relocate(IInstrunction insn, Map<String, ModuleObject.Function> functionsBySymbol, int[] structRelocation) {
+        if (insn instanceof PlaceholderInvokeInsn placeholder) {
+            var function = functionsBySymbol.get(getSymbol(placeholder.target()));
+            if (function == null)
+                throw new IllegalStateException("Function '%s' is referenced but not compiled".formatted(placeholder.target().getNameExpr().getSpan().getText()));
+
+            return function.declaration() == placeholder.target() ? insn : new PlaceholderInvokeInsn(function.declaration());
+        } else if (insn instanceof CREATE_OBJECT_Insn createInsn) {
+            var structId = structRelocation[createInsn.getStructId()];
+            return structId == createInsn.getStructId() ? insn : new CREATE_OBJECT_Insn(structId, createInsn.getFieldCount());
+        }
+
+        return insn;
+    }
+
+    /**
+     * @return The number of locals of the given function without the parameters, including the locals which were
+     * added by optimizations
+     */
+    private static int getLocalsCount(ModuleObject.Function function) {
+        return function.localTypes().size() - function.paramCount();
+    }
+
+    static String getSymbol(FunctionDeclaration declaration) {
+        if (declaration == NameAnalysis.GLOBAL_FUNCTION)
+            return GLOBAL_FUNCTION_SYMBOL;
+
+        var nameSpan = declaration.getNameExpr().getSpan();
+        return declaration.getContainingUnit().getUniquePath() + ":" + nameSpan.getText() + "@" + nameSpan.offset();
+    }
+
+    static String getSymbol(StructDeclaration declaration) {
+        var nameSpan = declaration.getNameExpr().getSpan();
+        return declaration.getContainingUnit().getUniquePath() + ":" + nameSpan.getText() + "@" + nameSpan.offset();
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.tth05.teth.bytecode.compiler;
+
+import com.github.tth05.teth.bytecode.compiler.internal.PlaceholderInvokeInsn;
+import com.github.tth05.teth.bytecode.op.IInstrunction;
+import com.github.tth05.teth.bytecode.program.StructData;
+import com.github.tth05.teth.bytecode.program.ValueType;
+import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
+import com.github.tth05.teth.lang.parser.ast.StructDeclaration;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The optimized, relocatable code of a single module. Calls are {@link PlaceholderInvokeInsn}s, which the
+ * {@link Linker} resolves through the symbol of their target, and the struct ids of {@code CREATE_OBJECT} instructions
+ * are indices into the struct table of this object, which the linker maps to the ids of the program.
+ */
+public final class ModuleObject {
+
+    private final String uniquePath;
+    private final byte[] hash;
+    private final List<Function> functions = new ArrayList<>();
+    private final List<Struct> structs = new ArrayList<>();
+    private final Map<StructDeclaration, Integer> structIds = new IdentityHashMap<>();
+    /**
+     * The span of the AST node each instruction was generated for. Instructions without an entry belong to the
+     * preceding instruction.
+     */
+    private final Map<IInstrunction, Span> instructionSpans = new IdentityHashMap<>();
+
+    ModuleObject(String uniquePath, byte[] hash) {
+        this.uniquePath = uniquePath;
+        this.hash = hash;
+    }
+
+    public String getUniquePath() {
+        return this.uniquePath;
+    }
+
+    /**
+     * @return The hash of the source of this module and of all modules it depends on
+     */
+    byte[] getHash() {
+        return this.hash;
+    }
+
+    /**
+     * @return The symbols of all functions defined by this module
+     */
+    public List<String> getExportedSymbols() {
+        return this.functions.stream().map(f -> Linker.getSymbol(f.declaration())).toList();
+    }
+
+    List<Function> getFunctions() {
+        return Collections.unmodifiableList(this.functions);
+    }
+
+    List<Struct> getStructs() {
+        return Collections.unmodifiableList(this.structs);
+    }
+
+    Map<IInstrunction, Span> getInstructionSpans() {
+        return this.instructionSpans;
+    }
+
+    void addFunction(Function function) {
+        this.functions.add(function);
+    }
+
+    /**
+     * @return The id of the given struct in the struct table of this object
+     */
+    int getStructId(StructDeclaration declaration) {
+        return this.structIds.computeIfAbsent(declaration, k -> {
+            this.structs.add(new Struct(
+                    Linker.getSymbol(declaration),
+                    new StructData(
+                            declaration.getNameExpr().getSpan().getText(),
+                            declaration.getFields().stream().map(f -> f.getNameExpr().getSpan().getText()).toArray(String[]::new)
+                    )
+            ));
+            return this.structs.size() - 1;
+        });
+    }
+
+    /**
+     * @param localTypes The types of all parameters followed by the types of all other locals
+     */
+    record Function(FunctionDeclaration declaration, String name, int paramCount, List<IInstrunction> instructions,
+                    List<ValueType> localTypes, ValueType returnType) {}
+
+    record Struct(String symbol, StructData data) {}
+}
@@ -0,0 +1,116 @@
+package com.github.tth05.teth.bytecode.compiler.cfg;
+
+import com.github.tth05.teth.bytecode.op.IInstrunction;
+import com.github.tth05.teth.bytecode.op.IJumpInstruction;
+import com.github.tth05.teth.bytecode.op.OpCodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sequence of instructions which is only entered at the top and only left at the bottom. The jump which ends a
+ * block is not part of its instructions, instead the block references the target block directly. The relative offset
+ * of the jump instruction is meaningless until the graph is lowered, see {@link ControlFlowGraph#toInstructions}.
+ * <br>
+ * {@code RETURN} and {@code EXIT} stay the last instruction of a block, such a block has no successors.
+ */
+public class BasicBlock {
+
+    private final List<IInstrunction> instructions = new ArrayList<>();
+    private final List<BasicBlock> predecessors = new ArrayList<>();
+
+    private IJumpInstruction jump;
+    private BasicBlock jumpTarget;
+    private BasicBlock fallthrough;
+
+    BasicBlock() {
+    }
+
+    /**
+     * @return The mutable instructions of this block, without the jump at the end
+     */
+    public List<IInstrunction> getInstructions() {
+        return this.instructions;
+    }
+
+    /**
+     * @return The jump at the end of this block, or {@code null}
+     */
+    public IJumpInstruction getJump() {
+        return this.jump;
+    }
+
+    public BasicBlock getJumpTarget() {
+        return this.jumpTarget;
+    }
+
+    /**
+     * @return The block which is executed if the jump at the end of this block is not taken, or {@code null} if the
+     * block ends with an unconditional jump, {@code RETURN} or {@code EXIT}
+     */
+    public BasicBlock getFallthrough() {
+        return this.fallthrough;
+    }
+
+    /**
+     * @return {@code true} if this block ends with a jump which is not always taken
+     */
+    public boolean isConditional() {
+        return this.jump != null && this.jump.getOpCode() != OpCodes.JUMP;
+    }
+
+    /**
+     * Replaces the jump at the end of this block. An unconditional jump also removes the fallthrough edge.
+     */
+    public void setJump(IJumpInstruction jump, BasicBlock target) {
+        removeJump();
+        this.jump = jump;
+        this.jumpTarget = target;
+        target.predecessors.add(this);
+        if (jump.getOpCode() == OpCodes.JUMP)
+            setFallthrough(null);
+    }
+
+    /**
+     * Removes the jump at the end of this block, the fallthrough edge is kept.
+     */
+    public void removeJump() {
+        if (this.jumpTarget != null)
+            this.jumpTarget.predecessors.remove(this);
+        this.jump = null;
+        this.jumpTarget = null;
+    }
+
+    public void setFallthrough(BasicBlock fallthrough) {
+        if (this.fallthrough != null)
+            this.fallthrough.predecessors.remove(this);
+        this.fallthrough = fallthrough;
+        if (fallthrough != null)
+            fallthrough.predecessors.add(this);
+    }
+
+    /**
+     * @return The jump target and the fallthrough of this block, if they exist
+     */
+    public List<BasicBlock> getSuccessors() {
+        if (this.jumpTarget == null)
+            return this.fallthrough == null ? List.of() : List.of(this.fallthrough);
+        return this.fallthrough == null ? List.of(this.jumpTarget) : List.of(this.jumpTarget, this.fallthrough);
+    }
+
+    /**
+     * @return All blocks which jump or fall through to this block. A block which does both is contained twice.
+     */
+    public List<BasicBlock> getPredecessors() {
+        return Collections.unmodifiableList(this.predecessors);
+    }
+
+    /**
+     * @return {@code true} if this block neither has instructions nor a jump and therefore simply continues with its
+     * fallthrough
+     */
+    public boolean isEmpty() {
+        return this.instructions.isEmpty() && this.jump == null;
+    }
+}
@@ -0,0 +1,239 @@
+package com.github.tth05.teth.bytecode.compiler.cfg;
+
+import com.github.tth05.teth.bytecode.op.IInstrunction;
+import com.github.tth05.teth.bytecode.op.IJumpInstruction;
+import com.github.tth05.teth.bytecode.op.JUMP_Insn;
+import com.github.tth05.teth.bytecode.op.OpCodes;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The basic blocks of a function, connected by jump and fallthrough edges. Jumps reference their target block instead
+ * of a relative offset, so blocks and instructions can be added and removed without any offset arithmetic. The blocks
+ * are kept in the order in which they are laid out when the graph is lowered back to a flat instruction list.
+ * <br>
+ * The code generator never leaves values on the stack across statements, so the stack is empty at the start of every
+ * block.
+ */
+public class ControlFlowGraph {
+
+    private final List<BasicBlock> blocks;
+
+    private ControlFlowGraph(List<BasicBlock> blocks) {
+        this.blocks = blocks;
+    }
+
+    public static ControlFlowGraph build(List<IInstrunction> instructions) {
+        var size = instructions.size();
+        var leaders = new boolean[size + 1];
+        leaders[0] = true;
+        for (int i = 0; i < size; i++) {
+            var insn = instructions.get(i);
+            if (insn instanceof IJumpInstruction jumpInsn) {
+                leaders[getTarget(instructions, i, jumpInsn)] = true;
+                leaders[i + 1] = true;
+            } else if (isExit(insn)) {
+                leaders[i + 1] = true;
+            }
+        }
+
+        var blockAt = new BasicBlock[size + 1];
+        var blocks = new ArrayList<BasicBlock>();
+        for (int i = 0; i < size; i++) {
+            if (!leaders[i])
+                continue;
+
+            blockAt[i] = new BasicBlock();
+            blocks.add(blockAt[i]);
+        }
+        if (blocks.isEmpty())
+            blocks.add(new BasicBlock());
+
+        BasicBlock current = null;
+        for (int i = 0; i < size; i++) {
+            if (blockAt[i] != null) {
+                if (current != null && fallsThrough(current))
+                    current.setFallthrough(blockAt[i]);
+                current = blockAt[i];
+            }
+
+            var insn = instructions.get(i);
+            if (insn instanceof IJumpInstruction jumpInsn) {
+                current.setJump(jumpInsn, getOrCreateBlock(blockAt, blocks, getTarget(instructions, i, jumpInsn)));
+                // The fallthrough of a conditional jump at the very end has to be an empty block
+                if (i == size - 1 && current.isConditional())
+                    getOrCreateBlock(blockAt, blocks, size);
+            } else {
+                current.getInstructions().add(insn);
+            }
+        }
+
+        if (current != null && blockAt[size] != null && fallsThrough(current))
+            current.setFallthrough(blockAt[size]);
+
+        return new ControlFlowGraph(blocks);
+    }
+
+    public BasicBlock getEntry() {
+        return this.blocks.get(0);
+    }
+
+    /**
+     * @return All blocks in layout order
+     */
+    public List<BasicBlock> getBlocks() {
+        return Collections.unmodifiableList(this.blocks);
+    }
+
+    /**
+     * Inserts a new empty block without any edges in front of {@code block}. The new block becomes the entry block if
+     * {@code block} was the entry block.
+     */
+    public BasicBlock insertBlockBefore(BasicBlock block) {
+        var index = this.blocks.indexOf(block);
+        if (index == -1)
+            throw new IllegalArgumentException("Block is not part of this graph");
+
+        var newBlock = new BasicBlock();
+        this.blocks.add(index, newBlock);
+        return newBlock;
+    }
+
+    /**
+     * Removes all blocks which cannot be reached from the entry block.
+     *
+     * @return {@code true} if any block was removed
+     */
+    public boolean removeUnreachableBlocks() {
+        var reachable = new HashSet<BasicBlock>();
+        var queue = new ArrayDeque<BasicBlock>();
+        queue.add(getEntry());
+        while (!queue.isEmpty()) {
+            var block = queue.poll();
+            if (reachable.add(block))
+                queue.addAll(block.getSuccessors());
+        }
+
+        if (reachable.size() == this.blocks.size())
+            return false;
+
+        for (var block : this.blocks) {
+            if (reachable.contains(block))
+                continue;
+
+            block.removeJump();
+            block.setFallthrough(null);
+        }
+
+        this.blocks.removeIf(block -> !reachable.contains(block));
+        return true;
+    }
+
+    /**
+     * Lays out all blocks in order and resolves the jump offsets. Unconditional jumps to the next block are dropped
+     * and a {@code JUMP} is inserted for every fallthrough edge which does not lead to the next block.
+     *
+     * @param spans The spans of all instructions, jumps which are replaced to change their offset keep their span
+     */
+    public List<IInstrunction> toInstructions(Map<IInstrunction, Span> spans) {
+        var startIndices = new IdentityHashMap<BasicBlock, Integer>();
+        var size = 0;
+        for (int i = 0; i < this.blocks.size(); i++) {
+            var block = this.blocks.get(i);
+            startIndices.put(block, size);
+            size += block.getInstructions().size();
+            if (needsJump(i))
+                size++;
+            if (needsFallthroughJump(i))
+                size++;
+        }
+
+        var result = new ArrayList<IInstrunction>(size);
+        for (int i = 0; i < this.blocks.size(); i++) {
+            var block = this.blocks.get(i);
+            result.addAll(block.getInstructions());
+
+            if (needsJump(i)) {
+                var jumpInsn = block.getJump();
+                var offset = startIndices.get(block.getJumpTarget()) - result.size() - 1;
+                if (offset != jumpInsn.getRelativeJumpOffset()) {
+                    var newJumpInsn = jumpInsn.withRelativeJumpOffset(offset);
+                    var span = spans.get(jumpInsn);
+                    if (span != null)
+                        spans.put(newJumpInsn, span);
+                    jumpInsn = newJumpInsn;
+                }
+
+                result.add(jumpInsn);
+            }
+
+            if (needsFallthroughJump(i))
+                result.add(new JUMP_Insn(startIndices.get(block.getFallthrough()) - result.size() - 1));
+        }
+
+        return result;
+    }
+
+    private boolean needsJump(int index) {
+        var block = this.blocks.get(index);
+        return block.getJump() != null && (block.isConditional() || !isNextBlock(index, block.getJumpTarget()));
+    }
+
+    private boolean needsFallthroughJump(int index) {
+        var fallthrough = this.blocks.get(index).getFallthrough();
+        return fallthrough != null && !isNextBlock(index, fallthrough);
+    }
+
+    /**
+     * @return {@code true} if execution continues with {@code target} after the block at {@code index} without a jump,
+     * skipping empty blocks which produce no instructions
+     */
+    private boolean isNextBlock(int index, BasicBlock target) {
+        for (int i = index + 1; i < this.blocks.size(); i++) {
+            var block = this.blocks.get(i);
+            if (block == target)
+                return true;
+            if (!block.isEmpty() || block.getFallthrough() != (i + 1 < this.blocks.size() ? this.blocks.get(i + 1) : null))
+                return false;
+        }
+
+        return false;
+    }
+
+    private static BasicBlock getOrCreateBlock(BasicBlock[] blockAt, List<BasicBlock> blocks, int index) {
+        if (blockAt[index] == null) {
+            // Only the end of the instructions is not a leader
+            blockAt[index] = new BasicBlock();
+            blocks.add(blockAt[index]);
+        }
+
+        return blockAt[index];
+    }
+
+    private static int getTarget(List<IInstrunction> instructions, int index, IJumpInstruction jumpInsn) {
+        var target = index + jumpInsn.getRelativeJumpOffset() + 1;
+        if (target < 0 || target > instructions.size())
+            throw new IllegalStateException("Jump at " + index + " targets invalid index " + target);
+
+        return target;
+    }
+
+    private static boolean fallsThrough(BasicBlock block) {
+        if (block.getJump() != null)
+            return block.isConditional();
+
+        var instructions = block.getInstructions();
+        return instructions.isEmpty() || !isExit(instructions.get(instructions.size() - 1));
+    }
+
+    private static boolean isExit(IInstrunction insn) {
+        return insn.getOpCode() == OpCodes.RETURN || insn.getOpCode() == OpCodes.EXIT;
+    }
+}
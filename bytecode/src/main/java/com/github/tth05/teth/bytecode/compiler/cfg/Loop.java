@@ -0,0 +1,142 @@
+package com.github.tth05.teth.bytecode.compiler.cfg;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A natural loop, which consists of a header that dominates all blocks of the loop and all blocks which can reach a
+ * jump back to the header without passing through it. Loops with the same header are merged, e.g. a loop whose body
+ * contains a {@code continue}.
+ *
+ * @param header The only block of the loop which can be entered from outside the loop
+ * @param blocks All blocks of the loop, including the header
+ */
+public record Loop(BasicBlock header, Set<BasicBlock> blocks) {
+
+    /**
+     * @return All loops of the given graph, inner loops before the loops which contain them
+     */
+    public static List<Loop> findAll(ControlFlowGraph graph) {
+        var order = reversePostorder(graph.getEntry());
+        var indices = new IdentityHashMap<BasicBlock, Integer>();
+        for (int i = 0; i < order.size(); i++)
+            indices.put(order.get(i), i);
+
+        var dominators = computeDominators(order, indices);
+        var bodies = new LinkedHashMap<BasicBlock, Set<BasicBlock>>();
+        for (int i = 0; i < order.size(); i++) {
+            var block = order.get(i);
+            for (var successor : block.getSuccessors()) {
+                // A jump to a dominator is a jump back to the header of a loop
+                if (!dominators[i].get(indices.get(successor)))
+                    continue;
+
+                var body = bodies.computeIfAbsent(successor, header -> {
+                    var blocks = new HashSet<BasicBlock>();
+                    blocks.add(header);
+                    return blocks;
+                });
+                collectBody(block, body, indices);
+            }
+        }
+
+        var loops = new ArrayList<Loop>(bodies.size());
+        bodies.forEach((header, blocks) -> loops.add(new Loop(header, blocks)));
+        // A loop which contains another loop always has more blocks
+        loops.sort(Comparator.comparingInt(loop -> loop.blocks().size()));
+        return loops;
+    }
+
+    /**
+     * Adds {@code latch} and all blocks which reach it without passing a block that is already part of the body
+     */
+    private static void collectBody(BasicBlock latch, Set<BasicBlock> body, Map<BasicBlock, Integer> indices) {
+        var queue = new ArrayDeque<BasicBlock>();
+        queue.add(latch);
+        while (!queue.isEmpty()) {
+            var block = queue.poll();
+            if (!body.add(block))
+                continue;
+
+            for (var predecessor : block.getPredecessors()) {
+                // Unreachable blocks are not part of any loop
+                if (indices.containsKey(predecessor))
+                    queue.add(predecessor);
+            }
+        }
+    }
+
+    /**
+     * @return The dominators of every block as indices into {@code order}
+     */
+    private static BitSet[] computeDominators(List<BasicBlock> order, Map<BasicBlock, Integer> indices) {
+        var dominators = new BitSet[order.size()];
+        dominators[0] = new BitSet();
+        dominators[0].set(0);
+        for (int i = 1; i < order.size(); i++) {
+            dominators[i] = new BitSet();
+            dominators[i].set(0, order.size());
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+            for (int i = 1; i < order.size(); i++) {
+                BitSet newDominators = null;
+                for (var predecessor : order.get(i).getPredecessors()) {
+                    var predecessorIndex = indices.get(predecessor);
+                    if (predecessorIndex == null)
+                        continue;
+
+                    if (newDominators == null)
+                        newDominators = (BitSet) dominators[predecessorIndex].clone();
+                    else
+                        newDominators.and(dominators[predecessorIndex]);
+                }
+
+                newDominators.set(i);
+                if (!newDominators.equals(dominators[i])) {
+                    dominators[i] = newDominators;
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        return dominators;
+    }
+
+    private static List<BasicBlock> reversePostorder(BasicBlock entry) {
+        var postorder = new ArrayList<BasicBlock>();
+        var visited = new HashSet<BasicBlock>();
+        var stack = new ArrayDeque<Visit>();
+        visited.add(entry);
+        stack.push(new Visit(entry, entry.getSuccessors().iterator()));
+        while (!stack.isEmpty()) {
+            var visit = stack.peek();
+            if (!visit.successors().hasNext()) {
+                stack.pop();
+                postorder.add(visit.block());
+                continue;
+            }
+
+            var successor = visit.successors().next();
+            if (visited.add(successor))
+                stack.push(new Visit(successor, successor.getSuccessors().iterator()));
+        }
+
+        Collections.reverse(postorder);
+        return postorder;
+    }
+
+    private record Visit(BasicBlock block, Iterator<BasicBlock> successors) {}
+}
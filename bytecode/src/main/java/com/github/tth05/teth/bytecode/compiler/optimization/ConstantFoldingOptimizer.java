@@ -0,0 +1,237 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.analyzer.prelude.Prelude;
+import com.github.tth05.teth.bytecode.compiler.cfg.BasicBlock;
+import com.github.tth05.teth.bytecode.compiler.cfg.ControlFlowGraph;
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Evaluates arithmetic, comparisons, boolean operations, conversions and string concatenations whose operands are
+ * constants at compile time. Locals which are assigned a constant exactly once are replaced by that constant, which
+ * can make more expressions foldable, e.g. {@code let secondsPerDay = 60 * 60 * 24} followed by
+ * {@code secondsPerDay * 7}.
+ * <br>
+ * Folding follows the runtime semantics of the interpreter exactly. Operations which fail at runtime, like a long
+ * division by zero, are left alone so that the error is still reported. Folding never crosses the boundary of a
+ * basic block, so instructions which are the target of a jump stay intact. Constant propagation is disabled if
+ * {@link OptimizationContext#externalLocalAccess()} is set.
+ * <br>
+ * This optimizer has to run after the {@link StackCleaningOptimizer} and before the {@link SuperinstructionOptimizer}.
+ */
+public class ConstantFoldingOptimizer implements ICfgOptimizer, OpCodes {
+
+    private static final FunctionDeclaration STRING_CONCAT_FUNCTION = (FunctionDeclaration) Prelude.getStructForTypeName(Span.fromString("string")).getMember(Span.fromString("concat"));
+
+    @Override
+    public void method(ControlFlowGraph graph, OptimizationContext context) {
+        // Propagated constants can make new expressions foldable and folded expressions can create new constant locals
+        boolean changed;
+        do {
+            changed = false;
+            for (var block : graph.getBlocks())
+                changed |= fold(block, context);
+            if (!context.externalLocalAccess())
+                changed |= propagate(graph, context);
+        } while (changed);
+    }
+
+    private static boolean fold(BasicBlock block, OptimizationContext context) {
+        var instructions = block.getInstructions();
+        var result = new ArrayList<IInstrunction>(instructions.size());
+        var changed = false;
+        for (var insn : instructions) {
+            var operandCount = getOperandCount(insn);
+            if (operandCount > 0 && hasConstantOperands(result, operandCount)) {
+                var firstOperand = result.size() - operandCount;
+                var folded = evaluate(insn, result.subList(firstOperand, result.size()));
+                if (folded != null) {
+                    result.subList(firstOperand, result.size()).clear();
+                    result.add(folded);
+                    context.copySpan(insn, folded);
+                    changed = true;
+                    continue;
+                }
+            }
+
+            result.add(insn);
+        }
+
+        if (!changed)
+            return false;
+
+        instructions.clear();
+        instructions.addAll(result);
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the last {@code operandCount} instructions of {@code result} are constants
+     */
+    private static boolean hasConstantOperands(List<IInstrunction> result, int operandCount) {
+        if (result.size() < operandCount)
+            return false;
+
+        for (int i = result.size() - operandCount; i < result.size(); i++) {
+            if (!isConstant(result.get(i)))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces all loads of locals which are assigned a constant exactly once. The store itself is kept.
+     */
+    private static boolean propagate(ControlFlowGraph graph, OptimizationContext context) {
+        var storeCounts = new HashMap<Integer, Integer>();
+        var constants = new HashMap<Integer, IInstrunction>();
+        for (var block : graph.getBlocks()) {
+            var instructions = block.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                var insn = instructions.get(i);
+                if (!(insn instanceof STORE_LOCAL_Insn) && !(insn instanceof L_INC_LOCAL_Insn))
+                    continue;
+
+                var localIndex = ((AbstractLocalInsn) insn).getLocalIndex();
+                storeCounts.merge(localIndex, 1, Integer::sum);
+                // Parameters are assigned by the caller. A constant before the store in the same block is always the
+                // stored value.
+                if (insn instanceof STORE_LOCAL_Insn && localIndex >= context.paramCount() &&
+                    i > 0 && isConstant(instructions.get(i - 1)))
+                    constants.put(localIndex, instructions.get(i - 1));
+            }
+        }
+
+        var changed = false;
+        for (var block : graph.getBlocks()) {
+            var instructions = block.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                if (!(instructions.get(i) instanceof LOAD_LOCAL_Insn loadInsn))
+                    continue;
+
+                var localIndex = loadInsn.getLocalIndex();
+                var constant = constants.get(localIndex);
+                if (constant == null || storeCounts.get(localIndex) != 1)
+                    continue;
+
+                var copy = copyConstant(constant);
+                context.copySpan(loadInsn, copy);
+                instructions.set(i, copy);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private static int getOperandCount(IInstrunction insn) {
+        return switch (insn.getOpCode()) {
+            case B_INVERT, L_NEGATE, D_NEGATE, L_TO_D, D_TO_L -> 1;
+            case B_AND, B_OR,
+                    L_ADD, L_SUB, L_MUL, L_DIV, L_POW,
+                    D_ADD, D_SUB, D_MUL, D_DIV, D_POW,
+                    L_LESS, L_LESS_EQUAL, L_GREATER, L_GREATER_EQUAL, L_EQUAL,
+                    D_LESS, D_LESS_EQUAL, D_GREATER, D_GREATER_EQUAL, D_EQUAL -> 2;
+            case INVOKE_INTRINSIC -> ((INVOKE_INTRINSIC_Insn) insn).getFunctionDeclaration() == STRING_CONCAT_FUNCTION ? 2 : 0;
+            case STRING_BUILD -> ((STRING_BUILD_Insn) insn).getPartCount();
+            default -> 0;
+        };
+    }
+
+    /**
+     * @return The constant which {@code insn} produces for the given constant operands, or {@code null} if it cannot be
+     * folded
+     */
+    private static IInstrunction evaluate(IInstrunction insn, List<IInstrunction> operands) {
+        if (insn.getOpCode() == STRING_BUILD) {
+            var builder = new StringBuilder();
+            for (var operand : operands) {
+                if (!(operand instanceof S_CONST_Insn constInsn))
+                    return null;
+                builder.append(constInsn.getValue());
+            }
+
+            return new S_CONST_Insn(builder.toString());
+        }
+
+        var first = operands.get(0);
+        if (operands.size() == 1) {
+            return switch (insn.getOpCode()) {
+                case B_INVERT -> new B_CONST_Insn(!booleanValue(first));
+                case L_NEGATE -> new L_CONST_Insn(-longValue(first));
+                case D_NEGATE -> new D_CONST_Insn(-doubleValue(first));
+                case L_TO_D -> new D_CONST_Insn((double) longValue(first));
+                case D_TO_L -> new L_CONST_Insn((long) doubleValue(first));
+                default -> null;
+            };
+        }
+
+        var second = operands.get(1);
+        return switch (insn.getOpCode()) {
+            // Both operands are always evaluated, there is no short-circuiting
+            case B_AND -> new B_CONST_Insn(booleanValue(first) && booleanValue(second));
+            case B_OR -> new B_CONST_Insn(booleanValue(first) || booleanValue(second));
+            case L_ADD -> new L_CONST_Insn(longValue(first) + longValue(second));
+            case L_SUB -> new L_CONST_Insn(longValue(first) - longValue(second));
+            case L_MUL -> new L_CONST_Insn(longValue(first) * longValue(second));
+            // Division by zero has to fail at runtime
+            case L_DIV -> longValue(second) == 0 ? null : new L_CONST_Insn(longValue(first) / longValue(second));
+            case L_POW -> new L_CONST_Insn((long) Math.pow(longValue(first), longValue(second)));
+            case D_ADD -> new D_CONST_Insn(doubleValue(first) + doubleValue(second));
+            case D_SUB -> new D_CONST_Insn(doubleValue(first) - doubleValue(second));
+            case D_MUL -> new D_CONST_Insn(doubleValue(first) * doubleValue(second));
+            case D_DIV -> new D_CONST_Insn(doubleValue(first) / doubleValue(second));
+            case D_POW -> new D_CONST_Insn(Math.pow(doubleValue(first), doubleValue(second)));
+            case L_LESS -> new B_CONST_Insn(longValue(first) < longValue(second));
+            case L_LESS_EQUAL -> new B_CONST_Insn(longValue(first) <= longValue(second));
+            case L_GREATER -> new B_CONST_Insn(longValue(first) > longValue(second));
+            case L_GREATER_EQUAL -> new B_CONST_Insn(longValue(first) >= longValue(second));
+            case L_EQUAL -> new B_CONST_Insn(longValue(first) == longValue(second));
+            case D_LESS -> new B_CONST_Insn(doubleValue(first) < doubleValue(second));
+            case D_LESS_EQUAL -> new B_CONST_Insn(doubleValue(first) <= doubleValue(second));
+            case D_GREATER -> new B_CONST_Insn(doubleValue(first) > doubleValue(second));
+            case D_GREATER_EQUAL -> new B_CONST_Insn(doubleValue(first) >= doubleValue(second));
+            // Same semantics as Double#equals
+            case D_EQUAL -> new B_CONST_Insn(Double.doubleToLongBits(doubleValue(first)) == Double.doubleToLongBits(doubleValue(second)));
+            case INVOKE_INTRINSIC -> first instanceof S_CONST_Insn left && second instanceof S_CONST_Insn right ?
+                    new S_CONST_Insn(left.getValue() + right.getValue()) : null;
+            default -> null;
+        };
+    }
+
+    private static boolean isConstant(IInstrunction insn) {
+        return switch (insn.getOpCode()) {
+            case L_CONST, D_CONST, B_CONST, S_CONST, NULL_CONST -> true;
+            default -> false;
+        };
+    }
+
+    private static IInstrunction copyConstant(IInstrunction insn) {
+        return switch (insn.getOpCode()) {
+            case L_CONST -> new L_CONST_Insn(longValue(insn));
+            case D_CONST -> new D_CONST_Insn(doubleValue(insn));
+            case B_CONST -> new B_CONST_Insn(booleanValue(insn));
+            case S_CONST -> new S_CONST_Insn(((S_CONST_Insn) insn).getValue());
+            case NULL_CONST -> new NULL_CONST_Insn();
+            default -> throw new IllegalArgumentException("Not a constant: " + insn);
+        };
+    }
+
+    private static long longValue(IInstrunction insn) {
+        return ((L_CONST_Insn) insn).getValue();
+    }
+
+    private static double doubleValue(IInstrunction insn) {
+        return ((D_CONST_Insn) insn).getValue();
+    }
+
+    private static boolean booleanValue(IInstrunction insn) {
+        return ((B_CONST_Insn) insn).getValue();
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.compiler.cfg.BasicBlock;
+import com.github.tth05.teth.bytecode.compiler.cfg.ControlFlowGraph;
+import com.github.tth05.teth.bytecode.op.*;
+
+/**
+ * Simplifies the control flow of a function:
+ * <ul>
+ *     <li>{@code B_CONST, JUMP_IF_FALSE} is removed if the constant is {@code true}, e.g. for infinite loops, and
+ *     replaced by a {@code JUMP} otherwise</li>
+ *     <li>Jumps which target an unconditional {@code JUMP} are threaded to its final target, which removes the
+ *     jump-to-jump chains of nested if statements and loops</li>
+ *     <li>Blocks which cannot be reached, e.g. after a {@code RETURN} or {@code break}, are removed</li>
+ * </ul>
+ * Unconditional jumps to the next instruction disappear when the graph is lowered. This optimizer has to run after
+ * the {@link StackCleaningOptimizer} and after the {@link ConstantFoldingOptimizer}, which produces most of the
+ * constant conditions.
+ */
+public class ControlFlowOptimizer implements ICfgOptimizer, OpCodes {
+
+    @Override
+    public void method(ControlFlowGraph graph, OptimizationContext context) {
+        for (var block : graph.getBlocks())
+            removeConstantCondition(block, context);
+        for (var block : graph.getBlocks()) {
+            if (block.getJump() == null)
+                continue;
+
+            var target = findFinalTarget(graph, block.getJumpTarget());
+            if (target != block.getJumpTarget())
+                block.setJump(block.getJump(), target);
+        }
+
+        graph.removeUnreachableBlocks();
+    }
+
+    private static void removeConstantCondition(BasicBlock block, OptimizationContext context) {
+        var instructions = block.getInstructions();
+        if (!(block.getJump() instanceof JUMP_IF_FALSE_Insn jumpInsn) || instructions.isEmpty() ||
+            !(instructions.get(instructions.size() - 1) instanceof B_CONST_Insn constInsn))
+            return;
+
+        instructions.remove(instructions.size() - 1);
+        if (constInsn.getValue()) {
+            block.removeJump();
+        } else {
+            var newJumpInsn = new JUMP_Insn(jumpInsn.getRelativeJumpOffset());
+            context.copySpan(jumpInsn, newJumpInsn);
+            block.setJump(newJumpInsn, block.getJumpTarget());
+        }
+    }
+
+    /**
+     * @return The block which {@code target} ends up at after following all unconditional jumps and empty blocks, or
+     * {@code target} itself if they form a cycle
+     */
+    private static BasicBlock findFinalTarget(ControlFlowGraph graph, BasicBlock target) {
+        var current = target;
+        // A chain can be at most as long as the function, anything longer is a cycle, e.g. an empty infinite loop
+        for (int i = 0; i < graph.getBlocks().size(); i++) {
+            if (!current.getInstructions().isEmpty() || current.isConditional())
+                return current;
+
+            var next = current.getJump() != null ? current.getJumpTarget() : current.getFallthrough();
+            if (next == null)
+                return current;
+
+            current = next;
+        }
+
+        return target;
+    }
+}
@@ -0,0 +1,233 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.compiler.internal.PlaceholderInvokeInsn;
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.bytecode.program.InlineFrame;
+import com.github.tth05.teth.bytecode.program.ValueType;
+import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces calls to small functions with a copy of their code, which saves the frame setup and teardown of
+ * {@code INVOKE} and {@code RETURN}. This mostly pays off for accessor style struct functions.
+ * <br>
+ * Only functions which do not call any other function are inlined. Functions are processed callees first, so a
+ * function whose calls have all been inlined can be inlined itself. Recursive functions always contain a call and are
+ * therefore never inlined.
+ * <br>
+ * The parameters and locals of an inlined function become new locals of the caller. The arguments are popped into
+ * these locals, which is preceded by a {@code CHECK_INSTANCE} for instance functions. Every {@code RETURN} turns into
+ * a jump to the end of the inlined code, which leaves the return value on the stack just like {@code INVOKE} does.
+ * <br>
+ * This runs on the fully optimized instructions of every function, right before the code addresses are resolved.
+ */
+public class FunctionInliner {
+
+    private static final int UNVISITED = 0;
+    private static final int IN_PROGRESS = 1;
+    private static final int DONE = 2;
+
+    private final int maxInlineSize;
+    private final Map<IInstrunction, Span> spans;
+    private final Map<FunctionDeclaration, Function> functions = new IdentityHashMap<>();
+
+    /**
+     * @param maxInlineSize The maximum instruction count of a function which is inlined
+     * @param spans         The spans of all instructions, inserted instructions are added to it
+     */
+    public FunctionInliner(int maxInlineSize, Map<IInstrunction, Span> spans) {
+        this.maxInlineSize = maxInlineSize;
+        this.spans = spans;
+    }
+
+    /**
+     * @param instructions The instructions of the function, which are replaced when calls are inlined
+     * @param localTypes   The types of all locals including the parameters, locals of inlined functions are appended
+     */
+    public void addFunction(FunctionDeclaration declaration, String name, int paramCount,
+                            List<IInstrunction> instructions, List<ValueType> localTypes) {
+        this.functions.put(declaration, new Function(name, paramCount, instructions, localTypes));
+    }
+
+    public void inline() {
+        for (var function : this.functions.values())
+            visit(function);
+    }
+
+    /**
+     * @return The inline frame of every instruction of the given function, {@code null} entries for instructions which
+     * were not inlined
+     */
+    public List<InlineFrame> getInlineFrames(FunctionDeclaration declaration) {
+        return Collections.unmodifiableList(this.functions.get(declaration).inlineFrames);
+    }
+
+    private void visit(Function function) {
+        if (function.state != UNVISITED)
+            return;
+
+        function.state = IN_PROGRESS;
+        for (var insn : function.instructions) {
+            var callee = getCallee(insn);
+            if (callee != null)
+                visit(callee);
+        }
+
+        inlineCalls(function);
+        function.state = DONE;
+    }
+
+    private void inlineCalls(Function caller) {
+        var instructions = caller.instructions;
+        var result = new ArrayList<IInstrunction>(instructions.size());
+        var inlineFrames = new ArrayList<InlineFrame>(instructions.size());
+        // The original index of each instruction in the result, -1 for inlined instructions
+        var originalIndices = new ArrayList<Integer>(instructions.size());
+        // Maps original indices to indices in the result
+        var newIndices = new int[instructions.size() + 1];
+        Span span = null;
+        var changed = false;
+        for (int i = 0; i < instructions.size(); i++) {
+            var insn = instructions.get(i);
+            newIndices[i] = result.size();
+            if (this.spans.get(insn) != null)
+                span = this.spans.get(insn);
+
+            var callee = getCallee(insn);
+            if (callee != null && canInline(caller, callee)) {
+                var instanceFunction = ((PlaceholderInvokeInsn) insn).isInstanceFunction();
+                inlineCall(caller, callee, instanceFunction, span, caller.inlineFrames.get(i), result, inlineFrames);
+                while (originalIndices.size() < result.size())
+                    originalIndices.add(-1);
+                changed = true;
+                continue;
+            }
+
+            result.add(insn);
+            inlineFrames.add(caller.inlineFrames.get(i));
+            originalIndices.add(i);
+        }
+
+        if (!changed)
+            return;
+
+        newIndices[instructions.size()] = result.size();
+        JumpTargets.remap(result, originalIndices, newIndices, new OptimizationContext(caller.paramCount, false, this.spans));
+
+        instructions.clear();
+        instructions.addAll(result);
+        caller.inlineFrames = inlineFrames;
+    }
+
+    /**
+     * @return The function which {@code insn} calls, or {@code null} if it is not a call or the function is unknown
+     */
+    private Function getCallee(IInstrunction insn) {
+        return insn instanceof PlaceholderInvokeInsn invokeInsn ? this.functions.get(invokeInsn.target()) : null;
+    }
+
+    private boolean canInline(Function caller, Function callee) {
+        if (callee == caller || callee.state != DONE || callee.instructions.size() > this.maxInlineSize)
+            return false;
+
+        for (var insn : callee.instructions) {
+            if (insn.getOpCode() == OpCodes.INVOKE || insn.getOpCode() == OpCodes.EXIT)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Appends the code of {@code callee} to {@code result}.
+     *
+     * @param callSpan    The span of the call
+     * @param callerFrame The inline frame of the call
+     */
+    private void inlineCall(Function caller, Function callee, boolean instanceFunction, Span callSpan, InlineFrame callerFrame,
+                            List<IInstrunction> result, List<InlineFrame> inlineFrames) {
+        var localBase = caller.localTypes.size();
+        caller.localTypes.addAll(callee.localTypes);
+
+        // The arguments are on the stack, the last one on top
+        for (int i = callee.paramCount - 1; i >= 0; i--) {
+            if (i == 0 && instanceFunction)
+                add(result, inlineFrames, new CHECK_INSTANCE_Insn(), callSpan, callerFrame);
+            add(result, inlineFrames, new STORE_LOCAL_Insn(localBase + i), callSpan, callerFrame);
+        }
+
+        var calleeFrame = new InlineFrame(callee.name, callSpan, callerFrame);
+        var rebasedFrames = new IdentityHashMap<InlineFrame, InlineFrame>();
+        var body = callee.instructions;
+        // The final RETURN simply falls through to the instruction after the call
+        var length = body.get(body.size() - 1).getOpCode() == OpCodes.RETURN ? body.size() - 1 : body.size();
+        for (int i = 0; i < length; i++) {
+            var insn = body.get(i);
+            var copy = switch (insn.getOpCode()) {
+                case OpCodes.RETURN -> new JUMP_Insn(length - i - 1);
+                case OpCodes.LOAD_LOCAL -> new LOAD_LOCAL_Insn(localBase + ((LOAD_LOCAL_Insn) insn).getLocalIndex());
+                case OpCodes.STORE_LOCAL -> new STORE_LOCAL_Insn(localBase + ((STORE_LOCAL_Insn) insn).getLocalIndex());
+                case OpCodes.L_INC_LOCAL -> {
+                    var incInsn = (L_INC_LOCAL_Insn) insn;
+                    yield new L_INC_LOCAL_Insn(localBase + incInsn.getLocalIndex(), incInsn.getValue());
+                }
+                case OpCodes.LOAD_LOCAL_LOAD_MEMBER -> {
+                    var loadInsn = (LOAD_LOCAL_LOAD_MEMBER_Insn) insn;
+                    yield new LOAD_LOCAL_LOAD_MEMBER_Insn(localBase + loadInsn.getLocalIndex(), loadInsn.getFieldIndex());
+                }
+                // Jumps are relative and all other instructions are immutable, so they can be shared
+                default -> insn;
+            };
+
+            var frame = rebase(callee.inlineFrames.get(i), calleeFrame, rebasedFrames);
+            add(result, inlineFrames, copy, this.spans.get(insn), frame);
+        }
+    }
+
+    private void add(List<IInstrunction> result, List<InlineFrame> inlineFrames, IInstrunction insn, Span span, InlineFrame frame) {
+        if (span != null)
+            this.spans.put(insn, span);
+        result.add(insn);
+        inlineFrames.add(frame);
+    }
+
+    /**
+     * @return {@code frame}, with {@code root} as the outermost caller instead of the callee
+     */
+    private static InlineFrame rebase(InlineFrame frame, InlineFrame root, Map<InlineFrame, InlineFrame> cache) {
+        if (frame == null)
+            return root;
+
+        var rebased = cache.get(frame);
+        if (rebased == null) {
+            rebased = new InlineFrame(frame.functionName(), frame.callSite(), rebase(frame.caller(), root, cache));
+            cache.put(frame, rebased);
+        }
+
+        return rebased;
+    }
+
+    private static class Function {
+
+        private final String name;
+        private final int paramCount;
+        private final List<IInstrunction> instructions;
+        private final List<ValueType> localTypes;
+        private List<InlineFrame> inlineFrames;
+        private int state = UNVISITED;
+
+        private Function(String name, int paramCount, List<IInstrunction> instructions, List<ValueType> localTypes) {
+            this.name = name;
+            this.paramCount = paramCount;
+            this.instructions = instructions;
+            this.localTypes = localTypes;
+            this.inlineFrames = new ArrayList<>(Collections.nCopies(instructions.size(), null));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.compiler.cfg.ControlFlowGraph;
+import com.github.tth05.teth.bytecode.op.IInstrunction;
+
+import java.util.List;
+
+/**
+ * An optimizer which works on the {@link ControlFlowGraph} of a function. The {@link PassManager} runs consecutive
+ * graph optimizers on the same graph and only lowers it once they are done.
+ */
+public interface ICfgOptimizer extends IOptimizer {
+
+    void method(ControlFlowGraph graph, OptimizationContext context);
+
+    @Override
+    default void method(List<IInstrunction> instructions) {
+        method(instructions, OptimizationContext.unknown());
+    }
+
+    @Override
+    default void method(List<IInstrunction> instructions, OptimizationContext context) {
+        var graph = ControlFlowGraph.build(instructions);
+        method(graph, context);
+
+        var result = graph.toInstructions(context.spans());
+        instructions.clear();
+        instructions.addAll(result);
+    }
+}
@@ -7,4 +7,12 @@ import java.util.List;
 public interface IOptimizer {
 
     void method(List<IInstrunction> instructions);
+
+    /**
+     * Same as {@link #method(List)}, but with additional information about the function, see
+     * {@link OptimizationContext}.
+     */
+    default void method(List<IInstrunction> instructions, OptimizationContext context) {
+        method(instructions);
+    }
 }
@@ -0,0 +1,35 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.op.IInstrunction;
+import com.github.tth05.teth.bytecode.op.IJumpInstruction;
+
+import java.util.List;
+
+/**
+ * Helpers for code which works on flat instruction lists and therefore has to fix relative jump offsets, e.g. the
+ * {@link FunctionInliner}. Optimizers should work on the control flow graph instead, see {@link ICfgOptimizer}.
+ */
+final class JumpTargets {
+
+    private JumpTargets() {
+    }
+
+    /**
+     * Rewrites the jumps in {@code result}, whose relative offsets still refer to the original instruction list.
+     *
+     * @param originalIndices The original index of each instruction in the result, -1 for inserted instructions whose
+     *                        offsets are already correct
+     * @param newIndices      Maps original indices, including the end of the list, to indices in the result
+     */
+    static void remap(List<IInstrunction> result, List<Integer> originalIndices, int[] newIndices, OptimizationContext context) {
+        for (int i = 0; i < result.size(); i++) {
+            if (!(result.get(i) instanceof IJumpInstruction jumpInstruction) || originalIndices.get(i) < 0)
+                continue;
+
+            var originalTarget = originalIndices.get(i) + jumpInstruction.getRelativeJumpOffset() + 1;
+            var newInstruction = jumpInstruction.withRelativeJumpOffset(newIndices[originalTarget] - i - 1);
+            context.copySpan(jumpInstruction, newInstruction);
+            result.set(i, newInstruction);
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.analyzer.prelude.Prelude;
+import com.github.tth05.teth.bytecode.compiler.cfg.BasicBlock;
+import com.github.tth05.teth.bytecode.compiler.cfg.ControlFlowGraph;
+import com.github.tth05.teth.bytecode.compiler.cfg.Loop;
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.bytecode.program.ValueType;
+import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves work out of loops:
+ * <ul>
+ *     <li>Loop invariant expressions, e.g. {@code self.width * 4} or {@code list.size()} of a list which is not
+ *     modified by the loop, are computed once in a preheader in front of the loop and stored in a new local</li>
+ *     <li>Multiplications of an induction variable with a constant, e.g. {@code i * 4} where {@code i = i + 1} is the
+ *     only assignment to {@code i} in the loop, are replaced by a new local which is incremented along with the
+ *     induction variable</li>
+ * </ul>
+ * Expressions are only hoisted if this does not change the behavior of the program. Instructions which can throw,
+ * like a member access on a null value, are therefore only hoisted from the loop header if nothing with side effects
+ * is executed before them, or if the value they depend on is known to be valid, e.g. {@code self}. Member and list
+ * accesses are only hoisted if the loop contains no instruction which can modify them, which includes all calls.
+ * <br>
+ * Inner loops are optimized first, so expressions move out of nested loops step by step. This optimizer needs to add
+ * locals and is therefore disabled if {@link OptimizationContext#canAddLocals()} is not set. It has to run after the
+ * {@link ControlFlowOptimizer} and before the {@link SuperinstructionOptimizer}, which turns the new increments into
+ * {@code L_INC_LOCAL}.
+ */
+public class LoopOptimizer implements ICfgOptimizer, OpCodes {
+
+    private static final FunctionDeclaration LIST_SIZE_FUNCTION = prelude("list", "size");
+    private static final FunctionDeclaration LIST_GET_FUNCTION = prelude("list", "get");
+    private static final FunctionDeclaration LIST_ADD_FUNCTION = prelude("list", "add");
+    private static final FunctionDeclaration LIST_SET_FUNCTION = prelude("list", "set");
+    private static final FunctionDeclaration LONG_TO_STRING_FUNCTION = prelude("long", "toString");
+
+    @Override
+    public void method(ControlFlowGraph graph, OptimizationContext context) {
+        if (!context.canAddLocals())
+            return;
+
+        var selfIsValid = context.instanceFunction() && !isStored(graph.getBlocks(), 0);
+        var optimizedHeaders = new HashSet<BasicBlock>();
+        while (true) {
+            // Preheaders become part of the enclosing loop, so the loops are searched again after every change
+            var loop = Loop.findAll(graph).stream()
+                    .filter(l -> !optimizedHeaders.contains(l.header()))
+                    .findFirst().orElse(null);
+            if (loop == null)
+                return;
+
+            optimizedHeaders.add(loop.header());
+            new LoopTransformer(graph, loop, context, selfIsValid).run();
+        }
+    }
+
+    private static boolean isStored(List<BasicBlock> blocks, int localIndex) {
+        for (var block : blocks) {
+            for (var insn : block.getInstructions()) {
+                if ((insn instanceof STORE_LOCAL_Insn || insn instanceof L_INC_LOCAL_Insn) &&
+                    ((AbstractLocalInsn) insn).getLocalIndex() == localIndex)
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static FunctionDeclaration prelude(String struct, String function) {
+        return (FunctionDeclaration) Prelude.getStructForTypeName(Span.fromString(struct)).getMember(Span.fromString(function));
+    }
+
+    private static class LoopTransformer {
+
+        private final ControlFlowGraph graph;
+        private final Loop loop;
+        private final OptimizationContext context;
+        /**
+         * The loop blocks in layout order, starting with the header
+         */
+        private final List<BasicBlock> blocks = new ArrayList<>();
+
+        private final Map<Integer, Integer> storeCounts = new HashMap<>();
+        private boolean fieldsWritten;
+        private boolean listsWritten;
+        /**
+         * Locals which are known to not be null in the preheader and in the whole loop
+         */
+        private final Set<Integer> validLocals = new HashSet<>();
+
+        /**
+         * The instructions which are executed once before the loop
+         */
+        private final List<IInstrunction> preheaderCode = new ArrayList<>();
+        /**
+         * Maps the hoisted expressions to the locals which hold their value, so equal expressions are only computed once
+         */
+        private final Map<List<Object>, Integer> hoistedExpressions = new HashMap<>();
+
+        private LoopTransformer(ControlFlowGraph graph, Loop loop, OptimizationContext context, boolean selfIsValid) {
+            this.graph = graph;
+            this.loop = loop;
+            this.context = context;
+
+            this.blocks.add(loop.header());
+            for (var block : graph.getBlocks()) {
+                if (block != loop.header() && loop.blocks().contains(block))
+                    this.blocks.add(block);
+            }
+            if (selfIsValid)
+                this.validLocals.add(0);
+        }
+
+        void run() {
+            collectEffects();
+            for (var block : this.blocks)
+                hoistInvariantExpressions(block, block == this.loop.header());
+            reduceInductionVariableMultiplications();
+
+            if (!this.preheaderCode.isEmpty())
+                createPreheader().getInstructions().addAll(this.preheaderCode);
+        }
+
+        private void collectEffects() {
+            for (var block : this.blocks) {
+                for (var insn : block.getInstructions()) {
+                    switch (insn.getOpCode()) {
+                        case STORE_LOCAL, L_INC_LOCAL ->
+                                this.storeCounts.merge(((AbstractLocalInsn) insn).getLocalIndex(), 1, Integer::sum);
+                        case STORE_MEMBER -> this.fieldsWritten = true;
+                        case INVOKE -> {
+                            this.fieldsWritten = true;
+                            this.listsWritten = true;
+                        }
+                        case INVOKE_INTRINSIC -> {
+                            var function = ((INVOKE_INTRINSIC_Insn) insn).getFunctionDeclaration();
+                            if (function == LIST_ADD_FUNCTION || function == LIST_SET_FUNCTION)
+                                this.listsWritten = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Simulates the stack of the block to find the largest invariant expressions and replaces them with a load of
+         * a new local which is assigned in the preheader.
+         *
+         * @param header {@code true} if the block is the loop header, which is executed first whenever the loop is
+         *               entered
+         */
+        private void hoistInvariantExpressions(BasicBlock block, boolean header) {
+            var instructions = block.getInstructions();
+            var stack = new ArrayList<Value>();
+            var hoisted = new ArrayList<Value>();
+            // Set once an instruction with side effects may have run, instructions which can throw are not hoisted
+            // past that point
+            var sideEffects = !header;
+            for (int i = 0; i < instructions.size(); i++) {
+                var insn = instructions.get(i);
+                var operands = pop(stack, StackCleaningOptimizer.getPopCount(insn));
+                var invariant = isInvariant(insn, operands, sideEffects);
+                if (invariant) {
+                    stack.add(new Value(operands.isEmpty() ? i : operands.get(0).start(), i + 1, insn, true,
+                            getResultType(insn)));
+                    continue;
+                }
+
+                // A variant instruction ends all invariant expressions it consumes
+                addHoistable(operands, hoisted);
+                if (StackCleaningOptimizer.pushesValue(insn))
+                    stack.add(new Value(i, i + 1, insn, false, null));
+                if (!isPure(insn))
+                    sideEffects = true;
+            }
+            if (block.getJump() != null)
+                addHoistable(pop(stack, StackCleaningOptimizer.getPopCount(block.getJump())), hoisted);
+
+            if (hoisted.isEmpty())
+                return;
+
+            var result = new ArrayList<IInstrunction>(instructions.size());
+            var next = 0;
+            for (var value : hoisted) {
+                result.addAll(instructions.subList(next, value.start()));
+
+                var expression = instructions.subList(value.start(), value.end());
+                var last = expression.get(expression.size() - 1);
+                var localIndex = this.hoistedExpressions.computeIfAbsent(getKey(expression), k -> {
+                    var newLocal = this.context.addLocal(value.type());
+                    this.preheaderCode.addAll(expression);
+                    this.preheaderCode.add(withSpan(new STORE_LOCAL_Insn(newLocal), last));
+                    return newLocal;
+                });
+                result.add(withSpan(new LOAD_LOCAL_Insn(localIndex), last));
+                next = value.end();
+            }
+            result.addAll(instructions.subList(next, instructions.size()));
+
+            instructions.clear();
+            instructions.addAll(result);
+        }
+
+        private boolean isInvariant(IInstrunction insn, List<Value> operands, boolean sideEffects) {
+            for (var operand : operands) {
+                if (!operand.invariant())
+                    return false;
+            }
+
+            return switch (insn.getOpCode()) {
+                case L_CONST, D_CONST, B_CONST, S_CONST, NULL_CONST -> true;
+                case LOAD_LOCAL -> !this.storeCounts.containsKey(((LOAD_LOCAL_Insn) insn).getLocalIndex());
+                case L_ADD, L_SUB, L_MUL, L_POW, L_NEGATE, D_ADD, D_SUB, D_MUL, D_DIV, D_POW, D_NEGATE,
+                        L_EQUAL, L_LESS, L_LESS_EQUAL, L_GREATER, L_GREATER_EQUAL,
+                        D_EQUAL, D_LESS, D_LESS_EQUAL, D_GREATER, D_GREATER_EQUAL,
+                        B_AND, B_OR, B_INVERT, L_TO_D, D_TO_L -> true;
+                // Division by zero throws
+                case L_DIV -> !sideEffects || isNonZeroConstant(operands.get(1));
+                case LOAD_MEMBER -> !this.fieldsWritten && isValidReceiver(operands.get(0), sideEffects);
+                // Fails on null parts
+                case STRING_BUILD -> !sideEffects;
+                case INVOKE_INTRINSIC -> {
+                    var function = ((INVOKE_INTRINSIC_Insn) insn).getFunctionDeclaration();
+                    if (function == LIST_SIZE_FUNCTION)
+                        yield !this.listsWritten && isValidReceiver(operands.get(0), sideEffects);
+                    // The index can be out of bounds
+                    if (function == LIST_GET_FUNCTION)
+                        yield !this.listsWritten && !sideEffects && isValidReceiver(operands.get(0), false);
+                    yield function == LONG_TO_STRING_FUNCTION;
+                }
+                default -> false;
+            };
+        }
+
+        /**
+         * @return {@code true} if accessing the given receiver cannot throw. If it can throw but nothing with side
+         * effects has happened yet, the receiver becomes known to be valid because the access is hoisted into the
+         * preheader, where it throws before the loop is entered.
+         */
+        private boolean isValidReceiver(Value receiver, boolean sideEffects) {
+            var localIndex = getLoadedLocal(receiver);
+            if (localIndex != -1 && this.validLocals.contains(localIndex))
+                return true;
+            if (sideEffects)
+                return false;
+
+            if (localIndex != -1)
+                this.validLocals.add(localIndex);
+            return true;
+        }
+
+        private void addHoistable(List<Value> operands, List<Value> hoisted) {
+            for (var operand : operands) {
+                // A single constant or load is already as cheap as the load which would replace it
+                if (operand.invariant() && operand.end() - operand.start() > 1)
+                    hoisted.add(operand);
+            }
+        }
+
+        /**
+         * Replaces {@code i * c} where {@code i} is only changed by {@code i = i + step} with a new local {@code r},
+         * which is initialized to {@code i * c} in the preheader and updated with {@code r = r + step * c} right after
+         * {@code i} is changed.
+         */
+        private void reduceInductionVariableMultiplications() {
+            // The update instruction of each induction variable and the step by which it changes the variable
+            var updates = new HashMap<Integer, IInstrunction>();
+            var steps = new HashMap<Integer, Long>();
+            for (var block : this.blocks)
+                findInductionVariables(block.getInstructions(), updates, steps);
+            if (updates.isEmpty())
+                return;
+
+            // Maps each induction variable to the factors it is multiplied with and their reduced locals
+            var reductions = new HashMap<Integer, Map<Long, Integer>>();
+            for (var block : this.blocks) {
+                var instructions = block.getInstructions();
+                var result = new ArrayList<IInstrunction>(instructions.size());
+                var changed = false;
+                for (int i = 0; i < instructions.size(); i++) {
+                    var insn = instructions.get(i);
+                    var localIndex = i + 2 < instructions.size() && instructions.get(i + 2) instanceof L_MUL_Insn ?
+                            getInductionVariableMultiplication(instructions.get(i), instructions.get(i + 1), updates) : -1;
+                    if (localIndex == -1) {
+                        result.add(insn);
+                        continue;
+                    }
+
+                    var factor = getFactor(instructions.get(i), instructions.get(i + 1));
+                    var mul = instructions.get(i + 2);
+                    var reducedLocal = reductions.computeIfAbsent(localIndex, k -> new HashMap<>()).computeIfAbsent(factor, k -> {
+                        var newLocal = this.context.addLocal(ValueType.LONG);
+                        this.preheaderCode.add(withSpan(new LOAD_LOCAL_Insn(localIndex), mul));
+                        this.preheaderCode.add(withSpan(new L_CONST_Insn(factor), mul));
+                        this.preheaderCode.add(withSpan(new L_MUL_Insn(), mul));
+                        this.preheaderCode.add(withSpan(new STORE_LOCAL_Insn(newLocal), mul));
+                        return newLocal;
+                    });
+                    result.add(withSpan(new LOAD_LOCAL_Insn(reducedLocal), mul));
+                    i += 2;
+                    changed = true;
+                }
+
+                if (changed) {
+                    instructions.clear();
+                    instructions.addAll(result);
+                }
+            }
+
+            for (var block : this.blocks) {
+                var instructions = block.getInstructions();
+                for (int i = 0; i < instructions.size(); i++) {
+                    var update = instructions.get(i);
+                    if (!(update instanceof AbstractLocalInsn localInsn))
+                        continue;
+
+                    var localIndex = localInsn.getLocalIndex();
+                    if (updates.get(localIndex) != update || !reductions.containsKey(localIndex))
+                        continue;
+
+                    var increments = new ArrayList<IInstrunction>();
+                    var step = steps.get(localIndex);
+                    reductions.get(localIndex).forEach((factor, reducedLocal) -> {
+                        increments.add(withSpan(new LOAD_LOCAL_Insn(reducedLocal), update));
+                        increments.add(withSpan(new L_CONST_Insn(step * factor), update));
+                        increments.add(withSpan(new L_ADD_Insn(), update));
+                        increments.add(withSpan(new STORE_LOCAL_Insn(reducedLocal), update));
+                    });
+                    instructions.addAll(i + 1, increments);
+                    i += increments.size();
+                }
+            }
+        }
+
+        /**
+         * Finds locals which are changed exactly once in the loop, by {@code i = i + c}, {@code i = i - c} or
+         * {@code L_INC_LOCAL}
+         */
+        private void findInductionVariables(List<IInstrunction> instructions, Map<Integer, IInstrunction> updates, Map<Integer, Long> steps) {
+            for (int i = 0; i < instructions.size(); i++) {
+                var insn = instructions.get(i);
+                if (insn instanceof L_INC_LOCAL_Insn incInsn && this.storeCounts.get(incInsn.getLocalIndex()) == 1) {
+                    updates.put(incInsn.getLocalIndex(), incInsn);
+                    steps.put(incInsn.getLocalIndex(), incInsn.getValue());
+                    continue;
+                }
+
+                if (!(insn instanceof STORE_LOCAL_Insn storeInsn) || this.storeCounts.get(storeInsn.getLocalIndex()) != 1 || i < 3)
+                    continue;
+
+                var localIndex = storeInsn.getLocalIndex();
+                if (!(instructions.get(i - 3) instanceof LOAD_LOCAL_Insn loadInsn) || loadInsn.getLocalIndex() != localIndex ||
+                    !(instructions.get(i - 2) instanceof L_CONST_Insn constInsn))
+                    continue;
+
+                var operation = instructions.get(i - 1).getOpCode();
+                if (operation != L_ADD && operation != L_SUB)
+                    continue;
+
+                updates.put(localIndex, storeInsn);
+                steps.put(localIndex, operation == L_ADD ? constInsn.getValue() : -constInsn.getValue());
+            }
+        }
+
+        /**
+         * @return The induction variable which is multiplied by the two given instructions, or -1
+         */
+        private static int getInductionVariableMultiplication(IInstrunction first, IInstrunction second, Map<Integer, IInstrunction> updates) {
+            if (first instanceof LOAD_LOCAL_Insn loadInsn && second instanceof L_CONST_Insn && updates.containsKey(loadInsn.getLocalIndex()))
+                return loadInsn.getLocalIndex();
+            if (first instanceof L_CONST_Insn && second instanceof LOAD_LOCAL_Insn loadInsn && updates.containsKey(loadInsn.getLocalIndex()))
+                return loadInsn.getLocalIndex();
+            return -1;
+        }
+
+        private static long getFactor(IInstrunction first, IInstrunction second) {
+            return first instanceof L_CONST_Insn constInsn ? constInsn.getValue() : ((L_CONST_Insn) second).getValue();
+        }
+
+        /**
+         * Inserts an empty block in front of the header, which all jumps into the loop are redirected to
+         */
+        private BasicBlock createPreheader() {
+            var header = this.loop.header();
+            var preheader = this.graph.insertBlockBefore(header);
+            for (var predecessor : List.copyOf(header.getPredecessors())) {
+                if (this.loop.blocks().contains(predecessor))
+                    continue;
+
+                if (predecessor.getJumpTarget() == header)
+                    predecessor.setJump(predecessor.getJump(), preheader);
+                if (predecessor.getFallthrough() == header)
+                    predecessor.setFallthrough(preheader);
+            }
+
+            preheader.setFallthrough(header);
+            return preheader;
+        }
+
+        private IInstrunction withSpan(IInstrunction insn, IInstrunction spanSource) {
+            this.context.copySpan(spanSource, insn);
+            return insn;
+        }
+
+        private static List<Value> pop(List<Value> stack, int count) {
+            var operands = stack.subList(stack.size() - count, stack.size());
+            var result = List.copyOf(operands);
+            operands.clear();
+            return result;
+        }
+
+        /**
+         * @return A key which is equal for instruction sequences which compute the same value
+         */
+        private static List<Object> getKey(List<IInstrunction> expression) {
+            var key = new ArrayList<>(expression.size() * 2);
+            for (var insn : expression) {
+                key.add(insn.getOpCode());
+                key.add(insn instanceof INVOKE_INTRINSIC_Insn invokeInsn ? invokeInsn.getFunctionDeclaration() : insn.getDebugParametersString());
+            }
+
+            return key;
+        }
+
+        /**
+         * @return The local index if the value is a plain load of a local, or -1
+         */
+        private static int getLoadedLocal(Value value) {
+            return value.end() - value.start() == 1 && value.insn() instanceof LOAD_LOCAL_Insn loadInsn ? loadInsn.getLocalIndex() : -1;
+        }
+
+        private static boolean isNonZeroConstant(Value value) {
+            return value.insn() instanceof L_CONST_Insn constInsn && constInsn.getValue() != 0;
+        }
+
+        /**
+         * @return {@code true} if the given instruction has no side effects and cannot throw
+         */
+        private static boolean isPure(IInstrunction insn) {
+            return switch (insn.getOpCode()) {
+                case L_CONST, D_CONST, B_CONST, S_CONST, NULL_CONST, LOAD_LOCAL, DUP, POP,
+                        L_ADD, L_SUB, L_MUL, L_POW, L_NEGATE, D_ADD, D_SUB, D_MUL, D_DIV, D_POW, D_NEGATE,
+                        L_EQUAL, L_LESS, L_LESS_EQUAL, L_GREATER, L_GREATER_EQUAL,
+                        D_EQUAL, D_LESS, D_LESS_EQUAL, D_GREATER, D_GREATER_EQUAL,
+                        B_AND, B_OR, B_INVERT, L_TO_D, D_TO_L -> true;
+                default -> false;
+            };
+        }
+
+        private ValueType getResultType(IInstrunction insn) {
+            return switch (insn.getOpCode()) {
+                case L_CONST, L_ADD, L_SUB, L_MUL, L_DIV, L_POW, L_NEGATE, D_TO_L -> ValueType.LONG;
+                case D_CONST, D_ADD, D_SUB, D_MUL, D_DIV, D_POW, D_NEGATE, L_TO_D -> ValueType.DOUBLE;
+                case B_CONST, L_EQUAL, L_LESS, L_LESS_EQUAL, L_GREATER, L_GREATER_EQUAL,
+                        D_EQUAL, D_LESS, D_LESS_EQUAL, D_GREATER, D_GREATER_EQUAL, B_AND, B_OR, B_INVERT ->
+                        ValueType.BOOLEAN;
+                case LOAD_LOCAL -> this.context.localTypes().get(((LOAD_LOCAL_Insn) insn).getLocalIndex());
+                case INVOKE_INTRINSIC -> ((INVOKE_INTRINSIC_Insn) insn).getFunctionDeclaration() == LIST_SIZE_FUNCTION ?
+                        ValueType.LONG : ValueType.REFERENCE;
+                // The type of members and list elements is not known here. Functions which use them are never
+                // compiled by the JIT, which is the only user of the exact types.
+                default -> ValueType.REFERENCE;
+            };
+        }
+    }
+
+    /**
+     * A value on the stack, which is computed by the instructions from {@code start} to {@code end} (exclusive)
+     *
+     * @param insn The last instruction, which pushes the value
+     * @param type The type of the value if it is invariant
+     */
+    private record Value(int start, int end, IInstrunction insn, boolean invariant, ValueType type) {}
+}
@@ -0,0 +1,67 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.op.IInstrunction;
+import com.github.tth05.teth.bytecode.program.ValueType;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Information about the function which is being optimized.
+ *
+ * @param paramCount          The number of parameters of the function, including the instance for instance functions.
+ *                            The parameters occupy the first local indices.
+ * @param instanceFunction    {@code true} if local 0 is the instance the function was invoked on, which is never null
+ * @param externalLocalAccess {@code true} if the locals of the function are read or written by something other than
+ *                            its own instructions, e.g. by a REPL
+ * @param localTypes          The types of all locals including the parameters, or {@code null} if they are unknown.
+ *                            New locals are allocated with {@link #addLocal(ValueType)}.
+ * @param spans               Maps instructions to the span of the AST node they were generated for. Instructions which
+ *                            replace others should take over their span, see {@link #copySpan(IInstrunction, IInstrunction)}.
+ *                            Instructions without a span are attributed to the preceding instruction.
+ */
+public record OptimizationContext(int paramCount, boolean instanceFunction, boolean externalLocalAccess,
+                                  List<ValueType> localTypes, Map<IInstrunction, Span> spans) {
+
+    /**
+     * A context for a function whose local types are unknown, which disables all optimizations that add locals
+     */
+    public OptimizationContext(int paramCount, boolean externalLocalAccess, Map<IInstrunction, Span> spans) {
+        this(paramCount, false, externalLocalAccess, null, spans);
+    }
+
+    /**
+     * @return A context for a function about which nothing is known, which disables all optimizations that depend on
+     * the context
+     */
+    public static OptimizationContext unknown() {
+        return new OptimizationContext(0, true, new IdentityHashMap<>());
+    }
+
+    /**
+     * @return {@code true} if new locals can be allocated with {@link #addLocal(ValueType)}. The layout of externally
+     * accessed locals is fixed.
+     */
+    public boolean canAddLocals() {
+        return this.localTypes != null && !this.externalLocalAccess;
+    }
+
+    /**
+     * @return The index of a new local of the given type
+     */
+    public int addLocal(ValueType type) {
+        if (!canAddLocals())
+            throw new IllegalStateException("Cannot add locals to this function");
+
+        this.localTypes.add(type);
+        return this.localTypes.size() - 1;
+    }
+
+    public void copySpan(IInstrunction from, IInstrunction to) {
+        var span = this.spans.get(from);
+        if (span != null)
+            this.spans.put(to, span);
+    }
+}
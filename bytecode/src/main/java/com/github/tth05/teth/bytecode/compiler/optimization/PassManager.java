@@ -0,0 +1,47 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.compiler.cfg.ControlFlowGraph;
+import com.github.tth05.teth.bytecode.op.IInstrunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a sequence of optimizers on a function. The control flow graph is built once for all consecutive
+ * {@link ICfgOptimizer}s and lowered to flat instructions only when a plain {@link IOptimizer} follows or at the end.
+ */
+public class PassManager {
+
+    private final List<IOptimizer> optimizers = new ArrayList<>();
+
+    public void addOptimizer(IOptimizer optimizer) {
+        this.optimizers.add(optimizer);
+    }
+
+    public void run(List<IInstrunction> instructions, OptimizationContext context) {
+        ControlFlowGraph graph = null;
+        for (var optimizer : this.optimizers) {
+            if (optimizer instanceof ICfgOptimizer cfgOptimizer) {
+                if (graph == null)
+                    graph = ControlFlowGraph.build(instructions);
+                cfgOptimizer.method(graph, context);
+                continue;
+            }
+
+            if (graph != null) {
+                lower(graph, instructions, context);
+                graph = null;
+            }
+            optimizer.method(instructions, context);
+        }
+
+        if (graph != null)
+            lower(graph, instructions, context);
+    }
+
+    private static void lower(ControlFlowGraph graph, List<IInstrunction> instructions, OptimizationContext context) {
+        var result = graph.toInstructions(context.spans());
+        instructions.clear();
+        instructions.addAll(result);
+    }
+}
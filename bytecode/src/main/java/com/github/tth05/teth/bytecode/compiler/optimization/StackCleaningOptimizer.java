@@ -1,197 +1,101 @@
 package com.github.tth05.teth.bytecode.compiler.optimization;
 
+import com.github.tth05.teth.bytecode.compiler.cfg.BasicBlock;
+import com.github.tth05.teth.bytecode.compiler.cfg.ControlFlowGraph;
 import com.github.tth05.teth.bytecode.compiler.internal.PlaceholderInvokeInsn;
 import com.github.tth05.teth.bytecode.op.*;
 
 import java.util.ArrayDeque;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
-public class StackCleaningOptimizer implements IOptimizer, OpCodes {
+import java.util.ArrayList;
+
+/**
+ * Removes values which are pushed onto the stack but never used, e.g. the result of an expression statement or the
+ * {@code DUP} of an assignment whose value is not used. The instructions which produced such a value are removed
+ * together with their operands, unless they have side effects like {@code INVOKE}, in which case a {@code POP} is
+ * inserted instead.
+ * <br>
+ * The stack is empty at the start of every basic block, so every block is cleaned on its own. This optimizer has to
+ * run first because it does not know about superinstructions.
+ */
+public class StackCleaningOptimizer implements ICfgOptimizer, OpCodes {
 
     @Override
-    public void method(List<IInstrunction> instructions) {
-        optimizePart(new HashSet<>(), instructions, 0);
+    public void method(ControlFlowGraph graph, OptimizationContext context) {
+        for (var block : graph.getBlocks())
+            clean(block);
     }
 
-    private static void optimizePart(Set<Integer> visitedStarts, List<IInstrunction> instructions, int start) {
-        if (!visitedStarts.add(start))
-            return;
-
-        var unusedStackValues = new ArrayDeque<Marker>();
-
-        loop:
-        for (int i = start; i < instructions.size(); i++) {
+    private static void clean(BasicBlock block) {
+        var instructions = block.getInstructions();
+        // The indices of the instructions whose values are on the stack
+        var unusedStackValues = new ArrayDeque<Integer>();
+        // The values each instruction consumes, the top of the stack first
+        var operands = new int[instructions.size()][];
+        for (int i = 0; i < instructions.size(); i++) {
             var instruction = instructions.get(i);
-            switch (instruction.getOpCode()) {
-                // 2 -> 1
-                case L_ADD, D_ADD, L_SUB, D_SUB, L_MUL, D_MUL, L_DIV, D_DIV, L_POW, D_POW, L_EQUAL, D_EQUAL,
-                        L_LESS, D_LESS, L_LESS_EQUAL, D_LESS_EQUAL, L_GREATER, D_GREATER, L_GREATER_EQUAL,
-                        D_GREATER_EQUAL, B_OR, B_AND -> {
-                    unusedStackValues.pop();
-                    unusedStackValues.pop();
-                    unusedStackValues.push(new Marker(i, instruction));
-                }
-                // 2 -> 0
-                case STORE_MEMBER -> {
-                    unusedStackValues.pop();
-                    unusedStackValues.pop();
-                }
-                // 1 -> 1
-                case L_NEGATE, D_NEGATE, L_TO_D, D_TO_L, B_INVERT, LOAD_MEMBER -> {
-                    unusedStackValues.pop();
-                    unusedStackValues.push(new Marker(i, instruction));
-                }
-                // 1 -> 0
-                case STORE_LOCAL, POP -> unusedStackValues.pop();
-                case JUMP_IF_FALSE -> {
-                    unusedStackValues.pop();
-
-                    var a = i + 1;
-                    var b = i + ((JUMP_IF_FALSE_Insn) instruction).getRelativeJumpOffset() + 1;
-                    // Ensure we visit the one with the higher offset first, otherwise the removal of instructions will mess up the
-                    // offsets for the second visit
-                    if (a < b) {
-                        var temp = a;
-                        a = b;
-                        b = temp;
-                    }
-
-                    optimizePart(visitedStarts, instructions, a);
-                    optimizePart(visitedStarts, instructions, b);
-                    break loop;
-                }
-                case RETURN -> {
-                    if (((RETURN_Insn) instruction).shouldReturnValue())
-                        unusedStackValues.pop();
-                    break loop;
-                }
-                // 0 -> 1
-                case S_CONST, L_CONST, D_CONST, B_CONST, NULL_CONST, CREATE_LIST, LOAD_LOCAL, DUP ->
-                        unusedStackValues.push(new Marker(i, instruction));
-                // 0 -> 0
-                case JUMP -> {
-                    optimizePart(visitedStarts, instructions, i + 1 + ((JUMP_Insn) instruction).getRelativeJumpOffset());
-                    break loop;
-                }
-                case EXIT -> {
-                    break loop;
-                }
-                // DYNAMIC CASES
-                case INVOKE -> {
-                    var invoke = (PlaceholderInvokeInsn) instruction;
-                    for (var j = 0; j < invoke.getParamCount(); j++)
-                        unusedStackValues.pop();
-                    if (invoke.returnsValue())
-                        unusedStackValues.push(new Marker(i, instruction));
-                }
-                case INVOKE_INTRINSIC -> {
-                    var invoke = (INVOKE_INTRINSIC_Insn) instruction;
-                    var function = invoke.getFunctionDeclaration();
-                    var paramCount = function.getParameters().size() + (function.isInstanceFunction() ? 1 : 0);
-                    for (var j = 0; j < paramCount; j++)
-                        unusedStackValues.pop();
-                    if (function.getReturnTypeExpr() != null)
-                        unusedStackValues.push(new Marker(i, instruction));
-                }
-                case CREATE_OBJECT -> {
-                    var createObject = (CREATE_OBJECT_Insn) instruction;
-                    for (var j = 0; j < createObject.getFieldCount(); j++)
-                        unusedStackValues.pop();
-                    unusedStackValues.push(new Marker(i, instruction));
-                }
-                default -> throw new IllegalStateException("Unsupported opcode: " + instruction.getOpCode());
-            }
+            operands[i] = new int[getPopCount(instruction)];
+            for (int j = 0; j < operands[i].length; j++)
+                operands[i][j] = unusedStackValues.pop();
+            if (pushesValue(instruction))
+                unusedStackValues.push(i);
+        }
+        if (block.getJump() != null) {
+            for (int j = 0; j < getPopCount(block.getJump()); j++)
+                unusedStackValues.pop();
         }
 
+        if (unusedStackValues.isEmpty())
+            return;
+
+        var removed = new boolean[instructions.size()];
+        var popAfter = new boolean[instructions.size()];
         while (!unusedStackValues.isEmpty()) {
-            var value = unusedStackValues.pop();
-            var i = value.index();
-            var instruction = value.instruction();
+            int i = unusedStackValues.pop();
+            var instruction = instructions.get(i);
 
-            var opCode = instruction.getOpCode();
             // If the bytecode was
             //  LOAD_LOCAL
             //  DUP
             //  STORE_LOCAL
             // then the DUP instruction is the one that should be removed, but the unused value list will
             // contain the LOAD_LOCAL instruction
-            if (i < instructions.size() - 1 && instructions.get(i + 1).getOpCode() == DUP) {
-                instructions.remove(i + 1);
-                fixJumps(instructions, i + 1, true);
+            var next = i + 1;
+            while (next < instructions.size() && removed[next])
+                next++;
+            if (next < instructions.size() && instructions.get(next).getOpCode() == DUP) {
+                removed[next] = true;
                 continue;
             }
 
-            if (!isRemovable(opCode)) {
-                instructions.add(i + 1, new POP_Insn());
-                fixJumps(instructions, i, false);
-            } else {
-                // Mark dependencies for removal as well, if they are removable.
-                // If the bytecode was
-                //  L_CONST
-                //  L_CONST
-                //  LD_ADD
-                // then it makes sense to also remove both L_CONST instructions to properly clean the stack
-                var dependencies = getDependencies(instructions, i);
-                if (dependencies != null) {
-                    for (int k = dependencies.length - 1; k >= 0; k--)
-                        unusedStackValues.push(dependencies[k]);
-                }
-
-                // Remove the instruction
-                instructions.remove(i);
-                fixJumps(instructions, i, true);
-            }
-        }
-    }
-
-    private static void fixJumps(List<IInstrunction> instructions, int instructionIndex, boolean removedInstruction) {
-        // NOTE: This method is quite inefficient
-
-        for (int i = 0; i < instructions.size(); i++) {
-            var instruction = instructions.get(i);
-            if (!(instruction instanceof IJumpInstruction jumpInstruction))
-                continue;
-
-            var jumpOffset = jumpInstruction.getRelativeJumpOffset();
-            var jumpTarget = i + jumpOffset + 1;
-            if (i < instructionIndex && instructionIndex <= jumpTarget) { // Crosses barrier LTR
-                jumpTarget += removedInstruction ? -1 : 1;
-            } else if (i >= instructionIndex && jumpTarget <= instructionIndex) { // Crosses barrier RTL
-                jumpTarget += removedInstruction ? 1 : -1;
-            } else {
+            if (!isRemovable(instruction.getOpCode())) {
+                popAfter[i] = true;
                 continue;
             }
 
-            var newRelativeJumpTarget = jumpTarget - i - 1;
-
-            switch (instruction.getOpCode()) {
-                case JUMP -> instructions.set(i, new JUMP_Insn(newRelativeJumpTarget));
-                case JUMP_IF_FALSE -> instructions.set(i, new JUMP_IF_FALSE_Insn(newRelativeJumpTarget));
-            }
+            // Mark dependencies for removal as well, if they are removable.
+            // If the bytecode was
+            //  L_CONST
+            //  L_CONST
+            //  LD_ADD
+            // then it makes sense to also remove both L_CONST instructions to properly clean the stack
+            for (int k = operands[i].length - 1; k >= 0; k--)
+                unusedStackValues.push(operands[i][k]);
+            removed[i] = true;
         }
-    }
-
-    private static Marker[] getDependencies(List<IInstrunction> instructions, int index) {
-        var instruction = instructions.get(index);
-        var dependencyCount = getPopCount(instruction);
-        if (dependencyCount == 0)
-            return null;
 
-        var dependencies = new Marker[dependencyCount];
-        for (int j = 0, dependencyIndex = index - 1; j < dependencyCount; j++) {
-            var dependency = instructions.get(dependencyIndex);
-            dependencies[j] = new Marker(dependencyIndex, dependency);
-
-            dependencyIndex -= getPopCount(dependency);
-            dependencyIndex--;
+        var result = new ArrayList<IInstrunction>(instructions.size());
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!removed[i])
+                result.add(instructions.get(i));
+            if (popAfter[i])
+                result.add(new POP_Insn());
         }
 
-        return dependencies;
+        instructions.clear();
+        instructions.addAll(result);
     }
 
-    private static int getPopCount(IInstrunction instruction) {
+    static int getPopCount(IInstrunction instruction) {
         return switch (instruction.getOpCode()) {
             // 2 -> 1
             case L_ADD, D_ADD, L_SUB, D_SUB, L_MUL, D_MUL, L_DIV, D_DIV, L_POW, D_POW, L_EQUAL, D_EQUAL,
@@ -210,7 +114,10 @@ public class StackCleaningOptimizer implements IOptimizer, OpCodes {
                 yield 0;
             }
             // 0 -> 1
-            case S_CONST, L_CONST, D_CONST, B_CONST, NULL_CONST, CREATE_OBJECT, LOAD_LOCAL, DUP -> 0;
+            case S_CONST, L_CONST, D_CONST, B_CONST, NULL_CONST, CREATE_LIST, LOAD_LOCAL, DUP -> 0;
+            case CREATE_OBJECT -> ((CREATE_OBJECT_Insn) instruction).getFieldCount();
+            case STRING_BUILD -> ((STRING_BUILD_Insn) instruction).getPartCount();
+            case CREATE_LIST_N -> ((CREATE_LIST_N_Insn) instruction).getElementCount();
             // 0 -> 0
             case JUMP, EXIT -> 0;
             // INVOKE
@@ -224,13 +131,30 @@ public class StackCleaningOptimizer implements IOptimizer, OpCodes {
         };
     }
 
+    static boolean pushesValue(IInstrunction instruction) {
+        return switch (instruction.getOpCode()) {
+            // 2 -> 1, 1 -> 1, 0 -> 1
+            case L_ADD, D_ADD, L_SUB, D_SUB, L_MUL, D_MUL, L_DIV, D_DIV, L_POW, D_POW, L_EQUAL, D_EQUAL,
+                    L_LESS, D_LESS, L_LESS_EQUAL, D_LESS_EQUAL, L_GREATER, D_GREATER, L_GREATER_EQUAL,
+                    D_GREATER_EQUAL, B_OR, B_AND,
+                    L_NEGATE, D_NEGATE, L_TO_D, D_TO_L, B_INVERT, LOAD_MEMBER,
+                    S_CONST, L_CONST, D_CONST, B_CONST, NULL_CONST, CREATE_OBJECT, CREATE_LIST, LOAD_LOCAL, DUP,
+                    STRING_BUILD, CREATE_LIST_N -> true;
+            // 2 -> 0, 1 -> 0, 0 -> 0
+            case STORE_MEMBER, STORE_LOCAL, POP, JUMP_IF_FALSE, RETURN, JUMP, EXIT -> false;
+            // INVOKE
+            case INVOKE -> ((PlaceholderInvokeInsn) instruction).returnsValue();
+            case INVOKE_INTRINSIC -> ((INVOKE_INTRINSIC_Insn) instruction).getFunctionDeclaration().getReturnTypeExpr() != null;
+            default -> throw new IllegalStateException("Unsupported opcode: " + instruction.getOpCode());
+        };
+    }
+
     private static boolean isRemovable(int opcode) {
         return switch (opcode) {
             // Unremovable instructions. CREATE_{OBJECT, LIST} are fine currently, but let's keep it future-proof (e.g. constructors)
-            case INVOKE, INVOKE_INTRINSIC, CREATE_OBJECT, CREATE_LIST -> false;
+            // STRING_BUILD fails on null parts, just like string.concat did
+            case INVOKE, INVOKE_INTRINSIC, CREATE_OBJECT, CREATE_LIST, CREATE_LIST_N, STRING_BUILD -> false;
             default -> true;
         };
     }
-
-    private record Marker(int index, IInstrunction instruction) {}
 }
@@ -0,0 +1,126 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.compiler.cfg.BasicBlock;
+import com.github.tth05.teth.bytecode.compiler.cfg.ControlFlowGraph;
+import com.github.tth05.teth.bytecode.op.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fuses common instruction sequences into superinstructions, which saves dispatches and stack traffic in the
+ * interpreter. The sequences were picked from the most frequent dynamically executed op code pairs of a set of
+ * numeric, loop and struct heavy benchmark scripts:
+ * <ul>
+ *     <li>{@code LOAD_LOCAL, L_CONST} (14%), {@code L_CONST, L_ADD} and {@code L_ADD, STORE_LOCAL} (7%) mostly stem from
+ *     {@code i = i + 1} -> {@code L_INC_LOCAL}</li>
+ *     <li>{@code L_LESS, JUMP_IF_FALSE} (4%) and the other long comparisons from loop and if conditions ->
+ *     {@code L_CMP_*_JUMP}</li>
+ *     <li>{@code LOAD_LOCAL, LOAD_MEMBER} (1%, but up to 4% in struct heavy code) -> {@code LOAD_LOCAL_LOAD_MEMBER}</li>
+ * </ul>
+ * Sequences never cross the boundary of a basic block, so instructions which are the target of a jump are never fused
+ * into a preceding instruction. This optimizer has to run after the {@link StackCleaningOptimizer}, which does not know
+ * about superinstructions.
+ */
+public class SuperinstructionOptimizer implements ICfgOptimizer, OpCodes {
+
+    @Override
+    public void method(ControlFlowGraph graph, OptimizationContext context) {
+        for (var block : graph.getBlocks()) {
+            fuseInstructions(block.getInstructions(), context);
+            fuseCompareJump(block, context);
+        }
+    }
+
+    private static void fuseInstructions(List<IInstrunction> instructions, OptimizationContext context) {
+        var result = new ArrayList<IInstrunction>(instructions.size());
+        var changed = false;
+        for (int i = 0; i < instructions.size(); ) {
+            var fusedInstruction = fuse(instructions, i);
+            if (fusedInstruction == null) {
+                result.add(instructions.get(i++));
+                continue;
+            }
+
+            result.add(fusedInstruction.instruction());
+            copyLastSpan(instructions.subList(i, i + fusedInstruction.length()), fusedInstruction.instruction(), context);
+            i += fusedInstruction.length();
+            changed = true;
+        }
+
+        if (!changed)
+            return;
+
+        instructions.clear();
+        instructions.addAll(result);
+    }
+
+    /**
+     * Replaces a long comparison followed by the {@code JUMP_IF_FALSE} at the end of the block, e.g.
+     * {@code L_LESS, JUMP_IF_FALSE} -> {@code L_CMP_LT_JUMP}.
+     */
+    private static void fuseCompareJump(BasicBlock block, OptimizationContext context) {
+        var instructions = block.getInstructions();
+        if (!(block.getJump() instanceof JUMP_IF_FALSE_Insn jumpInsn) || instructions.isEmpty())
+            return;
+
+        var compareInsn = instructions.get(instructions.size() - 1);
+        // The offset is resolved when the graph is lowered
+        var compareJumpInsn = switch (compareInsn.getOpCode()) {
+            case L_LESS -> new L_CMP_LT_JUMP_Insn(0);
+            case L_LESS_EQUAL -> new L_CMP_LE_JUMP_Insn(0);
+            case L_GREATER -> new L_CMP_GT_JUMP_Insn(0);
+            case L_GREATER_EQUAL -> new L_CMP_GE_JUMP_Insn(0);
+            case L_EQUAL -> new L_CMP_EQ_JUMP_Insn(0);
+            default -> null;
+        };
+        if (compareJumpInsn == null)
+            return;
+
+        instructions.remove(instructions.size() - 1);
+        copyLastSpan(List.of(compareInsn, jumpInsn), compareJumpInsn, context);
+        block.setJump(compareJumpInsn, block.getJumpTarget());
+    }
+
+    /**
+     * @return The superinstruction replacing the sequence starting at {@code index}, or {@code null}
+     */
+    private static FusedInstruction fuse(List<IInstrunction> instructions, int index) {
+        var first = instructions.get(index);
+        // LOAD_LOCAL, L_CONST, L_ADD/L_SUB, STORE_LOCAL
+        if (index + 4 <= instructions.size() && first.getOpCode() == LOAD_LOCAL &&
+            instructions.get(index + 1) instanceof L_CONST_Insn constInsn &&
+            instructions.get(index + 3) instanceof STORE_LOCAL_Insn storeInsn &&
+            ((LOAD_LOCAL_Insn) first).getLocalIndex() == storeInsn.getLocalIndex()) {
+            var opCode = instructions.get(index + 2).getOpCode();
+            if (opCode == L_ADD)
+                return new FusedInstruction(new L_INC_LOCAL_Insn(storeInsn.getLocalIndex(), constInsn.getValue()), 4);
+            if (opCode == L_SUB)
+                return new FusedInstruction(new L_INC_LOCAL_Insn(storeInsn.getLocalIndex(), -constInsn.getValue()), 4);
+        }
+
+        if (index + 2 > instructions.size())
+            return null;
+
+        // LOAD_LOCAL, LOAD_MEMBER
+        if (first.getOpCode() == LOAD_LOCAL && instructions.get(index + 1) instanceof LOAD_MEMBER_Insn loadMemberInsn)
+            return new FusedInstruction(new LOAD_LOCAL_LOAD_MEMBER_Insn(((LOAD_LOCAL_Insn) first).getLocalIndex(), loadMemberInsn.getFieldIndex()), 2);
+
+        return null;
+    }
+
+    /**
+     * Copies the span of the last instruction of the sequence which has one, because the last instruction is the one
+     * which can fail, e.g. {@code LOAD_MEMBER}
+     */
+    private static void copyLastSpan(List<IInstrunction> sequence, IInstrunction fusedInstruction, OptimizationContext context) {
+        for (int i = sequence.size() - 1; i >= 0; i--) {
+            if (context.spans().containsKey(sequence.get(i))) {
+                context.copySpan(sequence.get(i), fusedInstruction);
+                return;
+            }
+        }
+    }
+
+    private record FusedInstruction(IInstrunction instruction, int length) {}
+}
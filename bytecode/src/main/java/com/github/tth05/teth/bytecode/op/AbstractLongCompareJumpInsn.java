@@ -0,0 +1,20 @@
+package com.github.tth05.teth.bytecode.op;
+
+public abstract class AbstractLongCompareJumpInsn implements IJumpInstruction {
+
+    private final int relativeJumpOffset;
+
+    public AbstractLongCompareJumpInsn(int relativeJumpOffset) {
+        this.relativeJumpOffset = relativeJumpOffset;
+    }
+
+    @Override
+    public int getRelativeJumpOffset() {
+        return this.relativeJumpOffset;
+    }
+
+    @Override
+    public String getDebugParametersString() {
+        return String.format("relativeOffset: %d", this.relativeJumpOffset);
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.tth05.teth.bytecode.op;
+
+public class CHECK_INSTANCE_Insn implements IInstrunction {
+
+    @Override
+    public byte getOpCode() {
+        return OpCodes.CHECK_INSTANCE;
+    }
+
+    @Override
+    public String getDebugParametersString() {
+        return "";
+    }
+}
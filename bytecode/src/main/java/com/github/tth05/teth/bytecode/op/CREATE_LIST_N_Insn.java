@@ -0,0 +1,24 @@
+package com.github.tth05.teth.bytecode.op;
+
+public class CREATE_LIST_N_Insn implements IInstrunction {
+
+    private final int elementCount;
+
+    public CREATE_LIST_N_Insn(int elementCount) {
+        this.elementCount = elementCount;
+    }
+
+    public int getElementCount() {
+        return this.elementCount;
+    }
+
+    @Override
+    public byte getOpCode() {
+        return OpCodes.CREATE_LIST_N;
+    }
+
+    @Override
+    public String getDebugParametersString() {
+        return String.format("elementCount: %d", this.elementCount);
+    }
+}
@@ -3,4 +3,9 @@ package com.github.tth05.teth.bytecode.op;
 public interface IJumpInstruction extends IInstrunction {
 
     int getRelativeJumpOffset();
+
+    /**
+     * @return A copy of this instruction with the given jump offset
+     */
+    IJumpInstruction withRelativeJumpOffset(int relativeJumpOffset);
 }
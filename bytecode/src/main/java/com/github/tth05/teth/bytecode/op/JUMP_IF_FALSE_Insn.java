@@ -13,6 +13,11 @@ public class JUMP_IF_FALSE_Insn implements IJumpInstruction {
         return this.relativeJumpOffset;
     }
 
+    @Override
+    public IJumpInstruction withRelativeJumpOffset(int relativeJumpOffset) {
+        return new JUMP_IF_FALSE_Insn(relativeJumpOffset);
+    }
+
     @Override
     public byte getOpCode() {
         return OpCodes.JUMP_IF_FALSE;
@@ -13,6 +13,11 @@ public class JUMP_Insn implements IJumpInstruction {
         return this.relativeJumpOffset;
     }
 
+    @Override
+    public IJumpInstruction withRelativeJumpOffset(int relativeJumpOffset) {
+        return new JUMP_Insn(relativeJumpOffset);
+    }
+
     @Override
     public byte getOpCode() {
         return OpCodes.JUMP;
@@ -0,0 +1,25 @@
+package com.github.tth05.teth.bytecode.op;
+
+public class LOAD_LOCAL_LOAD_MEMBER_Insn extends AbstractLocalInsn {
+
+    private final int fieldIndex;
+
+    public LOAD_LOCAL_LOAD_MEMBER_Insn(int localIndex, int fieldIndex) {
+        super(localIndex);
+        this.fieldIndex = fieldIndex;
+    }
+
+    public int getFieldIndex() {
+        return this.fieldIndex;
+    }
+
+    @Override
+    public byte getOpCode() {
+        return OpCodes.LOAD_LOCAL_LOAD_MEMBER;
+    }
+
+    @Override
+    public String getDebugParametersString() {
+        return getLocalIndex() + ", " + this.fieldIndex;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.tth05.teth.bytecode.op;
+
+public class L_CMP_LE_JUMP_Insn extends AbstractLongCompareJumpInsn {
+
+    public L_CMP_LE_JUMP_Insn(int relativeJumpOffset) {
+        super(relativeJumpOffset);
+    }
+
+    @Override
+    public IJumpInstruction withRelativeJumpOffset(int relativeJumpOffset) {
+        return new L_CMP_LE_JUMP_Insn(relativeJumpOffset);
+    }
+
+    @Override
+    public byte getOpCode() {
+        return OpCodes.L_CMP_LE_JUMP;
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.tth05.teth.bytecode.op;
+
+public class L_INC_LOCAL_Insn extends AbstractLocalInsn {
+
+    private final long value;
+
+    public L_INC_LOCAL_Insn(int localIndex, long value) {
+        super(localIndex);
+        this.value = value;
+    }
+
+    public long getValue() {
+        return this.value;
+    }
+
+    @Override
+    public byte getOpCode() {
+        return OpCodes.L_INC_LOCAL;
+    }
+
+    @Override
+    public String getDebugParametersString() {
+        return getLocalIndex() + ", " + this.value;
+    }
+}
@@ -296,4 +296,81 @@ public interface OpCodes {
     byte EXIT = STORE_MEMBER + 1;
     byte DUP = EXIT + 1;
     byte POP = DUP + 1;
-}
\ No newline at end of file
+    /*
+     * Superinstructions, emitted by the SuperinstructionOptimizer for common instruction sequences.
+     */
+    /**
+     * Adds a constant to a long local, replaces {@code LOAD_LOCAL, L_CONST, L_ADD/L_SUB, STORE_LOCAL}.
+     * <br>
+     * Leaves the stack untouched.
+     */
+    byte L_INC_LOCAL = POP + 1;
+    /**
+     * Compares two longs and jumps if the comparison is false, replaces {@code L_LESS, JUMP_IF_FALSE} and the other
+     * long comparisons.
+     * <br>
+     * Stack (before, after):
+     * <pre><code>
+     * value1, value2 ->
+     * </code></pre>
+     */
+    byte L_CMP_LT_JUMP = L_INC_LOCAL + 1;
+    byte L_CMP_LE_JUMP = L_CMP_LT_JUMP + 1;
+    byte L_CMP_GT_JUMP = L_CMP_LE_JUMP + 1;
+    byte L_CMP_GE_JUMP = L_CMP_GT_JUMP + 1;
+    byte L_CMP_EQ_JUMP = L_CMP_GE_JUMP + 1;
+    /**
+     * Pushes a member of an instance stored in a local, replaces {@code LOAD_LOCAL, LOAD_MEMBER}.
+     * <br>
+     * Stack (before, after):
+     * <pre><code>
+     * -> value
+     * </code></pre>
+     */
+    byte LOAD_LOCAL_LOAD_MEMBER = L_CMP_EQ_JUMP + 1;
+    /**
+     * Throws if the instance on top of the stack is null, like {@code INVOKE} does for instance functions. Emitted in
+     * place of calls to instance functions which have been inlined.
+     * <br>
+     * Leaves the stack untouched.
+     */
+    byte CHECK_INSTANCE = LOAD_LOCAL_LOAD_MEMBER + 1;
+    /**
+     * Same as {@code INVOKE}, but replaces the frame of the current function instead of creating a new one. Emitted in
+     * place of an {@code INVOKE} which is directly followed by a {@code RETURN}, the return value of the invoked
+     * function is returned to the caller of the current function.
+     * <br>
+     * The {@code RETURN} after this instruction is kept, it is used if the invoked function is run in a way which does
+     * not allow replacing the frame, e.g. when it has been compiled.
+     */
+    byte TAIL_INVOKE = CHECK_INSTANCE + 1;
+    /**
+     * Joins strings into a new string, replaces a chain of {@code string.concat} calls for string interpolation.
+     * <br>
+     * Stack (before, after):
+     * <pre><code>
+     * part1, part2,..., partN -> result
+     * </code></pre>
+     * Encoding:
+     * <ul>
+     *   <li>1 byte op code</li>
+     *   <li>4 byte part count</li>
+     * </ul>
+     */
+    byte STRING_BUILD = TAIL_INVOKE + 1;
+    /**
+     * Pushes a new list which contains the given elements, replaces {@code CREATE_LIST} followed by a {@code list.add}
+     * call for every element of a list literal.
+     * <br>
+     * Stack (before, after):
+     * <pre><code>
+     * element1, element2,..., elementN -> list
+     * </code></pre>
+     * Encoding:
+     * <ul>
+     *   <li>1 byte op code</li>
+     *   <li>4 byte element count</li>
+     * </ul>
+     */
+    byte CREATE_LIST_N = STRING_BUILD + 1;
+}
@@ -0,0 +1,24 @@
+package com.github.tth05.teth.bytecode.op;
+
+public class STRING_BUILD_Insn implements IInstrunction {
+
+    private final int partCount;
+
+    public STRING_BUILD_Insn(int partCount) {
+        this.partCount = partCount;
+    }
+
+    public int getPartCount() {
+        return this.partCount;
+    }
+
+    @Override
+    public byte getOpCode() {
+        return OpCodes.STRING_BUILD;
+    }
+
+    @Override
+    public String getDebugParametersString() {
+        return String.format("partCount: %d", this.partCount);
+    }
+}
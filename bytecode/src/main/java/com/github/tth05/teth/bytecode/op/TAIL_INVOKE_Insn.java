@@ -0,0 +1,13 @@
+package com.github.tth05.teth.bytecode.op;
+
+public class TAIL_INVOKE_Insn extends INVOKE_Insn {
+
+    public TAIL_INVOKE_Insn(boolean instanceFunction, int paramCount, int localsCount, boolean returnsValue, int absoluteJumpAddress) {
+        super(instanceFunction, paramCount, localsCount, returnsValue, absoluteJumpAddress);
+    }
+
+    @Override
+    public byte getOpCode() {
+        return OpCodes.TAIL_INVOKE;
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.tth05.teth.bytecode.program;
+
+/**
+ * @param offset           The index of the first instruction of this function
+ * @param instructionCount The number of instructions belonging to this function
+ * @param paramCount       The number of parameters, including the hidden 'self' parameter of instance functions
+ * @param localTypes       The types of all parameters followed by the types of all other locals
+ */
+public record FunctionData(String name, int offset, int instructionCount, int paramCount, ValueType[] localTypes,
+                           ValueType returnType) {
+
+    public int getLocalsCount() {
+        return this.localTypes.length - this.paramCount;
+    }
+}
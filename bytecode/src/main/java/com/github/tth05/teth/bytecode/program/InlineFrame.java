@@ -0,0 +1,15 @@
+package com.github.tth05.teth.bytecode.program;
+
+import com.github.tth05.teth.lang.span.Span;
+
+/**
+ * Marks instructions which were copied into another function by inlining, so that call stacks can still show the
+ * inlined function.
+ *
+ * @param functionName The name of the inlined function
+ * @param callSite     The span of the call which was replaced, may be {@code null}
+ * @param caller       The frame of the function which contains the call, {@code null} if that is the function which
+ *                     contains the instruction
+ */
+public record InlineFrame(String functionName, Span callSite, InlineFrame caller) {
+}
@@ -0,0 +1,115 @@
+package com.github.tth05.teth.bytecode.program;
+
+import com.github.tth05.teth.lang.span.Span;
+
+import java.util.Arrays;
+
+/**
+ * Maps instruction indices to the source span they were generated from and, for inlined instructions, to the
+ * {@link InlineFrame} they belong to. Consecutive instructions with the same span and frame share one entry, which
+ * keeps the table small.
+ */
+public class LineNumberTable {
+
+    public static final LineNumberTable EMPTY = new LineNumberTable(new int[0], new Span[0], new InlineFrame[0]);
+
+    /**
+     * The index of the first instruction of every entry, in ascending order
+     */
+    private final int[] startIndices;
+    private final Span[] spans;
+    private final InlineFrame[] inlineFrames;
+
+    LineNumberTable(int[] startIndices, Span[] spans, InlineFrame[] inlineFrames) {
+        this.startIndices = startIndices;
+        this.spans = spans;
+        this.inlineFrames = inlineFrames;
+    }
+
+    /**
+     * @return The span of the given instruction, or {@code null} if it is unknown
+     */
+    public Span getSpan(int instructionIndex) {
+        var index = findEntry(instructionIndex);
+        return index < 0 ? null : this.spans[index];
+    }
+
+    /**
+     * @return The frame of the inlined function which the given instruction belongs to, or {@code null} if the
+     * instruction was not inlined
+     */
+    public InlineFrame getInlineFrame(int instructionIndex) {
+        var index = findEntry(instructionIndex);
+        return index < 0 ? null : this.inlineFrames[index];
+    }
+
+    private int findEntry(int instructionIndex) {
+        var index = Arrays.binarySearch(this.startIndices, instructionIndex);
+        if (index < 0)
+            index = -index - 2;
+        return index;
+    }
+
+    public int getEntryCount() {
+        return this.startIndices.length;
+    }
+
+    int getEntryStartIndex(int entryIndex) {
+        return this.startIndices[entryIndex];
+    }
+
+    Span getEntrySpan(int entryIndex) {
+        return this.spans[entryIndex];
+    }
+
+    InlineFrame getEntryInlineFrame(int entryIndex) {
+        return this.inlineFrames[entryIndex];
+    }
+
+    /**
+     * Builds a table by adding the span of every instruction in order.
+     */
+    public static class Builder {
+
+        private int[] startIndices = new int[16];
+        private Span[] spans = new Span[16];
+        private InlineFrame[] inlineFrames = new InlineFrame[16];
+        private int size;
+        private int instructionCount;
+
+        /**
+         * @param span The span of the next instruction, may be {@code null}
+         */
+        public void add(Span span) {
+            add(span, null);
+        }
+
+        /**
+         * @param span        The span of the next instruction, may be {@code null}
+         * @param inlineFrame The inlined function the next instruction belongs to, may be {@code null}
+         */
+        public void add(Span span, InlineFrame inlineFrame) {
+            if (this.size == 0 || this.spans[this.size - 1] != span || this.inlineFrames[this.size - 1] != inlineFrame) {
+                if (this.size == this.startIndices.length) {
+                    this.startIndices = Arrays.copyOf(this.startIndices, this.size * 2);
+                    this.spans = Arrays.copyOf(this.spans, this.size * 2);
+                    this.inlineFrames = Arrays.copyOf(this.inlineFrames, this.size * 2);
+                }
+
+                this.startIndices[this.size] = this.instructionCount;
+                this.inlineFrames[this.size] = inlineFrame;
+                this.spans[this.size++] = span;
+            }
+
+            this.instructionCount++;
+        }
+
+        public LineNumberTable build() {
+            return new LineNumberTable(
+                    Arrays.copyOf(this.startIndices, this.size),
+                    Arrays.copyOf(this.spans, this.size),
+                    Arrays.copyOf(this.inlineFrames, this.size)
+            );
+        }
+    }
+}
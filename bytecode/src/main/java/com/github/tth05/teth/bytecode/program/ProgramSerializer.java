@@ -0,0 +1,484 @@
+package com.github.tth05.teth.bytecode.program;
+
+import com.github.tth05.teth.analyzer.prelude.Prelude;
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
+import com.github.tth05.teth.lang.source.ISource;
+import com.github.tth05.teth.lang.source.InMemorySource;
+import com.github.tth05.teth.lang.span.Span;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the binary {@code .tethc} format of a {@link TethProgram}, which allows running a program without
+ * parsing, analyzing and compiling it again. All numbers are big-endian, a file consists of:
+ * <ul>
+ *     <li>The magic number {@code TETH} and the format version</li>
+ *     <li>The string pool, every string is its UTF-8 length followed by its UTF-8 bytes. All other sections refer to
+ *     strings by their index in the pool, {@code -1} is {@code null}</li>
+ *     <li>The sources referenced by spans, as module name and contents</li>
+ *     <li>The structs and functions</li>
+ *     <li>The instructions, every instruction is its opcode followed by its operands. Intrinsic functions are stored by
+ *     name and resolved through the prelude when reading</li>
+ *     <li>The inline frames, every frame is stored after its caller</li>
+ *     <li>The entries of the line number table</li>
+ * </ul>
+ * Execution always starts at the first instruction, so there is no separate entry point. The version has to be
+ * incremented whenever the layout or the operands of an instruction change.
+ */
+public final class ProgramSerializer {
+
+    public static final String FILE_EXTENSION = ".tethc";
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x54455448;
+
+    private static Map<FunctionDeclaration, String> intrinsicNames;
+
+    private ProgramSerializer() {
+    }
+
+    public static void write(TethProgram program, OutputStream outputStream) throws IOException {
+        var writer = new Writer();
+        writer.writeProgram(program);
+
+        var out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(writer.strings.size());
+        for (var string : writer.strings) {
+            var bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(writer.sources.size());
+        for (var source : writer.sources) {
+            out.writeInt(writer.string(source.getModuleName()));
+            out.writeInt(writer.string(new String(source.getContents())));
+        }
+        writer.body.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Maps the given file into memory and reads the program from it.
+     */
+    public static TethProgram read(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException If the buffer does not contain a compiled program of the current version
+     */
+    public static TethProgram read(ByteBuffer buffer) {
+        try {
+            return new Reader(buffer).readProgram();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Compiled program is truncated", e);
+        }
+    }
+
+    private static String getIntrinsicName(FunctionDeclaration function) {
+        if (intrinsicNames == null) {
+            var names = new IdentityHashMap<FunctionDeclaration, String>();
+            for (var globalFunction : Prelude.getGlobalFunctions())
+                names.put(globalFunction, globalFunction.getNameExpr().getSpan().getText());
+            for (var struct : Prelude.getGlobalStructs()) {
+                var structName = struct.getNameExpr().getSpan().getText();
+                for (var memberFunction : struct.getFunctions())
+                    names.put(memberFunction, structName + "." + memberFunction.getNameExpr().getSpan().getText());
+            }
+
+            intrinsicNames = names;
+        }
+
+        var name = intrinsicNames.get(function);
+        if (name == null)
+            throw new IllegalArgumentException("Function '%s' is not part of the prelude".formatted(function.getNameExpr().getSpan().getText()));
+
+        return name;
+    }
+
+    private static FunctionDeclaration getIntrinsic(String name) {
+        var separatorIndex = name.indexOf('.');
+        var function = separatorIndex == -1 ?
+                Prelude.getGlobalFunction(Span.fromString(name)) :
+                Prelude.getStructForTypeName(Span.fromString(name.substring(0, separatorIndex)))
+                        .getMember(Span.fromString(name.substring(separatorIndex + 1)));
+        if (!(function instanceof FunctionDeclaration functionDeclaration))
+            throw new IllegalArgumentException("Unknown intrinsic function '" + name + "'");
+
+        return functionDeclaration;
+    }
+
+    private static final class Writer {
+
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndices = new HashMap<>();
+        private final List<ISource> sources = new ArrayList<>();
+        private final Map<ISource, Integer> sourceIndices = new IdentityHashMap<>();
+        private final Map<InlineFrame, Integer> frameIndices = new IdentityHashMap<>();
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(this.body);
+
+        private void writeProgram(TethProgram program) throws IOException {
+            var structs = program.getStructData();
+            this.out.writeInt(structs.length);
+            for (var struct : structs) {
+                this.out.writeInt(string(struct.name()));
+                this.out.writeInt(struct.fieldNames().length);
+                for (var fieldName : struct.fieldNames())
+                    this.out.writeInt(string(fieldName));
+            }
+
+            var functions = program.getFunctionData();
+            this.out.writeInt(functions.length);
+            for (var function : functions) {
+                this.out.writeInt(string(function.name()));
+                this.out.writeInt(function.offset());
+                this.out.writeInt(function.instructionCount());
+                this.out.writeInt(function.paramCount());
+                this.out.writeInt(function.localTypes().length);
+                for (var type : function.localTypes())
+                    this.out.writeByte(type.ordinal());
+                this.out.writeByte(function.returnType().ordinal());
+            }
+
+            var instructions = program.getInstructions();
+            this.out.writeInt(instructions.length);
+            for (var insn : instructions)
+                writeInstruction(insn);
+
+            var lineNumberTable = program.getLineNumberTable();
+            var frames = new ArrayList<InlineFrame>();
+            for (int i = 0; i < lineNumberTable.getEntryCount(); i++)
+                collectFrame(lineNumberTable.getEntryInlineFrame(i), frames);
+
+            this.out.writeInt(frames.size());
+            for (var frame : frames) {
+                this.out.writeInt(string(frame.functionName()));
+                writeSpan(frame.callSite());
+                this.out.writeInt(frame(frame.caller()));
+            }
+
+            this.out.writeInt(lineNumberTable.getEntryCount());
+            for (int i = 0; i < lineNumberTable.getEntryCount(); i++) {
+                this.out.writeInt(lineNumberTable.getEntryStartIndex(i));
+                writeSpan(lineNumberTable.getEntrySpan(i));
+                this.out.writeInt(frame(lineNumberTable.getEntryInlineFrame(i)));
+            }
+        }
+
+        private void writeInstruction(IInstrunction insn) throws IOException {
+            var opCode = insn.getOpCode();
+            this.out.writeByte(opCode);
+            switch (opCode) {
+                case OpCodes.B_CONST -> this.out.writeBoolean(((B_CONST_Insn) insn).getValue());
+                case OpCodes.L_CONST -> this.out.writeLong(((L_CONST_Insn) insn).getValue());
+                case OpCodes.D_CONST -> this.out.writeDouble(((D_CONST_Insn) insn).getValue());
+                case OpCodes.S_CONST -> this.out.writeInt(string(((S_CONST_Insn) insn).getValue()));
+                case OpCodes.LOAD_LOCAL, OpCodes.STORE_LOCAL -> this.out.writeInt(((AbstractLocalInsn) insn).getLocalIndex());
+                case OpCodes.LOAD_MEMBER, OpCodes.STORE_MEMBER -> this.out.writeInt(((AbstractMemberInsn) insn).getFieldIndex());
+                case OpCodes.LOAD_LOCAL_LOAD_MEMBER -> {
+                    var loadInsn = (LOAD_LOCAL_LOAD_MEMBER_Insn) insn;
+                    this.out.writeInt(loadInsn.getLocalIndex());
+                    this.out.writeInt(loadInsn.getFieldIndex());
+                }
+                case OpCodes.L_INC_LOCAL -> {
+                    var incInsn = (L_INC_LOCAL_Insn) insn;
+                    this.out.writeInt(incInsn.getLocalIndex());
+                    this.out.writeLong(incInsn.getValue());
+                }
+                case OpCodes.JUMP, OpCodes.JUMP_IF_FALSE, OpCodes.L_CMP_EQ_JUMP, OpCodes.L_CMP_LT_JUMP,
+                        OpCodes.L_CMP_LE_JUMP, OpCodes.L_CMP_GT_JUMP, OpCodes.L_CMP_GE_JUMP ->
+                        this.out.writeInt(((IJumpInstruction) insn).getRelativeJumpOffset());
+                case OpCodes.CREATE_OBJECT -> {
+                    var createInsn = (CREATE_OBJECT_Insn) insn;
+                    this.out.writeInt(createInsn.getStructId());
+                    this.out.writeInt(createInsn.getFieldCount());
+                }
+                case OpCodes.CREATE_LIST_N -> this.out.writeInt(((CREATE_LIST_N_Insn) insn).getElementCount());
+                case OpCodes.STRING_BUILD -> this.out.writeInt(((STRING_BUILD_Insn) insn).getPartCount());
+                case OpCodes.INVOKE, OpCodes.TAIL_INVOKE -> {
+                    var invokeInsn = (INVOKE_Insn) insn;
+                    this.out.writeBoolean(invokeInsn.isInstanceFunction());
+                    this.out.writeInt(invokeInsn.getParamCount());
+                    this.out.writeInt(invokeInsn.getLocalsCount());
+                    this.out.writeBoolean(invokeInsn.returnsValue());
+                    this.out.writeInt(invokeInsn.getAbsoluteJumpAddress());
+                }
+                case OpCodes.INVOKE_INTRINSIC ->
+                        this.out.writeInt(string(getIntrinsicName(((INVOKE_INTRINSIC_Insn) insn).getFunctionDeclaration())));
+                case OpCodes.RETURN -> this.out.writeBoolean(((RETURN_Insn) insn).shouldReturnValue());
+                default -> {
+                    if (createInstruction(opCode) == null)
+                        throw new IllegalArgumentException("Cannot serialize instruction " + insn.getClass().getSimpleName());
+                }
+            }
+        }
+
+        private void writeSpan(Span span) throws IOException {
+            if (span == null) {
+                this.out.writeInt(-2);
+                return;
+            }
+
+            this.out.writeInt(source(span.source()));
+            this.out.writeInt(span.offset());
+            this.out.writeInt(span.offsetEnd());
+        }
+
+        private void collectFrame(InlineFrame frame, List<InlineFrame> frames) {
+            if (frame == null || this.frameIndices.containsKey(frame))
+                return;
+
+            collectFrame(frame.caller(), frames);
+            this.frameIndices.put(frame, frames.size());
+            frames.add(frame);
+        }
+
+        private int frame(InlineFrame frame) {
+            return frame == null ? -1 : this.frameIndices.get(frame);
+        }
+
+        private int source(ISource source) {
+            if (source == null)
+                return -1;
+
+            var index = this.sourceIndices.get(source);
+            if (index == null) {
+                index = this.sources.size();
+                this.sourceIndices.put(source, index);
+                this.sources.add(source);
+                // Register the strings now, the pool is written before the sources
+                string(source.getModuleName());
+                string(new String(source.getContents()));
+            }
+
+            return index;
+        }
+
+        private int string(String string) {
+            if (string == null)
+                return -1;
+
+            return this.stringIndices.computeIfAbsent(string, s -> {
+                this.strings.add(s);
+                return this.strings.size() - 1;
+            });
+        }
+    }
+
+    private static final class Reader {
+
+        private static final ValueType[] VALUE_TYPES = ValueType.values();
+
+        private final ByteBuffer buffer;
+        private String[] strings;
+        private ISource[] sources;
+        private InlineFrame[] frames;
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private TethProgram readProgram() {
+            if (this.buffer.remaining() < 8 || this.buffer.getInt() != MAGIC)
+                throw new IllegalArgumentException("Not a compiled teth program");
+
+            var version = this.buffer.getInt();
+            if (version != FORMAT_VERSION)
+                throw new IllegalArgumentException("Unsupported format version " + version + ", expected " + FORMAT_VERSION);
+
+            this.strings = new String[readCount()];
+            for (int i = 0; i < this.strings.length; i++) {
+                var bytes = new byte[readCount()];
+                this.buffer.get(bytes);
+                this.strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            this.sources = new ISource[readCount()];
+            for (int i = 0; i < this.sources.length; i++)
+                this.sources[i] = new InMemorySource(readString(), readString());
+
+            var structs = new StructData[readCount()];
+            for (int i = 0; i < structs.length; i++) {
+                var name = readString();
+                var fieldNames = new String[readCount()];
+                for (int j = 0; j < fieldNames.length; j++)
+                    fieldNames[j] = readString();
+                structs[i] = new StructData(name, fieldNames);
+            }
+
+            var functions = new FunctionData[readCount()];
+            for (int i = 0; i < functions.length; i++) {
+                var name = readString();
+                var offset = this.buffer.getInt();
+                var instructionCount = this.buffer.getInt();
+                var paramCount = this.buffer.getInt();
+                var localTypes = new ValueType[readCount()];
+                for (int j = 0; j < localTypes.length; j++)
+                    localTypes[j] = readValueType();
+                functions[i] = new FunctionData(name, offset, instructionCount, paramCount, localTypes, readValueType());
+            }
+
+            var instructions = new IInstrunction[readCount()];
+            for (int i = 0; i < instructions.length; i++)
+                instructions[i] = readInstruction();
+
+            this.frames = new InlineFrame[readCount()];
+            for (int i = 0; i < this.frames.length; i++)
+                this.frames[i] = new InlineFrame(readString(), readSpan(), readFrame());
+
+            var entryCount = readCount();
+            var startIndices = new int[entryCount];
+            var spans = new Span[entryCount];
+            var inlineFrames = new InlineFrame[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                startIndices[i] = this.buffer.getInt();
+                spans[i] = readSpan();
+                inlineFrames[i] = readFrame();
+            }
+
+            return new TethProgram(instructions, structs, functions, new LineNumberTable(startIndices, spans, inlineFrames));
+        }
+
+        private IInstrunction readInstruction() {
+            var opCode = this.buffer.get();
+            return switch (opCode) {
+                case OpCodes.B_CONST -> new B_CONST_Insn(readBoolean());
+                case OpCodes.L_CONST -> new L_CONST_Insn(this.buffer.getLong());
+                case OpCodes.D_CONST -> new D_CONST_Insn(this.buffer.getDouble());
+                case OpCodes.S_CONST -> new S_CONST_Insn(readString());
+                case OpCodes.LOAD_LOCAL -> new LOAD_LOCAL_Insn(this.buffer.getInt());
+                case OpCodes.STORE_LOCAL -> new STORE_LOCAL_Insn(this.buffer.getInt());
+                case OpCodes.LOAD_MEMBER -> new LOAD_MEMBER_Insn(this.buffer.getInt());
+                case OpCodes.STORE_MEMBER -> new STORE_MEMBER_Insn(this.buffer.getInt());
+                case OpCodes.LOAD_LOCAL_LOAD_MEMBER -> new LOAD_LOCAL_LOAD_MEMBER_Insn(this.buffer.getInt(), this.buffer.getInt());
+                case OpCodes.L_INC_LOCAL -> new L_INC_LOCAL_Insn(this.buffer.getInt(), this.buffer.getLong());
+                case OpCodes.JUMP -> new JUMP_Insn(this.buffer.getInt());
+                case OpCodes.JUMP_IF_FALSE -> new JUMP_IF_FALSE_Insn(this.buffer.getInt());
+                case OpCodes.L_CMP_EQ_JUMP -> new L_CMP_EQ_JUMP_Insn(this.buffer.getInt());
+                case OpCodes.L_CMP_LT_JUMP -> new L_CMP_LT_JUMP_Insn(this.buffer.getInt());
+                case OpCodes.L_CMP_LE_JUMP -> new L_CMP_LE_JUMP_Insn(this.buffer.getInt());
+                case OpCodes.L_CMP_GT_JUMP -> new L_CMP_GT_JUMP_Insn(this.buffer.getInt());
+                case OpCodes.L_CMP_GE_JUMP -> new L_CMP_GE_JUMP_Insn(this.buffer.getInt());
+                case OpCodes.CREATE_OBJECT -> new CREATE_OBJECT_Insn(this.buffer.getInt(), this.buffer.getInt());
+                case OpCodes.CREATE_LIST_N -> new CREATE_LIST_N_Insn(this.buffer.getInt());
+                case OpCodes.STRING_BUILD -> new STRING_BUILD_Insn(this.buffer.getInt());
+                case OpCodes.INVOKE ->
+                        new INVOKE_Insn(readBoolean(), this.buffer.getInt(), this.buffer.getInt(), readBoolean(), this.buffer.getInt());
+                case OpCodes.TAIL_INVOKE ->
+                        new TAIL_INVOKE_Insn(readBoolean(), this.buffer.getInt(), this.buffer.getInt(), readBoolean(), this.buffer.getInt());
+                case OpCodes.INVOKE_INTRINSIC -> new INVOKE_INTRINSIC_Insn(getIntrinsic(readString()));
+                case OpCodes.RETURN -> new RETURN_Insn(readBoolean());
+                default -> {
+                    var insn = createInstruction(opCode);
+                    if (insn == null)
+                        throw new IllegalArgumentException("Unknown opcode " + opCode);
+
+                    yield insn;
+                }
+            };
+        }
+
+        private Span readSpan() {
+            var sourceIndex = this.buffer.getInt();
+            if (sourceIndex == -2)
+                return null;
+
+            var source = sourceIndex == -1 ? null : this.sources[sourceIndex];
+            return new Span(source, this.buffer.getInt(), this.buffer.getInt());
+        }
+
+        private InlineFrame readFrame() {
+            var index = this.buffer.getInt();
+            return index == -1 ? null : this.frames[index];
+        }
+
+        private ValueType readValueType() {
+            var ordinal = this.buffer.get();
+            if (ordinal < 0 || ordinal >= VALUE_TYPES.length)
+                throw new IllegalArgumentException("Unknown value type " + ordinal);
+
+            return VALUE_TYPES[ordinal];
+        }
+
+        private String readString() {
+            var index = this.buffer.getInt();
+            return index == -1 ? null : this.strings[index];
+        }
+
+        private boolean readBoolean() {
+            return this.buffer.get() != 0;
+        }
+
+        private int readCount() {
+            var count = this.buffer.getInt();
+            if (count < 0 || count > this.buffer.remaining())
+                throw new IllegalArgumentException("Compiled program is corrupted");
+
+            return count;
+        }
+    }
+
+    /**
+     * @return A new instance of the instruction without operands for the given opcode, or {@code null} if the
+     * instruction has operands or the opcode is unknown
+     */
+    private static IInstrunction createInstruction(byte opCode) {
+        return switch (opCode) {
+            case OpCodes.L_TO_D -> new L_TO_D_Insn();
+            case OpCodes.D_TO_L -> new D_TO_L_Insn();
+            case OpCodes.L_ADD -> new L_ADD_Insn();
+            case OpCodes.D_ADD -> new D_ADD_Insn();
+            case OpCodes.L_SUB -> new L_SUB_Insn();
+            case OpCodes.D_SUB -> new D_SUB_Insn();
+            case OpCodes.L_MUL -> new L_MUL_Insn();
+            case OpCodes.D_MUL -> new D_MUL_Insn();
+            case OpCodes.L_DIV -> new L_DIV_Insn();
+            case OpCodes.D_DIV -> new D_DIV_Insn();
+            case OpCodes.L_POW -> new L_POW_Insn();
+            case OpCodes.D_POW -> new D_POW_Insn();
+            case OpCodes.L_NEGATE -> new L_NEGATE_Insn();
+            case OpCodes.D_NEGATE -> new D_NEGATE_Insn();
+            case OpCodes.L_EQUAL -> new L_EQUAL_Insn();
+            case OpCodes.D_EQUAL -> new D_EQUAL_Insn();
+            case OpCodes.L_LESS -> new L_LESS_Insn();
+            case OpCodes.D_LESS -> new D_LESS_Insn();
+            case OpCodes.L_LESS_EQUAL -> new L_LESS_EQUAL_Insn();
+            case OpCodes.D_LESS_EQUAL -> new D_LESS_EQUAL_Insn();
+            case OpCodes.L_GREATER -> new L_GREATER_Insn();
+            case OpCodes.D_GREATER -> new D_GREATER_Insn();
+            case OpCodes.L_GREATER_EQUAL -> new L_GREATER_EQUAL_Insn();
+            case OpCodes.D_GREATER_EQUAL -> new D_GREATER_EQUAL_Insn();
+            case OpCodes.B_AND -> new B_AND_Insn();
+            case OpCodes.B_OR -> new B_OR_Insn();
+            case OpCodes.B_INVERT -> new B_INVERT_Insn();
+            case OpCodes.NULL_CONST -> new NULL_CONST_Insn();
+            case OpCodes.CREATE_LIST -> new CREATE_LIST_Insn();
+            case OpCodes.CHECK_INSTANCE -> new CHECK_INSTANCE_Insn();
+            case OpCodes.DUP -> new DUP_Insn();
+            case OpCodes.POP -> new POP_Insn();
+            case OpCodes.EXIT -> new EXIT_Insn();
+            default -> null;
+        };
+    }
+}
@@ -6,10 +6,25 @@ public class TethProgram {
 
     private final IInstrunction[] instructions;
     private final StructData[] structData;
+    private final FunctionData[] functionData;
+    private final LineNumberTable lineNumberTable;
 
     public TethProgram(IInstrunction[] instructions, StructData[] structData) {
+        this(instructions, structData, new FunctionData[0]);
+    }
+
+    public TethProgram(IInstrunction[] instructions, StructData[] structData, FunctionData[] functionData) {
+        this(instructions, structData, functionData, LineNumberTable.EMPTY);
+    }
+
+    /**
+     * @param functionData The data of all functions, sorted by their offset
+     */
+    public TethProgram(IInstrunction[] instructions, StructData[] structData, FunctionData[] functionData, LineNumberTable lineNumberTable) {
         this.instructions = instructions;
         this.structData = structData;
+        this.functionData = functionData;
+        this.lineNumberTable = lineNumberTable;
     }
 
     public IInstrunction[] getInstructions() {
@@ -19,4 +34,31 @@ public class TethProgram {
     public StructData[] getStructData() {
         return this.structData;
     }
+
+    public FunctionData[] getFunctionData() {
+        return this.functionData;
+    }
+
+    public LineNumberTable getLineNumberTable() {
+        return this.lineNumberTable;
+    }
+
+    /**
+     * @return The data of the function which contains the given instruction, or {@code null} if there is none
+     */
+    public FunctionData getContainingFunction(int instructionIndex) {
+        int low = 0, high = this.functionData.length - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            var function = this.functionData[mid];
+            if (instructionIndex < function.offset())
+                high = mid - 1;
+            else if (instructionIndex >= function.offset() + function.instructionCount())
+                low = mid + 1;
+            else
+                return function;
+        }
+
+        return null;
+    }
 }
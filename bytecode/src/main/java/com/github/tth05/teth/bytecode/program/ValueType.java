@@ -0,0 +1,16 @@
+package com.github.tth05.teth.bytecode.program;
+
+/**
+ * The static type of a local variable or a function return value, as far as the runtime representation is concerned.
+ */
+public enum ValueType {
+    LONG,
+    DOUBLE,
+    BOOLEAN,
+    REFERENCE,
+    VOID;
+
+    public boolean isPrimitive() {
+        return this == LONG || this == DOUBLE || this == BOOLEAN;
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.tth05.teth.bytecode.compiler.cfg;
+
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.lang.span.Span;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ControlFlowGraphTest implements OpCodes {
+
+    @Test
+    public void testBuildBlocksAndEdges() {
+        // loop (let i = 0, i < 10, i = i + 1) { if (i == 5) break }
+        var graph = ControlFlowGraph.build(list(
+                new L_CONST_Insn(0),
+                new STORE_LOCAL_Insn(0),
+                new LOAD_LOCAL_Insn(0),
+                new L_CONST_Insn(10),
+                new L_LESS_Insn(),
+                new JUMP_IF_FALSE_Insn(7),
+                new LOAD_LOCAL_Insn(0),
+                new L_CONST_Insn(5),
+                new L_EQUAL_Insn(),
+                new JUMP_IF_FALSE_Insn(1),
+                new JUMP_Insn(2),
+                new L_INC_LOCAL_Insn(0, 1),
+                new JUMP_Insn(-11),
+                new EXIT_Insn()
+        ));
+
+        var blocks = graph.getBlocks();
+        assertEquals(6, blocks.size());
+        var init = blocks.get(0);
+        var condition = blocks.get(1);
+        var body = blocks.get(2);
+        var breakBlock = blocks.get(3);
+        var advance = blocks.get(4);
+        var exit = blocks.get(5);
+
+        assertSame(init, graph.getEntry());
+        assertEquals(List.of(condition), init.getSuccessors());
+        assertEquals(List.of(exit, body), condition.getSuccessors());
+        assertEquals(List.of(advance, breakBlock), body.getSuccessors());
+        assertEquals(List.of(exit), breakBlock.getSuccessors());
+        assertEquals(List.of(condition), advance.getSuccessors());
+        assertEquals(List.of(), exit.getSuccessors());
+
+        assertEquals(2, condition.getPredecessors().size());
+        assertEquals(2, exit.getPredecessors().size());
+        assertTrue(condition.isConditional());
+        assertFalse(advance.isConditional());
+        assertArrayEquals(new byte[]{LOAD_LOCAL, L_CONST, L_LESS}, toOpCodes(condition.getInstructions()));
+    }
+
+    @Test
+    public void testLoweringKeepsUnchangedInstructions() {
+        var list = list(
+                new LOAD_LOCAL_Insn(0),
+                new JUMP_IF_FALSE_Insn(3),
+                new L_CONST_Insn(1),
+                new STORE_LOCAL_Insn(1),
+                new JUMP_Insn(2),
+                new L_CONST_Insn(2),
+                new STORE_LOCAL_Insn(1),
+                new EXIT_Insn()
+        );
+
+        var result = ControlFlowGraph.build(list).toInstructions(new IdentityHashMap<>());
+
+        assertEquals(list.size(), result.size());
+        for (int i = 0; i < list.size(); i++)
+            assertSame(list.get(i), result.get(i));
+    }
+
+    @Test
+    public void testLoweringResolvesLabels() {
+        var jumpInsn = new JUMP_IF_FALSE_Insn(2);
+        var graph = ControlFlowGraph.build(list(
+                new LOAD_LOCAL_Insn(0),
+                jumpInsn,
+                new L_CONST_Insn(1),
+                new RETURN_Insn(true),
+                new L_CONST_Insn(2),
+                new RETURN_Insn(true)
+        ));
+        var blocks = graph.getBlocks();
+        // Make the condition fall through to the last block, which is not the next one
+        blocks.get(0).setFallthrough(blocks.get(2));
+        blocks.get(1).getInstructions().add(0, new L_CONST_Insn(0));
+        blocks.get(1).getInstructions().add(0, new POP_Insn());
+
+        var spans = new IdentityHashMap<IInstrunction, Span>();
+        var span = Span.fromString("if");
+        spans.put(jumpInsn, span);
+        var result = graph.toInstructions(spans);
+
+        assertArrayEquals(new byte[]{
+                LOAD_LOCAL,
+                JUMP_IF_FALSE,
+                JUMP,
+                POP,
+                L_CONST,
+                L_CONST,
+                RETURN,
+                L_CONST,
+                RETURN
+        }, toOpCodes(result));
+        assertEquals(5, ((JUMP_IF_FALSE_Insn) result.get(1)).getRelativeJumpOffset());
+        assertEquals(4, ((JUMP_Insn) result.get(2)).getRelativeJumpOffset());
+        assertSame(span, spans.get(result.get(1)));
+    }
+
+    @Test
+    public void testRemoveUnreachableBlocks() {
+        var graph = ControlFlowGraph.build(list(
+                new L_CONST_Insn(1),
+                new RETURN_Insn(true),
+                new L_CONST_Insn(2),
+                new JUMP_Insn(-4)
+        ));
+        var first = graph.getEntry();
+
+        assertTrue(graph.removeUnreachableBlocks());
+        assertEquals(List.of(first), graph.getBlocks());
+        // The removed block does not jump to the first one anymore
+        assertEquals(List.of(), first.getPredecessors());
+        assertFalse(graph.removeUnreachableBlocks());
+    }
+
+    private static List<IInstrunction> list(IInstrunction... instructions) {
+        return new ArrayList<>(List.of(instructions));
+    }
+
+    private static byte[] toOpCodes(List<IInstrunction> instructions) {
+        var opCodes = new byte[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++)
+            opCodes[i] = instructions.get(i).getOpCode();
+        return opCodes;
+    }
+}
@@ -0,0 +1,238 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.analyzer.prelude.Prelude;
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.lang.parser.ast.FunctionDeclaration;
+import com.github.tth05.teth.lang.span.Span;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConstantFoldingOptimizerTest implements OpCodes {
+
+    @Test
+    public void testFoldNestedArithmetic() {
+        // (60 * 60 * 24) / 2 > 4.0.toLong()
+        var list = list(
+                new L_CONST_Insn(60),
+                new L_CONST_Insn(60),
+                new L_MUL_Insn(),
+                new L_CONST_Insn(24),
+                new L_MUL_Insn(),
+                new L_CONST_Insn(2),
+                new L_DIV_Insn(),
+                new D_CONST_Insn(4),
+                new D_TO_L_Insn(),
+                new L_GREATER_Insn(),
+                new B_INVERT_Insn(),
+                new STORE_LOCAL_Insn(0)
+        );
+
+        new ConstantFoldingOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{B_CONST, STORE_LOCAL}, toOpCodes(list));
+        assertFalse(((B_CONST_Insn) list.get(0)).getValue());
+    }
+
+    @Test
+    public void testFoldFollowsRuntimeSemantics() {
+        var list = list(
+                new L_CONST_Insn(2),
+                new L_CONST_Insn(62),
+                new L_POW_Insn(),
+                new D_CONST_Insn(0),
+                new D_NEGATE_Insn(),
+                new D_CONST_Insn(0),
+                new D_EQUAL_Insn(),
+                new L_CONST_Insn(3),
+                new L_TO_D_Insn(),
+                new D_CONST_Insn(0),
+                new D_DIV_Insn()
+        );
+
+        new ConstantFoldingOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{L_CONST, B_CONST, D_CONST}, toOpCodes(list));
+        assertEquals(1L << 62, ((L_CONST_Insn) list.get(0)).getValue());
+        // -0.0 and 0.0 are different, like Double#equals
+        assertFalse(((B_CONST_Insn) list.get(1)).getValue());
+        assertEquals(Double.POSITIVE_INFINITY, ((D_CONST_Insn) list.get(2)).getValue());
+    }
+
+    @Test
+    public void testDoNotFoldDivisionByZero() {
+        var list = list(
+                new L_CONST_Insn(1),
+                new L_CONST_Insn(0),
+                new L_DIV_Insn()
+        );
+
+        new ConstantFoldingOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{L_CONST, L_CONST, L_DIV}, toOpCodes(list));
+    }
+
+    @Test
+    public void testFoldStringConcatenation() {
+        var concat = (FunctionDeclaration) Prelude.getStructForTypeName(Span.fromString("string")).getMember(Span.fromString("concat"));
+        var list = list(
+                new S_CONST_Insn("a"),
+                new S_CONST_Insn("b"),
+                new INVOKE_INTRINSIC_Insn(concat),
+                new S_CONST_Insn("c"),
+                new INVOKE_INTRINSIC_Insn(concat),
+                new LOAD_LOCAL_Insn(0),
+                new INVOKE_INTRINSIC_Insn(concat)
+        );
+
+        new ConstantFoldingOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{S_CONST, LOAD_LOCAL, INVOKE_INTRINSIC}, toOpCodes(list));
+        assertEquals("abc", ((S_CONST_Insn) list.get(0)).getValue());
+    }
+
+    @Test
+    public void testFoldStringBuild() {
+        var list = list(
+                new S_CONST_Insn("a"),
+                new S_CONST_Insn("b"),
+                new S_CONST_Insn("c"),
+                new STRING_BUILD_Insn(3),
+                new LOAD_LOCAL_Insn(0),
+                new S_CONST_Insn("d"),
+                new STRING_BUILD_Insn(3)
+        );
+
+        new ConstantFoldingOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{S_CONST, LOAD_LOCAL, S_CONST, STRING_BUILD}, toOpCodes(list));
+        assertEquals("abc", ((S_CONST_Insn) list.get(0)).getValue());
+    }
+
+    @Test
+    public void testDoNotFoldJumpTargets() {
+        var list = list(
+                new B_CONST_Insn(true),
+                new JUMP_IF_FALSE_Insn(2),
+                new L_CONST_Insn(1),
+                new JUMP_Insn(1),
+                // Jump target
+                new L_CONST_Insn(2),
+                new L_CONST_Insn(3),
+                new L_ADD_Insn(),
+                new L_CONST_Insn(4),
+                new L_CONST_Insn(5),
+                new L_ADD_Insn(),
+                new JUMP_Insn(-11)
+        );
+
+        new ConstantFoldingOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{
+                B_CONST,
+                JUMP_IF_FALSE,
+                L_CONST,
+                JUMP,
+                L_CONST,
+                L_CONST,
+                L_ADD,
+                L_CONST,
+                JUMP
+        }, toOpCodes(list));
+        assertEquals(2, ((JUMP_IF_FALSE_Insn) list.get(1)).getRelativeJumpOffset());
+        assertEquals(1, ((JUMP_Insn) list.get(3)).getRelativeJumpOffset());
+        assertEquals(9, ((L_CONST_Insn) list.get(7)).getValue());
+        assertEquals(-9, ((JUMP_Insn) list.get(8)).getRelativeJumpOffset());
+    }
+
+    @Test
+    public void testPropagateLocalsAssignedOnce() {
+        var list = list(
+                // let a = 6
+                new L_CONST_Insn(6),
+                new STORE_LOCAL_Insn(1),
+                // let b = a * 7
+                new LOAD_LOCAL_Insn(1),
+                new L_CONST_Insn(7),
+                new L_MUL_Insn(),
+                new STORE_LOCAL_Insn(2),
+                // let c = 1, c = 2
+                new L_CONST_Insn(1),
+                new STORE_LOCAL_Insn(3),
+                new L_CONST_Insn(2),
+                new STORE_LOCAL_Insn(3),
+                // p + b + c
+                new LOAD_LOCAL_Insn(0),
+                new LOAD_LOCAL_Insn(2),
+                new L_ADD_Insn(),
+                new LOAD_LOCAL_Insn(3),
+                new L_ADD_Insn(),
+                new RETURN_Insn(true)
+        );
+
+        // Local 0 is a parameter
+        new ConstantFoldingOptimizer().method(list, new OptimizationContext(1, false, new IdentityHashMap<>()));
+
+        assertArrayEquals(new byte[]{
+                L_CONST,
+                STORE_LOCAL,
+                L_CONST,
+                STORE_LOCAL,
+                L_CONST,
+                STORE_LOCAL,
+                L_CONST,
+                STORE_LOCAL,
+                LOAD_LOCAL,
+                L_CONST,
+                L_ADD,
+                LOAD_LOCAL,
+                L_ADD,
+                RETURN
+        }, toOpCodes(list));
+        assertEquals(42, ((L_CONST_Insn) list.get(2)).getValue());
+        assertEquals(42, ((L_CONST_Insn) list.get(9)).getValue());
+    }
+
+    @Test
+    public void testDoNotPropagateExternallyAccessedLocals() {
+        var list = list(
+                new L_CONST_Insn(0),
+                new STORE_LOCAL_Insn(0),
+                new LOAD_LOCAL_Insn(0),
+                new RETURN_Insn(true)
+        );
+
+        new ConstantFoldingOptimizer().method(list, new OptimizationContext(0, true, new IdentityHashMap<>()));
+
+        assertArrayEquals(new byte[]{L_CONST, STORE_LOCAL, LOAD_LOCAL, RETURN}, toOpCodes(list));
+    }
+
+    @Test
+    public void testFoldedConstantKeepsSpanOfOperator() {
+        var add = new L_ADD_Insn();
+        var list = list(new L_CONST_Insn(1), new L_CONST_Insn(2), add, new EXIT_Insn());
+        var addSpan = Span.fromString("1 + 2");
+        var spans = new IdentityHashMap<IInstrunction, Span>();
+        spans.put(add, addSpan);
+
+        new ConstantFoldingOptimizer().method(list, new OptimizationContext(0, false, spans));
+
+        assertEquals(L_CONST, list.get(0).getOpCode());
+        assertSame(addSpan, spans.get(list.get(0)));
+    }
+
+    private static List<IInstrunction> list(IInstrunction... instructions) {
+        return new ArrayList<>(List.of(instructions));
+    }
+
+    private static byte[] toOpCodes(List<IInstrunction> instructions) {
+        var opCodes = new byte[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++)
+            opCodes[i] = instructions.get(i).getOpCode();
+        return opCodes;
+    }
+}
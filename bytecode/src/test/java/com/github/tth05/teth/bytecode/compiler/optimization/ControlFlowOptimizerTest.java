@@ -0,0 +1,149 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.op.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ControlFlowOptimizerTest implements OpCodes {
+
+    @Test
+    public void testRemoveConstantTrueCondition() {
+        // loop { if (a) break }
+        var list = list(
+                new B_CONST_Insn(true),
+                new JUMP_IF_FALSE_Insn(4),
+                new LOAD_LOCAL_Insn(0),
+                new JUMP_IF_FALSE_Insn(1),
+                // break
+                new JUMP_Insn(1),
+                new JUMP_Insn(-6),
+                new EXIT_Insn()
+        );
+
+        new ControlFlowOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{
+                LOAD_LOCAL,
+                JUMP_IF_FALSE,
+                EXIT
+        }, toOpCodes(list));
+        assertEquals(-2, ((JUMP_IF_FALSE_Insn) list.get(1)).getRelativeJumpOffset());
+    }
+
+    @Test
+    public void testReplaceConstantFalseCondition() {
+        // if (false) print(1) print(2)
+        var list = list(
+                new B_CONST_Insn(false),
+                new JUMP_IF_FALSE_Insn(2),
+                new L_CONST_Insn(1),
+                new POP_Insn(),
+                new L_CONST_Insn(2),
+                new RETURN_Insn(true)
+        );
+
+        new ControlFlowOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{L_CONST, RETURN}, toOpCodes(list));
+        assertEquals(2, ((L_CONST_Insn) list.get(0)).getValue());
+    }
+
+    @Test
+    public void testThreadJumpChains() {
+        // if (a) { if (b) x = 1 else x = 2 } else x = 3
+        var list = list(
+                new LOAD_LOCAL_Insn(0),
+                new JUMP_IF_FALSE_Insn(8),
+                new LOAD_LOCAL_Insn(1),
+                new JUMP_IF_FALSE_Insn(3),
+                new L_CONST_Insn(1),
+                new STORE_LOCAL_Insn(2),
+                new JUMP_Insn(2),
+                new L_CONST_Insn(2),
+                new STORE_LOCAL_Insn(2),
+                // Inner if end, jumps over else
+                new JUMP_Insn(2),
+                new L_CONST_Insn(3),
+                new STORE_LOCAL_Insn(2),
+                new EXIT_Insn()
+        );
+
+        new ControlFlowOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{
+                LOAD_LOCAL,
+                JUMP_IF_FALSE,
+                LOAD_LOCAL,
+                JUMP_IF_FALSE,
+                L_CONST,
+                STORE_LOCAL,
+                JUMP,
+                L_CONST,
+                STORE_LOCAL,
+                JUMP,
+                L_CONST,
+                STORE_LOCAL,
+                EXIT
+        }, toOpCodes(list));
+        // Jumps directly to EXIT now
+        assertEquals(5, ((JUMP_Insn) list.get(6)).getRelativeJumpOffset());
+        assertEquals(2, ((JUMP_Insn) list.get(9)).getRelativeJumpOffset());
+    }
+
+    @Test
+    public void testRemoveUnreachableInstructions() {
+        // fn f(a: bool) long { if (a) return 1 else return 2 }
+        var list = list(
+                new LOAD_LOCAL_Insn(0),
+                new JUMP_IF_FALSE_Insn(3),
+                new L_CONST_Insn(1),
+                new RETURN_Insn(true),
+                new JUMP_Insn(2),
+                new L_CONST_Insn(2),
+                new RETURN_Insn(true),
+                new RETURN_Insn(false)
+        );
+
+        new ControlFlowOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{
+                LOAD_LOCAL,
+                JUMP_IF_FALSE,
+                L_CONST,
+                RETURN,
+                L_CONST,
+                RETURN
+        }, toOpCodes(list));
+        assertEquals(2, ((JUMP_IF_FALSE_Insn) list.get(1)).getRelativeJumpOffset());
+    }
+
+    @Test
+    public void testEmptyInfiniteLoop() {
+        var list = list(
+                new B_CONST_Insn(true),
+                new JUMP_IF_FALSE_Insn(1),
+                new JUMP_Insn(-3),
+                new EXIT_Insn()
+        );
+
+        new ControlFlowOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{JUMP}, toOpCodes(list));
+        assertEquals(-1, ((JUMP_Insn) list.get(0)).getRelativeJumpOffset());
+    }
+
+    private static List<IInstrunction> list(IInstrunction... instructions) {
+        return new ArrayList<>(List.of(instructions));
+    }
+
+    private static byte[] toOpCodes(List<IInstrunction> instructions) {
+        var opCodes = new byte[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++)
+            opCodes[i] = instructions.get(i).getOpCode();
+        return opCodes;
+    }
+}
@@ -0,0 +1,199 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.bytecode.program.ValueType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoopOptimizerTest implements OpCodes {
+
+    @Test
+    public void testHoistInvariantExpression() {
+        // s = s + a * b
+        var list = loop(
+                new LOAD_LOCAL_Insn(2),
+                new LOAD_LOCAL_Insn(0),
+                new LOAD_LOCAL_Insn(1),
+                new L_MUL_Insn(),
+                new L_ADD_Insn(),
+                new STORE_LOCAL_Insn(2)
+        );
+        var context = context(false);
+
+        new LoopOptimizer().method(list, context);
+
+        assertArrayEquals(new byte[]{
+                // Preheader
+                LOAD_LOCAL, LOAD_LOCAL, L_MUL, STORE_LOCAL,
+                // Header
+                LOAD_LOCAL, LOAD_LOCAL, L_LESS, JUMP_IF_FALSE,
+                LOAD_LOCAL, LOAD_LOCAL, L_ADD, STORE_LOCAL,
+                LOAD_LOCAL, L_CONST, L_ADD, STORE_LOCAL, JUMP,
+                EXIT
+        }, toOpCodes(list));
+        assertEquals(5, ((STORE_LOCAL_Insn) list.get(3)).getLocalIndex());
+        assertEquals(5, ((LOAD_LOCAL_Insn) list.get(9)).getLocalIndex());
+        assertEquals(ValueType.LONG, context.localTypes().get(5));
+        assertEquals(-13, ((JUMP_Insn) list.get(16)).getRelativeJumpOffset());
+    }
+
+    @Test
+    public void testDoNotHoistStoredLocal() {
+        // s = s + a * b, b = s
+        var list = loop(
+                new LOAD_LOCAL_Insn(2),
+                new LOAD_LOCAL_Insn(0),
+                new LOAD_LOCAL_Insn(1),
+                new L_MUL_Insn(),
+                new L_ADD_Insn(),
+                new STORE_LOCAL_Insn(2),
+                new LOAD_LOCAL_Insn(2),
+                new STORE_LOCAL_Insn(1)
+        );
+        var expected = toOpCodes(list);
+
+        new LoopOptimizer().method(list, context(false));
+
+        assertArrayEquals(expected, toOpCodes(list));
+    }
+
+    @Test
+    public void testDoNotHoistThrowingExpressionFromBody() {
+        // s = s + a / b, s = s + a.x
+        var list = loop(
+                new LOAD_LOCAL_Insn(2),
+                new LOAD_LOCAL_Insn(0),
+                new LOAD_LOCAL_Insn(1),
+                new L_DIV_Insn(),
+                new L_ADD_Insn(),
+                new STORE_LOCAL_Insn(2),
+                new LOAD_LOCAL_Insn(2),
+                new LOAD_LOCAL_Insn(0),
+                new LOAD_MEMBER_Insn(0),
+                new L_ADD_Insn(),
+                new STORE_LOCAL_Insn(2)
+        );
+        var expected = toOpCodes(list);
+
+        new LoopOptimizer().method(list, context(false));
+
+        assertArrayEquals(expected, toOpCodes(list));
+    }
+
+    @Test
+    public void testHoistMemberOfInstance() {
+        // s = s + self.x
+        var list = loop(
+                new LOAD_LOCAL_Insn(2),
+                new LOAD_LOCAL_Insn(0),
+                new LOAD_MEMBER_Insn(0),
+                new L_ADD_Insn(),
+                new STORE_LOCAL_Insn(2)
+        );
+        var context = context(true);
+
+        new LoopOptimizer().method(list, context);
+
+        assertArrayEquals(new byte[]{
+                LOAD_LOCAL, LOAD_MEMBER, STORE_LOCAL,
+                LOAD_LOCAL, LOAD_LOCAL, L_LESS, JUMP_IF_FALSE,
+                LOAD_LOCAL, LOAD_LOCAL, L_ADD, STORE_LOCAL,
+                LOAD_LOCAL, L_CONST, L_ADD, STORE_LOCAL, JUMP,
+                EXIT
+        }, toOpCodes(list));
+        assertEquals(ValueType.REFERENCE, context.localTypes().get(5));
+    }
+
+    @Test
+    public void testStrengthReduceInductionVariable() {
+        // s = s + i * 4
+        var list = loop(
+                new LOAD_LOCAL_Insn(2),
+                new LOAD_LOCAL_Insn(3),
+                new L_CONST_Insn(4),
+                new L_MUL_Insn(),
+                new L_ADD_Insn(),
+                new STORE_LOCAL_Insn(2)
+        );
+        var context = context(false);
+
+        new LoopOptimizer().method(list, context);
+
+        assertArrayEquals(new byte[]{
+                // Preheader
+                LOAD_LOCAL, L_CONST, L_MUL, STORE_LOCAL,
+                // Header
+                LOAD_LOCAL, LOAD_LOCAL, L_LESS, JUMP_IF_FALSE,
+                LOAD_LOCAL, LOAD_LOCAL, L_ADD, STORE_LOCAL,
+                LOAD_LOCAL, L_CONST, L_ADD, STORE_LOCAL,
+                // Increment of the reduced local
+                LOAD_LOCAL, L_CONST, L_ADD, STORE_LOCAL, JUMP,
+                EXIT
+        }, toOpCodes(list));
+        assertEquals(5, ((LOAD_LOCAL_Insn) list.get(9)).getLocalIndex());
+        assertEquals(5, ((LOAD_LOCAL_Insn) list.get(16)).getLocalIndex());
+        assertEquals(4, ((L_CONST_Insn) list.get(17)).getValue());
+        assertEquals(5, ((STORE_LOCAL_Insn) list.get(19)).getLocalIndex());
+    }
+
+    @Test
+    public void testDisabledForExternalLocalAccess() {
+        var list = loop(
+                new LOAD_LOCAL_Insn(0),
+                new LOAD_LOCAL_Insn(1),
+                new L_MUL_Insn(),
+                new STORE_LOCAL_Insn(2)
+        );
+        var expected = toOpCodes(list);
+
+        new LoopOptimizer().method(list, new OptimizationContext(0, true, new IdentityHashMap<>()));
+
+        assertArrayEquals(expected, toOpCodes(list));
+    }
+
+    /**
+     * @return {@code loop (, i < n, i = i + 1) { body }} with {@code i} in local 3 and {@code n} in local 4
+     */
+    private static List<IInstrunction> loop(IInstrunction... body) {
+        var list = list(
+                new LOAD_LOCAL_Insn(3),
+                new LOAD_LOCAL_Insn(4),
+                new L_LESS_Insn(),
+                new JUMP_IF_FALSE_Insn(body.length + 5)
+        );
+        list.addAll(List.of(body));
+        list.addAll(List.of(
+                new LOAD_LOCAL_Insn(3),
+                new L_CONST_Insn(1),
+                new L_ADD_Insn(),
+                new STORE_LOCAL_Insn(3),
+                new JUMP_Insn(-(body.length + 9)),
+                new EXIT_Insn()
+        ));
+        return list;
+    }
+
+    private static OptimizationContext context(boolean instanceFunction) {
+        var localTypes = new ArrayList<>(List.of(
+                instanceFunction ? ValueType.REFERENCE : ValueType.LONG,
+                ValueType.LONG, ValueType.LONG, ValueType.LONG, ValueType.LONG
+        ));
+        return new OptimizationContext(instanceFunction ? 1 : 0, instanceFunction, false, localTypes, new IdentityHashMap<>());
+    }
+
+    private static List<IInstrunction> list(IInstrunction... instructions) {
+        return new ArrayList<>(List.of(instructions));
+    }
+
+    private static byte[] toOpCodes(List<IInstrunction> instructions) {
+        var opCodes = new byte[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++)
+            opCodes[i] = instructions.get(i).getOpCode();
+        return opCodes;
+    }
+}
@@ -99,25 +99,24 @@ public class StackCleaningOptimizerTest implements OpCodes {
                 new L_CONST_Insn(1),
                 new L_CONST_Insn(1),
                 new L_ADD_Insn(),
-                new JUMP_Insn(3),
-                new JUMP_Insn(5),
+                new JUMP_Insn(1),
+                new JUMP_Insn(-11),
                 new EXIT_Insn()
         );
 
         new StackCleaningOptimizer().method(list);
 
+        // The now empty body and else branch do not need any jumps
         assertArrayEquals(new byte[]{
                 B_CONST,
                 JUMP_IF_FALSE,
                 JUMP,
                 JUMP,
-                JUMP,
                 EXIT
         }, toOpCodes(list));
         assertEquals(0, ((JUMP_IF_FALSE_Insn) list.get(1)).getRelativeJumpOffset());
-        assertEquals(0, ((JUMP_Insn) list.get(2)).getRelativeJumpOffset());
-        assertEquals(3, ((JUMP_Insn) list.get(3)).getRelativeJumpOffset());
-        assertEquals(5, ((JUMP_Insn) list.get(4)).getRelativeJumpOffset());
+        assertEquals(1, ((JUMP_Insn) list.get(2)).getRelativeJumpOffset());
+        assertEquals(-4, ((JUMP_Insn) list.get(3)).getRelativeJumpOffset());
     }
 
     @Test
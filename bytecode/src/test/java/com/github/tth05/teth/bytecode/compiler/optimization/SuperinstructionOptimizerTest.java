@@ -0,0 +1,141 @@
+package com.github.tth05.teth.bytecode.compiler.optimization;
+
+import com.github.tth05.teth.bytecode.op.*;
+import com.github.tth05.teth.lang.span.Span;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuperinstructionOptimizerTest implements OpCodes {
+
+    @Test
+    public void testFuseLoop() {
+        var list = list(
+                new L_CONST_Insn(0),
+                new STORE_LOCAL_Insn(0),
+                // i < 10
+                new LOAD_LOCAL_Insn(0),
+                new L_CONST_Insn(10),
+                new L_LESS_Insn(),
+                new JUMP_IF_FALSE_Insn(5),
+                // i = i + 1
+                new LOAD_LOCAL_Insn(0),
+                new L_CONST_Insn(1),
+                new L_ADD_Insn(),
+                new STORE_LOCAL_Insn(0),
+                // jump back
+                new JUMP_Insn(-9),
+                new EXIT_Insn()
+        );
+
+        new SuperinstructionOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{
+                L_CONST,
+                STORE_LOCAL,
+                LOAD_LOCAL,
+                L_CONST,
+                L_CMP_LT_JUMP,
+                L_INC_LOCAL,
+                JUMP,
+                EXIT
+        }, toOpCodes(list));
+        assertEquals(2, ((L_CMP_LT_JUMP_Insn) list.get(4)).getRelativeJumpOffset());
+        assertEquals(1, ((L_INC_LOCAL_Insn) list.get(5)).getValue());
+        assertEquals(-5, ((JUMP_Insn) list.get(6)).getRelativeJumpOffset());
+    }
+
+    @Test
+    public void testFuseSubtraction() {
+        var list = list(
+                new LOAD_LOCAL_Insn(3),
+                new L_CONST_Insn(5),
+                new L_SUB_Insn(),
+                new STORE_LOCAL_Insn(3)
+        );
+
+        new SuperinstructionOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{L_INC_LOCAL}, toOpCodes(list));
+        assertEquals(3, ((L_INC_LOCAL_Insn) list.get(0)).getLocalIndex());
+        assertEquals(-5, ((L_INC_LOCAL_Insn) list.get(0)).getValue());
+    }
+
+    @Test
+    public void testDoNotFuseDifferentLocals() {
+        var list = list(
+                new LOAD_LOCAL_Insn(0),
+                new L_CONST_Insn(1),
+                new L_ADD_Insn(),
+                new STORE_LOCAL_Insn(1)
+        );
+
+        new SuperinstructionOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{
+                LOAD_LOCAL,
+                L_CONST,
+                L_ADD,
+                STORE_LOCAL
+        }, toOpCodes(list));
+    }
+
+    @Test
+    public void testDoNotFuseJumpTargets() {
+        var list = list(
+                new B_CONST_Insn(true),
+                new JUMP_IF_FALSE_Insn(1),
+                new LOAD_LOCAL_Insn(0),
+                // Jump target
+                new LOAD_MEMBER_Insn(2),
+                new LOAD_LOCAL_Insn(0),
+                new LOAD_MEMBER_Insn(1),
+                new JUMP_Insn(-5)
+        );
+
+        new SuperinstructionOptimizer().method(list);
+
+        assertArrayEquals(new byte[]{
+                B_CONST,
+                JUMP_IF_FALSE,
+                LOAD_LOCAL,
+                LOAD_MEMBER,
+                LOAD_LOCAL_LOAD_MEMBER,
+                JUMP
+        }, toOpCodes(list));
+        assertEquals(1, ((JUMP_IF_FALSE_Insn) list.get(1)).getRelativeJumpOffset());
+        assertEquals(1, ((LOAD_LOCAL_LOAD_MEMBER_Insn) list.get(4)).getFieldIndex());
+        assertEquals(-4, ((JUMP_Insn) list.get(5)).getRelativeJumpOffset());
+    }
+
+    @Test
+    public void testFusedInstructionKeepsSpanOfLastInstruction() {
+        var loadLocal = new LOAD_LOCAL_Insn(0);
+        var loadMember = new LOAD_MEMBER_Insn((short) 1);
+        var list = list(loadLocal, loadMember, new EXIT_Insn());
+        var memberSpan = Span.fromString("s.a");
+        var spans = new IdentityHashMap<IInstrunction, Span>();
+        spans.put(loadLocal, Span.fromString("s"));
+        spans.put(loadMember, memberSpan);
+
+        new SuperinstructionOptimizer().method(list, new OptimizationContext(0, false, spans));
+
+        assertEquals(LOAD_LOCAL_LOAD_MEMBER, list.get(0).getOpCode());
+        assertSame(memberSpan, spans.get(list.get(0)));
+    }
+
+    private static List<IInstrunction> list(IInstrunction... instructions) {
+        return new ArrayList<>(List.of(instructions));
+    }
+
+    private static byte[] toOpCodes(List<IInstrunction> instructions) {
+        var opCodes = new byte[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++)
+            opCodes[i] = instructions.get(i).getOpCode();
+        return opCodes;
+    }
+}
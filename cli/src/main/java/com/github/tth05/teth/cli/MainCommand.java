@@ -1,7 +1,9 @@
 package com.github.tth05.teth.cli;
 
 import com.github.tth05.teth.cli.commands.ASTCommand;
+import com.github.tth05.teth.cli.commands.BenchmarkCommand;
 import com.github.tth05.teth.cli.commands.BytecodeCommand;
+import com.github.tth05.teth.cli.commands.CompileCommand;
 import com.github.tth05.teth.cli.commands.REPLCommand;
 import com.github.tth05.teth.cli.commands.RunCommand;
 import org.fusesource.jansi.AnsiConsole;
@@ -10,7 +12,7 @@ import picocli.CommandLine;
 @CommandLine.Command(
         name = "teth-cli",
         version = "teth-cli 0.0.1",
-        subcommands = {ASTCommand.class, BytecodeCommand.class, REPLCommand.class, RunCommand.class},
+        subcommands = {ASTCommand.class, BenchmarkCommand.class, BytecodeCommand.class, CompileCommand.class, REPLCommand.class, RunCommand.class},
         mixinStandardHelpOptions = true,
         synopsisHeading = "@|bold,underline Usage|@:%n  ",
         parameterListHeading = "%n@|bold,underline Parameters|@:%n",
@@ -24,6 +26,6 @@ public class MainCommand {
         AnsiConsole.systemInstall();
 
         //noinspection InstantiationOfUtilityClass
-        new CommandLine(new MainCommand()).execute(args);
+        new CommandLine(new MainCommand()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
     }
 }
@@ -2,6 +2,7 @@ package com.github.tth05.teth.cli.commands;
 
 import com.github.tth05.teth.analyzer.module.IModuleLoader;
 import com.github.tth05.teth.bytecode.compiler.Compiler;
+import com.github.tth05.teth.bytecode.program.ProgramSerializer;
 import com.github.tth05.teth.bytecode.program.TethProgram;
 import com.github.tth05.teth.cli.commands.converters.String2ExistingFileConverter;
 import com.github.tth05.teth.lang.parser.Parser;
@@ -40,6 +41,15 @@ public abstract class AbstractCompilerCommand implements Runnable {
     public void run() {
         var startTime = System.nanoTime();
         try {
+            if (this.filePath.toString().endsWith(ProgramSerializer.FILE_EXTENSION)) {
+                var program = ProgramSerializer.read(this.filePath);
+                if (this.verbose)
+                    System.out.println("Loaded in " + (System.nanoTime() - startTime) / 1000000.0 + "ms");
+
+                run(program);
+                return;
+            }
+
             var entryPointSource = new FileSource(this.filePath);
             var entryPointUnit = parseSource(entryPointSource);
 
@@ -67,6 +77,11 @@ public abstract class AbstractCompilerCommand implements Runnable {
                             return null;
                         }
                     }
+
+                    @Override
+                    public boolean supportsParallelLoading() {
+                        return true;
+                    }
                 });
             }
 
@@ -0,0 +1,83 @@
+package com.github.tth05.teth.cli.commands;
+
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import com.github.tth05.teth.bytecodeInterpreter.Interpreter;
+import com.github.tth05.teth.bytecodeInterpreter.LinkedProgram;
+import com.github.tth05.teth.bytecodeInterpreter.register.RegisterInterpreter;
+import com.github.tth05.teth.bytecodeInterpreter.register.RegisterProgram;
+import picocli.CommandLine;
+
+import java.io.OutputStream;
+
+@CommandLine.Command(
+        name = "bench",
+        description = "Runs the given teth file on the stack and the register VM and compares the run times. The output of the program is discarded.",
+        synopsisHeading = "@|bold,underline Usage|@:%n  ",
+        descriptionHeading = "@|bold,underline Description|@:%n  ",
+        parameterListHeading = "@|bold,underline Parameters|@:%n",
+        optionListHeading = "@|bold,underline Options|@:%n"
+)
+public class BenchmarkCommand extends AbstractCompilerCommand {
+
+    @CommandLine.Option(
+            names = {"-i", "--iterations"},
+            description = "The number of measured runs per VM",
+            defaultValue = "10"
+    )
+    private int iterations;
+
+    @CommandLine.Option(
+            names = {"-w", "--warmup"},
+            description = "The number of runs per VM before measuring",
+            defaultValue = "3"
+    )
+    private int warmupIterations;
+
+    @Override
+    protected void run(TethProgram program) {
+        if (this.iterations < 1) {
+            System.out.println("At least one iteration is required");
+            return;
+        }
+
+        var linkedProgram = LinkedProgram.link(program);
+        var registerProgram = RegisterProgram.translate(program);
+        var output = OutputStream.nullOutputStream();
+
+        System.out.printf("%-14s %12s %12s%n", "VM", "Average (ms)", "Best (ms)");
+        measure("stack", () -> {
+            var interpreter = new Interpreter(linkedProgram);
+            interpreter.setJitThreshold(0);
+            interpreter.setSystemOutStream(output);
+            interpreter.execute();
+        });
+        measure("stack + JIT", () -> {
+            var interpreter = new Interpreter(linkedProgram);
+            interpreter.setSystemOutStream(output);
+            interpreter.execute();
+        });
+        measure("register", () -> {
+            var interpreter = new RegisterInterpreter(registerProgram);
+            interpreter.setSystemOutStream(output);
+            interpreter.execute();
+        });
+    }
+
+    private void measure(String name, Runnable runnable) {
+        for (int i = 0; i < this.warmupIterations; i++)
+            runnable.run();
+
+        var total = 0L;
+        var best = Long.MAX_VALUE;
+        for (int i = 0; i < this.iterations; i++) {
+            var startTime = System.nanoTime();
+            runnable.run();
+            var time = System.nanoTime() - startTime;
+
+            total += time;
+            best = Math.min(best, time);
+        }
+
+        System.out.printf("%-14s %12.3f %12.3f%n", name, total / (double) this.iterations / 1000000.0, best / 1000000.0);
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.tth05.teth.cli.commands;
+
+import com.github.tth05.teth.bytecode.program.ProgramSerializer;
+import com.github.tth05.teth.bytecode.program.TethProgram;
+import picocli.CommandLine;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@CommandLine.Command(
+        name = "compile",
+        description = "Compiles the given teth file into a .tethc file, which can be passed to the other commands instead of the source file to skip compilation",
+        synopsisHeading = "@|bold,underline Usage|@:%n  ",
+        descriptionHeading = "@|bold,underline Description|@:%n  ",
+        parameterListHeading = "@|bold,underline Parameters|@:%n",
+        optionListHeading = "@|bold,underline Options|@:%n"
+)
+public class CompileCommand extends AbstractCompilerCommand {
+
+    @CommandLine.Option(
+            names = {"-o", "--output"},
+            description = "The file to write the compiled program to, defaults to the input file with the .tethc extension",
+            paramLabel = "<path>"
+    )
+    private Path outputPath;
+
+    @Override
+    protected void run(TethProgram program) {
+        var outputPath = this.outputPath != null ? this.outputPath : getDefaultOutputPath();
+        var startTime = System.nanoTime();
+        try (var out = new BufferedOutputStream(Files.newOutputStream(outputPath))) {
+            ProgramSerializer.write(program, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (this.verbose)
+            System.out.println("Wrote " + outputPath + " in " + (System.nanoTime() - startTime) / 1000000.0 + "ms");
+    }
+
+    private Path getDefaultOutputPath() {
+        var fileName = this.filePath.getFileName().toString();
+        var extensionIndex = fileName.lastIndexOf('.');
+        if (extensionIndex != -1)
+            fileName = fileName.substring(0, extensionIndex);
+
+        return this.filePath.resolveSibling(fileName + ProgramSerializer.FILE_EXTENSION);
+    }
+}
@@ -2,8 +2,20 @@ package com.github.tth05.teth.cli.commands;
 
 import com.github.tth05.teth.bytecode.program.TethProgram;
 import com.github.tth05.teth.bytecodeInterpreter.Interpreter;
+import com.github.tth05.teth.bytecodeInterpreter.LinkedProgram;
+import com.github.tth05.teth.bytecodeInterpreter.Profiler;
+import com.github.tth05.teth.bytecodeInterpreter.StackSizes;
+import com.github.tth05.teth.bytecodeInterpreter.register.RegisterInterpreter;
+import com.github.tth05.teth.bytecodeInterpreter.register.RegisterProgram;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 @CommandLine.Command(
         name = "run",
         description = "Runs the given teth file",
@@ -14,14 +26,97 @@ import picocli.CommandLine;
 )
 public class RunCommand extends AbstractCompilerCommand {
 
+    @CommandLine.Option(
+            names = {"--vm"},
+            description = "The virtual machine which runs the program: ${COMPLETION-CANDIDATES}",
+            defaultValue = "stack"
+    )
+    private VirtualMachine virtualMachine;
+
+    @CommandLine.Option(
+            names = {"--initial-stack-size"},
+            description = "The initial number of slots of each interpreter stack",
+            defaultValue = "64"
+    )
+    private int initialStackSize;
+
+    @CommandLine.Option(
+            names = {"--max-stack-size"},
+            description = "The number of slots up to which each interpreter stack may grow",
+            defaultValue = "1048576"
+    )
+    private int maxStackSize;
+
+    @CommandLine.Option(
+            names = {"--profile"},
+            description = "Profiles the program and prints the results as ${COMPLETION-CANDIDATES}. Only supported by the stack VM",
+            paramLabel = "<format>",
+            arity = "0..1",
+            fallbackValue = "text"
+    )
+    private ProfileFormat profileFormat;
+
+    @CommandLine.Option(
+            names = {"--profile-output"},
+            description = "The file to write the profiling results to, defaults to stdout",
+            paramLabel = "<path>"
+    )
+    private Path profileOutputPath;
+
     @Override
     public void run(TethProgram program) {
+        if (this.initialStackSize < 2 || this.maxStackSize < this.initialStackSize) {
+            System.out.println("The initial stack size must be at least 2 and must not exceed the maximum stack size");
+            return;
+        }
+
+        if (this.profileFormat != null && this.virtualMachine != VirtualMachine.STACK) {
+            System.out.println("Profiling is only supported by the stack VM");
+            return;
+        }
+
+        var stackSizes = new StackSizes(this.initialStackSize, this.maxStackSize);
+        Profiler profiler = null;
         var startTime = System.nanoTime();
-        var interpreter = new Interpreter(program);
-        interpreter.execute();
+        switch (this.virtualMachine) {
+            case STACK -> {
+                var linkedProgram = LinkedProgram.link(program);
+                var interpreter = new Interpreter(linkedProgram, stackSizes);
+                if (this.profileFormat != null)
+                    interpreter.setProfiler(profiler = new Profiler(linkedProgram));
+                interpreter.execute();
+            }
+            case REGISTER -> new RegisterInterpreter(RegisterProgram.translate(program), stackSizes).execute();
+        }
 
         if (this.verbose) {
             System.out.println("Ran in " + (System.nanoTime() - startTime) / 1000000.0 + "ms");
         }
+
+        if (profiler != null)
+            printProfile(profiler);
+    }
+
+    private void printProfile(Profiler profiler) {
+        try (var out = this.profileOutputPath != null ? new PrintStream(Files.newOutputStream(this.profileOutputPath), false, StandardCharsets.UTF_8) : null) {
+            var stream = out != null ? out : System.out;
+            switch (this.profileFormat) {
+                case TEXT -> profiler.printReport(stream);
+                case COLLAPSED -> profiler.printCollapsedStacks(stream);
+            }
+            stream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public enum VirtualMachine {
+        STACK,
+        REGISTER
+    }
+
+    public enum ProfileFormat {
+        TEXT,
+        COLLAPSED
     }
 }
@@ -5,6 +5,7 @@ import com.github.tth05.teth.lang.span.Span;
 
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class ASTUtil {
 
@@ -34,86 +35,96 @@ public class ASTUtil {
     }
 
     public static void walkNodesAtOffset(Statement statement, int offset, boolean endInclusive, Consumer<Statement> consumer) {
-        if (statement == null)
-            return;
+        walkNodes(statement, s -> {
+            var span = s.getSpan();
+            if (span == null)
+                return false;
 
-        var span = statement.getSpan();
-        if (span == null)
-            return;
+            if (offset < span.offset() || offset > span.offsetEnd() || (!endInclusive && offset == span.offsetEnd()))
+                return false;
 
-        if (offset < span.offset() || offset > span.offsetEnd() || (!endInclusive && offset == span.offsetEnd()))
-            return;
+            consumer.accept(s);
+            return true;
+        });
+    }
 
-        consumer.accept(statement);
+    /**
+     * Walks all nodes below and including {@code statement} in pre-order.
+     *
+     * @param visitor Called for every node, returns whether the children of the node should be walked
+     */
+    public static void walkNodes(Statement statement, Predicate<Statement> visitor) {
+        if (statement == null || !visitor.test(statement))
+            return;
 
         if (statement instanceof BinaryExpression expr) {
-            walkNodesAtOffset(expr.getLeft(), offset, endInclusive, consumer);
-            walkNodesAtOffset(expr.getRight(), offset, endInclusive, consumer);
+            walkNodes(expr.getLeft(), visitor);
+            walkNodes(expr.getRight(), visitor);
         } else if (statement instanceof BlockStatement block) {
-            walkNodesAtOffset(block.getStatements(), offset, endInclusive, consumer);
+            walkNodes(block.getStatements(), visitor);
         } else if (statement instanceof GenericParameterDeclaration p) {
-            walkNodesAtOffset(p.getNameExpr(), offset, endInclusive, consumer);
+            walkNodes(p.getNameExpr(), visitor);
         } else if (statement instanceof FunctionDeclaration func) {
-            walkNodesAtOffset(func.getNameExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(func.getGenericParameters(), offset, endInclusive, consumer);
-            walkNodesAtOffset(func.getParameters(), offset, endInclusive, consumer);
-            walkNodesAtOffset(func.getReturnTypeExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(func.getBody(), offset, endInclusive, consumer);
+            walkNodes(func.getNameExpr(), visitor);
+            walkNodes(func.getGenericParameters(), visitor);
+            walkNodes(func.getParameters(), visitor);
+            walkNodes(func.getReturnTypeExpr(), visitor);
+            walkNodes(func.getBody(), visitor);
         } else if (statement instanceof FunctionDeclaration.ParameterDeclaration param) {
-            walkNodesAtOffset(param.getNameExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(param.getTypeExpr(), offset, endInclusive, consumer);
+            walkNodes(param.getNameExpr(), visitor);
+            walkNodes(param.getTypeExpr(), visitor);
         } else if (statement instanceof FunctionInvocationExpression expr) {
-            walkNodesAtOffset(expr.getTarget(), offset, endInclusive, consumer);
-            walkNodesAtOffset(expr.getGenericParameters(), offset, endInclusive, consumer);
-            walkNodesAtOffset(expr.getParameters(), offset, endInclusive, consumer);
+            walkNodes(expr.getTarget(), visitor);
+            walkNodes(expr.getGenericParameters(), visitor);
+            walkNodes(expr.getParameters(), visitor);
         } else if (statement instanceof IfStatement ifStmt) {
-            walkNodesAtOffset(ifStmt.getCondition(), offset, endInclusive, consumer);
-            walkNodesAtOffset(ifStmt.getBody(), offset, endInclusive, consumer);
-            walkNodesAtOffset(ifStmt.getElseStatement(), offset, endInclusive, consumer);
+            walkNodes(ifStmt.getCondition(), visitor);
+            walkNodes(ifStmt.getBody(), visitor);
+            walkNodes(ifStmt.getElseStatement(), visitor);
         } else if (statement instanceof ListLiteralExpression expr) {
-            walkNodesAtOffset(expr.getInitializers(), offset, endInclusive, consumer);
+            walkNodes(expr.getInitializers(), visitor);
         } else if (statement instanceof LoopStatement loop) {
-            walkNodesAtOffset(loop.getVariableDeclarations(), offset, endInclusive, consumer);
-            walkNodesAtOffset(loop.getCondition(), offset, endInclusive, consumer);
-            walkNodesAtOffset(loop.getAdvanceStatement(), offset, endInclusive, consumer);
-            walkNodesAtOffset(loop.getBody(), offset, endInclusive, consumer);
+            walkNodes(loop.getVariableDeclarations(), visitor);
+            walkNodes(loop.getCondition(), visitor);
+            walkNodes(loop.getAdvanceStatement(), visitor);
+            walkNodes(loop.getBody(), visitor);
         } else if (statement instanceof MemberAccessExpression expr) {
-            walkNodesAtOffset(expr.getTarget(), offset, endInclusive, consumer);
-            walkNodesAtOffset(expr.getMemberNameExpr(), offset, endInclusive, consumer);
+            walkNodes(expr.getTarget(), visitor);
+            walkNodes(expr.getMemberNameExpr(), visitor);
         } else if (statement instanceof ObjectCreationExpression expr) {
-            walkNodesAtOffset(expr.getTargetNameExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(expr.getGenericParameters(), offset, endInclusive, consumer);
-            walkNodesAtOffset(expr.getParameters(), offset, endInclusive, consumer);
+            walkNodes(expr.getTargetNameExpr(), visitor);
+            walkNodes(expr.getGenericParameters(), visitor);
+            walkNodes(expr.getParameters(), visitor);
         } else if (statement instanceof ParenthesisedExpression expr) {
-            walkNodesAtOffset(expr.getExpression(), offset, endInclusive, consumer);
+            walkNodes(expr.getExpression(), visitor);
         } else if (statement instanceof ReturnStatement ret) {
-            walkNodesAtOffset(ret.getValueExpr(), offset, endInclusive, consumer);
+            walkNodes(ret.getValueExpr(), visitor);
         } else if (statement instanceof StructDeclaration struct) {
-            walkNodesAtOffset(struct.getNameExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(struct.getGenericParameters(), offset, endInclusive, consumer);
-            walkNodesAtOffset(struct.getFields(), offset, endInclusive, consumer);
-            walkNodesAtOffset(struct.getFunctions(), offset, endInclusive, consumer);
+            walkNodes(struct.getNameExpr(), visitor);
+            walkNodes(struct.getGenericParameters(), visitor);
+            walkNodes(struct.getFields(), visitor);
+            walkNodes(struct.getFunctions(), visitor);
         } else if (statement instanceof StructDeclaration.FieldDeclaration field) {
-            walkNodesAtOffset(field.getNameExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(field.getTypeExpr(), offset, endInclusive, consumer);
+            walkNodes(field.getNameExpr(), visitor);
+            walkNodes(field.getTypeExpr(), visitor);
         } else if (statement instanceof TypeExpression expr) {
-            walkNodesAtOffset(expr.getNameExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(expr.getGenericParameters(), offset, endInclusive, consumer);
+            walkNodes(expr.getNameExpr(), visitor);
+            walkNodes(expr.getGenericParameters(), visitor);
         } else if (statement instanceof UnaryExpression expr) {
-            walkNodesAtOffset(expr.getExpression(), offset, endInclusive, consumer);
+            walkNodes(expr.getExpression(), visitor);
         } else if (statement instanceof UseStatement use) {
-            walkNodesAtOffset(use.getPathExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(use.getImports(), offset, endInclusive, consumer);
+            walkNodes(use.getPathExpr(), visitor);
+            walkNodes(use.getImports(), visitor);
         } else if (statement instanceof VariableDeclaration var) {
-            walkNodesAtOffset(var.getNameExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(var.getTypeExpr(), offset, endInclusive, consumer);
-            walkNodesAtOffset(var.getInitializerExpr(), offset, endInclusive, consumer);
+            walkNodes(var.getNameExpr(), visitor);
+            walkNodes(var.getTypeExpr(), visitor);
+            walkNodes(var.getInitializerExpr(), visitor);
         } else if (statement instanceof StringLiteralExpression expr) {
             for (StringLiteralExpression.Part part : expr.getParts()) {
                 if (part.getType() != StringLiteralExpression.PartType.EXPRESSION)
                     continue;
 
-                walkNodesAtOffset(part.asExpression(), offset, endInclusive, consumer);
+                walkNodes(part.asExpression(), visitor);
             }
         }
     }
@@ -122,4 +133,9 @@ public class ASTUtil {
         for (var child : children)
             walkNodesAtOffset(child, offset, endInclusive, consumer);
     }
+
+    public static void walkNodes(List<? extends Statement> children, Predicate<Statement> visitor) {
+        for (var child : children)
+            walkNodes(child, visitor);
+    }
 }
@@ -16,11 +16,14 @@ import com.github.tth05.teth.lang.util.NumberUtils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class Parser {
 
+    private static final AtomicInteger NEXT_UNIT_ID = new AtomicInteger();
+
     private final ProblemList problems;
     private final TokenStream stream;
     private final boolean allowIntrinsic;
@@ -55,6 +58,7 @@ public class Parser {
         this.currentUnit = new SourceFileUnit(this.stream.getSource().getModuleName());
         this.currentUnit.setStatements(parseStatementList(AnchorSets.FIRST_SET_STATEMENT, TokenType.EOF));
         expectToken(TokenType.EOF, AnchorSets.EMPTY, () -> "Expected end of file");
+        assignNodeIds(this.currentUnit.getStatements());
 
         if (this.problems.isEmpty())
             return new ParserResult(this.stream.getSource(), this.currentUnit);
@@ -62,6 +66,19 @@ public class Parser {
             return new ParserResult(this.stream.getSource(), this.currentUnit, this.problems);
     }
 
+    /**
+     * Numbers all nodes of the given unit densely, so that analysis results can be stored in arrays instead of
+     * identity maps.
+     */
+    private static void assignNodeIds(StatementList statements) {
+        var unitId = NEXT_UNIT_ID.getAndIncrement();
+        var nextNodeId = new int[1];
+        ASTUtil.walkNodes(statements, s -> {
+            s.setNodeId(unitId, nextNodeId[0]++);
+            return true;
+        });
+    }
+
     private UseStatement parseUseStatement(AnchorUnion anchorSet) {
         var firstSpan = consume(false).span();
         var lastSpan = firstSpan;
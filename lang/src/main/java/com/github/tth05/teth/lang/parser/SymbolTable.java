@@ -0,0 +1,46 @@
+package com.github.tth05.teth.lang.parser;
+
+import com.github.tth05.teth.lang.span.Span;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns a unique id to the text of every identifier, so that names can be compared and hashed as integers instead of
+ * character ranges. The table is shared by all sources and may be used concurrently. Symbols are never removed.
+ */
+public final class SymbolTable {
+
+    /**
+     * The symbol of identifiers without a name
+     */
+    public static final int NO_SYMBOL = -1;
+
+    private static final Map<String, Integer> SYMBOLS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_SYMBOL = new AtomicInteger();
+
+    private SymbolTable() {}
+
+    /**
+     * @return The symbol of the text of the given span, which is added to the table if necessary, or
+     * {@link #NO_SYMBOL} if the span is {@code null}
+     */
+    public static int intern(Span name) {
+        if (name == null)
+            return NO_SYMBOL;
+
+        return SYMBOLS.computeIfAbsent(name.getText(), k -> NEXT_SYMBOL.getAndIncrement());
+    }
+
+    /**
+     * @return The symbol of the text of the given span, or {@link #NO_SYMBOL} if no identifier with that text was
+     * interned yet
+     */
+    public static int lookup(Span name) {
+        if (name == null)
+            return NO_SYMBOL;
+
+        return SYMBOLS.getOrDefault(name.getText(), NO_SYMBOL);
+    }
+}
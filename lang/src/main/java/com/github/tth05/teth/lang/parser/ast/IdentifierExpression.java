@@ -1,14 +1,25 @@
 package com.github.tth05.teth.lang.parser.ast;
 
 import com.github.tth05.teth.lang.parser.ASTVisitor;
+import com.github.tth05.teth.lang.parser.SymbolTable;
 import com.github.tth05.teth.lang.span.Span;
 import com.github.tth05.teth.lang.util.ASTDumpBuilder;
 
 
 public final class IdentifierExpression extends Expression implements IAssignmentTarget {
 
+    private final int symbol;
+
     public IdentifierExpression(Span span) {
         super(span);
+        this.symbol = SymbolTable.intern(span);
+    }
+
+    /**
+     * @return The symbol of the name, see {@link SymbolTable}. Identifiers with the same text have the same symbol.
+     */
+    public int getSymbol() {
+        return this.symbol;
     }
 
     @Override
@@ -23,12 +34,12 @@ public final class IdentifierExpression extends Expression implements IAssignmen
         if (o == null || getClass() != o.getClass())
             return false;
 
-        return this.getSpan().textEquals(((IdentifierExpression) o).getSpan());
+        return this.symbol == ((IdentifierExpression) o).symbol;
     }
 
     @Override
     public int hashCode() {
-        return this.getSpan().getText().hashCode();
+        return Integer.hashCode(this.symbol);
     }
 
     @Override
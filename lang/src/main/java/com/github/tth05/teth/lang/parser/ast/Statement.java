@@ -8,6 +8,12 @@ public abstract sealed class Statement implements IDumpable, IVisitable
         permits BlockStatement, BreakStatement, ContinueStatement, Expression, FunctionDeclaration, FunctionDeclaration.ParameterDeclaration, GenericParameterDeclaration, IfStatement, LoopStatement, ReturnStatement, StructDeclaration, StructDeclaration.FieldDeclaration, TypeExpression, UseStatement, VariableDeclaration {
 
     private Span span;
+    /**
+     * The id of the unit this node was parsed in and the dense id of this node within that unit, assigned by the
+     * {@link com.github.tth05.teth.lang.parser.Parser}. Both are {@code -1} for nodes which were created later.
+     */
+    private int unitId = -1;
+    private int nodeId = -1;
 
     protected Statement(Span span) {
         this.span = span;
@@ -20,4 +26,17 @@ public abstract sealed class Statement implements IDumpable, IVisitable
     public Span getSpan() {
         return this.span;
     }
+
+    public void setNodeId(int unitId, int nodeId) {
+        this.unitId = unitId;
+        this.nodeId = nodeId;
+    }
+
+    public int getUnitId() {
+        return this.unitId;
+    }
+
+    public int getNodeId() {
+        return this.nodeId;
+    }
 }
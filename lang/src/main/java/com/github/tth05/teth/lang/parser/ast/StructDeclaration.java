@@ -2,6 +2,7 @@ package com.github.tth05.teth.lang.parser.ast;
 
 import com.github.tth05.teth.lang.parser.ASTVisitor;
 import com.github.tth05.teth.lang.parser.SourceFileUnit;
+import com.github.tth05.teth.lang.parser.SymbolTable;
 import com.github.tth05.teth.lang.span.Span;
 import com.github.tth05.teth.lang.util.ASTDumpBuilder;
 
@@ -60,19 +61,26 @@ public final class StructDeclaration extends Statement implements ITopLevelDecla
     }
 
     public Statement getMember(Span name) {
-        if (name == null)
+        return getMember(SymbolTable.lookup(name));
+    }
+
+    /**
+     * @return The field or function with the given name symbol, fields take precedence
+     */
+    public Statement getMember(int symbol) {
+        if (symbol == SymbolTable.NO_SYMBOL)
             return null;
 
-        return this.fields.stream()
-                .filter(f -> Objects.nonNull(f.getNameExpr().getSpan()))
-                .filter(f -> f.getNameExpr().getSpan().textEquals(name))
-                .map(Statement.class::cast)
-                .findFirst()
-                .orElse(this.functions.stream()
-                        .filter(f -> Objects.nonNull(f.getNameExpr().getSpan()))
-                        .filter(f -> f.getNameExpr().getSpan().textEquals(name))
-                        .findFirst()
-                        .orElse(null));
+        for (var field : this.fields) {
+            if (field.getNameExpr().getSymbol() == symbol)
+                return field;
+        }
+        for (var function : this.functions) {
+            if (function.getNameExpr().getSymbol() == symbol)
+                return function;
+        }
+
+        return null;
     }
 
     @Override
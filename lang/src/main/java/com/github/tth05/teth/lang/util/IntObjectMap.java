@@ -0,0 +1,135 @@
+package com.github.tth05.teth.lang.util;
+
+import java.util.Objects;
+
+/**
+ * A hash map with primitive int keys which uses open addressing, to avoid boxing the keys. Values must not be
+ * {@code null}.
+ */
+public class IntObjectMap<V> {
+
+    private static final int[] EMPTY_KEYS = new int[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
+
+    private int[] keys = EMPTY_KEYS;
+    /**
+     * {@code null} marks an empty slot
+     */
+    private Object[] values = EMPTY_VALUES;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (this.size == 0)
+            return null;
+
+        var mask = this.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            var value = this.values[i];
+            if (value == null)
+                return null;
+            if (this.keys[i] == key)
+                return (V) value;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return The previous value of the key, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        Objects.requireNonNull(value);
+        // Keep the load factor below 0.5
+        if ((this.size + 1) * 2 > this.keys.length)
+            resize(Math.max(8, this.keys.length * 2));
+
+        var mask = this.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            var existing = this.values[i];
+            if (existing == null) {
+                this.keys[i] = key;
+                this.values[i] = value;
+                this.size++;
+                return null;
+            }
+            if (this.keys[i] == key) {
+                this.values[i] = value;
+                return (V) existing;
+            }
+        }
+    }
+
+    /**
+     * @return The removed value of the key, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (this.size == 0)
+            return null;
+
+        var mask = this.keys.length - 1;
+        var i = mix(key) & mask;
+        while (true) {
+            if (this.values[i] == null)
+                return null;
+            if (this.keys[i] == key)
+                break;
+            i = (i + 1) & mask;
+        }
+
+        var removed = (V) this.values[i];
+        // Shift the following entries of the probe sequence back, so that no tombstones are needed
+        for (int j = (i + 1) & mask; this.values[j] != null; j = (j + 1) & mask) {
+            var home = mix(this.keys[j]) & mask;
+            // Move the entry if its home slot is not within (i, j]
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                this.keys[i] = this.keys[j];
+                this.values[i] = this.values[j];
+                i = j;
+            }
+        }
+
+        this.values[i] = null;
+        this.size--;
+        return removed;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    private void resize(int capacity) {
+        var oldKeys = this.keys;
+        var oldValues = this.values;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+
+        var mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == null)
+                continue;
+
+            var i = mix(oldKeys[j]) & mask;
+            while (this.values[i] != null)
+                i = (i + 1) & mask;
+            this.keys[i] = oldKeys[j];
+            this.values[i] = oldValues[j];
+        }
+    }
+
+    /**
+     * Spreads consecutive keys, which symbols usually are, over the table
+     */
+    private static int mix(int key) {
+        var h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -6,6 +6,7 @@ import com.github.tth05.teth.lang.source.InMemorySource;
 import com.github.tth05.teth.lang.span.Span;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.IntStream;
@@ -1032,4 +1033,29 @@ public class ParserTest extends AbstractParserTest {
                 }
                 """);
     }
+
+    @Test
+    public void testNodeIds() {
+        createAST("""
+                fn f(a: long) long {
+                    let b = [a, a + 1]
+                    return b.get(0)
+                }
+                "value: {f(5)}"
+                """);
+        var nodes = new ArrayList<Statement>();
+        ASTUtil.walkNodes(this.unit.getStatements(), nodes::add);
+
+        var unitId = nodes.get(0).getUnitId();
+        assertTrue(unitId >= 0);
+        for (int i = 0; i < nodes.size(); i++) {
+            assertEquals(unitId, nodes.get(i).getUnitId());
+            assertEquals(i, nodes.get(i).getNodeId());
+        }
+
+        createAST("5");
+        assertNotEquals(unitId, this.unit.getStatements().get(0).getUnitId());
+        assertEquals(0, this.unit.getStatements().get(0).getNodeId());
+        assertEquals(-1, new LongLiteralExpression(null, 5).getNodeId());
+    }
 }
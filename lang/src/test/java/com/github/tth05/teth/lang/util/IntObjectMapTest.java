@@ -0,0 +1,53 @@
+package com.github.tth05.teth.lang.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntObjectMapTest {
+
+    @Test
+    public void testPutAndGet() {
+        var map = new IntObjectMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+
+        for (int i = -500; i < 500; i++)
+            assertNull(map.put(i * 16, "v" + i));
+
+        assertEquals(1000, map.size());
+        for (int i = -500; i < 500; i++)
+            assertEquals("v" + i, map.get(i * 16));
+        assertNull(map.get(1));
+        assertFalse(map.containsKey(8000));
+
+        assertEquals("v3", map.put(48, "w"));
+        assertEquals("w", map.get(48));
+        assertEquals(1000, map.size());
+    }
+
+    @Test
+    public void testRemove() {
+        var map = new IntObjectMap<String>();
+        for (int i = 0; i < 200; i++)
+            map.put(i, "v" + i);
+
+        assertNull(map.remove(500));
+        for (int i = 0; i < 200; i += 2)
+            assertEquals("v" + i, map.remove(i));
+
+        assertEquals(100, map.size());
+        for (int i = 0; i < 200; i++)
+            assertEquals(i % 2 == 0 ? null : "v" + i, map.get(i));
+
+        for (int i = 1; i < 200; i += 2)
+            assertEquals("v" + i, map.remove(i));
+        assertTrue(map.isEmpty());
+        assertNull(map.remove(1));
+    }
+
+    @Test
+    public void testNullValue() {
+        assertThrows(NullPointerException.class, () -> new IntObjectMap<String>().put(1, null));
+    }
+}
@@ -5,6 +5,8 @@ import com.github.tth05.teth.analyzer.type.SemanticType;
 import com.github.tth05.teth.bytecode.compiler.Compiler;
 import com.github.tth05.teth.bytecode.op.IInstrunction;
 import com.github.tth05.teth.bytecode.op.INVOKE_Insn;
+import com.github.tth05.teth.bytecode.program.FunctionData;
+import com.github.tth05.teth.bytecode.program.LineNumberTable;
 import com.github.tth05.teth.bytecode.program.TethProgram;
 import com.github.tth05.teth.bytecodeInterpreter.Interpreter;
 import com.github.tth05.teth.lang.parser.*;
@@ -68,6 +70,8 @@ public class REPL implements Runnable {
 
                 // Compile
                 var compiler = new Compiler();
+                // Cached locals are declared with placeholder values and restored by RestoreLocalsInsn
+                compiler.setGlobalLocalsAccessedExternally(true);
                 compiler.setEntryPoint(new SourceFileUnit("repl", createStatementList(parserResult)));
                 var compilerResult = compiler.compile();
                 if (compilerResult.hasProblems()) {
@@ -157,7 +161,24 @@ public class REPL implements Runnable {
                     invokeInsn.getAbsoluteJumpAddress() + 1
             ));
         }
-        return new TethProgram(insns.toArray(IInstrunction[]::new), program.getStructData());
+        // Fix function offsets, the global function now contains one more instruction
+        var functionData = program.getFunctionData().clone();
+        for (int i = 0; i < functionData.length; i++) {
+            var data = functionData[i];
+            var containsTarget = data.offset() <= targetIndex && targetIndex < data.offset() + data.instructionCount();
+            functionData[i] = new FunctionData(
+                    data.name(), data.offset() < targetIndex ? data.offset() : data.offset() + 1,
+                    containsTarget ? data.instructionCount() + 1 : data.instructionCount(),
+                    data.paramCount(), data.localTypes(), data.returnType()
+            );
+        }
+        // Shift the line numbers of all following instructions
+        var lineNumberTable = new LineNumberTable.Builder();
+        for (int i = 0; i < insns.size(); i++) {
+            var index = i <= targetIndex ? i : i - 1;
+            lineNumberTable.add(program.getLineNumberTable().getSpan(index), program.getLineNumberTable().getInlineFrame(index));
+        }
+        return new TethProgram(insns.toArray(IInstrunction[]::new), program.getStructData(), functionData, lineNumberTable.build());
     }
 
     private void flushLine(String line) throws IOException {